@@ -17,6 +17,7 @@ import com.ibm.cloud.sdk.core.security.Authenticator;
 import com.ibm.cloud.sdk.core.security.IamAuthenticator;
 import com.ibm.watson.speech_to_text.v1.model.RecognizeWithWebsocketsOptions;
 import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResults;
+import com.ibm.watson.speech_to_text.v1.util.AudioRingBuffer;
 import com.ibm.watson.speech_to_text.v1.websocket.BaseRecognizeCallback;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -53,9 +54,13 @@ public class MicrophoneWithWebSocketsExample {
 
     AudioInputStream audio = new AudioInputStream(line);
 
+    // capture into a ring buffer, so that network stalls never block the microphone
+    AudioRingBuffer ring = new AudioRingBuffer(sampleRate * 2 * 10);
+    ring.startCapture(audio);
+
     RecognizeWithWebsocketsOptions options =
         new RecognizeWithWebsocketsOptions.Builder()
-            .audio(audio)
+            .audio(ring)
             .interimResults(true)
             .timestamps(true)
             .wordConfidence(true)
@@ -79,6 +84,7 @@ public class MicrophoneWithWebSocketsExample {
     // closing the WebSockets underlying InputStream will close the WebSocket itself.
     line.stop();
     line.close();
+    System.out.println("Dropped " + ring.getDroppedBytes() + " bytes of audio");
 
     System.out.println("Fin.");
   }
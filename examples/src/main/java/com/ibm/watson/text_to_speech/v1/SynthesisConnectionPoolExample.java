@@ -0,0 +1,102 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1;
+
+import com.ibm.cloud.sdk.core.security.Authenticator;
+import com.ibm.cloud.sdk.core.security.IamAuthenticator;
+import com.ibm.watson.text_to_speech.v1.model.SynthesizeOptions;
+import com.ibm.watson.text_to_speech.v1.websocket.BaseSynthesizeCallback;
+import com.ibm.watson.text_to_speech.v1.websocket.SynthesisConnectionPool;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the time to first audio of syntheses on new WebSocket connections with syntheses on the
+ * warm connections of a {@link SynthesisConnectionPool}.
+ */
+public class SynthesisConnectionPoolExample {
+
+  private static final String VOICE = "en-US_AllisonV3Voice";
+  private static final int SYNTHESES = 10;
+
+  /**
+   * The main method.
+   *
+   * @param args the arguments
+   * @throws Exception the exception
+   */
+  public static void main(String[] args) throws Exception {
+    Authenticator authenticator = new IamAuthenticator("<iam_api_key>");
+    TextToSpeech service = new TextToSpeech(authenticator);
+
+    long[] cold = new long[SYNTHESES];
+    for (int i = 0; i < SYNTHESES; i++) {
+      cold[i] = timeToFirstAudio(service, null);
+    }
+
+    SynthesisConnectionPool pool =
+        new SynthesisConnectionPool.Builder().service(service).voice(VOICE).build();
+    long[] warm = new long[SYNTHESES];
+    try {
+      for (int i = 0; i < SYNTHESES; i++) {
+        // the pause between the turns of a conversation
+        Thread.sleep(2000);
+        warm[i] = timeToFirstAudio(service, pool);
+      }
+    } finally {
+      pool.close();
+    }
+
+    System.out.println("Median time to first audio on new connections: " + median(cold) + " ms");
+    System.out.println("Median time to first audio on warm connections: " + median(warm) + " ms");
+    System.out.println(
+        pool.getWarmStarts() + " warm starts, " + pool.getColdStarts() + " cold starts");
+  }
+
+  private static long timeToFirstAudio(TextToSpeech service, SynthesisConnectionPool pool)
+      throws InterruptedException {
+    final CountDownLatch firstAudio = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(1);
+    BaseSynthesizeCallback callback =
+        new BaseSynthesizeCallback() {
+          @Override
+          public void onAudioStream(byte[] bytes) {
+            firstAudio.countDown();
+          }
+
+          @Override
+          public void onDisconnected() {
+            done.countDown();
+          }
+        };
+    SynthesizeOptions options =
+        new SynthesizeOptions.Builder().text("Hello").voice(VOICE).accept("audio/l16").build();
+    long start = System.nanoTime();
+    if (pool != null) {
+      pool.synthesize(options, callback);
+    } else {
+      service.synthesizeUsingWebSocket(options, callback);
+    }
+    firstAudio.await(30, TimeUnit.SECONDS);
+    long elapsed = System.nanoTime() - start;
+    done.await(30, TimeUnit.SECONDS);
+    return TimeUnit.NANOSECONDS.toMillis(elapsed);
+  }
+
+  private static long median(long[] values) {
+    long[] sorted = values.clone();
+    Arrays.sort(sorted);
+    return sorted[sorted.length / 2];
+  }
+}
@@ -88,6 +88,8 @@ import com.ibm.watson.speech_to_text.v1.model.UpgradeAcousticModelOptions;
 import com.ibm.watson.speech_to_text.v1.model.UpgradeLanguageModelOptions;
 import com.ibm.watson.speech_to_text.v1.model.Word;
 import com.ibm.watson.speech_to_text.v1.model.Words;
+import com.ibm.watson.speech_to_text.v1.util.CompactResultsTypeAdapterFactory;
+import com.ibm.watson.speech_to_text.v1.websocket.LatencyRecorder;
 import com.ibm.watson.speech_to_text.v1.websocket.RecognizeCallback;
 import com.ibm.watson.speech_to_text.v1.websocket.SpeechToTextWebSocketListener;
 import java.util.HashMap;
@@ -96,6 +98,7 @@ import java.util.Map.Entry;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
+import okhttp3.Response;
 import okhttp3.WebSocket;
 
 /**
@@ -143,6 +146,22 @@ public class SpeechToText extends BaseService {
   public static final String DEFAULT_SERVICE_URL =
       "https://api.us-south.speech-to-text.watson.cloud.ibm.com";
 
+  private static final ResponseConverter<SpeechRecognitionResults> COMPACT_RESULTS_CONVERTER =
+      new ResponseConverter<SpeechRecognitionResults>() {
+        @Override
+        public SpeechRecognitionResults convert(Response response) {
+          try {
+            return CompactResultsTypeAdapterFactory.getGson()
+                .fromJson(response.body().charStream(), SpeechRecognitionResults.class);
+          } finally {
+            response.body().close();
+          }
+        }
+      };
+
+  private boolean compactResults;
+  private LatencyRecorder latencyRecorder;
+
   /**
    * Constructs an instance of the `SpeechToText` client. The default service name is used to
    * configure the client instance.
@@ -186,6 +205,47 @@ public class SpeechToText extends BaseService {
     this.configureService(serviceName);
   }
 
+  /**
+   * Sets whether recognition results are parsed in compact mode. In compact mode the word
+   * timestamps and confidences of each alternative are stored as parallel arrays instead of one
+   * object per word, see {@link CompactResultsTypeAdapterFactory}. Applies to {@link
+   * #recognize(RecognizeOptions)} and {@link
+   * #recognizeUsingWebSocket(RecognizeWithWebsocketsOptions, RecognizeCallback)}.
+   *
+   * @param compactResults true to parse results in compact mode
+   */
+  public void setCompactResults(boolean compactResults) {
+    this.compactResults = compactResults;
+  }
+
+  /**
+   * Whether recognition results are parsed in compact mode.
+   *
+   * @return true if results are parsed in compact mode
+   */
+  public boolean isCompactResults() {
+    return compactResults;
+  }
+
+  /**
+   * Sets the recorder that collects the latencies of WebSocket recognitions started by {@link
+   * #recognizeUsingWebSocket(RecognizeWithWebsocketsOptions, RecognizeCallback)}.
+   *
+   * @param latencyRecorder the recorder, or null to stop recording
+   */
+  public void setLatencyRecorder(LatencyRecorder latencyRecorder) {
+    this.latencyRecorder = latencyRecorder;
+  }
+
+  /**
+   * Gets the recorder that collects the latencies of WebSocket recognitions.
+   *
+   * @return the recorder, or null if latencies are not recorded
+   */
+  public LatencyRecorder getLatencyRecorder() {
+    return latencyRecorder;
+  }
+
   /**
    * Sends audio and returns transcription results for recognition requests over a WebSocket
    * connection. Requests and responses are enabled over a single TCP connection that abstracts much
@@ -235,7 +295,9 @@ public class SpeechToText extends BaseService {
 
     OkHttpClient client = configureHttpClient();
     return client.newWebSocket(
-        builder.build(), new SpeechToTextWebSocketListener(recognizeOptions, callback));
+        builder.build(),
+        new SpeechToTextWebSocketListener(
+            recognizeOptions, callback, compactResults, latencyRecorder));
   }
 
   /**
@@ -522,8 +584,10 @@ public class SpeechToText extends BaseService {
     }
     builder.bodyContent(recognizeOptions.contentType(), null, null, recognizeOptions.audio());
     ResponseConverter<SpeechRecognitionResults> responseConverter =
-        ResponseConverterUtils.getValue(
-            new com.google.gson.reflect.TypeToken<SpeechRecognitionResults>() {}.getType());
+        compactResults
+            ? COMPACT_RESULTS_CONVERTER
+            : ResponseConverterUtils.<SpeechRecognitionResults>getValue(
+                new com.google.gson.reflect.TypeToken<SpeechRecognitionResults>() {}.getType());
     return createServiceCall(builder.build(), responseConverter);
   }
 
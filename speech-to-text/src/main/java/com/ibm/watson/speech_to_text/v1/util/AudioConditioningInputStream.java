@@ -0,0 +1,338 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1.util;
+
+import com.ibm.cloud.sdk.core.http.HttpMediaType;
+import com.ibm.watson.speech_to_text.v1.model.RecognizeOptions;
+import com.ibm.watson.speech_to_text.v1.model.RecognizeWithWebsocketsOptions;
+import com.ibm.watson.speech_to_text.v1.model.SpeechModel;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Downmixes 16-bit PCM audio to mono and resamples it to the rate of a speech model while it is
+ * read, so that no more audio than the model uses is sent to the service. <br>
+ * Resampling uses a windowed-sinc low-pass filter, which removes the frequencies above the Nyquist
+ * frequency of the target rate before they can alias. Audio is processed in fixed-size chunks; the
+ * memory used does not depend on the length of the audio. <br>
+ * The stream emits little-endian {@code audio/l16}; {@link #condition(RecognizeOptions,
+ * SpeechModel)} and {@link #condition(RecognizeWithWebsocketsOptions, SpeechModel)} replace the
+ * audio and the content type of recognize options in one step:
+ *
+ * <pre>
+ * SpeechModel model = service.getModel(getModelOptions).execute().getResult();
+ * RecognizeOptions options = AudioConditioningInputStream.condition(recognizeOptions, model);
+ * </pre>
+ */
+public class AudioConditioningInputStream extends InputStream {
+
+  private static final int CHUNK_FRAMES = 4096;
+  private static final int OUTPUT_SAMPLES = 2048;
+  private static final int ZERO_CROSSINGS = 8;
+  private static final int PHASES = 64;
+  private static final double ROLLOFF = 0.95;
+  private static final float FULL_SCALE = 32768f;
+
+  private final InputStream in;
+  private final PcmFormat source;
+  private final PcmFormat target;
+
+  // the low-pass filter, sampled every 1/PHASES of an input sample from its center outwards
+  private final boolean resampling;
+  private final double halfWidth;
+  private final float[] kernel;
+
+  // raw input, including a partial frame carried over from the previous read
+  private final byte[] raw;
+  private int carry;
+
+  // mono input samples, windowBase is the index of window[0] in the whole input
+  private final float[] window;
+  private long windowBase;
+  private int windowLength;
+  private long sourceSamples;
+  private boolean sourceDone;
+
+  private final byte[] output;
+  private int outputStart;
+  private int outputLength;
+  private long outputIndex;
+
+  /**
+   * Instantiates a new conditioning stream.
+   *
+   * @param in the PCM audio
+   * @param source the format of the audio
+   * @param targetRate the sample rate of the emitted audio
+   */
+  public AudioConditioningInputStream(InputStream in, PcmFormat source, int targetRate) {
+    if (in == null) {
+      throw new IllegalArgumentException("in cannot be null");
+    }
+    if (source == null) {
+      throw new IllegalArgumentException("source cannot be null");
+    }
+    this.in = in;
+    this.source = source;
+    this.target = new PcmFormat(targetRate, 1, false);
+
+    this.resampling = targetRate != source.getSampleRate();
+    if (resampling) {
+      double cutoff = Math.min(1.0, (double) targetRate / source.getSampleRate()) * ROLLOFF;
+      this.halfWidth = ZERO_CROSSINGS / cutoff;
+      this.kernel = new float[(int) (halfWidth * PHASES) + 2];
+      for (int i = 0; i < kernel.length; i++) {
+        double t = (double) i / PHASES;
+        if (t <= halfWidth) {
+          double window = 0.5 + 0.5 * Math.cos(Math.PI * t / halfWidth);
+          kernel[i] = (float) (cutoff * sinc(cutoff * t) * window);
+        }
+      }
+    } else {
+      this.halfWidth = 0;
+      this.kernel = null;
+    }
+
+    this.raw = new byte[CHUNK_FRAMES * source.getFrameSize()];
+    this.window = new float[CHUNK_FRAMES + 2 * (int) Math.ceil(halfWidth) + 2];
+    this.output = new byte[OUTPUT_SAMPLES * 2];
+  }
+
+  /**
+   * Creates a conditioning stream that resamples to the rate of a speech model. Audio with a lower
+   * rate than the model is not upsampled.
+   *
+   * @param in the PCM audio
+   * @param source the format of the audio
+   * @param model the model that recognizes the audio, as returned by {@code getModel}
+   * @return the stream
+   */
+  public static AudioConditioningInputStream forModel(
+      InputStream in, PcmFormat source, SpeechModel model) {
+    if (model == null || model.getRate() == null) {
+      throw new IllegalArgumentException("model must have a rate");
+    }
+    int rate = (int) Math.min(source.getSampleRate(), model.getRate());
+    return new AudioConditioningInputStream(in, source, rate);
+  }
+
+  /**
+   * Creates a conditioning stream for WAVE audio. The WAVE header is consumed; the stream emits
+   * the PCM samples only.
+   *
+   * @param wave the WAVE audio
+   * @param targetRate the sample rate of the emitted audio
+   * @return the stream
+   * @throws IOException if the WAVE header cannot be read
+   */
+  public static AudioConditioningInputStream fromWave(InputStream wave, int targetRate)
+      throws IOException {
+    return new AudioConditioningInputStream(wave, PcmFormat.readWaveHeader(wave), targetRate);
+  }
+
+  /**
+   * Returns a copy of the options that sends the audio downmixed and resampled for the model. The
+   * content type of the options must be {@code audio/wav} or {@code audio/l16} with a rate.
+   *
+   * @param options the recognize options
+   * @param model the model that recognizes the audio, as returned by {@code getModel}
+   * @return the conditioned options
+   * @throws IOException if the WAVE header cannot be read
+   */
+  public static RecognizeOptions condition(RecognizeOptions options, SpeechModel model)
+      throws IOException {
+    AudioConditioningInputStream audio =
+        forModel(options.audio(), sourceFormat(options.audio(), options.contentType()), model);
+    return options.newBuilder().audio(audio).contentType(audio.getContentType()).build();
+  }
+
+  /**
+   * Returns a copy of the options that sends the audio downmixed and resampled for the model. The
+   * content type of the options must be {@code audio/wav} or {@code audio/l16} with a rate.
+   *
+   * @param options the recognize options
+   * @param model the model that recognizes the audio, as returned by {@code getModel}
+   * @return the conditioned options
+   * @throws IOException if the WAVE header cannot be read
+   */
+  public static RecognizeWithWebsocketsOptions condition(
+      RecognizeWithWebsocketsOptions options, SpeechModel model) throws IOException {
+    AudioConditioningInputStream audio =
+        forModel(options.audio(), sourceFormat(options.audio(), options.contentType()), model);
+    return options.newBuilder().audio(audio).contentType(audio.getContentType()).build();
+  }
+
+  /**
+   * Gets the format of the audio emitted by this stream.
+   *
+   * @return the mono, little-endian format at the target rate
+   */
+  public PcmFormat getFormat() {
+    return target;
+  }
+
+  /**
+   * Gets the content type of the audio emitted by this stream.
+   *
+   * @return the {@code audio/l16} content type
+   */
+  public String getContentType() {
+    return target.toContentType();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.io.InputStream#read()
+   */
+  @Override
+  public int read() throws IOException {
+    if (!fill()) {
+      return -1;
+    }
+    outputLength--;
+    return output[outputStart++] & 0xFF;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.io.InputStream#read(byte[], int, int)
+   */
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (!fill()) {
+      return -1;
+    }
+    int n = Math.min(len, outputLength);
+    System.arraycopy(output, outputStart, b, off, n);
+    outputStart += n;
+    outputLength -= n;
+    return n;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.io.InputStream#available()
+   */
+  @Override
+  public int available() {
+    return outputLength;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.io.InputStream#close()
+   */
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  private static PcmFormat sourceFormat(InputStream audio, String contentType)
+      throws IOException {
+    if (contentType != null && contentType.toLowerCase().startsWith(HttpMediaType.AUDIO_WAV)) {
+      return PcmFormat.readWaveHeader(audio);
+    }
+    PcmFormat format = PcmFormat.fromContentType(contentType);
+    if (format == null) {
+      throw new IllegalArgumentException(
+          "Only audio/wav and audio/l16 audio can be conditioned, not " + contentType);
+    }
+    return format;
+  }
+
+  private static double sinc(double x) {
+    return x == 0 ? 1 : Math.sin(Math.PI * x) / (Math.PI * x);
+  }
+
+  /** Computes output samples until there is something to read, returning false at the end. */
+  private boolean fill() throws IOException {
+    if (outputLength > 0) {
+      return true;
+    }
+    outputStart = 0;
+    while (outputLength < output.length) {
+      double position = (double) outputIndex * source.getSampleRate() / target.getSampleRate();
+      if (sourceDone && position >= sourceSamples) {
+        break;
+      }
+      long last = (long) Math.floor(position + halfWidth);
+      if (!sourceDone && last >= windowBase + windowLength) {
+        if (outputLength > 0) {
+          break;
+        }
+        discardBefore((long) Math.ceil(position - halfWidth));
+        readChunk();
+        continue;
+      }
+      float sample = resampling ? filter(position) : window[(int) (outputIndex - windowBase)];
+      target.putSample(output, outputLength, clip(sample));
+      outputLength += 2;
+      outputIndex++;
+    }
+    return outputLength > 0;
+  }
+
+  private float filter(double position) {
+    long first = Math.max(windowBase, (long) Math.ceil(position - halfWidth));
+    long last = Math.min(windowBase + windowLength - 1, (long) Math.floor(position + halfWidth));
+    float sum = 0;
+    for (long i = first; i <= last; i++) {
+      int phase = (int) (Math.abs(position - i) * PHASES + 0.5);
+      sum += window[(int) (i - windowBase)] * kernel[phase];
+    }
+    return sum;
+  }
+
+  private static short clip(float sample) {
+    int value = Math.round(sample * FULL_SCALE);
+    return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+  }
+
+  /** Drops the input samples before the given index, which no longer contribute to the output. */
+  private void discardBefore(long index) {
+    int drop = (int) Math.min(windowLength, Math.max(0, index - windowBase));
+    if (drop > 0) {
+      System.arraycopy(window, drop, window, 0, windowLength - drop);
+      windowBase += drop;
+      windowLength -= drop;
+    }
+  }
+
+  /** Reads the next chunk of input and appends it to the window, downmixed to mono. */
+  private void readChunk() throws IOException {
+    int frameSize = source.getFrameSize();
+    int frames = Math.min(CHUNK_FRAMES, window.length - windowLength);
+    int read = in.read(raw, carry, frames * frameSize - carry);
+    if (read == -1) {
+      sourceDone = true;
+      return;
+    }
+    int total = carry + read;
+    int whole = total / frameSize;
+    int channels = source.getChannels();
+    for (int frame = 0; frame < whole; frame++) {
+      int offset = frame * frameSize;
+      float sum = 0;
+      for (int channel = 0; channel < channels; channel++) {
+        sum += source.getSample(raw, offset + channel * 2);
+      }
+      window[windowLength++] = sum / (channels * FULL_SCALE);
+    }
+    sourceSamples += whole;
+    carry = total - whole * frameSize;
+    System.arraycopy(raw, whole * frameSize, raw, 0, carry);
+  }
+}
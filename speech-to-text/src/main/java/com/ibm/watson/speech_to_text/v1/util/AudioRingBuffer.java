@@ -0,0 +1,292 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A single-producer, single-consumer ring buffer that decouples audio capture from sending. <br>
+ * The capture side calls {@link #offer(byte[], int, int)}, which never blocks: when the buffer is
+ * full the chunk is dropped and counted as an overrun, so a stalled network never stalls the
+ * microphone or telephony line. The sending side reads the buffer as an {@link InputStream}, for
+ * example as the audio of {@code RecognizeWithWebsocketsOptions}; a read blocks only while the
+ * buffer is empty and then returns everything available up to the requested length. <br>
+ * The buffer lives outside the Java heap. It is either a direct buffer or, for capacities of
+ * minutes of audio, a memory-mapped spill file. {@link #startCapture(InputStream)} runs the capture
+ * side on its own thread, for example over the {@code AudioInputStream} of a {@code
+ * TargetDataLine}:
+ *
+ * <pre>
+ * AudioRingBuffer ring = new AudioRingBuffer(64 * 1024);
+ * ring.startCapture(new AudioInputStream(line));
+ * RecognizeWithWebsocketsOptions options = new RecognizeWithWebsocketsOptions.Builder()
+ *     .audio(ring)
+ *     .contentType(HttpMediaType.AUDIO_RAW + ";rate=16000")
+ *     .build();
+ * </pre>
+ */
+public class AudioRingBuffer extends InputStream {
+
+  private static final String CAPTURE_THREAD = "AudioRingBufferCaptureThread";
+  private static final int CAPTURE_CHUNK = 4096;
+  private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  private final int capacity;
+  // each side moves the position of its own view, so the views are never shared between threads
+  private final ByteBuffer producerView;
+  private final ByteBuffer consumerView;
+
+  // total bytes written and read; each is advanced by one side only
+  private final AtomicLong head = new AtomicLong();
+  private final AtomicLong tail = new AtomicLong();
+  private final AtomicLong overruns = new AtomicLong();
+  private final AtomicLong droppedBytes = new AtomicLong();
+  private volatile boolean finished;
+  private volatile boolean closed;
+  private volatile Thread reader;
+  private volatile Thread captureThread;
+
+  /**
+   * Instantiates a new ring buffer in direct memory.
+   *
+   * @param capacity the capacity in bytes
+   */
+  public AudioRingBuffer(int capacity) {
+    this(ByteBuffer.allocateDirect(checkCapacity(capacity)));
+  }
+
+  /**
+   * Instantiates a new ring buffer backed by a memory-mapped file. The file is created or
+   * overwritten, and can be deleted once the buffer is no longer used.
+   *
+   * @param spillFile the file
+   * @param capacity the capacity in bytes
+   * @throws IOException if the file cannot be mapped
+   */
+  public AudioRingBuffer(File spillFile, int capacity) throws IOException {
+    this(map(spillFile, checkCapacity(capacity)));
+  }
+
+  private AudioRingBuffer(ByteBuffer buffer) {
+    this.capacity = buffer.capacity();
+    this.producerView = buffer.duplicate();
+    this.consumerView = buffer.duplicate();
+  }
+
+  /**
+   * Starts a thread that copies the source into this buffer until the source ends, then finishes
+   * the buffer. The source is read in chunks of 4 KB, which should be a multiple of the frame size
+   * so that dropped chunks do not split frames.
+   *
+   * @param source the captured audio
+   */
+  public void startCapture(final InputStream source) {
+    if (source == null) {
+      throw new IllegalArgumentException("source cannot be null");
+    }
+    Thread thread =
+        new Thread(CAPTURE_THREAD) {
+          @Override
+          public void run() {
+            byte[] chunk = new byte[CAPTURE_CHUNK];
+            try {
+              int read;
+              while (!closed && (read = source.read(chunk)) > 0) {
+                offer(chunk, 0, read);
+              }
+            } catch (IOException e) {
+              // the line was closed or failed, end the stream
+            } finally {
+              finish();
+            }
+          }
+        };
+    thread.setDaemon(true);
+    captureThread = thread;
+    thread.start();
+  }
+
+  /**
+   * Adds captured audio. Never blocks: if the buffer cannot hold the whole chunk, the chunk is
+   * dropped and counted as an overrun. Must be called by one thread only.
+   *
+   * @param b the audio
+   * @param off the offset of the chunk
+   * @param len the length of the chunk
+   * @return true if the chunk was added
+   */
+  public boolean offer(byte[] b, int off, int len) {
+    long written = head.get();
+    if (closed || finished || len > capacity - (written - tail.get())) {
+      overruns.incrementAndGet();
+      droppedBytes.addAndGet(len);
+      return false;
+    }
+    int position = (int) (written % capacity);
+    int first = Math.min(len, capacity - position);
+    producerView.position(position);
+    producerView.put(b, off, first);
+    if (first < len) {
+      producerView.position(0);
+      producerView.put(b, off + first, len - first);
+    }
+    head.lazySet(written + len);
+    wakeReader();
+    return true;
+  }
+
+  /** Ends the stream. Reads return -1 once the remaining audio has been read. */
+  public void finish() {
+    finished = true;
+    wakeReader();
+  }
+
+  /**
+   * Gets the number of chunks dropped because the buffer was full.
+   *
+   * @return the number of overruns
+   */
+  public long getOverrunCount() {
+    return overruns.get();
+  }
+
+  /**
+   * Gets the number of bytes dropped because the buffer was full.
+   *
+   * @return the number of bytes
+   */
+  public long getDroppedBytes() {
+    return droppedBytes.get();
+  }
+
+  /**
+   * Gets the capacity.
+   *
+   * @return the capacity in bytes
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.io.InputStream#available()
+   */
+  @Override
+  public int available() {
+    return (int) (head.get() - tail.get());
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.io.InputStream#read()
+   */
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.io.InputStream#read(byte[], int, int)
+   */
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    long read = tail.get();
+    long available = awaitAudio(read);
+    if (available == 0) {
+      return -1;
+    }
+    int n = (int) Math.min(len, available);
+    int position = (int) (read % capacity);
+    int first = Math.min(n, capacity - position);
+    consumerView.position(position);
+    consumerView.get(b, off, first);
+    if (first < n) {
+      consumerView.position(0);
+      consumerView.get(b, off + first, n - first);
+    }
+    tail.lazySet(read + n);
+    return n;
+  }
+
+  /**
+   * Closes the buffer and stops the capture thread. The captured source is not closed.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    Thread thread = captureThread;
+    if (thread != null) {
+      thread.interrupt();
+    }
+    wakeReader();
+  }
+
+  /** Waits until audio is available or the stream ended, returning the available bytes. */
+  private long awaitAudio(long read) throws IOException {
+    long available;
+    while ((available = head.get() - read) == 0 && !finished && !closed) {
+      reader = Thread.currentThread();
+      // check again, the producer may have written before it could see the reader
+      if (head.get() - read == 0 && !finished && !closed) {
+        LockSupport.parkNanos(this, PARK_NANOS);
+      }
+      reader = null;
+      if (Thread.interrupted()) {
+        throw new InterruptedIOException();
+      }
+    }
+    return closed ? 0 : available;
+  }
+
+  private void wakeReader() {
+    Thread thread = reader;
+    if (thread != null) {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  private static int checkCapacity(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+    return capacity;
+  }
+
+  private static ByteBuffer map(File file, int capacity) throws IOException {
+    if (file == null) {
+      throw new IllegalArgumentException("spillFile cannot be null");
+    }
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      // the mapping stays valid after the file is closed
+      return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    } finally {
+      raf.close();
+    }
+  }
+}
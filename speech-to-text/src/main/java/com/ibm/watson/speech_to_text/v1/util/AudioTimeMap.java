@@ -0,0 +1,133 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1.util;
+
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResults;
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Maps times in audio from which spans were removed back to times in the original audio. <br>
+ * Each removal is recorded as a mark: from a position of the processed audio onwards, the original
+ * audio is ahead by the number of bytes removed so far. Lookups are a binary search over the marks.
+ * The map can be written by the thread that processes the audio while other threads read it.
+ */
+public final class AudioTimeMap implements DoubleUnaryOperator {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final PcmFormat format;
+  private long[] positions = new long[INITIAL_CAPACITY];
+  private long[] offsets = new long[INITIAL_CAPACITY];
+  private int size;
+
+  /**
+   * Instantiates a new, empty, time map.
+   *
+   * @param format the format of the audio
+   */
+  public AudioTimeMap(PcmFormat format) {
+    this.format = format;
+  }
+
+  /**
+   * Records that the processed audio from {@code position} onwards is {@code removed} bytes behind
+   * the original audio. Positions must be recorded in increasing order.
+   *
+   * @param position the position in the processed audio, in bytes
+   * @param removed the total number of bytes removed before this position
+   */
+  public synchronized void mark(long position, long removed) {
+    if (size > 0 && positions[size - 1] == position) {
+      offsets[size - 1] = removed;
+      return;
+    }
+    if (size == positions.length) {
+      positions = Arrays.copyOf(positions, size * 2);
+      offsets = Arrays.copyOf(offsets, size * 2);
+    }
+    positions[size] = position;
+    offsets[size] = removed;
+    size++;
+  }
+
+  /**
+   * Gets the total number of bytes removed so far.
+   *
+   * @return the number of bytes
+   */
+  public synchronized long getRemovedBytes() {
+    return size == 0 ? 0 : offsets[size - 1];
+  }
+
+  /**
+   * Gets the total duration of the audio removed so far.
+   *
+   * @return the duration in seconds
+   */
+  public double getRemovedSeconds() {
+    return format.toSeconds(getRemovedBytes());
+  }
+
+  /**
+   * Converts a byte position in the processed audio to the position in the original audio.
+   *
+   * @param position the position in the processed audio
+   * @return the position in the original audio
+   */
+  public synchronized long toOriginalPosition(long position) {
+    int low = 0;
+    int high = size - 1;
+    int found = -1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (positions[mid] <= position) {
+        found = mid;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return found == -1 ? position : position + offsets[found];
+  }
+
+  /**
+   * Converts a time in the processed audio to the time in the original audio.
+   *
+   * @param seconds the time in the processed audio
+   * @return the time in the original audio
+   */
+  public double toOriginalTime(double seconds) {
+    long position = (long) Math.floor(seconds * format.getByteRate());
+    return seconds + format.toSeconds(toOriginalPosition(position) - position);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.util.function.DoubleUnaryOperator#applyAsDouble(double)
+   */
+  @Override
+  public double applyAsDouble(double seconds) {
+    return toOriginalTime(seconds);
+  }
+
+  /**
+   * Returns a copy of the results with every time value converted to the original audio.
+   *
+   * @param results the results for the processed audio
+   * @return the results for the original audio
+   */
+  public SpeechRecognitionResults remap(SpeechRecognitionResults results) {
+    return SpeechResultsUtils.remap(results, this, 0);
+  }
+}
@@ -0,0 +1,797 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1.util;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.ibm.cloud.sdk.core.service.exception.ServiceResponseException;
+import com.ibm.cloud.sdk.core.util.GsonSingleton;
+import com.ibm.cloud.sdk.core.util.Validator;
+import com.ibm.watson.speech_to_text.v1.SpeechToText;
+import com.ibm.watson.speech_to_text.v1.model.CheckJobOptions;
+import com.ibm.watson.speech_to_text.v1.model.CreateJobOptions;
+import com.ibm.watson.speech_to_text.v1.model.DeleteJobOptions;
+import com.ibm.watson.speech_to_text.v1.model.RecognitionJob;
+import com.ibm.watson.speech_to_text.v1.model.RecognitionJobs;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Transcribes many audio files with asynchronous recognition jobs. <br>
+ * Files are uploaded with {@link SpeechToText#createJob(CreateJobOptions)} by a bounded number of
+ * threads, streaming each file from disk, and at most {@code maxOutstandingJobs} jobs are
+ * outstanding at a time. One thread polls {@link SpeechToText#checkJobs()}, backing off while no
+ * job finishes, fetches the results of finished jobs and writes one JSON object per file to the
+ * output file (newline-delimited JSON). <br>
+ * Progress is recorded in a checkpoint file. A run that is started again with the same checkpoint
+ * skips finished files and resumes polling submitted jobs instead of uploading them again. Each job
+ * is tagged with a user token derived from its file, so that a job whose submission was not yet
+ * recorded is still found; the token is also how an upload that failed after the service received
+ * it is told apart from one that never arrived, so that a retry does not submit the file twice. A
+ * job that the service no longer knows, for example one deleted or expired between runs, is
+ * reported as failed. A file whose results were written just before a crash can be written twice;
+ * consumers of the output should keep the last line per file.
+ *
+ * <pre>
+ * BatchTranscriber.Summary summary = new BatchTranscriber.Builder()
+ *     .service(service)
+ *     .options(new CreateJobOptions.Builder().model("en-US_Telephony").timestamps(true))
+ *     .output(new File("results.ndjson"))
+ *     .checkpoint(new File("results.checkpoint"))
+ *     .build()
+ *     .run(new File("recordings"));
+ * </pre>
+ */
+public class BatchTranscriber {
+
+  private static final Logger LOG = Logger.getLogger(BatchTranscriber.class.getName());
+  private static final Gson GSON = GsonSingleton.getGsonWithoutPrettyPrinting();
+
+  private static final String UPLOAD_THREAD = "BatchTranscriberUploadThread";
+  private static final String POLL_THREAD = "BatchTranscriberPollThread";
+  private static final String USER_TOKEN_PREFIX = "batch-";
+  private static final int MAX_ATTEMPTS = 3;
+  private static final int CLIENT_ERROR = 400;
+  private static final int TOO_MANY_REQUESTS = 429;
+  private static final int SERVER_ERROR = 500;
+
+  private static final String FILE = "file";
+  private static final String JOB_ID = "job_id";
+  private static final String STATUS = "status";
+  private static final String RESULTS = "results";
+  private static final String WARNINGS = "warnings";
+  private static final String ERROR = "error";
+
+  /** The number of files handled by a run. */
+  public static class Summary {
+    private final int completed;
+    private final int failed;
+    private final int skipped;
+
+    Summary(int completed, int failed, int skipped) {
+      this.completed = completed;
+      this.failed = failed;
+      this.skipped = skipped;
+    }
+
+    /**
+     * Gets the number of files whose job completed in this run.
+     *
+     * @return the number of files
+     */
+    public int getCompleted() {
+      return completed;
+    }
+
+    /**
+     * Gets the number of files that could not be uploaded or whose job failed in this run.
+     *
+     * @return the number of files
+     */
+    public int getFailed() {
+      return failed;
+    }
+
+    /**
+     * Gets the number of files skipped because an earlier run finished them.
+     *
+     * @return the number of files
+     */
+    public int getSkipped() {
+      return skipped;
+    }
+  }
+
+  private final SpeechToText service;
+  private final CreateJobOptions.Builder options;
+  private final String contentType;
+  private final File output;
+  private final File checkpoint;
+  private final int maxConcurrentUploads;
+  private final int maxOutstandingJobs;
+  private final long minPollIntervalMillis;
+  private final long maxPollIntervalMillis;
+  private final long retryDelayMillis;
+  private final boolean deleteCompletedJobs;
+
+  // job id to file, for the jobs submitted and not finished
+  private final Map<String, String> outstanding = new ConcurrentHashMap<String, String>();
+  private final AtomicInteger completed = new AtomicInteger();
+  private final AtomicInteger failed = new AtomicInteger();
+  private Semaphore permits;
+  private Writer outputWriter;
+  private Writer checkpointWriter;
+
+  /** Builder. */
+  public static class Builder {
+    private SpeechToText service;
+    private CreateJobOptions.Builder options;
+    private String contentType;
+    private File output;
+    private File checkpoint;
+    private int maxConcurrentUploads = 4;
+    private int maxOutstandingJobs = 50;
+    private long minPollIntervalMillis = 2000;
+    private long maxPollIntervalMillis = 60000;
+    private long retryDelayMillis = 2000;
+    private boolean deleteCompletedJobs = true;
+
+    /** Instantiates a new builder. */
+    public Builder() {}
+
+    /**
+     * Builds a BatchTranscriber.
+     *
+     * @return the new BatchTranscriber instance
+     */
+    public BatchTranscriber build() {
+      return new BatchTranscriber(this);
+    }
+
+    /**
+     * Set the service used to create and check the jobs.
+     *
+     * @param service the service
+     * @return the BatchTranscriber builder
+     */
+    public Builder service(SpeechToText service) {
+      this.service = service;
+      return this;
+    }
+
+    /**
+     * Set the options of every job. The audio, content type and user token are set per file; the
+     * builder must not be changed while a run is in progress.
+     *
+     * @param options the options builder
+     * @return the BatchTranscriber builder
+     */
+    public Builder options(CreateJobOptions.Builder options) {
+      this.options = options;
+      return this;
+    }
+
+    /**
+     * Set the content type of the files. By default it is derived from the file extension.
+     *
+     * @param contentType the content type
+     * @return the BatchTranscriber builder
+     */
+    public Builder contentType(String contentType) {
+      this.contentType = contentType;
+      return this;
+    }
+
+    /**
+     * Set the file the results are appended to, one JSON object per line.
+     *
+     * @param output the output file
+     * @return the BatchTranscriber builder
+     */
+    public Builder output(File output) {
+      this.output = output;
+      return this;
+    }
+
+    /**
+     * Set the file progress is recorded in.
+     *
+     * @param checkpoint the checkpoint file
+     * @return the BatchTranscriber builder
+     */
+    public Builder checkpoint(File checkpoint) {
+      this.checkpoint = checkpoint;
+      return this;
+    }
+
+    /**
+     * Set the number of files uploaded at the same time. Defaults to 4.
+     *
+     * @param maxConcurrentUploads the number of uploads
+     * @return the BatchTranscriber builder
+     */
+    public Builder maxConcurrentUploads(int maxConcurrentUploads) {
+      this.maxConcurrentUploads = maxConcurrentUploads;
+      return this;
+    }
+
+    /**
+     * Set the number of jobs that may be submitted and not finished. Defaults to 50.
+     *
+     * @param maxOutstandingJobs the number of jobs
+     * @return the BatchTranscriber builder
+     */
+    public Builder maxOutstandingJobs(int maxOutstandingJobs) {
+      this.maxOutstandingJobs = maxOutstandingJobs;
+      return this;
+    }
+
+    /**
+     * Set the polling interval used while jobs finish. Defaults to 2 seconds.
+     *
+     * @param minPollIntervalMillis the interval in milliseconds
+     * @return the BatchTranscriber builder
+     */
+    public Builder minPollIntervalMillis(long minPollIntervalMillis) {
+      this.minPollIntervalMillis = minPollIntervalMillis;
+      return this;
+    }
+
+    /**
+     * Set the longest polling interval, reached by doubling the interval while no job finishes.
+     * Defaults to 60 seconds.
+     *
+     * @param maxPollIntervalMillis the interval in milliseconds
+     * @return the BatchTranscriber builder
+     */
+    public Builder maxPollIntervalMillis(long maxPollIntervalMillis) {
+      this.maxPollIntervalMillis = maxPollIntervalMillis;
+      return this;
+    }
+
+    /**
+     * Set the delay before an upload is retried, multiplied by the number of attempts so far.
+     * Defaults to 2 seconds.
+     *
+     * @param retryDelayMillis the delay in milliseconds
+     * @return the BatchTranscriber builder
+     */
+    public Builder retryDelayMillis(long retryDelayMillis) {
+      this.retryDelayMillis = retryDelayMillis;
+      return this;
+    }
+
+    /**
+     * Set whether jobs are deleted from the service once their results are written. Defaults to
+     * true.
+     *
+     * @param deleteCompletedJobs whether to delete the jobs
+     * @return the BatchTranscriber builder
+     */
+    public Builder deleteCompletedJobs(boolean deleteCompletedJobs) {
+      this.deleteCompletedJobs = deleteCompletedJobs;
+      return this;
+    }
+  }
+
+  /**
+   * Instantiates a new batch transcriber.
+   *
+   * @param builder the builder
+   */
+  protected BatchTranscriber(Builder builder) {
+    Validator.notNull(builder.service, "service cannot be null");
+    Validator.notNull(builder.options, "options cannot be null");
+    Validator.notNull(builder.output, "output cannot be null");
+    Validator.notNull(builder.checkpoint, "checkpoint cannot be null");
+    Validator.isTrue(builder.maxConcurrentUploads > 0, "maxConcurrentUploads must be positive");
+    Validator.isTrue(builder.maxOutstandingJobs > 0, "maxOutstandingJobs must be positive");
+    Validator.isTrue(
+        builder.minPollIntervalMillis > 0
+            && builder.maxPollIntervalMillis >= builder.minPollIntervalMillis,
+        "poll intervals must be positive and ordered");
+    Validator.isTrue(builder.retryDelayMillis >= 0, "retryDelayMillis cannot be negative");
+    service = builder.service;
+    options = builder.options;
+    contentType = builder.contentType;
+    output = builder.output;
+    checkpoint = builder.checkpoint;
+    maxConcurrentUploads = builder.maxConcurrentUploads;
+    maxOutstandingJobs = builder.maxOutstandingJobs;
+    minPollIntervalMillis = builder.minPollIntervalMillis;
+    maxPollIntervalMillis = builder.maxPollIntervalMillis;
+    retryDelayMillis = builder.retryDelayMillis;
+    deleteCompletedJobs = builder.deleteCompletedJobs;
+  }
+
+  /**
+   * Transcribes the audio files of a directory, that is the files with an extension listed in
+   * {@link MediaTypeUtils}, in name order.
+   *
+   * @param directory the directory
+   * @return the summary of the run
+   * @throws IOException if the directory cannot be listed or the output cannot be written
+   * @throws InterruptedException if the run is interrupted
+   */
+  public Summary run(File directory) throws IOException, InterruptedException {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      throw new IOException("Cannot list " + directory);
+    }
+    Arrays.sort(files);
+    List<File> audio = new ArrayList<File>();
+    for (File file : files) {
+      if (file.isFile() && MediaTypeUtils.getMediaTypeFromFile(file) != null) {
+        audio.add(file);
+      }
+    }
+    return run(audio.iterator());
+  }
+
+  /**
+   * Transcribes audio files and returns when all their jobs have finished.
+   *
+   * @param files the files
+   * @return the summary of the run
+   * @throws IOException if the output cannot be written
+   * @throws InterruptedException if the run is interrupted
+   */
+  public synchronized Summary run(Iterator<File> files) throws IOException, InterruptedException {
+    Map<String, String> submitted = new HashMap<String, String>();
+    Set<String> finished = new HashSet<String>();
+    readCheckpoint(submitted, finished);
+
+    completed.set(0);
+    failed.set(0);
+    int skipped = 0;
+    outstanding.clear();
+    permits = new Semaphore(maxOutstandingJobs);
+    outputWriter = openForAppend(output);
+    checkpointWriter = openForAppend(checkpoint);
+    ExecutorService uploads =
+        Executors.newFixedThreadPool(
+            maxConcurrentUploads,
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, UPLOAD_THREAD);
+                thread.setDaemon(true);
+                return thread;
+              }
+            });
+    Thread poller =
+        new Thread(POLL_THREAD) {
+          @Override
+          public void run() {
+            poll();
+          }
+        };
+    poller.setDaemon(true);
+    poller.start();
+
+    try {
+      // jobs submitted by an earlier run
+      for (Map.Entry<String, String> entry : submitted.entrySet()) {
+        if (!finished.contains(entry.getKey())) {
+          permits.acquire();
+          outstanding.put(entry.getValue(), entry.getKey());
+        }
+      }
+      Map<String, String> unrecorded = findUnrecordedJobs(submitted);
+
+      while (files.hasNext()) {
+        final File file = files.next();
+        final String path = file.getAbsolutePath();
+        if (finished.contains(path)) {
+          skipped++;
+          continue;
+        }
+        if (submitted.containsKey(path)) {
+          continue;
+        }
+        permits.acquire();
+        String jobId = unrecorded.remove(userToken(path));
+        if (jobId != null) {
+          submit(path, jobId);
+          continue;
+        }
+        uploads.execute(
+            new Runnable() {
+              @Override
+              public void run() {
+                upload(file, path);
+              }
+            });
+      }
+
+      uploads.shutdown();
+      uploads.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      // every permit is back once all jobs finished
+      permits.acquire(maxOutstandingJobs);
+      permits.release(maxOutstandingJobs);
+      return new Summary(completed.get(), failed.get(), skipped);
+    } finally {
+      uploads.shutdownNow();
+      poller.interrupt();
+      poller.join();
+      outputWriter.close();
+      checkpointWriter.close();
+    }
+  }
+
+  private void upload(File file, String path) {
+    String userToken = userToken(path);
+    for (int attempt = 1; ; attempt++) {
+      InputStream audio = null;
+      boolean maybeCreated;
+      String error;
+      try {
+        CreateJobOptions jobOptions;
+        synchronized (options) {
+          // the builder streams the file, it is never read into memory
+          options.audio(file).userToken(userToken);
+          if (contentType != null) {
+            options.contentType(contentType);
+          } else {
+            options.contentType(MediaTypeUtils.getMediaTypeFromFile(file));
+          }
+          jobOptions = options.build();
+        }
+        audio = jobOptions.audio();
+        RecognitionJob job = service.createJob(jobOptions).execute().getResult();
+        submit(path, job.getId());
+        return;
+      } catch (FileNotFoundException e) {
+        fail(path, null, e.getMessage());
+        return;
+      } catch (ServiceResponseException e) {
+        int status = e.getStatusCode();
+        if (status != TOO_MANY_REQUESTS && status < SERVER_ERROR) {
+          fail(path, null, e.getMessage());
+          return;
+        }
+        // a rate-limited request was not processed, a server error may have created the job
+        maybeCreated = status >= SERVER_ERROR;
+        error = e.getMessage();
+      } catch (RuntimeException e) {
+        if (!(e.getCause() instanceof IOException)) {
+          fail(path, null, e.getMessage());
+          return;
+        }
+        // the connection failed, possibly after the service received the request
+        maybeCreated = true;
+        error = e.getMessage();
+      } finally {
+        closeQuietly(audio);
+      }
+
+      if (attempt == MAX_ATTEMPTS || !sleep(retryDelayMillis * attempt)) {
+        fail(path, null, error);
+        return;
+      }
+      // creating a job is not idempotent, look for the job before submitting the file again
+      String jobId = maybeCreated ? findJob(userToken) : null;
+      if (jobId != null) {
+        submit(path, jobId);
+        return;
+      }
+    }
+  }
+
+  private void submit(String path, String jobId) {
+    JsonObject line = new JsonObject();
+    line.addProperty(FILE, path);
+    line.addProperty(JOB_ID, jobId);
+    outstanding.put(jobId, path);
+    try {
+      writeLine(checkpointWriter, line);
+    } catch (IllegalStateException e) {
+      // the job is polled all the same, only a resumed run would not know it
+      LOG.log(Level.WARNING, "Recording job " + jobId + " failed", e);
+    }
+  }
+
+  private void fail(String path, String jobId, String error) {
+    LOG.log(Level.WARNING, "Transcription of " + path + " failed: " + error);
+    JsonObject line = new JsonObject();
+    line.addProperty(FILE, path);
+    if (jobId != null) {
+      line.addProperty(JOB_ID, jobId);
+    }
+    line.addProperty(STATUS, RecognitionJob.Status.FAILED);
+    line.addProperty(ERROR, error);
+    failed.incrementAndGet();
+    write(path, jobId, line, RecognitionJob.Status.FAILED);
+  }
+
+  /**
+   * Writes the output line of a finished file and records it in the checkpoint. The permit of the
+   * file is released even if writing fails, so that the run cannot wait for it forever; the file
+   * is then not recorded as finished, and a later run transcribes it again.
+   */
+  private void write(String path, String jobId, JsonObject output, String status) {
+    try {
+      writeLine(outputWriter, output);
+      JsonObject line = new JsonObject();
+      line.addProperty(FILE, path);
+      line.addProperty(STATUS, status);
+      writeLine(checkpointWriter, line);
+    } finally {
+      if (jobId != null) {
+        outstanding.remove(jobId);
+      }
+      permits.release();
+    }
+  }
+
+  /** Polls the outstanding jobs until interrupted, backing off while none finishes. */
+  private void poll() {
+    long interval = minPollIntervalMillis;
+    while (sleep(interval)) {
+      boolean progress = false;
+      try {
+        progress = pollOnce();
+      } catch (RuntimeException e) {
+        LOG.log(Level.WARNING, "Checking jobs failed", e);
+      }
+      interval = progress ? minPollIntervalMillis : Math.min(maxPollIntervalMillis, interval * 2);
+    }
+  }
+
+  private boolean pollOnce() {
+    if (outstanding.isEmpty()) {
+      return false;
+    }
+    boolean progress = false;
+    Set<String> seen = new HashSet<String>();
+    RecognitionJobs jobs = service.checkJobs().execute().getResult();
+    if (jobs != null && jobs.getRecognitions() != null) {
+      for (RecognitionJob job : jobs.getRecognitions()) {
+        if (outstanding.containsKey(job.getId())) {
+          seen.add(job.getId());
+          progress |= check(job.getId(), job.getStatus());
+        }
+      }
+    }
+
+    // checkJobs only lists the most recent jobs, check the others one by one
+    for (String jobId : new ArrayList<String>(outstanding.keySet())) {
+      if (!seen.contains(jobId)) {
+        progress |= check(jobId, null);
+      }
+    }
+    return progress;
+  }
+
+  /**
+   * Checks one job and writes its results if it finished, returning false if it is still running
+   * or could not be checked. A job that the service rejects, for example because it no longer
+   * exists, fails, so that it does not stay outstanding forever.
+   */
+  private boolean check(String jobId, String listedStatus) {
+    if (listedStatus != null && !isFinished(listedStatus)) {
+      return false;
+    }
+    try {
+      RecognitionJob job =
+          service.checkJob(new CheckJobOptions.Builder(jobId).build()).execute().getResult();
+      if (!isFinished(job.getStatus())) {
+        return false;
+      }
+      collect(jobId, job);
+      return true;
+    } catch (ServiceResponseException e) {
+      int status = e.getStatusCode();
+      if (status < CLIENT_ERROR || status >= SERVER_ERROR || status == TOO_MANY_REQUESTS) {
+        LOG.log(Level.WARNING, "Checking job " + jobId + " failed", e);
+        return false;
+      }
+      String path = outstanding.get(jobId);
+      if (path != null) {
+        fail(path, jobId, e.getMessage());
+      }
+      return true;
+    } catch (RuntimeException e) {
+      LOG.log(Level.WARNING, "Checking job " + jobId + " failed", e);
+      return false;
+    }
+  }
+
+  private static boolean isFinished(String status) {
+    return RecognitionJob.Status.COMPLETED.equals(status)
+        || RecognitionJob.Status.FAILED.equals(status);
+  }
+
+  /** Writes the results of a finished job and deletes it. */
+  private void collect(String jobId, RecognitionJob job) {
+    String path = outstanding.get(jobId);
+    if (RecognitionJob.Status.FAILED.equals(job.getStatus())) {
+      String warnings = job.getWarnings() != null ? job.getWarnings().toString() : "job failed";
+      fail(path, jobId, warnings);
+    } else {
+      JsonObject line = new JsonObject();
+      line.addProperty(FILE, path);
+      line.addProperty(JOB_ID, jobId);
+      line.addProperty(STATUS, job.getStatus());
+      line.add(RESULTS, GSON.toJsonTree(job.getResults()));
+      if (job.getWarnings() != null) {
+        line.add(WARNINGS, GSON.toJsonTree(job.getWarnings()));
+      }
+      completed.incrementAndGet();
+      write(path, jobId, line, job.getStatus());
+    }
+
+    if (deleteCompletedJobs) {
+      try {
+        service.deleteJob(new DeleteJobOptions.Builder(jobId).build()).execute();
+      } catch (RuntimeException e) {
+        LOG.log(Level.WARNING, "Deleting job " + jobId + " failed", e);
+      }
+    }
+  }
+
+  /** Finds the job created for a user token, or returns null if it cannot be found. */
+  private String findJob(String userToken) {
+    try {
+      RecognitionJobs recent = service.checkJobs().execute().getResult();
+      if (recent != null && recent.getRecognitions() != null) {
+        for (RecognitionJob job : recent.getRecognitions()) {
+          if (userToken.equals(job.getUserToken())
+              && !RecognitionJob.Status.FAILED.equals(job.getStatus())) {
+            return job.getId();
+          }
+        }
+      }
+    } catch (RuntimeException e) {
+      LOG.log(Level.WARNING, "Checking jobs failed", e);
+    }
+    return null;
+  }
+
+  /** Finds the jobs created by a run that stopped before it could record them. */
+  private Map<String, String> findUnrecordedJobs(Map<String, String> submitted) {
+    Map<String, String> jobs = new HashMap<String, String>();
+    try {
+      RecognitionJobs recent = service.checkJobs().execute().getResult();
+      if (recent == null || recent.getRecognitions() == null) {
+        return jobs;
+      }
+      Set<String> recorded = new HashSet<String>(submitted.values());
+      for (RecognitionJob job : recent.getRecognitions()) {
+        if (job.getUserToken() != null
+            && job.getUserToken().startsWith(USER_TOKEN_PREFIX)
+            && !RecognitionJob.Status.FAILED.equals(job.getStatus())
+            && !recorded.contains(job.getId())) {
+          jobs.put(job.getUserToken(), job.getId());
+        }
+      }
+    } catch (RuntimeException e) {
+      LOG.log(Level.WARNING, "Checking jobs failed", e);
+    }
+    return jobs;
+  }
+
+  private void readCheckpoint(Map<String, String> submitted, Set<String> finished)
+      throws IOException {
+    if (!checkpoint.exists()) {
+      return;
+    }
+    BufferedReader reader =
+        new BufferedReader(
+            new InputStreamReader(new FileInputStream(checkpoint), StandardCharsets.UTF_8));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+        try {
+          JsonObject json = new JsonParser().parse(line).getAsJsonObject();
+          String path = json.get(FILE).getAsString();
+          if (json.has(STATUS)) {
+            finished.add(path);
+          } else {
+            submitted.put(path, json.get(JOB_ID).getAsString());
+          }
+        } catch (JsonParseException | IllegalStateException | NullPointerException e) {
+          // a line cut short by a crash
+          LOG.log(Level.WARNING, "Ignoring invalid checkpoint line: " + line);
+        }
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static Writer openForAppend(File file) throws IOException {
+    return new BufferedWriter(
+        new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+  }
+
+  private static void writeLine(Writer writer, JsonObject json) {
+    synchronized (writer) {
+      try {
+        writer.write(GSON.toJson(json));
+        writer.write('\n');
+        writer.flush();
+      } catch (IOException e) {
+        throw new IllegalStateException("Writing " + json.get(FILE) + " failed", e);
+      }
+    }
+  }
+
+  private static String userToken(String path) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      byte[] hash = digest.digest(path.getBytes(StandardCharsets.UTF_8));
+      StringBuilder token = new StringBuilder(USER_TOKEN_PREFIX);
+      for (int i = 0; i < 16; i++) {
+        token.append(String.format("%02x", hash[i]));
+      }
+      return token.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static boolean sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private static void closeQuietly(InputStream in) {
+    if (in != null) {
+      try {
+        in.close();
+      } catch (IOException e) {
+        // already consumed
+      }
+    }
+  }
+}
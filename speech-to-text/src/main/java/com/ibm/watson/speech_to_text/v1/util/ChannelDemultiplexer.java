@@ -0,0 +1,229 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * Splits interleaved multi-channel PCM audio into one mono stream per channel. <br>
+ * The source is read in chunks into a small ring of slots shared by all channels, and each channel
+ * stream copies its samples from a slot straight into the caller's buffer, so no per-channel copy
+ * of the audio is made. A slot is reused once every open channel has read it; a channel that gets
+ * more than a ring ahead of the slowest one waits for it. Whichever channel first needs a chunk
+ * reads it from the source, so no extra thread is needed. <br>
+ * The source is closed when all channel streams are closed.
+ */
+public final class ChannelDemultiplexer {
+
+  private static final int SLOTS = 16;
+  private static final int CHUNK_FRAMES = 4096;
+  private static final int BYTES_PER_SAMPLE = 2;
+
+  private final InputStream source;
+  private final PcmFormat format;
+  private final PcmFormat channelFormat;
+  private final int frameSize;
+  private final byte[][] slots;
+  private final int[] slotLength;
+  private final InputStream[] channels;
+
+  // the next chunk to read from the source, and the chunk and byte offset each channel is at
+  private long nextChunk;
+  private boolean sourceDone;
+  private final long[] channelChunk;
+  private final int[] channelOffset;
+  private final boolean[] channelClosed;
+  private int openChannels;
+
+  /**
+   * Instantiates a new demultiplexer.
+   *
+   * @param source the interleaved audio, without a header
+   * @param format the format of the audio
+   */
+  public ChannelDemultiplexer(InputStream source, PcmFormat format) {
+    if (source == null) {
+      throw new IllegalArgumentException("source cannot be null");
+    }
+    if (format == null) {
+      throw new IllegalArgumentException("format cannot be null");
+    }
+    this.source = source;
+    this.format = format;
+    this.channelFormat = new PcmFormat(format.getSampleRate(), 1, format.isBigEndian());
+    this.frameSize = format.getFrameSize();
+    this.slots = new byte[SLOTS][CHUNK_FRAMES * frameSize];
+    this.slotLength = new int[SLOTS];
+
+    int count = format.getChannels();
+    this.channelChunk = new long[count];
+    this.channelOffset = new int[count];
+    this.channelClosed = new boolean[count];
+    this.openChannels = count;
+    this.channels = new InputStream[count];
+    for (int i = 0; i < count; i++) {
+      channels[i] = new ChannelStream(i);
+    }
+  }
+
+  /**
+   * Gets the format of the source.
+   *
+   * @return the format
+   */
+  public PcmFormat getFormat() {
+    return format;
+  }
+
+  /**
+   * Gets the format of a channel stream: the rate and byte order of the source, in mono.
+   *
+   * @return the format
+   */
+  public PcmFormat getChannelFormat() {
+    return channelFormat;
+  }
+
+  /**
+   * Gets the number of channels.
+   *
+   * @return the number of channels
+   */
+  public int getChannelCount() {
+    return channels.length;
+  }
+
+  /**
+   * Gets the stream of one channel. Each stream must be read by one thread.
+   *
+   * @param channel the channel, from 0
+   * @return the mono audio of the channel
+   */
+  public InputStream getChannel(int channel) {
+    return channels[channel];
+  }
+
+  private synchronized int read(int channel, byte[] b, int off, int len) throws IOException {
+    if (channelClosed[channel]) {
+      throw new IOException("Stream closed");
+    }
+    while (channelChunk[channel] == nextChunk) {
+      if (sourceDone) {
+        return -1;
+      }
+      if (nextChunk - slowestChunk() < SLOTS) {
+        readChunk();
+      } else {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+      }
+    }
+
+    int slotIndex = (int) (channelChunk[channel] % SLOTS);
+    byte[] slot = slots[slotIndex];
+    int channelLength = slotLength[slotIndex] / frameSize * BYTES_PER_SAMPLE;
+    int offset = channelOffset[channel];
+    int n = Math.min(len, channelLength - offset);
+    int sample = channel * BYTES_PER_SAMPLE;
+    for (int i = 0; i < n; i++) {
+      int position = offset + i;
+      int frame = position / BYTES_PER_SAMPLE;
+      b[off + i] = slot[frame * frameSize + sample + position % BYTES_PER_SAMPLE];
+    }
+
+    if (offset + n == channelLength) {
+      channelChunk[channel]++;
+      channelOffset[channel] = 0;
+      // the slot may now be free for a channel that is waiting
+      notifyAll();
+    } else {
+      channelOffset[channel] = offset + n;
+    }
+    return n;
+  }
+
+  private void readChunk() throws IOException {
+    int slotIndex = (int) (nextChunk % SLOTS);
+    byte[] slot = slots[slotIndex];
+    int length = 0;
+    int read;
+    while (length < slot.length && (read = source.read(slot, length, slot.length - length)) > 0) {
+      length += read;
+    }
+    // a partial frame at the end of the source is dropped
+    length -= length % frameSize;
+    if (length == 0) {
+      sourceDone = true;
+    } else {
+      slotLength[slotIndex] = length;
+      nextChunk++;
+    }
+    notifyAll();
+  }
+
+  private long slowestChunk() {
+    long slowest = nextChunk;
+    for (int i = 0; i < channelChunk.length; i++) {
+      if (!channelClosed[i]) {
+        slowest = Math.min(slowest, channelChunk[i]);
+      }
+    }
+    return slowest;
+  }
+
+  private synchronized void close(int channel) throws IOException {
+    if (channelClosed[channel]) {
+      return;
+    }
+    channelClosed[channel] = true;
+    openChannels--;
+    notifyAll();
+    if (openChannels == 0) {
+      source.close();
+    }
+  }
+
+  /** The mono audio of one channel. */
+  private final class ChannelStream extends InputStream {
+    private final int channel;
+
+    ChannelStream(int channel) {
+      this.channel = channel;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      return ChannelDemultiplexer.this.read(channel, b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      ChannelDemultiplexer.this.close(channel);
+    }
+  }
+}
@@ -0,0 +1,260 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1.util;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.ibm.cloud.sdk.core.util.GsonSingleton;
+import com.ibm.watson.speech_to_text.v1.SpeechToText;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionAlternative;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Type adapter factory that parses {@link SpeechRecognitionAlternative} in compact mode: the
+ * {@code timestamps} and {@code word_confidence} arrays are read straight into a {@link
+ * CompactWordData} instead of one object per word. {@link
+ * SpeechRecognitionAlternative#getTimestamps()} and {@link
+ * SpeechRecognitionAlternative#getWordConfidence()} still work, as views that create the objects
+ * when they are read, and {@link CompactWordData#of(SpeechRecognitionAlternative)} returns the
+ * arrays behind them. <br>
+ * Compact mode is enabled for a service with {@link SpeechToText#setCompactResults(boolean)}, or
+ * results can be parsed directly with the {@link Gson} returned by {@link #getGson()}.
+ */
+public class CompactResultsTypeAdapterFactory implements TypeAdapterFactory {
+
+  private static final String TRANSCRIPT = "transcript";
+  private static final String CONFIDENCE = "confidence";
+  private static final String TIMESTAMPS = "timestamps";
+  private static final String WORD_CONFIDENCE = "word_confidence";
+
+  private static final int INITIAL_CAPACITY = 16;
+  // a power of two, so that a hash is reduced to a slot with a mask
+  private static final int INTERNED_WORDS = 8192;
+
+  // a direct-mapped table: a word replaces whatever word was in its slot, so the table stays the
+  // same size and a frequent word is interned again soon after it was replaced
+  private static final AtomicReferenceArray<String> WORDS =
+      new AtomicReferenceArray<String>(INTERNED_WORDS);
+
+  /** Holds the compact Gson instance, created on first use. */
+  private static final class GsonHolder {
+    static final Gson GSON =
+        GsonSingleton.getGsonWithoutPrettyPrinting()
+            .newBuilder()
+            .registerTypeAdapterFactory(new CompactResultsTypeAdapterFactory())
+            .create();
+  }
+
+  /**
+   * Gets a {@link Gson} instance that parses speech recognition results in compact mode.
+   *
+   * @return the Gson instance
+   */
+  public static Gson getGson() {
+    return GsonHolder.GSON;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see com.google.gson.TypeAdapterFactory#create(Gson, TypeToken)
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+    if (!SpeechRecognitionAlternative.class.isAssignableFrom(type.getRawType())) {
+      return null;
+    }
+    return (TypeAdapter<T>) new CompactAlternativeTypeAdapter(gson, this);
+  }
+
+  /**
+   * An alternative whose timestamps and word confidences are views of a {@link CompactWordData}.
+   */
+  @JsonAdapter(CompactResultsTypeAdapterFactory.class)
+  private static final class CompactAlternative extends SpeechRecognitionAlternative {
+    CompactAlternative(String transcript, Double confidence, CompactWordData wordData) {
+      this.transcript = transcript;
+      this.confidence = confidence;
+      if (wordData != null) {
+        this.timestamps = wordData.asTimestamps();
+        this.wordConfidence = wordData.asWordConfidence();
+      }
+    }
+  }
+
+  /** Growable columns for the words of one array. */
+  private static final class Columns {
+    private String[] words = new String[INITIAL_CAPACITY];
+    private double[] first = new double[INITIAL_CAPACITY];
+    private double[] second = new double[INITIAL_CAPACITY];
+    private int size;
+    private boolean present;
+
+    void add(String word, double a, double b) {
+      if (size == words.length) {
+        words = Arrays.copyOf(words, size * 2);
+        first = Arrays.copyOf(first, size * 2);
+        second = Arrays.copyOf(second, size * 2);
+      }
+      words[size] = word;
+      first[size] = a;
+      second[size] = b;
+      size++;
+    }
+  }
+
+  private static final class CompactAlternativeTypeAdapter
+      extends TypeAdapter<SpeechRecognitionAlternative> {
+    private final Gson gson;
+    private final TypeAdapterFactory skipPast;
+
+    CompactAlternativeTypeAdapter(Gson gson, TypeAdapterFactory skipPast) {
+      this.gson = gson;
+      this.skipPast = skipPast;
+    }
+
+    @Override
+    public SpeechRecognitionAlternative read(JsonReader reader) throws IOException {
+      if (reader.peek() == JsonToken.NULL) {
+        reader.nextNull();
+        return null;
+      }
+
+      String transcript = null;
+      Double confidence = null;
+      Columns timestamps = new Columns();
+      Columns confidences = new Columns();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if (reader.peek() == JsonToken.NULL) {
+          reader.nextNull();
+        } else if (TRANSCRIPT.equals(name)) {
+          transcript = reader.nextString();
+        } else if (CONFIDENCE.equals(name)) {
+          confidence = reader.nextDouble();
+        } else if (TIMESTAMPS.equals(name)) {
+          readWords(reader, timestamps);
+        } else if (WORD_CONFIDENCE.equals(name)) {
+          readWords(reader, confidences);
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return new CompactAlternative(transcript, confidence, toWordData(timestamps, confidences));
+    }
+
+    @Override
+    public void write(JsonWriter writer, SpeechRecognitionAlternative alternative)
+        throws IOException {
+      if (alternative == null) {
+        writer.nullValue();
+        return;
+      }
+      CompactWordData data = CompactWordData.of(alternative);
+      if (data == null) {
+        gson.getDelegateAdapter(skipPast, TypeToken.get(SpeechRecognitionAlternative.class))
+            .write(writer, alternative);
+        return;
+      }
+
+      String[] words = data.getWords();
+      writer.beginObject();
+      writer.name(TRANSCRIPT).value(alternative.getTranscript());
+      if (alternative.getConfidence() != null) {
+        writer.name(CONFIDENCE).value(alternative.getConfidence());
+      }
+      if (data.hasTimestamps()) {
+        writer.name(TIMESTAMPS).beginArray();
+        for (int i = 0; i < data.size(); i++) {
+          writer.beginArray();
+          writer.value(words[i]).value(data.getStartTimes()[i]).value(data.getEndTimes()[i]);
+          writer.endArray();
+        }
+        writer.endArray();
+      }
+      if (data.hasConfidences()) {
+        writer.name(WORD_CONFIDENCE).beginArray();
+        for (int i = 0; i < data.size(); i++) {
+          float value = data.getConfidences()[i];
+          if (!Float.isNaN(value)) {
+            // go through the shortest decimal form so that 0.95f is written as 0.95
+            double decimal = Double.parseDouble(Float.toString(value));
+            writer.beginArray().value(words[i]).value(decimal).endArray();
+          }
+        }
+        writer.endArray();
+      }
+      writer.endObject();
+    }
+  }
+
+  /** Reads an array of {@code [word, number, number?]} arrays. */
+  private static void readWords(JsonReader reader, Columns columns) throws IOException {
+    columns.present = true;
+    reader.beginArray();
+    while (reader.hasNext()) {
+      reader.beginArray();
+      String word = reader.peek() == JsonToken.STRING ? intern(reader.nextString()) : null;
+      double a = reader.peek() == JsonToken.NUMBER ? reader.nextDouble() : Double.NaN;
+      double b = reader.peek() == JsonToken.NUMBER ? reader.nextDouble() : Double.NaN;
+      while (reader.hasNext()) {
+        reader.skipValue();
+      }
+      reader.endArray();
+      columns.add(word, a, b);
+    }
+    reader.endArray();
+  }
+
+  private static CompactWordData toWordData(Columns timestamps, Columns confidences) {
+    if (!timestamps.present && !confidences.present) {
+      return null;
+    }
+    Columns words = timestamps.present ? timestamps : confidences;
+    float[] confidence = null;
+    if (confidences.present) {
+      // word_confidence has the same words as timestamps, in the same order
+      confidence = new float[words.size];
+      Arrays.fill(confidence, Float.NaN);
+      for (int i = 0; i < Math.min(words.size, confidences.size); i++) {
+        confidence[i] = (float) confidences.first[i];
+      }
+    }
+    return new CompactWordData(
+        Arrays.copyOf(words.words, words.size),
+        timestamps.present ? Arrays.copyOf(timestamps.first, timestamps.size) : null,
+        timestamps.present ? Arrays.copyOf(timestamps.second, timestamps.size) : null,
+        confidence);
+  }
+
+  private static String intern(String word) {
+    int hash = word.hashCode();
+    int slot = (hash ^ (hash >>> 16)) & (INTERNED_WORDS - 1);
+    String interned = WORDS.get(slot);
+    if (word.equals(interned)) {
+      return interned;
+    }
+    WORDS.lazySet(slot, word);
+    return word;
+  }
+}
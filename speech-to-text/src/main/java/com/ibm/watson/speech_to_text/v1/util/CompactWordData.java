@@ -0,0 +1,215 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1.util;
+
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionAlternative;
+import com.ibm.watson.speech_to_text.v1.model.SpeechTimestamp;
+import com.ibm.watson.speech_to_text.v1.model.SpeechWordConfidence;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The words of a {@link SpeechRecognitionAlternative} with their timestamps and confidences, stored
+ * as parallel arrays instead of one object per word. <br>
+ * Returned by {@link #of(SpeechRecognitionAlternative)} for results parsed in compact mode, see
+ * {@link CompactResultsTypeAdapterFactory}. The arrays are shared and must not be modified. Words
+ * are interned, so a word that occurs many times is mostly stored once.
+ */
+public final class CompactWordData {
+
+  private final int size;
+  private final String[] words;
+  private final double[] startTimes;
+  private final double[] endTimes;
+  private final float[] confidences;
+
+  /**
+   * Instantiates new word data. The arrays are used as they are, not copied.
+   *
+   * @param words the words
+   * @param startTimes the start times in seconds, or null if there are no timestamps
+   * @param endTimes the end times in seconds, or null if there are no timestamps
+   * @param confidences the confidences, or null if there are no confidences
+   */
+  public CompactWordData(
+      String[] words, double[] startTimes, double[] endTimes, float[] confidences) {
+    if (words == null) {
+      throw new IllegalArgumentException("words cannot be null");
+    }
+    if ((startTimes == null) != (endTimes == null)) {
+      throw new IllegalArgumentException("startTimes and endTimes must both be set or both null");
+    }
+    this.size = words.length;
+    this.words = words;
+    this.startTimes = startTimes;
+    this.endTimes = endTimes;
+    this.confidences = confidences;
+  }
+
+  /**
+   * Gets the word data of an alternative parsed in compact mode. The timestamps and word
+   * confidences of such an alternative are views of the word data.
+   *
+   * @param alternative the alternative
+   * @return the word data, or null if the alternative was not parsed in compact mode
+   */
+  public static CompactWordData of(SpeechRecognitionAlternative alternative) {
+    List<SpeechTimestamp> timestamps = alternative.getTimestamps();
+    if (timestamps instanceof CompactWordData.TimestampList) {
+      return ((CompactWordData.TimestampList) timestamps).data();
+    }
+    List<SpeechWordConfidence> confidences = alternative.getWordConfidence();
+    if (confidences instanceof CompactWordData.ConfidenceList) {
+      return ((CompactWordData.ConfidenceList) confidences).data();
+    }
+    return null;
+  }
+
+  /**
+   * Gets the number of words.
+   *
+   * @return the number of words
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Whether the words have timestamps.
+   *
+   * @return true if start and end times are available
+   */
+  public boolean hasTimestamps() {
+    return startTimes != null;
+  }
+
+  /**
+   * Whether the words have confidences.
+   *
+   * @return true if confidences are available
+   */
+  public boolean hasConfidences() {
+    return confidences != null;
+  }
+
+  /**
+   * Gets the words.
+   *
+   * @return the words
+   */
+  public String[] getWords() {
+    return words;
+  }
+
+  /**
+   * Gets the start times.
+   *
+   * @return the start times in seconds, or null if there are no timestamps
+   */
+  public double[] getStartTimes() {
+    return startTimes;
+  }
+
+  /**
+   * Gets the end times.
+   *
+   * @return the end times in seconds, or null if there are no timestamps
+   */
+  public double[] getEndTimes() {
+    return endTimes;
+  }
+
+  /**
+   * Gets the confidences. A word without a confidence has {@link Float#NaN}.
+   *
+   * @return the confidences in the range of 0.0 to 1.0, or null if there are no confidences
+   */
+  public float[] getConfidences() {
+    return confidences;
+  }
+
+  /**
+   * Returns the timestamps as a list that creates a {@link SpeechTimestamp} for a word only when
+   * it is read.
+   *
+   * @return the timestamps, or null if there are no timestamps
+   */
+  public List<SpeechTimestamp> asTimestamps() {
+    if (startTimes == null) {
+      return null;
+    }
+    return new TimestampList();
+  }
+
+  /**
+   * Returns the confidences as a list that creates a {@link SpeechWordConfidence} for a word only
+   * when it is read.
+   *
+   * @return the confidences, or null if there are no confidences
+   */
+  public List<SpeechWordConfidence> asWordConfidence() {
+    if (confidences == null) {
+      return null;
+    }
+    return new ConfidenceList();
+  }
+
+  private final class TimestampList extends AbstractList<SpeechTimestamp> implements RandomAccess {
+    CompactWordData data() {
+      return CompactWordData.this;
+    }
+
+    @Override
+    public SpeechTimestamp get(int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+      }
+      SpeechTimestamp timestamp = new SpeechTimestamp();
+      timestamp.setWord(words[index]);
+      timestamp.setStartTime(startTimes[index]);
+      timestamp.setEndTime(endTimes[index]);
+      return timestamp;
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+
+  private final class ConfidenceList extends AbstractList<SpeechWordConfidence>
+      implements RandomAccess {
+    CompactWordData data() {
+      return CompactWordData.this;
+    }
+
+    @Override
+    public SpeechWordConfidence get(int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+      }
+      SpeechWordConfidence confidence = new SpeechWordConfidence();
+      confidence.setWord(words[index]);
+      float value = confidences[index];
+      // go through the shortest decimal form so that 0.95f reads back as 0.95
+      confidence.setConfidence(Float.isNaN(value) ? null : Double.valueOf(Float.toString(value)));
+      return confidence;
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+}
@@ -0,0 +1,800 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1.util;
+
+import com.ibm.cloud.sdk.core.service.exception.ServiceResponseException;
+import com.ibm.cloud.sdk.core.util.Validator;
+import com.ibm.watson.speech_to_text.v1.SpeechToText;
+import com.ibm.watson.speech_to_text.v1.model.AcousticModel;
+import com.ibm.watson.speech_to_text.v1.model.AddAudioOptions;
+import com.ibm.watson.speech_to_text.v1.model.AddCorpusOptions;
+import com.ibm.watson.speech_to_text.v1.model.AddGrammarOptions;
+import com.ibm.watson.speech_to_text.v1.model.AddWordsOptions;
+import com.ibm.watson.speech_to_text.v1.model.AudioResource;
+import com.ibm.watson.speech_to_text.v1.model.AudioResources;
+import com.ibm.watson.speech_to_text.v1.model.Corpora;
+import com.ibm.watson.speech_to_text.v1.model.Corpus;
+import com.ibm.watson.speech_to_text.v1.model.CustomWord;
+import com.ibm.watson.speech_to_text.v1.model.GetAcousticModelOptions;
+import com.ibm.watson.speech_to_text.v1.model.GetLanguageModelOptions;
+import com.ibm.watson.speech_to_text.v1.model.Grammar;
+import com.ibm.watson.speech_to_text.v1.model.Grammars;
+import com.ibm.watson.speech_to_text.v1.model.LanguageModel;
+import com.ibm.watson.speech_to_text.v1.model.ListAudioOptions;
+import com.ibm.watson.speech_to_text.v1.model.ListCorporaOptions;
+import com.ibm.watson.speech_to_text.v1.model.ListGrammarsOptions;
+import com.ibm.watson.speech_to_text.v1.model.ListWordsOptions;
+import com.ibm.watson.speech_to_text.v1.model.TrainAcousticModelOptions;
+import com.ibm.watson.speech_to_text.v1.model.TrainLanguageModelOptions;
+import com.ibm.watson.speech_to_text.v1.model.Word;
+import com.ibm.watson.speech_to_text.v1.model.Words;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Brings the corpora, grammars, custom words and audio resources of custom models in line with
+ * local files, uploading only what changed. <br>
+ * The SHA-256 hash of every uploaded file is recorded in a manifest file. A file is uploaded again
+ * if its hash differs from the manifest or if the service does not list the resource, or lists it
+ * as failed. Files are hashed and uploaded by a bounded number of threads; while the service is
+ * still processing an earlier upload it rejects new ones with status 409, and the upload is retried
+ * with backoff. Custom words are compared with the user words returned by {@code listWords} and
+ * the changed ones are added in batches. <br>
+ * {@link #train()} waits, with backoff, until the service has processed the uploads and then
+ * trains the models that have new data.
+ *
+ * <pre>
+ * CustomizationSync sync = new CustomizationSync.Builder()
+ *     .service(service)
+ *     .languageCustomizationId(customizationId)
+ *     .manifest(new File("customization.properties"))
+ *     .corpus("products", new File("products.txt"))
+ *     .words(words)
+ *     .build();
+ * sync.sync();
+ * sync.train();
+ * </pre>
+ */
+public class CustomizationSync {
+
+  private static final Logger LOG = Logger.getLogger(CustomizationSync.class.getName());
+
+  private static final String THREAD_NAME = "CustomizationSyncThread";
+  private static final int MAX_ATTEMPTS = 8;
+  private static final int CONFLICT = 409;
+  private static final int TOO_MANY_REQUESTS = 429;
+  private static final int SERVER_ERROR = 500;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final String CORPUS = "corpus";
+  private static final String GRAMMAR = "grammar";
+  private static final String AUDIO = "audio";
+
+  /** The number of resources handled by {@link #sync()}. */
+  public static class Summary {
+    private final int uploaded;
+    private final int unchanged;
+    private final int wordsAdded;
+
+    Summary(int uploaded, int unchanged, int wordsAdded) {
+      this.uploaded = uploaded;
+      this.unchanged = unchanged;
+      this.wordsAdded = wordsAdded;
+    }
+
+    /**
+     * Gets the number of corpora, grammars and audio resources that were uploaded.
+     *
+     * @return the number of resources
+     */
+    public int getUploaded() {
+      return uploaded;
+    }
+
+    /**
+     * Gets the number of corpora, grammars and audio resources that were already up to date.
+     *
+     * @return the number of resources
+     */
+    public int getUnchanged() {
+      return unchanged;
+    }
+
+    /**
+     * Gets the number of custom words that were added or changed.
+     *
+     * @return the number of words
+     */
+    public int getWordsAdded() {
+      return wordsAdded;
+    }
+  }
+
+  /** A local file to upload as a corpus, grammar or audio resource. */
+  private static final class Resource {
+    private final String kind;
+    private final String name;
+    private final File file;
+    private final String contentType;
+
+    Resource(String kind, String name, File file, String contentType) {
+      this.kind = kind;
+      this.name = name;
+      this.file = file;
+      this.contentType = contentType;
+    }
+
+    String key() {
+      return kind + ":" + name;
+    }
+  }
+
+  private final SpeechToText service;
+  private final String languageCustomizationId;
+  private final String acousticCustomizationId;
+  private final File manifestFile;
+  private final List<Resource> resources;
+  private final List<CustomWord> words;
+  private final int maxConcurrentUploads;
+  private final int wordBatchSize;
+  private final long minPollIntervalMillis;
+  private final long maxPollIntervalMillis;
+
+  private final Properties manifest = new Properties();
+  private boolean languageModelChanged;
+  private boolean acousticModelChanged;
+
+  /** Builder. */
+  public static class Builder {
+    private SpeechToText service;
+    private String languageCustomizationId;
+    private String acousticCustomizationId;
+    private File manifest;
+    private List<Resource> resources = new ArrayList<Resource>();
+    private List<CustomWord> words = new ArrayList<CustomWord>();
+    private int maxConcurrentUploads = 4;
+    private int wordBatchSize = 1000;
+    private long minPollIntervalMillis = 5000;
+    private long maxPollIntervalMillis = 60000;
+
+    /** Instantiates a new builder. */
+    public Builder() {}
+
+    /**
+     * Builds a CustomizationSync.
+     *
+     * @return the new CustomizationSync instance
+     */
+    public CustomizationSync build() {
+      return new CustomizationSync(this);
+    }
+
+    /**
+     * Set the service.
+     *
+     * @param service the service
+     * @return the CustomizationSync builder
+     */
+    public Builder service(SpeechToText service) {
+      this.service = service;
+      return this;
+    }
+
+    /**
+     * Set the custom language model that corpora, grammars and words are added to.
+     *
+     * @param languageCustomizationId the customization ID of the language model
+     * @return the CustomizationSync builder
+     */
+    public Builder languageCustomizationId(String languageCustomizationId) {
+      this.languageCustomizationId = languageCustomizationId;
+      return this;
+    }
+
+    /**
+     * Set the custom acoustic model that audio resources are added to.
+     *
+     * @param acousticCustomizationId the customization ID of the acoustic model
+     * @return the CustomizationSync builder
+     */
+    public Builder acousticCustomizationId(String acousticCustomizationId) {
+      this.acousticCustomizationId = acousticCustomizationId;
+      return this;
+    }
+
+    /**
+     * Set the file that records the hashes of uploaded files.
+     *
+     * @param manifest the manifest file
+     * @return the CustomizationSync builder
+     */
+    public Builder manifest(File manifest) {
+      this.manifest = manifest;
+      return this;
+    }
+
+    /**
+     * Adds a corpus file.
+     *
+     * @param name the name of the corpus
+     * @param file the plain text file
+     * @return the CustomizationSync builder
+     */
+    public Builder corpus(String name, File file) {
+      resources.add(new Resource(CORPUS, name, file, null));
+      return this;
+    }
+
+    /**
+     * Adds a grammar file.
+     *
+     * @param name the name of the grammar
+     * @param file the grammar file
+     * @param contentType the format of the grammar, {@code application/srgs} or {@code
+     *     application/srgs+xml}
+     * @return the CustomizationSync builder
+     */
+    public Builder grammar(String name, File file, String contentType) {
+      resources.add(new Resource(GRAMMAR, name, file, contentType));
+      return this;
+    }
+
+    /**
+     * Adds an audio resource.
+     *
+     * @param name the name of the audio resource
+     * @param file the audio file or archive
+     * @param contentType the format of the file
+     * @return the CustomizationSync builder
+     */
+    public Builder audio(String name, File file, String contentType) {
+      resources.add(new Resource(AUDIO, name, file, contentType));
+      return this;
+    }
+
+    /**
+     * Adds a custom word.
+     *
+     * @param word the word
+     * @return the CustomizationSync builder
+     */
+    public Builder word(CustomWord word) {
+      words.add(word);
+      return this;
+    }
+
+    /**
+     * Adds custom words.
+     *
+     * @param words the words
+     * @return the CustomizationSync builder
+     */
+    public Builder words(List<CustomWord> words) {
+      this.words.addAll(words);
+      return this;
+    }
+
+    /**
+     * Set the number of files hashed and uploaded at the same time. Defaults to 4.
+     *
+     * @param maxConcurrentUploads the number of uploads
+     * @return the CustomizationSync builder
+     */
+    public Builder maxConcurrentUploads(int maxConcurrentUploads) {
+      this.maxConcurrentUploads = maxConcurrentUploads;
+      return this;
+    }
+
+    /**
+     * Set the number of words added per request. Defaults to 1000.
+     *
+     * @param wordBatchSize the number of words
+     * @return the CustomizationSync builder
+     */
+    public Builder wordBatchSize(int wordBatchSize) {
+      this.wordBatchSize = wordBatchSize;
+      return this;
+    }
+
+    /**
+     * Set the first interval between status checks and retries. Defaults to 5 seconds.
+     *
+     * @param minPollIntervalMillis the interval in milliseconds
+     * @return the CustomizationSync builder
+     */
+    public Builder minPollIntervalMillis(long minPollIntervalMillis) {
+      this.minPollIntervalMillis = minPollIntervalMillis;
+      return this;
+    }
+
+    /**
+     * Set the longest interval between status checks and retries, reached by doubling the
+     * interval. Defaults to 60 seconds.
+     *
+     * @param maxPollIntervalMillis the interval in milliseconds
+     * @return the CustomizationSync builder
+     */
+    public Builder maxPollIntervalMillis(long maxPollIntervalMillis) {
+      this.maxPollIntervalMillis = maxPollIntervalMillis;
+      return this;
+    }
+  }
+
+  /**
+   * Instantiates a new customization sync.
+   *
+   * @param builder the builder
+   */
+  protected CustomizationSync(Builder builder) {
+    Validator.notNull(builder.service, "service cannot be null");
+    Validator.notNull(builder.manifest, "manifest cannot be null");
+    Validator.isTrue(builder.maxConcurrentUploads > 0, "maxConcurrentUploads must be positive");
+    Validator.isTrue(builder.wordBatchSize > 0, "wordBatchSize must be positive");
+    Validator.isTrue(
+        builder.minPollIntervalMillis > 0
+            && builder.maxPollIntervalMillis >= builder.minPollIntervalMillis,
+        "poll intervals must be positive and ordered");
+    for (Resource resource : builder.resources) {
+      Validator.notNull(resource.name, "name cannot be null");
+      Validator.notNull(resource.file, "file cannot be null");
+      if (AUDIO.equals(resource.kind)) {
+        Validator.notNull(
+            builder.acousticCustomizationId, "acousticCustomizationId cannot be null");
+      } else {
+        Validator.notNull(
+            builder.languageCustomizationId, "languageCustomizationId cannot be null");
+      }
+    }
+    if (!builder.words.isEmpty()) {
+      Validator.notNull(builder.languageCustomizationId, "languageCustomizationId cannot be null");
+    }
+    service = builder.service;
+    languageCustomizationId = builder.languageCustomizationId;
+    acousticCustomizationId = builder.acousticCustomizationId;
+    manifestFile = builder.manifest;
+    resources = new ArrayList<Resource>(builder.resources);
+    words = new ArrayList<CustomWord>(builder.words);
+    maxConcurrentUploads = builder.maxConcurrentUploads;
+    wordBatchSize = builder.wordBatchSize;
+    minPollIntervalMillis = builder.minPollIntervalMillis;
+    maxPollIntervalMillis = builder.maxPollIntervalMillis;
+  }
+
+  /**
+   * Uploads the files that changed since the last sync and adds the changed words.
+   *
+   * @return the summary of the sync
+   * @throws IOException if a file or the manifest cannot be read or written
+   * @throws InterruptedException if the sync is interrupted
+   */
+  public synchronized Summary sync() throws IOException, InterruptedException {
+    manifest.clear();
+    if (manifestFile.exists()) {
+      InputStream in = new FileInputStream(manifestFile);
+      try {
+        manifest.load(in);
+      } finally {
+        in.close();
+      }
+    }
+
+    final Set<String> present = listResources();
+    final AtomicInteger uploaded = new AtomicInteger();
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            maxConcurrentUploads,
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, THREAD_NAME);
+                thread.setDaemon(true);
+                return thread;
+              }
+            });
+    try {
+      List<Future<Void>> uploads = new ArrayList<Future<Void>>();
+      for (final Resource resource : resources) {
+        uploads.add(
+            executor.submit(
+                new Callable<Void>() {
+                  @Override
+                  public Void call() throws IOException, InterruptedException {
+                    String hash = hash(resource.file);
+                    if (!present.contains(resource.key()) || !hash.equals(recordedHash(resource))) {
+                      upload(resource);
+                      record(resource, hash);
+                      uploaded.incrementAndGet();
+                    }
+                    return null;
+                  }
+                }));
+      }
+      awaitAll(uploads);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    int wordsAdded = syncWords();
+    return new Summary(uploaded.get(), resources.size() - uploaded.get(), wordsAdded);
+  }
+
+  /**
+   * Waits until the service has processed the uploads and trains the models that have new data,
+   * then waits until training is complete.
+   *
+   * @throws InterruptedException if waiting is interrupted
+   */
+  public synchronized void train() throws InterruptedException {
+    if (languageCustomizationId != null) {
+      String status = awaitModel(false);
+      if (languageModelChanged || LanguageModel.Status.READY.equals(status)) {
+        final TrainLanguageModelOptions options =
+            new TrainLanguageModelOptions.Builder(languageCustomizationId).build();
+        retry(
+            new Runnable() {
+              @Override
+              public void run() {
+                service.trainLanguageModel(options).execute();
+              }
+            });
+        awaitModel(false);
+        languageModelChanged = false;
+      }
+    }
+    if (acousticCustomizationId != null) {
+      String status = awaitModel(true);
+      if (acousticModelChanged || AcousticModel.Status.READY.equals(status)) {
+        final TrainAcousticModelOptions options =
+            new TrainAcousticModelOptions.Builder(acousticCustomizationId).build();
+        retry(
+            new Runnable() {
+              @Override
+              public void run() {
+                service.trainAcousticModel(options).execute();
+              }
+            });
+        awaitModel(true);
+        acousticModelChanged = false;
+      }
+    }
+  }
+
+  /** Returns the keys of the resources the service holds and did not fail to process. */
+  private Set<String> listResources() {
+    Set<String> present = new HashSet<String>();
+    boolean corpora = false;
+    boolean grammars = false;
+    boolean audio = false;
+    for (Resource resource : resources) {
+      corpora |= CORPUS.equals(resource.kind);
+      grammars |= GRAMMAR.equals(resource.kind);
+      audio |= AUDIO.equals(resource.kind);
+    }
+    if (corpora) {
+      Corpora list =
+          service
+              .listCorpora(new ListCorporaOptions.Builder(languageCustomizationId).build())
+              .execute()
+              .getResult();
+      for (Corpus corpus : list.getCorpora()) {
+        if (!Corpus.Status.UNDETERMINED.equals(corpus.getStatus())) {
+          present.add(CORPUS + ":" + corpus.getName());
+        }
+      }
+    }
+    if (grammars) {
+      Grammars list =
+          service
+              .listGrammars(new ListGrammarsOptions.Builder(languageCustomizationId).build())
+              .execute()
+              .getResult();
+      for (Grammar grammar : list.getGrammars()) {
+        if (!Grammar.Status.UNDETERMINED.equals(grammar.getStatus())) {
+          present.add(GRAMMAR + ":" + grammar.getName());
+        }
+      }
+    }
+    if (audio) {
+      AudioResources list =
+          service
+              .listAudio(new ListAudioOptions.Builder(acousticCustomizationId).build())
+              .execute()
+              .getResult();
+      for (AudioResource resource : list.getAudio()) {
+        if (!AudioResource.Status.INVALID.equals(resource.getStatus())) {
+          present.add(AUDIO + ":" + resource.getName());
+        }
+      }
+    }
+    return present;
+  }
+
+  private void upload(final Resource resource) throws IOException, InterruptedException {
+    Runnable request;
+    if (CORPUS.equals(resource.kind)) {
+      final AddCorpusOptions options =
+          new AddCorpusOptions.Builder()
+              .customizationId(languageCustomizationId)
+              .corpusName(resource.name)
+              .corpusFile(resource.file)
+              .allowOverwrite(true)
+              .build();
+      request =
+          new Runnable() {
+            @Override
+            public void run() {
+              service.addCorpus(options).execute();
+            }
+          };
+    } else if (GRAMMAR.equals(resource.kind)) {
+      final AddGrammarOptions options =
+          new AddGrammarOptions.Builder()
+              .customizationId(languageCustomizationId)
+              .grammarName(resource.name)
+              .grammarFile(resource.file)
+              .contentType(resource.contentType)
+              .allowOverwrite(true)
+              .build();
+      request =
+          new Runnable() {
+            @Override
+            public void run() {
+              service.addGrammar(options).execute();
+            }
+          };
+    } else {
+      final AddAudioOptions options =
+          new AddAudioOptions.Builder()
+              .customizationId(acousticCustomizationId)
+              .audioName(resource.name)
+              .audioResource(resource.file)
+              .contentType(resource.contentType)
+              .allowOverwrite(true)
+              .build();
+      request =
+          new Runnable() {
+            @Override
+            public void run() {
+              service.addAudio(options).execute();
+            }
+          };
+    }
+    retry(request);
+  }
+
+  /** Adds the words that are missing or differ from the user words of the model. */
+  private int syncWords() throws InterruptedException {
+    if (words.isEmpty()) {
+      return 0;
+    }
+    Words remote =
+        service
+            .listWords(
+                new ListWordsOptions.Builder(languageCustomizationId)
+                    .wordType(ListWordsOptions.WordType.USER)
+                    .build())
+            .execute()
+            .getResult();
+    Map<String, Word> existing = new HashMap<String, Word>();
+    for (Word word : remote.getWords()) {
+      existing.put(word.getWord(), word);
+    }
+
+    List<CustomWord> changed = new ArrayList<CustomWord>();
+    for (CustomWord word : words) {
+      if (!isSame(word, existing.get(word.word()))) {
+        changed.add(word);
+      }
+    }
+    for (int start = 0; start < changed.size(); start += wordBatchSize) {
+      List<CustomWord> batch =
+          changed.subList(start, Math.min(changed.size(), start + wordBatchSize));
+      final AddWordsOptions options =
+          new AddWordsOptions.Builder(languageCustomizationId, new ArrayList<CustomWord>(batch))
+              .build();
+      retry(
+          new Runnable() {
+            @Override
+            public void run() {
+              service.addWords(options).execute();
+            }
+          });
+      languageModelChanged = true;
+    }
+    return changed.size();
+  }
+
+  private static boolean isSame(CustomWord local, Word remote) {
+    if (remote == null) {
+      return false;
+    }
+    // the service fills in the defaults for sounds-like and display-as
+    List<String> soundsLike =
+        local.soundsLike() != null ? local.soundsLike() : Collections.<String>emptyList();
+    List<String> remoteSoundsLike =
+        remote.getSoundsLike() != null ? remote.getSoundsLike() : Collections.<String>emptyList();
+    String displayAs = local.displayAs() != null ? local.displayAs() : local.word();
+    String remoteDisplayAs =
+        remote.getDisplayAs() != null ? remote.getDisplayAs() : remote.getWord();
+    return (soundsLike.isEmpty() || soundsLike.equals(remoteSoundsLike))
+        && displayAs.equals(remoteDisplayAs);
+  }
+
+  /**
+   * Polls the status of a model, backing off, until the service is not processing it.
+   *
+   * @return the status
+   */
+  private String awaitModel(boolean acoustic) throws InterruptedException {
+    long interval = minPollIntervalMillis;
+    while (true) {
+      String status;
+      boolean failed;
+      boolean busy;
+      String error;
+      if (acoustic) {
+        GetAcousticModelOptions options =
+            new GetAcousticModelOptions.Builder(acousticCustomizationId).build();
+        AcousticModel model = service.getAcousticModel(options).execute().getResult();
+        status = model.getStatus();
+        failed = AcousticModel.Status.FAILED.equals(status);
+        busy =
+            AcousticModel.Status.PENDING.equals(status)
+                || AcousticModel.Status.TRAINING.equals(status)
+                || AcousticModel.Status.UPGRADING.equals(status);
+        error = model.getWarnings();
+      } else {
+        GetLanguageModelOptions options =
+            new GetLanguageModelOptions.Builder(languageCustomizationId).build();
+        LanguageModel model = service.getLanguageModel(options).execute().getResult();
+        status = model.getStatus();
+        failed = LanguageModel.Status.FAILED.equals(status);
+        busy =
+            LanguageModel.Status.PENDING.equals(status)
+                || LanguageModel.Status.TRAINING.equals(status)
+                || LanguageModel.Status.UPGRADING.equals(status);
+        error = model.getError();
+      }
+      if (failed) {
+        throw new IllegalStateException("Training failed: " + error);
+      }
+      if (!busy) {
+        return status;
+      }
+      Thread.sleep(interval);
+      interval = Math.min(maxPollIntervalMillis, interval * 2);
+    }
+  }
+
+  /** Runs a request, retrying with backoff while the model is busy or the service is overloaded. */
+  private void retry(Runnable request) throws InterruptedException {
+    long interval = minPollIntervalMillis;
+    for (int attempt = 1; ; attempt++) {
+      try {
+        request.run();
+        return;
+      } catch (ServiceResponseException e) {
+        int status = e.getStatusCode();
+        boolean busy = status == CONFLICT || status == TOO_MANY_REQUESTS;
+        if (!(busy || status >= SERVER_ERROR) || attempt == MAX_ATTEMPTS) {
+          throw e;
+        }
+        LOG.log(Level.FINE, "Retrying after status " + status);
+        Thread.sleep(interval);
+        interval = Math.min(maxPollIntervalMillis, interval * 2);
+      }
+    }
+  }
+
+  private String recordedHash(Resource resource) {
+    synchronized (manifest) {
+      return manifest.getProperty(resource.key());
+    }
+  }
+
+  private void record(Resource resource, String hash) throws IOException {
+    synchronized (manifest) {
+      manifest.setProperty(resource.key(), hash);
+      if (AUDIO.equals(resource.kind)) {
+        acousticModelChanged = true;
+      } else {
+        languageModelChanged = true;
+      }
+      // write a copy and move it over the manifest, so a crash never leaves it half written
+      File temp = new File(manifestFile.getPath() + ".tmp");
+      OutputStream out = new FileOutputStream(temp);
+      try {
+        manifest.store(out, null);
+      } finally {
+        out.close();
+      }
+      Files.move(temp.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private static String hash(File file) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    InputStream in = new FileInputStream(file);
+    try {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    } finally {
+      in.close();
+    }
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest()) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+
+  private static void awaitAll(List<Future<Void>> futures)
+      throws IOException, InterruptedException {
+    Throwable failure = null;
+    for (Future<Void> future : futures) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        // let the other uploads finish so that their hashes are recorded
+        if (failure == null) {
+          failure = e.getCause();
+        }
+      }
+    }
+    if (failure instanceof IOException) {
+      throw (IOException) failure;
+    }
+    if (failure instanceof InterruptedException) {
+      throw (InterruptedException) failure;
+    }
+    if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    }
+    if (failure != null) {
+      throw new IllegalStateException(failure);
+    }
+  }
+}
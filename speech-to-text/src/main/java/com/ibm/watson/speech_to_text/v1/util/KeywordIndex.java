@@ -0,0 +1,640 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1.util;
+
+import com.ibm.watson.speech_to_text.v1.model.KeywordResult;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionAlternative;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResult;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResults;
+import com.ibm.watson.speech_to_text.v1.model.SpeechTimestamp;
+import com.ibm.watson.speech_to_text.v1.model.SpeechWordConfidence;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An embeddable on-disk index of the words and spotted keywords of many recognized calls. <br>
+ * Final results are added per call with {@link #add(String, SpeechRecognitionResults)}, for
+ * example from {@code RecognizeCallback.onTranscription}, and {@link #search(String, double)}
+ * returns every occurrence of a word or keyword above a confidence, with the call and the time in
+ * the call, without reading any transcript. <br>
+ * Added results are buffered in memory until {@link #commit()}, which writes them as a new segment
+ * file. A segment holds a sorted term dictionary followed by the postings of each term: the
+ * occurrences sorted by call and start time, stored as variable-length deltas with times in
+ * centiseconds and confidences in 1/255 steps. Segments are memory-mapped for searching, and
+ * {@link #merge()} rewrites them into one when many small commits have accumulated. A merged
+ * segment lists the segments it replaces, so that any of them left behind by an interrupted merge
+ * are skipped and deleted when the index is opened. <br>
+ * Words are indexed from the timestamps of the best alternative, so request {@code timestamps};
+ * their confidence comes from {@code word_confidence} if requested, or else from the confidence of
+ * the alternative. Keywords are indexed under the keyword as it was requested. Terms are matched
+ * case-insensitively. An index directory must be used by one instance at a time.
+ */
+public final class KeywordIndex implements Closeable {
+
+  private static final int MAGIC = 0x4B575832;
+  private static final String CALLS_FILE = "calls.txt";
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".kwx";
+  private static final String TEMP_SUFFIX = ".tmp";
+  private static final double CENTIS_PER_SECOND = 100;
+  private static final double CONFIDENCE_STEPS = 255;
+
+  private final File directory;
+
+  // call names by ID, the first committedCalls of them are in the calls file
+  private final List<String> calls = new ArrayList<String>();
+  private final Map<String, Integer> callIds = new HashMap<String, Integer>();
+  private int committedCalls;
+
+  private final List<Segment> segments = new ArrayList<Segment>();
+  private final Map<String, List<Occurrence>> buffer = new HashMap<String, List<Occurrence>>();
+  private int nextSegment;
+
+  /**
+   * Opens the index in a directory, creating the directory if needed.
+   *
+   * @param directory the directory
+   * @throws IOException if the index cannot be read
+   */
+  public KeywordIndex(File directory) throws IOException {
+    if (directory == null) {
+      throw new IllegalArgumentException("directory cannot be null");
+    }
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create " + directory);
+    }
+    this.directory = directory;
+    readCalls();
+
+    File[] files = directory.listFiles();
+    Map<Integer, Segment> found = new TreeMap<Integer, Segment>();
+    Set<Integer> replaced = new HashSet<Integer>();
+    for (File file : files) {
+      String name = file.getName();
+      if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+        int number =
+            Integer.parseInt(
+                name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        Segment segment = new Segment(number, file);
+        found.put(number, segment);
+        replaced.addAll(segment.replaced);
+      } else if (name.endsWith(TEMP_SUFFIX)) {
+        // left over from an interrupted commit
+        file.delete();
+      }
+    }
+    for (Segment segment : found.values()) {
+      if (replaced.contains(segment.number)) {
+        // left over from an interrupted merge, its occurrences are in the merged segment
+        segment.file.delete();
+      } else {
+        segments.add(segment);
+      }
+      nextSegment = segment.number + 1;
+    }
+  }
+
+  /**
+   * Adds the final results of a call. Interim results are ignored. Times are taken as they are,
+   * so results of a call that was recognized in several sessions must be shifted to the time of
+   * the call first, see {@link SpeechResultsUtils#shift(SpeechRecognitionResults, double, long)}.
+   *
+   * @param callId the name of the call, without line breaks
+   * @param results the results
+   */
+  public synchronized void add(String callId, SpeechRecognitionResults results) {
+    if (callId == null) {
+      throw new IllegalArgumentException("callId cannot be null");
+    }
+    if (callId.indexOf('\n') >= 0 || callId.indexOf('\r') >= 0) {
+      throw new IllegalArgumentException("callId cannot contain line breaks");
+    }
+    if (results == null || results.getResults() == null) {
+      return;
+    }
+    Integer call = callIds.get(callId);
+    if (call == null) {
+      call = calls.size();
+      calls.add(callId);
+      callIds.put(callId, call);
+    }
+    for (SpeechRecognitionResult result : results.getResults()) {
+      if (!Boolean.FALSE.equals(result.isXFinal())) {
+        addWords(call, result);
+        addKeywords(call, result);
+      }
+    }
+  }
+
+  /**
+   * Writes the buffered results to a new segment.
+   *
+   * @throws IOException if the segment cannot be written
+   */
+  public synchronized void commit() throws IOException {
+    if (buffer.isEmpty()) {
+      return;
+    }
+    appendCalls();
+    File file = segmentFile(nextSegment);
+    writeSegment(
+        file, Collections.<Integer>emptyList(), new TreeMap<String, List<Occurrence>>(buffer));
+    segments.add(new Segment(nextSegment, file));
+    nextSegment++;
+    buffer.clear();
+  }
+
+  /**
+   * Commits the buffered results and rewrites all segments into one.
+   *
+   * @throws IOException if the segments cannot be read or written
+   */
+  public synchronized void merge() throws IOException {
+    commit();
+    if (segments.size() < 2) {
+      return;
+    }
+    Map<String, List<Occurrence>> merged = new TreeMap<String, List<Occurrence>>();
+    List<Integer> replaced = new ArrayList<Integer>();
+    for (Segment segment : segments) {
+      replaced.add(segment.number);
+      for (String term : segment.terms.keySet()) {
+        List<Occurrence> occurrences = merged.get(term);
+        if (occurrences == null) {
+          occurrences = new ArrayList<Occurrence>();
+          merged.put(term, occurrences);
+        }
+        segment.decode(term, occurrences);
+      }
+    }
+    File file = segmentFile(nextSegment);
+    writeSegment(file, replaced, merged);
+    Segment segment = new Segment(nextSegment, file);
+    nextSegment++;
+    // a segment that cannot be deleted now is deleted when the index is opened again
+    for (Segment old : segments) {
+      old.file.delete();
+    }
+    segments.clear();
+    segments.add(segment);
+  }
+
+  /**
+   * Finds the occurrences of a word or keyword, including results not yet committed.
+   *
+   * @param term the word or keyword
+   * @param minConfidence the lowest confidence to return, between 0.0 and 1.0
+   * @return the occurrences, ordered by call and time
+   */
+  public synchronized List<Hit> search(String term, double minConfidence) {
+    String key = normalize(term);
+    List<Occurrence> occurrences = new ArrayList<Occurrence>();
+    for (Segment segment : segments) {
+      segment.decode(key, occurrences);
+    }
+    List<Occurrence> buffered = buffer.get(key);
+    if (buffered != null) {
+      occurrences.addAll(buffered);
+    }
+    Collections.sort(occurrences, Occurrence.ORDER);
+
+    List<Hit> hits = new ArrayList<Hit>();
+    for (Occurrence occurrence : occurrences) {
+      double confidence = occurrence.confidence / CONFIDENCE_STEPS;
+      if (confidence >= minConfidence) {
+        hits.add(
+            new Hit(
+                calls.get(occurrence.call),
+                occurrence.start / CENTIS_PER_SECOND,
+                (occurrence.start + occurrence.duration) / CENTIS_PER_SECOND,
+                confidence,
+                occurrence.keyword));
+      }
+    }
+    return hits;
+  }
+
+  /**
+   * Gets the number of calls added to the index.
+   *
+   * @return the number of calls
+   */
+  public synchronized int getCallCount() {
+    return calls.size();
+  }
+
+  /**
+   * Gets the number of segments.
+   *
+   * @return the number of segments
+   */
+  public synchronized int getSegmentCount() {
+    return segments.size();
+  }
+
+  /**
+   * Commits the buffered results.
+   *
+   * @throws IOException if the segment cannot be written
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    commit();
+  }
+
+  private void addWords(int call, SpeechRecognitionResult result) {
+    List<SpeechRecognitionAlternative> alternatives = result.getAlternatives();
+    if (alternatives == null || alternatives.isEmpty()) {
+      return;
+    }
+    SpeechRecognitionAlternative best = alternatives.get(0);
+    List<SpeechTimestamp> timestamps = best.getTimestamps();
+    if (timestamps == null) {
+      return;
+    }
+    // word_confidence lists the same words as timestamps, in the same order
+    List<SpeechWordConfidence> confidences = best.getWordConfidence();
+    double fallback = best.getConfidence() != null ? best.getConfidence() : 0;
+    for (int i = 0; i < timestamps.size(); i++) {
+      SpeechTimestamp timestamp = timestamps.get(i);
+      double confidence = fallback;
+      // compact results and some services leave out the confidence of a word
+      if (confidences != null
+          && i < confidences.size()
+          && confidences.get(i).getConfidence() != null) {
+        confidence = confidences.get(i).getConfidence();
+      }
+      addOccurrence(
+          timestamp.getWord(),
+          call,
+          timestamp.getStartTime(),
+          timestamp.getEndTime(),
+          confidence,
+          false);
+    }
+  }
+
+  private void addKeywords(int call, SpeechRecognitionResult result) {
+    Map<String, List<KeywordResult>> keywords = result.getKeywordsResult();
+    if (keywords == null) {
+      return;
+    }
+    for (Map.Entry<String, List<KeywordResult>> entry : keywords.entrySet()) {
+      for (KeywordResult keyword : entry.getValue()) {
+        addOccurrence(
+            entry.getKey(),
+            call,
+            keyword.getStartTime(),
+            keyword.getEndTime(),
+            keyword.getConfidence(),
+            true);
+      }
+    }
+  }
+
+  private void addOccurrence(
+      String term, int call, double start, double end, double confidence, boolean keyword) {
+    String key = normalize(term);
+    List<Occurrence> occurrences = buffer.get(key);
+    if (occurrences == null) {
+      occurrences = new ArrayList<Occurrence>();
+      buffer.put(key, occurrences);
+    }
+    int startCentis = (int) Math.round(start * CENTIS_PER_SECOND);
+    int endCentis = (int) Math.round(end * CENTIS_PER_SECOND);
+    occurrences.add(
+        new Occurrence(
+            call,
+            startCentis,
+            Math.max(0, endCentis - startCentis),
+            (int) Math.round(Math.max(0, Math.min(1, confidence)) * CONFIDENCE_STEPS),
+            keyword));
+  }
+
+  private static String normalize(String term) {
+    return term.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+  }
+
+  private File segmentFile(int number) {
+    return new File(directory, SEGMENT_PREFIX + number + SEGMENT_SUFFIX);
+  }
+
+  private void readCalls() throws IOException {
+    File file = new File(directory, CALLS_FILE);
+    if (!file.isFile()) {
+      return;
+    }
+    BufferedReader reader =
+        new BufferedReader(
+            new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        callIds.put(line, calls.size());
+        calls.add(line);
+      }
+    } finally {
+      reader.close();
+    }
+    committedCalls = calls.size();
+  }
+
+  private void appendCalls() throws IOException {
+    if (committedCalls == calls.size()) {
+      return;
+    }
+    // the calls are written before the segment that refers to them
+    Writer writer =
+        new OutputStreamWriter(
+            new FileOutputStream(new File(directory, CALLS_FILE), true), StandardCharsets.UTF_8);
+    try {
+      for (int i = committedCalls; i < calls.size(); i++) {
+        writer.write(calls.get(i));
+        writer.write('\n');
+      }
+    } finally {
+      writer.close();
+    }
+    committedCalls = calls.size();
+  }
+
+  private static void writeSegment(
+      File file, List<Integer> replaced, Map<String, List<Occurrence>> terms) throws IOException {
+    // encode the postings first, the dictionary records their lengths
+    ByteArrayOutputStream postings = new ByteArrayOutputStream();
+    List<int[]> entries = new ArrayList<int[]>();
+    for (List<Occurrence> occurrences : terms.values()) {
+      Collections.sort(occurrences, Occurrence.ORDER);
+      int before = postings.size();
+      encode(occurrences, postings);
+      entries.add(new int[] {occurrences.size(), postings.size() - before});
+    }
+
+    File temp = new File(file.getPath() + TEMP_SUFFIX);
+    FileOutputStream fos = new FileOutputStream(temp);
+    try {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+      out.writeInt(MAGIC);
+      out.writeInt(replaced.size());
+      for (int number : replaced) {
+        out.writeInt(number);
+      }
+      out.writeInt(terms.size());
+      int i = 0;
+      for (String term : terms.keySet()) {
+        byte[] name = term.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(name.length);
+        out.write(name);
+        out.writeInt(entries.get(i)[0]);
+        out.writeInt(entries.get(i)[1]);
+        i++;
+      }
+      postings.writeTo(out);
+      out.flush();
+      fos.getFD().sync();
+    } finally {
+      fos.close();
+    }
+    if (!temp.renameTo(file)) {
+      throw new IOException("Cannot rename " + temp + " to " + file);
+    }
+  }
+
+  private static void encode(List<Occurrence> occurrences, ByteArrayOutputStream out) {
+    int call = 0;
+    int start = 0;
+    for (Occurrence occurrence : occurrences) {
+      int callDelta = occurrence.call - call;
+      writeVarint(out, callDelta);
+      // start times are deltas within a call
+      writeVarint(out, callDelta == 0 ? occurrence.start - start : occurrence.start);
+      writeVarint(out, occurrence.duration << 1 | (occurrence.keyword ? 1 : 0));
+      out.write(occurrence.confidence);
+      call = occurrence.call;
+      start = occurrence.start;
+    }
+  }
+
+  private static void writeVarint(ByteArrayOutputStream out, int value) {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  private static int readVarint(ByteBuffer in) {
+    int value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = in.get();
+      value |= (b & 0x7F) << shift;
+      shift += 7;
+    } while (b < 0);
+    return value;
+  }
+
+  /** An occurrence of a term. */
+  private static final class Occurrence {
+    static final Comparator<Occurrence> ORDER =
+        new Comparator<Occurrence>() {
+          @Override
+          public int compare(Occurrence a, Occurrence b) {
+            if (a.call != b.call) {
+              return a.call < b.call ? -1 : 1;
+            }
+            return a.start < b.start ? -1 : (a.start == b.start ? 0 : 1);
+          }
+        };
+
+    final int call;
+    final int start;
+    final int duration;
+    final int confidence;
+    final boolean keyword;
+
+    Occurrence(int call, int start, int duration, int confidence, boolean keyword) {
+      this.call = call;
+      this.start = start;
+      this.duration = duration;
+      this.confidence = confidence;
+      this.keyword = keyword;
+    }
+  }
+
+  /** A memory-mapped segment file. */
+  private static final class Segment {
+    final int number;
+    final File file;
+    // the numbers of the segments that were merged into this one
+    final List<Integer> replaced = new ArrayList<Integer>();
+    // the position and number of occurrences of the postings of each term
+    final Map<String, int[]> terms = new HashMap<String, int[]>();
+    final ByteBuffer postings;
+
+    Segment(int number, File file) throws IOException {
+      this.number = number;
+      this.file = file;
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      ByteBuffer buffer;
+      try {
+        // the mapping stays valid after the file is closed
+        buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+      } finally {
+        raf.close();
+      }
+      if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+        throw new IOException(file + " is not an index segment");
+      }
+      int replacedCount = buffer.getInt();
+      for (int i = 0; i < replacedCount; i++) {
+        replaced.add(buffer.getInt());
+      }
+      int count = buffer.getInt();
+      int position = 0;
+      for (int i = 0; i < count; i++) {
+        byte[] name = new byte[buffer.getInt()];
+        buffer.get(name);
+        int occurrences = buffer.getInt();
+        int length = buffer.getInt();
+        terms.put(new String(name, StandardCharsets.UTF_8), new int[] {position, occurrences});
+        position += length;
+      }
+      postings = buffer.slice();
+    }
+
+    void decode(String term, List<Occurrence> occurrences) {
+      int[] entry = terms.get(term);
+      if (entry == null) {
+        return;
+      }
+      ByteBuffer in = postings.duplicate();
+      in.position(entry[0]);
+      int call = 0;
+      int start = 0;
+      for (int i = 0; i < entry[1]; i++) {
+        int callDelta = readVarint(in);
+        call += callDelta;
+        start = callDelta == 0 ? start + readVarint(in) : readVarint(in);
+        int durationAndKind = readVarint(in);
+        int confidence = in.get() & 0xFF;
+        occurrences.add(
+            new Occurrence(
+                call, start, durationAndKind >>> 1, confidence, (durationAndKind & 1) != 0));
+      }
+    }
+  }
+
+  /** An occurrence of a word or keyword in a call. */
+  public static final class Hit {
+    private final String callId;
+    private final double startTime;
+    private final double endTime;
+    private final double confidence;
+    private final boolean keyword;
+
+    Hit(String callId, double startTime, double endTime, double confidence, boolean keyword) {
+      this.callId = callId;
+      this.startTime = startTime;
+      this.endTime = endTime;
+      this.confidence = confidence;
+      this.keyword = keyword;
+    }
+
+    /**
+     * Gets the call.
+     *
+     * @return the name of the call
+     */
+    public String getCallId() {
+      return callId;
+    }
+
+    /**
+     * Gets the start time.
+     *
+     * @return the start time in seconds from the start of the call
+     */
+    public double getStartTime() {
+      return startTime;
+    }
+
+    /**
+     * Gets the end time.
+     *
+     * @return the end time in seconds from the start of the call
+     */
+    public double getEndTime() {
+      return endTime;
+    }
+
+    /**
+     * Gets the confidence, to within 1/255.
+     *
+     * @return the confidence between 0.0 and 1.0
+     */
+    public double getConfidence() {
+      return confidence;
+    }
+
+    /**
+     * Whether the occurrence was spotted as a keyword rather than transcribed as a word.
+     *
+     * @return true for a keyword
+     */
+    public boolean isKeyword() {
+      return keyword;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.ROOT,
+          "%s [%.2f-%.2f] %.2f%s",
+          callId,
+          startTime,
+          endTime,
+          confidence,
+          keyword ? " keyword" : "");
+    }
+  }
+}
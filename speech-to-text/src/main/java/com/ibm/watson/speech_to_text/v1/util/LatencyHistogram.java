@@ -0,0 +1,149 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1.util;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies that can be recorded from many threads without locking. <br>
+ * Values are kept in microseconds, in buckets that split every power of two into 16, so a
+ * percentile is accurate to within about 6%. Memory is fixed, about 5 KB, regardless of the number
+ * of values recorded.
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int MAX_EXPONENT = 40;
+  private static final double MICROS_PER_MILLI = 1000.0;
+
+  private final AtomicLongArray counts =
+      new AtomicLongArray((MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Records a latency. Negative values are recorded as zero.
+   *
+   * @param millis the latency in milliseconds
+   */
+  public void record(double millis) {
+    long micros = Math.max(0, Math.round(millis * MICROS_PER_MILLI));
+    counts.incrementAndGet(indexOf(micros));
+    count.incrementAndGet();
+    sum.addAndGet(micros);
+    long current;
+    while (micros > (current = max.get()) && !max.compareAndSet(current, micros)) {
+      // retry until the larger value is stored
+    }
+  }
+
+  /**
+   * Gets the number of recorded latencies.
+   *
+   * @return the count
+   */
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * Gets the mean latency.
+   *
+   * @return the mean in milliseconds, or 0 if nothing was recorded
+   */
+  public double getMean() {
+    long n = count.get();
+    return n == 0 ? 0 : sum.get() / MICROS_PER_MILLI / n;
+  }
+
+  /**
+   * Gets the largest latency.
+   *
+   * @return the maximum in milliseconds
+   */
+  public double getMax() {
+    return max.get() / MICROS_PER_MILLI;
+  }
+
+  /**
+   * Gets the latency below which the given percentage of the recorded latencies fall.
+   *
+   * @param percentile the percentile, between 0 and 100
+   * @return the latency in milliseconds, or 0 if nothing was recorded
+   */
+  public double getPercentile(double percentile) {
+    long n = count.get();
+    if (n == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+    long seen = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(upperBoundOf(i), max.get()) / MICROS_PER_MILLI;
+      }
+    }
+    return getMax();
+  }
+
+  /** Clears the recorded latencies. */
+  public void reset() {
+    for (int i = 0; i < counts.length(); i++) {
+      counts.set(i, 0);
+    }
+    count.set(0);
+    sum.set(0);
+    max.set(0);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return String.format(
+        Locale.ROOT,
+        "count=%d mean=%.1fms p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms",
+        getCount(),
+        getMean(),
+        getPercentile(50),
+        getPercentile(90),
+        getPercentile(99),
+        getMax());
+  }
+
+  private int indexOf(long micros) {
+    if (micros < SUB_BUCKETS) {
+      return (int) micros;
+    }
+    int exponent = Math.min(MAX_EXPONENT, 63 - Long.numberOfLeadingZeros(micros));
+    int subBucket = (int) ((micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  private static long upperBoundOf(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    long subBucket = index % SUB_BUCKETS;
+    long width = 1L << (exponent - SUB_BUCKET_BITS);
+    return (1L << exponent) + (subBucket + 1) * width - 1;
+  }
+}
@@ -0,0 +1,322 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1.util;
+
+import com.ibm.cloud.sdk.core.util.Validator;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Releases recorded audio at the pace it would be captured live, for load testing recognition
+ * with {@code RecognizeWithWebsocketsOptions}. <br>
+ * Audio is released in chunks by wall-clock time, at the byte rate of the audio multiplied by a
+ * speed factor, so a speed of 1 replays in real time and a speed of 10 ten times faster. The
+ * release time of each chunk can be shifted by a random jitter, and a stall can be injected at
+ * random, after which the held-back audio is released at once as a burst, as after a network
+ * hiccup. {@link #available()} reports the audio already due, so a burst is sent in large batches.
+ * The schedule does not drift: jitter and stalls delay chunks, but later chunks are still due at
+ * their undisturbed time.
+ */
+public class PacedInputStream extends FilterInputStream {
+
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+  private static final long NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final double bytesPerNano;
+  private final int frameSize;
+  private final int chunkBytes;
+  private final long jitterNanos;
+  private final double stallProbability;
+  private final long stallNanos;
+  private final Random random;
+
+  private long startNanos;
+  private long released;
+  private long stallUntil;
+
+  /** Builder. */
+  public static class Builder {
+    private InputStream audio;
+    private PcmFormat format;
+    private int byteRate;
+    private double speed = 1;
+    private long chunkMillis = 20;
+    private long jitterMillis;
+    private double stallProbability;
+    private long stallMillis;
+    private Long seed;
+
+    /** Instantiates a new builder. */
+    public Builder() {}
+
+    /**
+     * Builds a PacedInputStream.
+     *
+     * @return the new PacedInputStream instance
+     */
+    public PacedInputStream build() {
+      return new PacedInputStream(this);
+    }
+
+    /**
+     * Set the recorded audio.
+     *
+     * @param audio the audio
+     * @return the PacedInputStream builder
+     */
+    public Builder audio(InputStream audio) {
+      this.audio = audio;
+      return this;
+    }
+
+    /**
+     * Set the format of PCM audio. Chunks are then whole frames.
+     *
+     * @param format the format
+     * @return the PacedInputStream builder
+     */
+    public Builder format(PcmFormat format) {
+      this.format = format;
+      return this;
+    }
+
+    /**
+     * Set the format from an {@code audio/l16} content type.
+     *
+     * @param contentType the content type
+     * @return the PacedInputStream builder
+     */
+    public Builder contentType(String contentType) {
+      PcmFormat pcmFormat = PcmFormat.fromContentType(contentType);
+      if (pcmFormat == null) {
+        throw new IllegalArgumentException(
+            "The byte rate of " + contentType + " is not known, set it with byteRate");
+      }
+      return format(pcmFormat);
+    }
+
+    /**
+     * Set the byte rate of audio that is not PCM, for example the bit rate of compressed audio
+     * divided by 8.
+     *
+     * @param byteRate the number of bytes per second
+     * @return the PacedInputStream builder
+     */
+    public Builder byteRate(int byteRate) {
+      this.byteRate = byteRate;
+      return this;
+    }
+
+    /**
+     * Set the speed relative to real time. Defaults to 1.
+     *
+     * @param speed the speed factor
+     * @return the PacedInputStream builder
+     */
+    public Builder speed(double speed) {
+      this.speed = speed;
+      return this;
+    }
+
+    /**
+     * Set the length of audio released at a time. Defaults to 20.
+     *
+     * @param chunkMillis the length of a chunk in milliseconds of audio
+     * @return the PacedInputStream builder
+     */
+    public Builder chunkMillis(long chunkMillis) {
+      this.chunkMillis = chunkMillis;
+      return this;
+    }
+
+    /**
+     * Set the maximum random delay of a chunk. Defaults to 0.
+     *
+     * @param jitterMillis the maximum delay in milliseconds of wall-clock time
+     * @return the PacedInputStream builder
+     */
+    public Builder jitterMillis(long jitterMillis) {
+      this.jitterMillis = jitterMillis;
+      return this;
+    }
+
+    /**
+     * Set the chance that a stall starts at a chunk, and how long it holds the audio back before
+     * it is released as a burst. Defaults to no stalls.
+     *
+     * @param stallProbability the chance per chunk, between 0.0 and 1.0
+     * @param stallMillis the length of a stall in milliseconds of wall-clock time
+     * @return the PacedInputStream builder
+     */
+    public Builder stalls(double stallProbability, long stallMillis) {
+      this.stallProbability = stallProbability;
+      this.stallMillis = stallMillis;
+      return this;
+    }
+
+    /**
+     * Set the seed of the random jitter and stalls, to replay the same disturbances.
+     *
+     * @param seed the seed
+     * @return the PacedInputStream builder
+     */
+    public Builder seed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+  }
+
+  protected PacedInputStream(Builder builder) {
+    super(builder.audio);
+    Validator.notNull(builder.audio, "audio cannot be null");
+    Validator.isTrue(
+        builder.format != null || builder.byteRate > 0, "format or byteRate must be set");
+    Validator.isTrue(builder.speed > 0, "speed must be positive");
+    Validator.isTrue(builder.chunkMillis > 0, "chunkMillis must be positive");
+    Validator.isTrue(builder.jitterMillis >= 0, "jitterMillis cannot be negative");
+    Validator.isTrue(
+        builder.stallProbability >= 0 && builder.stallProbability <= 1,
+        "stallProbability must be between 0.0 and 1.0");
+    int rate = builder.format != null ? builder.format.getByteRate() : builder.byteRate;
+    frameSize = builder.format != null ? builder.format.getFrameSize() : 1;
+    long chunk = rate * builder.chunkMillis / 1000;
+    bytesPerNano = rate * builder.speed / NANOS_PER_SECOND;
+    chunkBytes = (int) Math.max(frameSize, chunk - chunk % frameSize);
+    jitterNanos = builder.jitterMillis * NANOS_PER_MILLI;
+    stallProbability = builder.stallProbability;
+    stallNanos = builder.stallMillis * NANOS_PER_MILLI;
+    random = builder.seed != null ? new Random(builder.seed) : new Random();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.io.FilterInputStream#read()
+   */
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.io.FilterInputStream#read(byte[], int, int)
+   */
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (startNanos == 0) {
+      startNanos = nanoTime();
+    }
+    int due = (int) Math.min(len, Math.max(0, dueBytes(nanoTime()) - released));
+    // release whole frames
+    due -= due % frameSize;
+    if (due == 0) {
+      due = Math.min(len, chunkBytes);
+      awaitChunk(due);
+    }
+    int read = in.read(b, off, due);
+    if (read > 0) {
+      released += read;
+    }
+    return read;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.io.FilterInputStream#available()
+   */
+  @Override
+  public int available() throws IOException {
+    if (startNanos == 0) {
+      return 0;
+    }
+    long due = Math.max(0, dueBytes(nanoTime()) - released);
+    return (int) Math.min(due, in.available());
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.io.FilterInputStream#skip(long)
+   */
+  @Override
+  public long skip(long n) throws IOException {
+    long skipped = in.skip(n);
+    released += skipped;
+    return skipped;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.io.FilterInputStream#markSupported()
+   */
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  /**
+   * Returns the time that chunks are released by.
+   *
+   * @return the time in nanoseconds
+   */
+  long nanoTime() {
+    return System.nanoTime();
+  }
+
+  /**
+   * Waits for the next chunk.
+   *
+   * @param nanos the time to sleep in nanoseconds
+   * @throws InterruptedException if the thread is interrupted
+   */
+  void sleep(long nanos) throws InterruptedException {
+    TimeUnit.NANOSECONDS.sleep(nanos);
+  }
+
+  /** The number of bytes due by a time, zero during a stall. */
+  private long dueBytes(long now) {
+    if (now < stallUntil) {
+      return released;
+    }
+    return (long) ((now - startNanos) * bytesPerNano);
+  }
+
+  /** Sleeps until the next chunk is due, with jitter, possibly starting a stall. */
+  private void awaitChunk(int length) throws IOException {
+    long due = startNanos + (long) ((released + length) / bytesPerNano);
+    if (jitterNanos > 0) {
+      due += (long) (random.nextDouble() * jitterNanos);
+    }
+    if (stallNanos > 0 && random.nextDouble() < stallProbability) {
+      stallUntil = due + stallNanos;
+      due = stallUntil;
+    }
+    due = Math.max(due, stallUntil);
+    long wait;
+    try {
+      while ((wait = due - nanoTime()) > 0) {
+        sleep(wait);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+  }
+}
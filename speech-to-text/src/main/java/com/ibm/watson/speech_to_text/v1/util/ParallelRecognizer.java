@@ -0,0 +1,427 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1.util;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.ibm.cloud.sdk.core.http.HttpMediaType;
+import com.ibm.cloud.sdk.core.util.GsonSingleton;
+import com.ibm.cloud.sdk.core.util.Validator;
+import com.ibm.watson.speech_to_text.v1.SpeechToText;
+import com.ibm.watson.speech_to_text.v1.model.RecognizeOptions;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResults;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Recognizes a long PCM file with several concurrent {@link
+ * SpeechToText#recognize(RecognizeOptions)} requests. <br>
+ * The audio is cut near every {@code chunkSeconds} seconds, at the quietest frame within {@code
+ * searchSeconds} before that point. Each chunk is sent with {@code overlapSeconds} of audio on both
+ * sides, so that words at a cut are heard in full by at least one request. The results are moved
+ * onto the timeline of the file and merged: a word is taken from the chunk whose cut range
+ * contains its midpoint, so words heard twice in the overlap are kept once. <br>
+ * Timestamps are always requested because the merge needs them. The file is read with positional
+ * reads, so only the chunks being recognized are held in memory.
+ *
+ * <pre>
+ * SpeechRecognitionResults results = new ParallelRecognizer.Builder()
+ *     .service(service)
+ *     .options(new RecognizeOptions.Builder().model("en-US_BroadbandModel"))
+ *     .parallelism(8)
+ *     .build()
+ *     .recognize(new File("meeting.wav"));
+ * </pre>
+ */
+public class ParallelRecognizer {
+
+  private static final Gson GSON = GsonSingleton.getGsonWithoutPrettyPrinting();
+
+  private static final String THREAD_NAME = "ParallelRecognizerThread";
+  private static final double FRAME_SECONDS = 0.02;
+  private static final long UNKNOWN_DATA_SIZE = 0xFFFFFFFFL;
+
+  private static final String RESULTS = "results";
+  private static final String RESULT_INDEX = "result_index";
+  private static final String SPEAKER_LABELS = "speaker_labels";
+  private static final String WARNINGS = "warnings";
+
+  private final SpeechToText service;
+  private final RecognizeOptions.Builder options;
+  private final String contentType;
+  private final int parallelism;
+  private final double chunkSeconds;
+  private final double overlapSeconds;
+  private final double searchSeconds;
+
+  /** Builder. */
+  public static class Builder {
+    private SpeechToText service;
+    private RecognizeOptions.Builder options;
+    private String contentType;
+    private int parallelism = 4;
+    private double chunkSeconds = 60;
+    private double overlapSeconds = 2;
+    private double searchSeconds = 10;
+
+    /** Instantiates a new builder. */
+    public Builder() {}
+
+    /**
+     * Builds a ParallelRecognizer.
+     *
+     * @return the new ParallelRecognizer instance
+     */
+    public ParallelRecognizer build() {
+      return new ParallelRecognizer(this);
+    }
+
+    /**
+     * Set the service used to recognize the chunks.
+     *
+     * @param service the service
+     * @return the ParallelRecognizer builder
+     */
+    public Builder service(SpeechToText service) {
+      this.service = service;
+      return this;
+    }
+
+    /**
+     * Set the options of every request. The audio, content type and timestamps are set per chunk;
+     * the builder must not be changed while a recognition is in progress.
+     *
+     * @param options the options builder
+     * @return the ParallelRecognizer builder
+     */
+    public Builder options(RecognizeOptions.Builder options) {
+      this.options = options;
+      return this;
+    }
+
+    /**
+     * Set the content type of headerless {@code audio/l16} files. WAVE files are recognized by
+     * their extension and need no content type.
+     *
+     * @param contentType the content type
+     * @return the ParallelRecognizer builder
+     */
+    public Builder contentType(String contentType) {
+      this.contentType = contentType;
+      return this;
+    }
+
+    /**
+     * Set the number of chunks recognized at the same time. Defaults to 4.
+     *
+     * @param parallelism the number of requests
+     * @return the ParallelRecognizer builder
+     */
+    public Builder parallelism(int parallelism) {
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    /**
+     * Set the length of a chunk before it is moved to a silence. Defaults to 60 seconds.
+     *
+     * @param chunkSeconds the length in seconds
+     * @return the ParallelRecognizer builder
+     */
+    public Builder chunkSeconds(double chunkSeconds) {
+      this.chunkSeconds = chunkSeconds;
+      return this;
+    }
+
+    /**
+     * Set the audio added on both sides of a cut. Defaults to 2 seconds.
+     *
+     * @param overlapSeconds the overlap in seconds
+     * @return the ParallelRecognizer builder
+     */
+    public Builder overlapSeconds(double overlapSeconds) {
+      this.overlapSeconds = overlapSeconds;
+      return this;
+    }
+
+    /**
+     * Set how far before the nominal cut a silence is searched for. Defaults to 10 seconds.
+     *
+     * @param searchSeconds the search range in seconds
+     * @return the ParallelRecognizer builder
+     */
+    public Builder searchSeconds(double searchSeconds) {
+      this.searchSeconds = searchSeconds;
+      return this;
+    }
+  }
+
+  /**
+   * Instantiates a new parallel recognizer.
+   *
+   * @param builder the builder
+   */
+  protected ParallelRecognizer(Builder builder) {
+    Validator.notNull(builder.service, "service cannot be null");
+    Validator.notNull(builder.options, "options cannot be null");
+    Validator.isTrue(builder.parallelism > 0, "parallelism must be positive");
+    Validator.isTrue(builder.overlapSeconds >= 0, "overlapSeconds cannot be negative");
+    Validator.isTrue(
+        builder.searchSeconds >= 0 && builder.searchSeconds < builder.chunkSeconds,
+        "searchSeconds must be shorter than chunkSeconds");
+    service = builder.service;
+    options = builder.options;
+    contentType = builder.contentType;
+    parallelism = builder.parallelism;
+    chunkSeconds = builder.chunkSeconds;
+    overlapSeconds = builder.overlapSeconds;
+    searchSeconds = builder.searchSeconds;
+  }
+
+  /**
+   * Recognizes a WAVE or {@code audio/l16} file. Compressed formats such as FLAC cannot be cut
+   * without decoding them and are rejected. A file without a complete frame of audio returns
+   * empty results without a request.
+   *
+   * @param file the file
+   * @return the merged results, with times relative to the start of the file
+   * @throws IOException if the file cannot be read
+   * @throws InterruptedException if the recognition is interrupted
+   */
+  public SpeechRecognitionResults recognize(File file) throws IOException, InterruptedException {
+    FileInputStream in = new FileInputStream(file);
+    try {
+      PcmFormat format;
+      boolean wave = HttpMediaType.AUDIO_WAV.equals(MediaTypeUtils.getMediaTypeFromFile(file));
+      if (wave) {
+        // the stream is not buffered, so the channel is left at the start of the samples
+        format = PcmFormat.readWaveHeader(in);
+      } else {
+        format = contentType != null ? PcmFormat.fromContentType(contentType) : null;
+      }
+      if (format == null) {
+        throw new IllegalArgumentException(
+            "Only WAVE and audio/l16 files can be split, not " + file.getName());
+      }
+      FileChannel channel = in.getChannel();
+      long offset = channel.position();
+      long length = channel.size() - offset;
+      if (wave) {
+        // chunks such as LIST or id3 may follow the samples
+        long declared = dataChunkSize(channel, offset);
+        if (declared != 0 && declared != UNKNOWN_DATA_SIZE) {
+          length = Math.min(length, declared);
+        }
+      }
+      length -= length % format.getFrameSize();
+      return recognize(channel, offset, length, format);
+    } finally {
+      in.close();
+    }
+  }
+
+  private SpeechRecognitionResults recognize(
+      final FileChannel channel, final long offset, long length, final PcmFormat format)
+      throws IOException, InterruptedException {
+    JsonObject merged = new JsonObject();
+    merged.addProperty(RESULT_INDEX, 0);
+    if (length == 0) {
+      // the service rejects empty audio, and there is nothing to cut
+      merged.add(RESULTS, new JsonArray());
+      return GSON.fromJson(merged, SpeechRecognitionResults.class);
+    }
+    final List<Long> cuts = findCuts(channel, offset, length, format);
+    final long overlap = align(format.toBytes(overlapSeconds), format);
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            Math.min(parallelism, cuts.size() - 1),
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, THREAD_NAME);
+                thread.setDaemon(true);
+                return thread;
+              }
+            });
+
+    try {
+      List<Future<JsonObject>> chunks = new ArrayList<Future<JsonObject>>();
+      for (int i = 0; i + 1 < cuts.size(); i++) {
+        final long start = Math.max(0, cuts.get(i) - overlap);
+        final long end = Math.min(length, cuts.get(i + 1) + overlap);
+        chunks.add(
+            executor.submit(
+                new Callable<JsonObject>() {
+                  @Override
+                  public JsonObject call() throws IOException {
+                    return recognizeChunk(channel, offset + start, end - start, format);
+                  }
+                }));
+      }
+
+      JsonArray results = new JsonArray();
+      JsonArray labels = new JsonArray();
+      Set<String> warnings = new LinkedHashSet<String>();
+      for (int i = 0; i < chunks.size(); i++) {
+        JsonObject chunk = get(chunks.get(i));
+        double start = format.toSeconds(Math.max(0, cuts.get(i) - overlap));
+        SpeechResultsUtils.shift(chunk, start, 0);
+        // the first and last chunks keep everything before and after their outer cut
+        double from = i == 0 ? Double.NEGATIVE_INFINITY : format.toSeconds(cuts.get(i));
+        double to =
+            i == chunks.size() - 1 ? Double.POSITIVE_INFINITY : format.toSeconds(cuts.get(i + 1));
+        SpeechResultsUtils.trim(chunk, from, to);
+        addAll(results, chunk, RESULTS);
+        addAll(labels, chunk, SPEAKER_LABELS);
+        if (chunk.has(WARNINGS)) {
+          for (JsonElement warning : chunk.getAsJsonArray(WARNINGS)) {
+            warnings.add(warning.getAsString());
+          }
+        }
+      }
+
+      merged.add(RESULTS, results);
+      if (labels.size() > 0) {
+        merged.add(SPEAKER_LABELS, labels);
+      }
+      if (!warnings.isEmpty()) {
+        merged.add(WARNINGS, GSON.toJsonTree(warnings));
+      }
+      return GSON.fromJson(merged, SpeechRecognitionResults.class);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /** Returns the byte positions of the cuts, including 0 and {@code length}. */
+  private List<Long> findCuts(FileChannel channel, long offset, long length, PcmFormat format)
+      throws IOException {
+    VoiceActivityDetector detector = new VoiceActivityDetector(format);
+    long chunk = align(format.toBytes(chunkSeconds), format);
+    long search = align(format.toBytes(searchSeconds), format);
+    int frame = (int) Math.max(format.getFrameSize(), align(format.toBytes(FRAME_SECONDS), format));
+    byte[] window = new byte[(int) search + frame];
+
+    List<Long> cuts = new ArrayList<Long>();
+    cuts.add(0L);
+    long previous = 0;
+    // a short tail is added to the last chunk rather than sent on its own
+    while (length - previous > chunk + search) {
+      long nominal = previous + chunk;
+      long windowStart = nominal - search;
+      int read = readFully(channel, offset + windowStart, window, window.length);
+
+      long cut = nominal;
+      double quietest = Double.MAX_VALUE;
+      for (int position = 0; position + frame <= read; position += frame) {
+        double energy = detector.rms(window, position, frame);
+        if (energy < quietest) {
+          quietest = energy;
+          cut = windowStart + position + align(frame / 2, format);
+        }
+      }
+      cuts.add(cut);
+      previous = cut;
+    }
+    cuts.add(length);
+    return cuts;
+  }
+
+  private JsonObject recognizeChunk(
+      FileChannel channel, long position, long length, PcmFormat format) throws IOException {
+    byte[] audio = new byte[(int) length];
+    readFully(channel, position, audio, audio.length);
+    RecognizeOptions chunkOptions;
+    synchronized (options) {
+      chunkOptions =
+          options
+              .audio(new ByteArrayInputStream(audio))
+              .contentType(format.toContentType())
+              .timestamps(true)
+              .build();
+    }
+    SpeechRecognitionResults results = service.recognize(chunkOptions).execute().getResult();
+    return GSON.toJsonTree(results).getAsJsonObject();
+  }
+
+  /**
+   * Returns the size declared by the header of the data chunk, which ends at {@code offset}.
+   * Streaming writers leave it at 0 or {@link #UNKNOWN_DATA_SIZE}, as they do not know it yet.
+   */
+  private static long dataChunkSize(FileChannel channel, long offset) throws IOException {
+    byte[] size = new byte[4];
+    if (readFully(channel, offset - 4, size, 4) < 4) {
+      return 0;
+    }
+    return (size[0] & 0xFFL)
+        | (size[1] & 0xFFL) << 8
+        | (size[2] & 0xFFL) << 16
+        | (size[3] & 0xFFL) << 24;
+  }
+
+  private static int readFully(FileChannel channel, long position, byte[] buffer, int length)
+      throws IOException {
+    ByteBuffer target = ByteBuffer.wrap(buffer, 0, length);
+    while (target.hasRemaining()) {
+      // positional reads do not move the channel, so chunks can be read concurrently
+      int read = channel.read(target, position + target.position());
+      if (read < 0) {
+        break;
+      }
+    }
+    return target.position();
+  }
+
+  private static JsonObject get(Future<JsonObject> chunk)
+      throws IOException, InterruptedException {
+    try {
+      return chunk.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  private static void addAll(JsonArray target, JsonObject json, String name) {
+    JsonElement values = json.get(name);
+    if (values != null && values.isJsonArray()) {
+      target.addAll(values.getAsJsonArray());
+    }
+  }
+
+  private static long align(long bytes, PcmFormat format) {
+    return bytes - bytes % format.getFrameSize();
+  }
+}
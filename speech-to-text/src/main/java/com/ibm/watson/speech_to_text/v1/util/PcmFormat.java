@@ -0,0 +1,313 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1.util;
+
+import com.ibm.cloud.sdk.core.http.HttpMediaType;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+/**
+ * Describes 16-bit linear PCM audio, as sent to the service with the {@code audio/l16} content
+ * type or wrapped in a WAVE container.
+ */
+public final class PcmFormat {
+
+  private static final String RATE = "rate";
+  private static final String CHANNELS = "channels";
+  private static final String ENDIANNESS = "endianness";
+  private static final String BIG_ENDIAN = "big-endian";
+  private static final String LITTLE_ENDIAN = "little-endian";
+
+  private static final int BYTES_PER_SAMPLE = 2;
+  private static final int WAVE_FORMAT_PCM = 1;
+  private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+  private final int sampleRate;
+  private final int channels;
+  private final boolean bigEndian;
+
+  /**
+   * Instantiates a new PCM format.
+   *
+   * @param sampleRate the sample rate in Hertz
+   * @param channels the number of interleaved channels
+   * @param bigEndian whether samples are stored big-endian
+   */
+  public PcmFormat(int sampleRate, int channels, boolean bigEndian) {
+    if (sampleRate <= 0) {
+      throw new IllegalArgumentException("sampleRate must be positive");
+    }
+    if (channels <= 0) {
+      throw new IllegalArgumentException("channels must be positive");
+    }
+    this.sampleRate = sampleRate;
+    this.channels = channels;
+    this.bigEndian = bigEndian;
+  }
+
+  /**
+   * Parses an {@code audio/l16} content type such as {@code audio/l16;rate=16000;channels=2}.
+   *
+   * @param contentType the content type
+   * @return the format, or null if the content type is not {@code audio/l16} or has no rate
+   */
+  public static PcmFormat fromContentType(String contentType) {
+    if (contentType == null) {
+      return null;
+    }
+    String[] parts = contentType.split(";");
+    if (!HttpMediaType.AUDIO_RAW.equalsIgnoreCase(parts[0].trim())) {
+      return null;
+    }
+
+    int rate = -1;
+    int channels = 1;
+    boolean bigEndian = false;
+    for (int i = 1; i < parts.length; i++) {
+      int eq = parts[i].indexOf('=');
+      if (eq == -1) {
+        continue;
+      }
+      String name = parts[i].substring(0, eq).trim().toLowerCase(Locale.ROOT);
+      String value = parts[i].substring(eq + 1).trim();
+      if (RATE.equals(name)) {
+        rate = Integer.parseInt(value);
+      } else if (CHANNELS.equals(name)) {
+        channels = Integer.parseInt(value);
+      } else if (ENDIANNESS.equals(name)) {
+        bigEndian = BIG_ENDIAN.equalsIgnoreCase(value);
+      }
+    }
+    return rate > 0 ? new PcmFormat(rate, channels, bigEndian) : null;
+  }
+
+  /**
+   * Reads a RIFF/WAVE header from the stream, leaving the stream positioned at the first byte of
+   * the {@code data} chunk.
+   *
+   * @param is the input stream
+   * @return the format of the samples in the {@code data} chunk
+   * @throws IOException if the header cannot be read or does not describe 16-bit PCM audio
+   */
+  public static PcmFormat readWaveHeader(InputStream is) throws IOException {
+    DataInputStream in = new DataInputStream(is);
+    byte[] id = new byte[4];
+
+    in.readFully(id);
+    if (!"RIFF".equals(new String(id, "US-ASCII"))) {
+      throw new IOException("Not a RIFF stream");
+    }
+    readIntLe(in);
+    in.readFully(id);
+    if (!"WAVE".equals(new String(id, "US-ASCII"))) {
+      throw new IOException("Not a WAVE stream");
+    }
+
+    PcmFormat format = null;
+    while (true) {
+      in.readFully(id);
+      String chunk = new String(id, "US-ASCII");
+      long size = readIntLe(in) & 0xFFFFFFFFL;
+      if ("fmt ".equals(chunk)) {
+        int audioFormat = readShortLe(in);
+        int channels = readShortLe(in);
+        int rate = readIntLe(in);
+        readIntLe(in); // byte rate
+        readShortLe(in); // block align
+        int bits = readShortLe(in);
+        if ((audioFormat != WAVE_FORMAT_PCM && audioFormat != WAVE_FORMAT_EXTENSIBLE)
+            || bits != 16) {
+          throw new IOException("Only 16-bit PCM WAVE audio is supported");
+        }
+        format = new PcmFormat(rate, channels, false);
+        skipFully(in, size - 16 + (size & 1));
+      } else if ("data".equals(chunk)) {
+        if (format == null) {
+          throw new IOException("WAVE data chunk precedes fmt chunk");
+        }
+        return format;
+      } else {
+        skipFully(in, size + (size & 1));
+      }
+    }
+  }
+
+  /**
+   * Gets the sample rate.
+   *
+   * @return the sample rate in Hertz
+   */
+  public int getSampleRate() {
+    return sampleRate;
+  }
+
+  /**
+   * Gets the number of channels.
+   *
+   * @return the number of interleaved channels
+   */
+  public int getChannels() {
+    return channels;
+  }
+
+  /**
+   * Whether samples are stored big-endian.
+   *
+   * @return true for big-endian samples, false for little-endian samples
+   */
+  public boolean isBigEndian() {
+    return bigEndian;
+  }
+
+  /**
+   * Gets the size of one frame, that is one sample for every channel.
+   *
+   * @return the frame size in bytes
+   */
+  public int getFrameSize() {
+    return BYTES_PER_SAMPLE * channels;
+  }
+
+  /**
+   * Gets the number of bytes per second of audio.
+   *
+   * @return the byte rate
+   */
+  public int getByteRate() {
+    return sampleRate * getFrameSize();
+  }
+
+  /**
+   * Converts a byte count into seconds of audio.
+   *
+   * @param bytes the number of bytes
+   * @return the duration in seconds
+   */
+  public double toSeconds(long bytes) {
+    return (double) bytes / getByteRate();
+  }
+
+  /**
+   * Converts seconds of audio into a byte count, rounded down to a whole frame.
+   *
+   * @param seconds the duration in seconds
+   * @return the number of bytes
+   */
+  public long toBytes(double seconds) {
+    long frames = (long) (seconds * sampleRate);
+    return frames * getFrameSize();
+  }
+
+  /**
+   * Reads the sample at the given byte offset.
+   *
+   * @param buffer the buffer
+   * @param offset the offset of the first byte of the sample
+   * @return the signed sample value
+   */
+  public short getSample(byte[] buffer, int offset) {
+    if (bigEndian) {
+      return (short) ((buffer[offset] << 8) | (buffer[offset + 1] & 0xFF));
+    }
+    return (short) ((buffer[offset + 1] << 8) | (buffer[offset] & 0xFF));
+  }
+
+  /**
+   * Writes a sample at the given byte offset.
+   *
+   * @param buffer the buffer
+   * @param offset the offset of the first byte of the sample
+   * @param sample the signed sample value
+   */
+  public void putSample(byte[] buffer, int offset, short sample) {
+    if (bigEndian) {
+      buffer[offset] = (byte) (sample >> 8);
+      buffer[offset + 1] = (byte) sample;
+    } else {
+      buffer[offset] = (byte) sample;
+      buffer[offset + 1] = (byte) (sample >> 8);
+    }
+  }
+
+  /**
+   * Returns the {@code audio/l16} content type that describes this format.
+   *
+   * @return the content type
+   */
+  public String toContentType() {
+    return HttpMediaType.AUDIO_RAW
+        + ";" + RATE + "=" + sampleRate
+        + ";" + CHANNELS + "=" + channels
+        + ";" + ENDIANNESS + "=" + (bigEndian ? BIG_ENDIAN : LITTLE_ENDIAN);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.lang.Object#equals(java.lang.Object)
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof PcmFormat)) {
+      return false;
+    }
+    PcmFormat other = (PcmFormat) o;
+    return sampleRate == other.sampleRate
+        && channels == other.channels
+        && bigEndian == other.bigEndian;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.lang.Object#hashCode()
+   */
+  @Override
+  public int hashCode() {
+    return (sampleRate * 31 + channels) * 2 + (bigEndian ? 1 : 0);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return toContentType();
+  }
+
+  private static int readIntLe(DataInputStream in) throws IOException {
+    return Integer.reverseBytes(in.readInt());
+  }
+
+  private static int readShortLe(DataInputStream in) throws IOException {
+    return Short.reverseBytes(in.readShort()) & 0xFFFF;
+  }
+
+  private static void skipFully(InputStream in, long n) throws IOException {
+    while (n > 0) {
+      long skipped = in.skip(n);
+      if (skipped <= 0) {
+        if (in.read() == -1) {
+          throw new EOFException();
+        }
+        skipped = 1;
+      }
+      n -= skipped;
+    }
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1.util;
+
+import com.ibm.watson.speech_to_text.v1.SpeechToText;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Shortens long silences in 16-bit PCM audio before it is sent to the {@link SpeechToText} service.
+ * <br>
+ * Every silence longer than {@code keepSilence} seconds is cut down to {@code keepSilence}: the
+ * first half is kept after the speech that precedes it and the last half before the speech that
+ * follows, so the service still sees a pause. The {@link AudioTimeMap} returned by {@link
+ * #getTimeMap()} converts times in the results back to the original audio, for example with {@link
+ * AudioTimeMap#remap(com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResults)}. <br>
+ * The stream emits raw PCM; send it with the content type returned by {@link #getContentType()}.
+ * All buffers are allocated up front, so no memory is allocated per frame.
+ */
+public class SilenceSuppressingInputStream extends InputStream {
+
+  /** The default duration of the frames that are classified. (value is 0.02) */
+  public static final double DEFAULT_FRAME_SECONDS = 0.02;
+
+  /** The default duration a silence is shortened to. (value is 0.5) */
+  public static final double DEFAULT_KEEP_SILENCE = 0.5;
+
+  private final InputStream in;
+  private final VoiceActivityDetector detector;
+  private final AudioTimeMap timeMap;
+
+  private final byte[] frame;
+  private final long halfSilence;
+
+  // silence held back until it is known whether it gets dropped, as a circular buffer
+  private final byte[] held;
+  private int heldStart;
+  private int heldLength;
+
+  // bytes ready to be read, as a circular buffer
+  private final byte[] ready;
+  private int readyStart;
+  private int readyLength;
+
+  private long silentRun;
+  private long removed;
+  private long removedInSilence;
+  private long emitted;
+  private boolean eof;
+
+  /**
+   * Instantiates a new silence suppressing stream with the default settings.
+   *
+   * @param in the PCM audio
+   * @param format the format of the audio
+   */
+  public SilenceSuppressingInputStream(InputStream in, PcmFormat format) {
+    this(in, new VoiceActivityDetector(format), DEFAULT_FRAME_SECONDS, DEFAULT_KEEP_SILENCE);
+  }
+
+  /**
+   * Instantiates a new silence suppressing stream.
+   *
+   * @param in the PCM audio
+   * @param detector the detector that classifies the frames
+   * @param frameSeconds the duration of the frames that are classified
+   * @param keepSilence the duration a silence is shortened to
+   */
+  public SilenceSuppressingInputStream(
+      InputStream in, VoiceActivityDetector detector, double frameSeconds, double keepSilence) {
+    if (in == null) {
+      throw new IllegalArgumentException("in cannot be null");
+    }
+    PcmFormat format = detector.getFormat();
+    this.in = in;
+    this.detector = detector;
+    this.timeMap = new AudioTimeMap(format);
+    this.frame = new byte[(int) Math.max(format.getFrameSize(), format.toBytes(frameSeconds))];
+
+    this.halfSilence = format.toBytes(keepSilence / 2);
+    this.held = new byte[(int) (format.toBytes(keepSilence) - halfSilence)];
+    this.ready = new byte[held.length + frame.length];
+  }
+
+  /**
+   * Creates a silence suppressing stream for WAVE audio. The WAVE header is consumed; the stream
+   * emits the PCM samples only.
+   *
+   * @param wave the WAVE audio
+   * @return the stream
+   * @throws IOException if the WAVE header cannot be read
+   */
+  public static SilenceSuppressingInputStream fromWave(InputStream wave) throws IOException {
+    return new SilenceSuppressingInputStream(wave, PcmFormat.readWaveHeader(wave));
+  }
+
+  /**
+   * Gets the content type of the audio emitted by this stream.
+   *
+   * @return the {@code audio/l16} content type
+   */
+  public String getContentType() {
+    return detector.getFormat().toContentType();
+  }
+
+  /**
+   * Gets the map from times in the emitted audio to times in the original audio.
+   *
+   * @return the time map
+   */
+  public AudioTimeMap getTimeMap() {
+    return timeMap;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.io.InputStream#read()
+   */
+  @Override
+  public int read() throws IOException {
+    if (!fill()) {
+      return -1;
+    }
+    int b = ready[readyStart] & 0xFF;
+    readyStart = (readyStart + 1) % ready.length;
+    readyLength--;
+    return b;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.io.InputStream#read(byte[], int, int)
+   */
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (!fill()) {
+      return -1;
+    }
+    int n = Math.min(len, readyLength);
+    int first = Math.min(n, ready.length - readyStart);
+    System.arraycopy(ready, readyStart, b, off, first);
+    System.arraycopy(ready, 0, b, off + first, n - first);
+    readyStart = (readyStart + n) % ready.length;
+    readyLength -= n;
+    return n;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.io.InputStream#available()
+   */
+  @Override
+  public int available() {
+    return readyLength;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.io.InputStream#close()
+   */
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  /** Processes frames until there is something to read, returning false at the end. */
+  private boolean fill() throws IOException {
+    while (readyLength == 0 && !eof) {
+      int length = readFrame();
+      if (length == 0) {
+        eof = true;
+        releaseHeld();
+      } else if (detector.isSpeech(frame, 0, length)) {
+        silentRun = 0;
+        releaseHeld();
+        emit(frame, 0, length);
+      } else {
+        // emit the first half of the silence, hold back the rest
+        int kept = (int) Math.max(0, Math.min(length, halfSilence - silentRun));
+        silentRun += length;
+        emit(frame, 0, kept);
+        hold(kept, length - kept);
+      }
+    }
+    return readyLength > 0;
+  }
+
+  private int readFrame() throws IOException {
+    int filled = 0;
+    int read;
+    while (filled < frame.length && (read = in.read(frame, filled, frame.length - filled)) != -1) {
+      filled += read;
+    }
+    return filled;
+  }
+
+  /** Appends part of a silent frame to the held silence, dropping the oldest bytes on overflow. */
+  private void hold(int offset, int length) {
+    if (held.length == 0) {
+      removedInSilence += length;
+      return;
+    }
+    if (length > held.length) {
+      removedInSilence += length - held.length;
+      offset += length - held.length;
+      length = held.length;
+    }
+    int overflow = heldLength + length - held.length;
+    if (overflow > 0) {
+      heldStart = (heldStart + overflow) % held.length;
+      heldLength -= overflow;
+      removedInSilence += overflow;
+    }
+    int end = (heldStart + heldLength) % held.length;
+    int first = Math.min(length, held.length - end);
+    System.arraycopy(frame, offset, held, end, first);
+    System.arraycopy(frame, offset + first, held, 0, length - first);
+    heldLength += length;
+  }
+
+  /** Emits the held silence, recording the bytes dropped before it in the time map. */
+  private void releaseHeld() {
+    if (removedInSilence > 0) {
+      removed += removedInSilence;
+      removedInSilence = 0;
+      timeMap.mark(emitted, removed);
+    }
+    int first = Math.min(heldLength, held.length - heldStart);
+    emit(held, heldStart, first);
+    emit(held, 0, heldLength - first);
+    heldStart = 0;
+    heldLength = 0;
+  }
+
+  private void emit(byte[] source, int offset, int length) {
+    int end = (readyStart + readyLength) % ready.length;
+    int first = Math.min(length, ready.length - end);
+    System.arraycopy(source, offset, ready, end, first);
+    System.arraycopy(source, offset + first, ready, 0, length - first);
+    readyLength += length;
+    emitted += length;
+  }
+}
@@ -0,0 +1,308 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1.util;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.ibm.cloud.sdk.core.util.GsonSingleton;
+import com.ibm.watson.speech_to_text.v1.SpeechToText;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionAlternative;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResult;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResults;
+import com.ibm.watson.speech_to_text.v1.model.SpeechTimestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Utilities to rewrite {@link SpeechRecognitionResults} returned by the {@link SpeechToText}
+ * service, for example to move the results of one recognition request onto the timeline of a
+ * longer audio stream.
+ *
+ * @see SpeechToText
+ */
+public final class SpeechResultsUtils {
+
+  private static final Gson GSON = GsonSingleton.getGsonWithoutPrettyPrinting();
+
+  private static final String RESULTS = "results";
+  private static final String RESULT_INDEX = "result_index";
+  private static final String ALTERNATIVES = "alternatives";
+  private static final String TRANSCRIPT = "transcript";
+  private static final String TIMESTAMPS = "timestamps";
+  private static final String WORD_CONFIDENCE = "word_confidence";
+  private static final String KEYWORDS_RESULT = "keywords_result";
+  private static final String WORD_ALTERNATIVES = "word_alternatives";
+  private static final String SPEAKER_LABELS = "speaker_labels";
+  private static final String START_TIME = "start_time";
+  private static final String END_TIME = "end_time";
+  private static final String FROM = "from";
+  private static final String TO = "to";
+
+  private SpeechResultsUtils() {
+    // This is a utility class - no instantiation allowed.
+  }
+
+  /**
+   * Returns a copy of the results with every time value passed through {@code timeMapping} and the
+   * result index moved by {@code indexOffset}. Word timestamps, keyword matches, word alternatives
+   * and speaker labels are all remapped.
+   *
+   * @param results the results to rewrite
+   * @param timeMapping maps a time in seconds on the original timeline to the new timeline
+   * @param indexOffset the value added to the result index
+   * @return the rewritten results
+   */
+  public static SpeechRecognitionResults remap(
+      SpeechRecognitionResults results, DoubleUnaryOperator timeMapping, long indexOffset) {
+    JsonObject json = GSON.toJsonTree(results).getAsJsonObject();
+    remap(json, timeMapping, indexOffset);
+    return GSON.fromJson(json, SpeechRecognitionResults.class);
+  }
+
+  /**
+   * Shifts every time value of the results by {@code timeOffset} seconds and moves the result index
+   * by {@code indexOffset}.
+   *
+   * @param results the results to rewrite
+   * @param timeOffset the number of seconds added to every time value
+   * @param indexOffset the value added to the result index
+   * @return the rewritten results
+   */
+  public static SpeechRecognitionResults shift(
+      SpeechRecognitionResults results, double timeOffset, long indexOffset) {
+    return remap(results, offsetBy(timeOffset), indexOffset);
+  }
+
+  /**
+   * Rewrites the JSON form of a {@link SpeechRecognitionResults} message in place.
+   *
+   * @param json the JSON message, as sent by the service
+   * @param timeMapping maps a time in seconds on the original timeline to the new timeline
+   * @param indexOffset the value added to the result index
+   */
+  public static void remap(JsonObject json, DoubleUnaryOperator timeMapping, long indexOffset) {
+    if (json.has(RESULT_INDEX)) {
+      json.addProperty(RESULT_INDEX, json.get(RESULT_INDEX).getAsLong() + indexOffset);
+    }
+    for (JsonElement result : arrayOrEmpty(json, RESULTS)) {
+      JsonObject resultObject = result.getAsJsonObject();
+      for (JsonElement alternative : arrayOrEmpty(resultObject, ALTERNATIVES)) {
+        for (JsonElement timestamp : arrayOrEmpty(alternative.getAsJsonObject(), TIMESTAMPS)) {
+          JsonArray triple = timestamp.getAsJsonArray();
+          for (int i = 1; i < triple.size(); i++) {
+            double time = triple.get(i).getAsDouble();
+            triple.set(i, new JsonPrimitive(timeMapping.applyAsDouble(time)));
+          }
+        }
+      }
+      if (resultObject.has(KEYWORDS_RESULT) && resultObject.get(KEYWORDS_RESULT).isJsonObject()) {
+        for (Map.Entry<String, JsonElement> keyword :
+            resultObject.getAsJsonObject(KEYWORDS_RESULT).entrySet()) {
+          for (JsonElement match : keyword.getValue().getAsJsonArray()) {
+            remapProperty(match.getAsJsonObject(), START_TIME, timeMapping);
+            remapProperty(match.getAsJsonObject(), END_TIME, timeMapping);
+          }
+        }
+      }
+      for (JsonElement alternative : arrayOrEmpty(resultObject, WORD_ALTERNATIVES)) {
+        remapProperty(alternative.getAsJsonObject(), START_TIME, timeMapping);
+        remapProperty(alternative.getAsJsonObject(), END_TIME, timeMapping);
+      }
+    }
+    for (JsonElement label : arrayOrEmpty(json, SPEAKER_LABELS)) {
+      remapProperty(label.getAsJsonObject(), FROM, timeMapping);
+      remapProperty(label.getAsJsonObject(), TO, timeMapping);
+    }
+  }
+
+  /**
+   * Shifts every time value of the JSON form of a {@link SpeechRecognitionResults} message in
+   * place.
+   *
+   * @param json the JSON message, as sent by the service
+   * @param timeOffset the number of seconds added to every time value
+   * @param indexOffset the value added to the result index
+   */
+  public static void shift(JsonObject json, double timeOffset, long indexOffset) {
+    remap(json, offsetBy(timeOffset), indexOffset);
+  }
+
+  /**
+   * Keeps only the words of the JSON form of a {@link SpeechRecognitionResults} message whose
+   * midpoint lies in {@code [from, to)}, rewriting it in place. A result that loses some words
+   * keeps only its best alternative, with the transcript rebuilt from the remaining words; a result
+   * that loses all words is removed. Keyword matches, word alternatives and speaker labels are
+   * filtered the same way. Results without timestamps are kept as they are.
+   *
+   * @param json the JSON message, as sent by the service
+   * @param from the start of the kept time range in seconds
+   * @param to the end of the kept time range in seconds, exclusive
+   */
+  public static void trim(JsonObject json, double from, double to) {
+    if (json.has(RESULTS)) {
+      JsonArray kept = new JsonArray();
+      for (JsonElement result : arrayOrEmpty(json, RESULTS)) {
+        if (trimResult(result.getAsJsonObject(), from, to)) {
+          kept.add(result);
+        }
+      }
+      json.add(RESULTS, kept);
+    }
+    if (json.has(SPEAKER_LABELS)) {
+      json.add(SPEAKER_LABELS, filter(arrayOrEmpty(json, SPEAKER_LABELS), FROM, TO, from, to));
+    }
+  }
+
+  /**
+   * Returns the start time of the first timestamped word of the best alternative.
+   *
+   * @param result the result
+   * @return the start time in seconds, or {@link Double#NaN} if the result has no timestamps
+   */
+  public static double getStartTime(SpeechRecognitionResult result) {
+    List<SpeechTimestamp> timestamps = getTimestamps(result);
+    if (timestamps == null || timestamps.isEmpty()) {
+      return Double.NaN;
+    }
+    return timestamps.get(0).getStartTime();
+  }
+
+  /**
+   * Returns the end time of the last timestamped word of the best alternative.
+   *
+   * @param result the result
+   * @return the end time in seconds, or {@link Double#NaN} if the result has no timestamps
+   */
+  public static double getEndTime(SpeechRecognitionResult result) {
+    List<SpeechTimestamp> timestamps = getTimestamps(result);
+    if (timestamps == null || timestamps.isEmpty()) {
+      return Double.NaN;
+    }
+    return timestamps.get(timestamps.size() - 1).getEndTime();
+  }
+
+  private static DoubleUnaryOperator offsetBy(final double timeOffset) {
+    return new DoubleUnaryOperator() {
+      @Override
+      public double applyAsDouble(double time) {
+        return time + timeOffset;
+      }
+    };
+  }
+
+  private static List<SpeechTimestamp> getTimestamps(SpeechRecognitionResult result) {
+    List<SpeechRecognitionAlternative> alternatives = result.getAlternatives();
+    if (alternatives == null || alternatives.isEmpty()) {
+      return null;
+    }
+    return alternatives.get(0).getTimestamps();
+  }
+
+  /** Trims the best alternative of a result, returning false if no word is left. */
+  private static boolean trimResult(JsonObject result, double from, double to) {
+    JsonArray alternatives = arrayOrEmpty(result, ALTERNATIVES);
+    if (alternatives.size() == 0) {
+      return true;
+    }
+    JsonObject best = alternatives.get(0).getAsJsonObject();
+    JsonArray timestamps = arrayOrEmpty(best, TIMESTAMPS);
+    if (timestamps.size() == 0) {
+      return true;
+    }
+
+    // word_confidence lists the same words as timestamps, in the same order
+    JsonArray confidences = arrayOrEmpty(best, WORD_CONFIDENCE);
+    JsonArray keptTimestamps = new JsonArray();
+    JsonArray keptConfidences = new JsonArray();
+    StringBuilder transcript = new StringBuilder();
+    for (int i = 0; i < timestamps.size(); i++) {
+      JsonArray triple = timestamps.get(i).getAsJsonArray();
+      if (contains(triple.get(1).getAsDouble(), triple.get(2).getAsDouble(), from, to)) {
+        keptTimestamps.add(triple);
+        if (i < confidences.size()) {
+          keptConfidences.add(confidences.get(i));
+        }
+        transcript.append(triple.get(0).getAsString()).append(' ');
+      }
+    }
+    if (keptTimestamps.size() == 0) {
+      return false;
+    }
+    if (keptTimestamps.size() == timestamps.size()) {
+      return true;
+    }
+
+    best.addProperty(TRANSCRIPT, transcript.toString());
+    best.add(TIMESTAMPS, keptTimestamps);
+    if (best.has(WORD_CONFIDENCE)) {
+      best.add(WORD_CONFIDENCE, keptConfidences);
+    }
+    JsonArray onlyBest = new JsonArray();
+    onlyBest.add(best);
+    result.add(ALTERNATIVES, onlyBest);
+
+    if (result.has(KEYWORDS_RESULT) && result.get(KEYWORDS_RESULT).isJsonObject()) {
+      JsonObject keywords = new JsonObject();
+      for (Map.Entry<String, JsonElement> keyword :
+          result.getAsJsonObject(KEYWORDS_RESULT).entrySet()) {
+        JsonArray matches =
+            filter(keyword.getValue().getAsJsonArray(), START_TIME, END_TIME, from, to);
+        if (matches.size() > 0) {
+          keywords.add(keyword.getKey(), matches);
+        }
+      }
+      result.add(KEYWORDS_RESULT, keywords);
+    }
+    if (result.has(WORD_ALTERNATIVES)) {
+      result.add(
+          WORD_ALTERNATIVES,
+          filter(arrayOrEmpty(result, WORD_ALTERNATIVES), START_TIME, END_TIME, from, to));
+    }
+    return true;
+  }
+
+  private static JsonArray filter(
+      JsonArray objects, String startName, String endName, double from, double to) {
+    JsonArray kept = new JsonArray();
+    for (JsonElement element : objects) {
+      JsonObject object = element.getAsJsonObject();
+      double start = object.get(startName).getAsDouble();
+      if (contains(start, object.get(endName).getAsDouble(), from, to)) {
+        kept.add(object);
+      }
+    }
+    return kept;
+  }
+
+  private static boolean contains(double start, double end, double from, double to) {
+    double middle = (start + end) / 2;
+    return middle >= from && middle < to;
+  }
+
+  private static void remapProperty(
+      JsonObject object, String name, DoubleUnaryOperator timeMapping) {
+    JsonElement value = object.get(name);
+    if (value != null && !value.isJsonNull()) {
+      object.addProperty(name, timeMapping.applyAsDouble(value.getAsDouble()));
+    }
+  }
+
+  private static JsonArray arrayOrEmpty(JsonObject object, String name) {
+    JsonElement value = object.get(name);
+    return value != null && value.isJsonArray() ? value.getAsJsonArray() : new JsonArray();
+  }
+}
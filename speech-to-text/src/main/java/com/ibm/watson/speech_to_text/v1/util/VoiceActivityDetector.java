@@ -0,0 +1,135 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1.util;
+
+/**
+ * Classifies frames of 16-bit PCM audio as speech or silence from their energy and zero-crossing
+ * rate. <br>
+ * A frame is speech if its RMS level reaches the energy threshold, or if it reaches a quarter of
+ * the threshold with a zero-crossing rate typical of unvoiced consonants such as "s" and "f". The
+ * detector keeps no state between frames and does not allocate.
+ */
+public final class VoiceActivityDetector {
+
+  /** The default RMS level, relative to full scale, of speech. (value is 0.01, or -40 dBFS) */
+  public static final double DEFAULT_ENERGY_THRESHOLD = 0.01;
+
+  /** The default fraction of samples at which the signal crosses zero for unvoiced speech. */
+  public static final double DEFAULT_ZERO_CROSSING_THRESHOLD = 0.25;
+
+  private static final double FULL_SCALE = 32768.0;
+  private static final double UNVOICED_ENERGY_RATIO = 0.25;
+
+  private final PcmFormat format;
+  private final double energyThreshold;
+  private final double zeroCrossingThreshold;
+
+  /**
+   * Instantiates a new detector with the default thresholds.
+   *
+   * @param format the format of the audio
+   */
+  public VoiceActivityDetector(PcmFormat format) {
+    this(format, DEFAULT_ENERGY_THRESHOLD, DEFAULT_ZERO_CROSSING_THRESHOLD);
+  }
+
+  /**
+   * Instantiates a new detector.
+   *
+   * @param format the format of the audio
+   * @param energyThreshold the RMS level, relative to full scale, at which a frame is speech
+   * @param zeroCrossingThreshold the zero-crossing rate at which a quieter frame is still speech
+   */
+  public VoiceActivityDetector(
+      PcmFormat format, double energyThreshold, double zeroCrossingThreshold) {
+    if (format == null) {
+      throw new IllegalArgumentException("format cannot be null");
+    }
+    this.format = format;
+    this.energyThreshold = energyThreshold;
+    this.zeroCrossingThreshold = zeroCrossingThreshold;
+  }
+
+  /**
+   * Gets the format of the audio.
+   *
+   * @return the format
+   */
+  public PcmFormat getFormat() {
+    return format;
+  }
+
+  /**
+   * Returns the RMS level of a span of audio, relative to full scale.
+   *
+   * @param buffer the buffer
+   * @param offset the offset of the first byte
+   * @param length the number of bytes
+   * @return the RMS level in the range of 0.0 to 1.0
+   */
+  public double rms(byte[] buffer, int offset, int length) {
+    int samples = length / 2;
+    if (samples == 0) {
+      return 0;
+    }
+    double sum = 0;
+    for (int i = offset, end = offset + samples * 2; i < end; i += 2) {
+      double sample = format.getSample(buffer, i) / FULL_SCALE;
+      sum += sample * sample;
+    }
+    return Math.sqrt(sum / samples);
+  }
+
+  /**
+   * Returns the fraction of consecutive samples of the first channel that cross zero.
+   *
+   * @param buffer the buffer
+   * @param offset the offset of the first byte
+   * @param length the number of bytes
+   * @return the zero-crossing rate in the range of 0.0 to 1.0
+   */
+  public double zeroCrossingRate(byte[] buffer, int offset, int length) {
+    int frameSize = format.getFrameSize();
+    int frames = length / frameSize;
+    if (frames < 2) {
+      return 0;
+    }
+    int crossings = 0;
+    boolean negative = format.getSample(buffer, offset) < 0;
+    for (int i = offset + frameSize, end = offset + frames * frameSize; i < end; i += frameSize) {
+      boolean sign = format.getSample(buffer, i) < 0;
+      if (sign != negative) {
+        crossings++;
+        negative = sign;
+      }
+    }
+    return (double) crossings / (frames - 1);
+  }
+
+  /**
+   * Classifies a frame of audio.
+   *
+   * @param buffer the buffer
+   * @param offset the offset of the first byte of the frame
+   * @param length the number of bytes in the frame
+   * @return true if the frame contains speech
+   */
+  public boolean isSpeech(byte[] buffer, int offset, int length) {
+    double rms = rms(buffer, offset, length);
+    if (rms >= energyThreshold) {
+      return true;
+    }
+    return rms >= energyThreshold * UNVOICED_ENERGY_RATIO
+        && zeroCrossingRate(buffer, offset, length) >= zeroCrossingThreshold;
+  }
+}
@@ -0,0 +1,692 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1.websocket;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.ibm.cloud.sdk.core.http.HttpMediaType;
+import com.ibm.cloud.sdk.core.util.GsonSingleton;
+import com.ibm.cloud.sdk.core.util.Validator;
+import com.ibm.watson.speech_to_text.v1.SpeechToText;
+import com.ibm.watson.speech_to_text.v1.model.RecognizeWithWebsocketsOptions;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResult;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResults;
+import com.ibm.watson.speech_to_text.v1.util.PcmFormat;
+import com.ibm.watson.speech_to_text.v1.util.SpeechResultsUtils;
+import com.ibm.watson.speech_to_text.v1.util.VoiceActivityDetector;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Recognizes an audio stream of unbounded length by running it through a sequence of WebSocket
+ * sessions of the {@link SpeechToText} service. <br>
+ * A new session is opened at a silence boundary before the current one reaches the service's data
+ * limit, after an inactivity timeout, and after a transient connection failure. Consecutive
+ * sessions overlap briefly so that no audio is lost. Result indexes, word timestamps, keyword
+ * matches and speaker label times are rebased so that the {@link RecognizeCallback} sees a single
+ * continuous stream of {@link SpeechRecognitionResults}; final results that a session repeats from
+ * the overlap are dropped. Overlap de-duplication relies on word timestamps, so request them with
+ * {@link RecognizeWithWebsocketsOptions.Builder#timestamps(Boolean)}. <br>
+ * The audio must be 16-bit PCM, either {@code audio/l16} or {@code audio/wav}. Speaker IDs are
+ * assigned by the service per session and are not reconciled across sessions.
+ *
+ * @see SpeechToText#recognizeUsingWebSocket(RecognizeWithWebsocketsOptions, RecognizeCallback)
+ */
+public class ContinuousRecognizer {
+
+  private static final String PUMP_THREAD = "ContinuousRecognizeThread";
+  private static final Gson GSON = GsonSingleton.getGsonWithoutPrettyPrinting();
+  private static final Logger LOG = Logger.getLogger(ContinuousRecognizer.class.getName());
+
+  private static final String RESULTS = "results";
+  private static final String RESULT_INDEX = "result_index";
+  private static final String SPEAKER_LABELS = "speaker_labels";
+  private static final String AUDIO_METRICS = "audio_metrics";
+  private static final String PROCESSING_METRICS = "processing_metrics";
+
+  // The service accepts at most 100 MB of audio per recognition request
+  private static final long MAX_SESSION_BYTES = 100L * 1024 * 1024;
+  private static final double FRAME_SECONDS = 0.02;
+  private static final int QUEUE_CAPACITY = 256;
+  private static final double TIME_EPSILON = 0.001;
+
+  private final SpeechToText service;
+  private final RecognizeWithWebsocketsOptions options;
+  private final RecognizeCallback callback;
+  private final Double rolloverAfter;
+  private final Double maxSessionDuration;
+  private final double minSilence;
+  private final double silenceThreshold;
+  private final double overlap;
+  private final double replayDuration;
+  private final int maxReconnects;
+  private final long reconnectDelayMillis;
+
+  // guarded by this
+  private final Deque<Session> sessions = new ArrayDeque<Session>();
+  private long nextIndex;
+  private double lastFinalEnd = Double.NEGATIVE_INFINITY;
+  private boolean connectedNotified;
+  private boolean listeningNotified;
+  private boolean sourceDone;
+  private boolean completed;
+
+  // pump thread only
+  private PcmFormat format;
+  private VoiceActivityDetector detector;
+  private Session current;
+  private final Deque<byte[]> history = new ArrayDeque<byte[]>();
+  private long historyBytes;
+  private long historyLimit;
+  private volatile int reconnects;
+
+  private volatile boolean stopRequested;
+  private Thread pumpThread;
+
+  /** Builder. */
+  public static class Builder {
+    private SpeechToText service;
+    private RecognizeWithWebsocketsOptions options;
+    private RecognizeCallback callback;
+    private Double rolloverAfter;
+    private Double maxSessionDuration;
+    private double minSilence = 0.5;
+    private double silenceThreshold = 0.01;
+    private double overlap = 0.25;
+    private double replayDuration = 10;
+    private int maxReconnects = 5;
+    private long reconnectDelayMillis = 1000;
+
+    /** Instantiates a new builder. */
+    public Builder() {}
+
+    /**
+     * Builds a ContinuousRecognizer.
+     *
+     * @return the new ContinuousRecognizer instance
+     */
+    public ContinuousRecognizer build() {
+      return new ContinuousRecognizer(this);
+    }
+
+    /**
+     * Set the service used to open the WebSocket sessions.
+     *
+     * @param service the service
+     * @return the ContinuousRecognizer builder
+     */
+    public Builder service(SpeechToText service) {
+      this.service = service;
+      return this;
+    }
+
+    /**
+     * Set the recognize options. The audio of the options is the whole stream; every session is
+     * opened with a copy of the options.
+     *
+     * @param options the options
+     * @return the ContinuousRecognizer builder
+     */
+    public Builder options(RecognizeWithWebsocketsOptions options) {
+      this.options = options;
+      return this;
+    }
+
+    /**
+     * Set the callback that receives the stitched results.
+     *
+     * @param callback the callback
+     * @return the ContinuousRecognizer builder
+     */
+    public Builder callback(RecognizeCallback callback) {
+      this.callback = callback;
+      return this;
+    }
+
+    /**
+     * Set the session length in seconds after which a rollover happens at the next silence.
+     * Defaults to 75% of the service's per-request data limit for the audio format.
+     *
+     * @param rolloverAfter the number of seconds
+     * @return the ContinuousRecognizer builder
+     */
+    public Builder rolloverAfter(double rolloverAfter) {
+      this.rolloverAfter = rolloverAfter;
+      return this;
+    }
+
+    /**
+     * Set the session length in seconds after which a rollover happens even without silence.
+     * Defaults to 95% of the service's per-request data limit for the audio format.
+     *
+     * @param maxSessionDuration the number of seconds
+     * @return the ContinuousRecognizer builder
+     */
+    public Builder maxSessionDuration(double maxSessionDuration) {
+      this.maxSessionDuration = maxSessionDuration;
+      return this;
+    }
+
+    /**
+     * Set the minimum length in seconds of a silence that qualifies as a rollover point. Defaults
+     * to 0.5.
+     *
+     * @param minSilence the number of seconds
+     * @return the ContinuousRecognizer builder
+     */
+    public Builder minSilence(double minSilence) {
+      this.minSilence = minSilence;
+      return this;
+    }
+
+    /**
+     * Set the RMS level, relative to full scale, below which audio counts as silence. Defaults to
+     * 0.01 (-40 dBFS).
+     *
+     * @param silenceThreshold the level in the range of 0.0 to 1.0
+     * @return the ContinuousRecognizer builder
+     */
+    public Builder silenceThreshold(double silenceThreshold) {
+      this.silenceThreshold = silenceThreshold;
+      return this;
+    }
+
+    /**
+     * Set how many seconds of audio are sent to both sessions at a rollover. Defaults to 0.25.
+     *
+     * @param overlap the number of seconds
+     * @return the ContinuousRecognizer builder
+     */
+    public Builder overlap(double overlap) {
+      this.overlap = overlap;
+      return this;
+    }
+
+    /**
+     * Set how many seconds of recent audio are retained to be replayed after a connection failure.
+     * Defaults to 10.
+     *
+     * @param replayDuration the number of seconds
+     * @return the ContinuousRecognizer builder
+     */
+    public Builder replayDuration(double replayDuration) {
+      this.replayDuration = replayDuration;
+      return this;
+    }
+
+    /**
+     * Set how many consecutive reconnects are attempted after transient failures. Defaults to 5.
+     *
+     * @param maxReconnects the number of attempts
+     * @return the ContinuousRecognizer builder
+     */
+    public Builder maxReconnects(int maxReconnects) {
+      this.maxReconnects = maxReconnects;
+      return this;
+    }
+
+    /**
+     * Set the delay before the first reconnect; later attempts wait proportionally longer. Defaults
+     * to 1000.
+     *
+     * @param reconnectDelayMillis the delay in milliseconds
+     * @return the ContinuousRecognizer builder
+     */
+    public Builder reconnectDelayMillis(long reconnectDelayMillis) {
+      this.reconnectDelayMillis = reconnectDelayMillis;
+      return this;
+    }
+  }
+
+  protected ContinuousRecognizer(Builder builder) {
+    Validator.notNull(builder.service, "service cannot be null");
+    Validator.notNull(builder.options, "options cannot be null");
+    Validator.notNull(builder.options.audio(), "audio cannot be null");
+    Validator.notNull(builder.callback, "callback cannot be null");
+    Validator.isTrue(builder.overlap >= 0, "overlap cannot be negative");
+    Validator.isTrue(builder.maxReconnects >= 0, "maxReconnects cannot be negative");
+    service = builder.service;
+    options = builder.options;
+    callback = builder.callback;
+    rolloverAfter = builder.rolloverAfter;
+    maxSessionDuration = builder.maxSessionDuration;
+    minSilence = builder.minSilence;
+    silenceThreshold = builder.silenceThreshold;
+    overlap = builder.overlap;
+    replayDuration = builder.replayDuration;
+    maxReconnects = builder.maxReconnects;
+    reconnectDelayMillis = builder.reconnectDelayMillis;
+  }
+
+  /**
+   * Starts reading the audio and recognizing it on a background thread.
+   *
+   * @throws IllegalStateException if already started
+   */
+  public synchronized void start() {
+    if (pumpThread != null) {
+      throw new IllegalStateException("ContinuousRecognizer already started");
+    }
+    pumpThread =
+        new Thread(PUMP_THREAD) {
+          @Override
+          public void run() {
+            pump();
+          }
+        };
+    pumpThread.start();
+  }
+
+  /**
+   * Stops reading the audio. The results for audio already sent are still delivered, followed by
+   * {@link RecognizeCallback#onTranscriptionComplete()}.
+   */
+  public void stop() {
+    stopRequested = true;
+  }
+
+  private void pump() {
+    InputStream source = options.audio();
+    try {
+      format = resolveFormat(source, options.contentType());
+      detector = new VoiceActivityDetector(format);
+      long frameBytes = Math.max(format.toBytes(FRAME_SECONDS), format.getFrameSize());
+      long limitBytes = MAX_SESSION_BYTES - MAX_SESSION_BYTES % format.getFrameSize();
+      long rolloverBytes =
+          rolloverAfter != null ? format.toBytes(rolloverAfter) : format.toBytes(
+              format.toSeconds(limitBytes) * 0.75);
+      long maxBytes =
+          Math.min(
+              limitBytes,
+              maxSessionDuration != null ? format.toBytes(maxSessionDuration) : format.toBytes(
+                  format.toSeconds(limitBytes) * 0.95));
+      long minSilenceBytes = format.toBytes(minSilence);
+      long overlapBytes = format.toBytes(overlap);
+      historyLimit = Math.max(overlapBytes, format.toBytes(replayDuration));
+
+      long position = 0;
+      long silentRun = 0;
+      byte[] frame;
+      while (!stopRequested && (frame = readFrame(source, (int) frameBytes)) != null) {
+        boolean silent = detector.rms(frame, 0, frame.length) < silenceThreshold;
+        silentRun = silent ? silentRun + frame.length : 0;
+
+        if (current == null) {
+          open(position, 0);
+        } else if (current.failed) {
+          reconnect(position);
+        } else if (current.timedOut && !silent) {
+          // the service ended the session after a long silence; resume once speech comes back
+          open(position, Math.min(overlapBytes, historyBytes));
+        }
+
+        if (current != null && current.isLive()) {
+          current.stream.write(frame);
+          current.sent += frame.length;
+        }
+        remember(frame);
+        position += frame.length;
+
+        if (current != null && current.isLive()) {
+          boolean atSilence = current.sent >= rolloverBytes && silentRun >= minSilenceBytes;
+          if (atSilence || current.sent >= maxBytes) {
+            Session previous = current;
+            open(position, atSilence ? Math.min(overlapBytes, silentRun) : overlapBytes);
+            previous.stream.finish();
+          }
+        }
+      }
+
+      while (current != null) {
+        if (current.isLive()) {
+          current.stream.finish();
+        }
+        current.done.await();
+        if (!current.failed || stopRequested || !canReconnect()) {
+          break;
+        }
+        reconnect(position);
+      }
+    } catch (IOException e) {
+      callback.onError(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      try {
+        source.close();
+      } catch (IOException e) {
+        // do nothing - the InputStream may have already been closed externally.
+      }
+      synchronized (this) {
+        sourceDone = true;
+        if (current != null && current.isLive()) {
+          // the pump stopped abnormally, abandon the session
+          current.stream.close();
+          current.markDone(true);
+        }
+        advance();
+      }
+    }
+  }
+
+  private static PcmFormat resolveFormat(InputStream source, String contentType)
+      throws IOException {
+    PcmFormat pcmFormat = PcmFormat.fromContentType(contentType);
+    if (pcmFormat != null) {
+      return pcmFormat;
+    }
+    if (contentType != null && contentType.toLowerCase().startsWith(HttpMediaType.AUDIO_WAV)) {
+      return PcmFormat.readWaveHeader(source);
+    }
+    throw new IllegalArgumentException(
+        "ContinuousRecognizer requires audio/l16 or audio/wav audio, but got " + contentType);
+  }
+
+  private static byte[] readFrame(InputStream source, int frameBytes) throws IOException {
+    byte[] frame = new byte[frameBytes];
+    int filled = 0;
+    int read;
+    while (filled < frameBytes && (read = source.read(frame, filled, frameBytes - filled)) != -1) {
+      filled += read;
+    }
+    if (filled == 0) {
+      return null;
+    }
+    if (filled < frameBytes) {
+      byte[] tail = new byte[filled];
+      System.arraycopy(frame, 0, tail, 0, filled);
+      return tail;
+    }
+    return frame;
+  }
+
+  private void remember(byte[] frame) {
+    history.addLast(frame);
+    historyBytes += frame.length;
+    while (history.size() > 1 && historyBytes - history.peekFirst().length >= historyLimit) {
+      historyBytes -= history.removeFirst().length;
+    }
+  }
+
+  private boolean canReconnect() {
+    return reconnects < maxReconnects;
+  }
+
+  private void reconnect(long position) throws InterruptedException, IOException {
+    if (!canReconnect()) {
+      stopRequested = true;
+      callback.onError(
+          new IOException("Giving up after " + reconnects + " reconnects", current.failure));
+      current = null;
+      return;
+    }
+    reconnects++;
+    Thread.sleep(reconnectDelayMillis * reconnects);
+
+    // replay the audio after the last final result that is still retained
+    long finalBytes;
+    synchronized (this) {
+      finalBytes = lastFinalEnd > 0 ? format.toBytes(lastFinalEnd) : 0;
+    }
+    long replay = Math.max(0, Math.min(historyBytes, position - finalBytes));
+    LOG.log(
+        Level.INFO,
+        "Reconnecting after failure, replaying " + format.toSeconds(replay) + "s of audio");
+    open(position, replay);
+  }
+
+  /**
+   * Opens a new session that starts {@code replay} bytes before {@code position}, sending the
+   * retained audio for the replayed part.
+   */
+  private void open(long position, long replay) throws IOException {
+    Session session = new Session(position - replay);
+    synchronized (this) {
+      if (sessions.isEmpty()) {
+        session.indexBase = nextIndex;
+      }
+      sessions.addLast(session);
+    }
+    current = session;
+
+    RecognizeWithWebsocketsOptions sessionOptions =
+        options.newBuilder().audio(session.stream).contentType(format.toContentType()).build();
+    service.recognizeUsingWebSocket(sessionOptions, session);
+
+    if (replay > 0) {
+      List<byte[]> tail = new ArrayList<byte[]>();
+      long collected = 0;
+      Iterator<byte[]> frames = history.descendingIterator();
+      while (collected < replay && frames.hasNext()) {
+        byte[] frame = frames.next();
+        tail.add(frame);
+        collected += frame.length;
+      }
+      for (int i = tail.size() - 1; i >= 0; i--) {
+        byte[] frame = tail.get(i);
+        if (i == tail.size() - 1 && collected > replay) {
+          int skip = (int) (collected - replay);
+          byte[] partial = new byte[frame.length - skip];
+          System.arraycopy(frame, skip, partial, 0, partial.length);
+          frame = partial;
+        }
+        session.stream.write(frame);
+        session.sent += frame.length;
+      }
+    }
+  }
+
+  private synchronized void onResults(Session session, SpeechRecognitionResults results) {
+    if (session != sessions.peekFirst()) {
+      session.pending.add(results);
+      return;
+    }
+    deliver(session, results);
+  }
+
+  /** Rebases the results of the head session and passes them to the callback. */
+  private void deliver(Session session, SpeechRecognitionResults results) {
+    List<SpeechRecognitionResult> list = results.getResults();
+    JsonObject json = GSON.toJsonTree(results).getAsJsonObject();
+    double offset = format.toSeconds(session.startByte);
+
+    if (list != null && results.getResultIndex() != null) {
+      long first = results.getResultIndex();
+      int skip = 0;
+      for (int i = 0; i < list.size(); i++) {
+        SpeechRecognitionResult result = list.get(i);
+        long index = first + i;
+        boolean isFinal = Boolean.TRUE.equals(result.isXFinal());
+        double end = SpeechResultsUtils.getEndTime(result) + offset;
+
+        if (index < session.dropped) {
+          skip++;
+        } else if (!session.keeping
+            && index == session.dropped
+            && end <= lastFinalEnd + TIME_EPSILON) {
+          // repeated from the overlap with the previous session
+          if (isFinal) {
+            session.dropped++;
+          }
+          skip++;
+        } else {
+          session.keeping = true;
+          if (isFinal) {
+            session.finalFrontier = Math.max(session.finalFrontier, index + 1);
+            if (!Double.isNaN(end)) {
+              lastFinalEnd = Math.max(lastFinalEnd, end);
+            }
+          }
+        }
+      }
+      session.nextIndex = Math.max(session.nextIndex, first + list.size());
+
+      JsonArray kept = new JsonArray();
+      JsonArray all = json.getAsJsonArray(RESULTS);
+      for (int i = skip; i < all.size(); i++) {
+        kept.add(all.get(i));
+      }
+      json.add(RESULTS, kept);
+      json.addProperty(RESULT_INDEX, first + skip);
+      if (kept.size() == 0
+          && !json.has(SPEAKER_LABELS)
+          && !json.has(AUDIO_METRICS)
+          && !json.has(PROCESSING_METRICS)) {
+        return;
+      }
+    }
+
+    SpeechResultsUtils.shift(json, offset, session.indexBase - session.dropped);
+    callback.onTranscription(GSON.fromJson(json, SpeechRecognitionResults.class));
+  }
+
+  /** Retires completed sessions at the head of the queue and hands over to the next one. */
+  private void advance() {
+    Session head = sessions.peekFirst();
+    while (head != null && head.finished) {
+      sessions.removeFirst();
+      long delivered = head.failed ? head.finalFrontier : head.nextIndex;
+      nextIndex = head.indexBase + Math.max(0, delivered - head.dropped);
+      head = sessions.peekFirst();
+      if (head != null) {
+        head.indexBase = nextIndex;
+        for (SpeechRecognitionResults results : head.pending) {
+          deliver(head, results);
+        }
+        head.pending.clear();
+      }
+    }
+    if (head == null && sourceDone && !completed) {
+      completed = true;
+      callback.onTranscriptionComplete();
+      callback.onDisconnected();
+    }
+  }
+
+  /** One WebSocket session, covering a contiguous span of the audio. */
+  private final class Session implements RecognizeCallback {
+    private final long startByte;
+    private final SessionAudioStream stream = new SessionAudioStream(QUEUE_CAPACITY);
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final List<SpeechRecognitionResults> pending =
+        new ArrayList<SpeechRecognitionResults>();
+    private long sent;
+
+    // guarded by ContinuousRecognizer.this
+    private long indexBase;
+    private long nextIndex;
+    private long finalFrontier;
+    private long dropped;
+    private boolean keeping;
+    private boolean finished;
+
+    private volatile boolean failed;
+    private volatile boolean timedOut;
+    private volatile Exception failure;
+
+    Session(long startByte) {
+      this.startByte = startByte;
+    }
+
+    boolean isLive() {
+      return !failed && !timedOut && done.getCount() > 0;
+    }
+
+    void markDone(boolean failure) {
+      synchronized (ContinuousRecognizer.this) {
+        if (finished) {
+          return;
+        }
+        finished = true;
+        failed = failure;
+        advance();
+      }
+      done.countDown();
+    }
+
+    @Override
+    public void onTranscription(SpeechRecognitionResults speechResults) {
+      onResults(this, speechResults);
+    }
+
+    @Override
+    public void onConnected() {
+      synchronized (ContinuousRecognizer.this) {
+        if (connectedNotified) {
+          return;
+        }
+        connectedNotified = true;
+      }
+      callback.onConnected();
+    }
+
+    @Override
+    public void onError(Exception e) {
+      if (e instanceof IOException) {
+        // transient connection problem, the pump thread reconnects
+        LOG.log(Level.WARNING, "Recognition session failed", e);
+        failure = e;
+        stream.close();
+        markDone(true);
+      } else {
+        callback.onError(e);
+        stopRequested = true;
+        stream.close();
+        markDone(false);
+      }
+    }
+
+    @Override
+    public void onDisconnected() {
+      if (done.getCount() > 0 && !timedOut) {
+        // closed before the service reported the transcription as complete
+        failure = new IOException("WebSocket closed unexpectedly");
+        stream.close();
+        markDone(true);
+      }
+    }
+
+    @Override
+    public void onInactivityTimeout(RuntimeException runtimeException) {
+      timedOut = true;
+      stream.close();
+      markDone(false);
+    }
+
+    @Override
+    public void onListening() {
+      reconnects = 0;
+      synchronized (ContinuousRecognizer.this) {
+        if (listeningNotified) {
+          return;
+        }
+        listeningNotified = true;
+      }
+      callback.onListening();
+    }
+
+    @Override
+    public void onTranscriptionComplete() {
+      markDone(false);
+    }
+  }
+}
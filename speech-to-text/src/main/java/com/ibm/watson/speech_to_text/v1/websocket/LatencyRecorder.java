@@ -0,0 +1,273 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1.websocket;
+
+import com.ibm.cloud.sdk.core.http.HttpMediaType;
+import com.ibm.watson.speech_to_text.v1.SpeechToText;
+import com.ibm.watson.speech_to_text.v1.model.ProcessedAudio;
+import com.ibm.watson.speech_to_text.v1.model.ProcessingMetrics;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResult;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResults;
+import com.ibm.watson.speech_to_text.v1.util.LatencyHistogram;
+import com.ibm.watson.speech_to_text.v1.util.PcmFormat;
+import com.ibm.watson.speech_to_text.v1.util.SpeechResultsUtils;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collects latency histograms over the WebSocket recognitions of a {@link SpeechToText} service,
+ * see {@link SpeechToText#setLatencyRecorder(LatencyRecorder)}. One recorder can be shared by any
+ * number of concurrent sessions. The following latencies are recorded:
+ *
+ * <ul>
+ *   <li>connect: from the start of the request until the WebSocket is open
+ *   <li>listening: from the WebSocket being open until the service is listening
+ *   <li>first interim: from the first audio sent until the first result is received
+ *   <li>final: from sending the audio at the end of a final result until the result is received.
+ *       This is how long after the speaker stops a final result arrives. It is recorded for {@code
+ *       audio/l16} and {@code audio/wav} audio, when results have timestamps.
+ *   <li>processing: how far transcription trails the audio received by the service, taken from
+ *       the processing metrics if they are requested
+ * </ul>
+ */
+public class LatencyRecorder {
+
+  private static final double NANOS_PER_MILLI = 1e6;
+  private static final double MILLIS_PER_SECOND = 1000;
+  // send marks are dropped when results have no timestamps to release them
+  private static final int MAX_MARKS = 1 << 16;
+
+  private final LatencyHistogram connect = new LatencyHistogram();
+  private final LatencyHistogram listening = new LatencyHistogram();
+  private final LatencyHistogram firstInterim = new LatencyHistogram();
+  private final LatencyHistogram finalResult = new LatencyHistogram();
+  private final LatencyHistogram processing = new LatencyHistogram();
+
+  /**
+   * Gets the latencies from the start of a request until the WebSocket is open.
+   *
+   * @return the histogram
+   */
+  public LatencyHistogram getConnectLatency() {
+    return connect;
+  }
+
+  /**
+   * Gets the latencies from the WebSocket being open until the service is listening.
+   *
+   * @return the histogram
+   */
+  public LatencyHistogram getListeningLatency() {
+    return listening;
+  }
+
+  /**
+   * Gets the latencies from the first audio sent until the first result is received.
+   *
+   * @return the histogram
+   */
+  public LatencyHistogram getFirstInterimLatency() {
+    return firstInterim;
+  }
+
+  /**
+   * Gets the latencies from sending the audio at the end of a final result until the result is
+   * received.
+   *
+   * @return the histogram
+   */
+  public LatencyHistogram getFinalLatency() {
+    return finalResult;
+  }
+
+  /**
+   * Gets how far transcription trailed the audio received by the service, as reported by the
+   * processing metrics.
+   *
+   * @return the histogram
+   */
+  public LatencyHistogram getProcessingLatency() {
+    return processing;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return "connect: "
+        + connect
+        + "\nlistening: "
+        + listening
+        + "\nfirst interim: "
+        + firstInterim
+        + "\nfinal: "
+        + finalResult
+        + "\nprocessing: "
+        + processing;
+  }
+
+  /**
+   * Starts timing a session.
+   *
+   * @param contentType the content type of the audio
+   * @return the session
+   */
+  Session startSession(String contentType) {
+    return new Session(contentType);
+  }
+
+  /**
+   * Returns the time that latencies are measured with.
+   *
+   * @return the time in nanoseconds
+   */
+  long nanoTime() {
+    return System.nanoTime();
+  }
+
+  /** The timing of one WebSocket session, fed by {@link SpeechToTextWebSocketListener}. */
+  final class Session {
+    private final long startNanos = nanoTime();
+    private final boolean wave;
+    private PcmFormat format;
+    private long openNanos;
+    private long firstAudioNanos;
+    private boolean listeningSeen;
+    private boolean resultSeen;
+    private long nextFinalIndex;
+
+    // cumulative audio bytes sent, and when they were sent
+    private long sentBytes;
+    private long dataOffset;
+    private long[] markBytes = new long[256];
+    private long[] markNanos = new long[256];
+    private int markCount;
+
+    Session(String contentType) {
+      this.format = PcmFormat.fromContentType(contentType);
+      this.wave =
+          contentType != null
+              && contentType.regionMatches(
+                  true, 0, HttpMediaType.AUDIO_WAV, 0, HttpMediaType.AUDIO_WAV.length());
+    }
+
+    synchronized void onOpen() {
+      openNanos = nanoTime();
+      connect.record((openNanos - startNanos) / NANOS_PER_MILLI);
+    }
+
+    synchronized void onListening() {
+      if (!listeningSeen) {
+        listeningSeen = true;
+        listening.record((nanoTime() - openNanos) / NANOS_PER_MILLI);
+      }
+    }
+
+    synchronized void onAudioSent(byte[] buffer, int length) {
+      long now = nanoTime();
+      if (sentBytes == 0) {
+        firstAudioNanos = now;
+        if (format == null && wave) {
+          readWaveHeader(buffer, length);
+        }
+      }
+      sentBytes += length;
+      if (format == null) {
+        return;
+      }
+      if (markCount == markBytes.length) {
+        if (markCount == MAX_MARKS) {
+          drop(markCount / 2);
+        } else {
+          markBytes = Arrays.copyOf(markBytes, markCount * 2);
+          markNanos = Arrays.copyOf(markNanos, markCount * 2);
+        }
+      }
+      markBytes[markCount] = sentBytes;
+      markNanos[markCount] = now;
+      markCount++;
+    }
+
+    synchronized void onResults(SpeechRecognitionResults results) {
+      long now = nanoTime();
+      List<SpeechRecognitionResult> list = results.getResults();
+      if (list != null && !list.isEmpty()) {
+        if (!resultSeen && sentBytes > 0) {
+          resultSeen = true;
+          firstInterim.record((now - firstAudioNanos) / NANOS_PER_MILLI);
+        }
+        long index = results.getResultIndex() != null ? results.getResultIndex() : 0;
+        for (int i = 0; i < list.size(); i++, index++) {
+          SpeechRecognitionResult result = list.get(i);
+          // finals are sent again in later frames, only the first arrival counts
+          if (Boolean.TRUE.equals(result.isXFinal()) && index >= nextFinalIndex) {
+            nextFinalIndex = index + 1;
+            recordFinal(SpeechResultsUtils.getEndTime(result), now);
+          }
+        }
+      }
+
+      ProcessingMetrics metrics = results.getProcessingMetrics();
+      if (metrics != null && metrics.getProcessedAudio() != null) {
+        ProcessedAudio audio = metrics.getProcessedAudio();
+        if (audio.getReceived() != null && audio.getTranscription() != null) {
+          double lag = audio.getReceived() - audio.getTranscription();
+          processing.record(lag * MILLIS_PER_SECOND);
+        }
+      }
+    }
+
+    private void recordFinal(double endTime, long now) {
+      if (format == null || Double.isNaN(endTime)) {
+        return;
+      }
+      long end = dataOffset + format.toBytes(endTime);
+      // the first send that included the last byte of the result
+      int low = 0;
+      int high = markCount;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (markBytes[middle] < end) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      if (low < markCount) {
+        finalResult.record((now - markNanos[low]) / NANOS_PER_MILLI);
+        // later finals end later, the earlier sends are no longer needed
+        drop(low);
+      }
+    }
+
+    private void drop(int count) {
+      System.arraycopy(markBytes, count, markBytes, 0, markCount - count);
+      System.arraycopy(markNanos, count, markNanos, 0, markCount - count);
+      markCount -= count;
+    }
+
+    private void readWaveHeader(byte[] buffer, int length) {
+      ByteArrayInputStream in = new ByteArrayInputStream(buffer, 0, length);
+      try {
+        format = PcmFormat.readWaveHeader(in);
+        dataOffset = length - in.available();
+      } catch (IOException e) {
+        // not PCM, or the header does not fit into the first buffer
+      }
+    }
+  }
+}
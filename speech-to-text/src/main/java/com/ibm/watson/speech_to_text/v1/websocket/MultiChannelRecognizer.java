@@ -0,0 +1,324 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1.websocket;
+
+import com.ibm.cloud.sdk.core.http.HttpMediaType;
+import com.ibm.cloud.sdk.core.util.Validator;
+import com.ibm.watson.speech_to_text.v1.SpeechToText;
+import com.ibm.watson.speech_to_text.v1.model.RecognizeWithWebsocketsOptions;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResult;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResults;
+import com.ibm.watson.speech_to_text.v1.util.ChannelDemultiplexer;
+import com.ibm.watson.speech_to_text.v1.util.PcmFormat;
+import com.ibm.watson.speech_to_text.v1.util.SpeechResultsUtils;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recognizes each channel of a multi-channel recording in its own WebSocket session of the {@link
+ * SpeechToText} service, for example the agent and caller of a stereo call recording. <br>
+ * The interleaved audio is split on the fly by a {@link ChannelDemultiplexer}; all sessions share
+ * the HTTP client of the service. The final results of all channels are merged into one
+ * conversation ordered by start time and delivered to a {@link Listener} together with their
+ * channel. A result is held back until every other channel has either finished or produced a final
+ * result that ends after the result starts, so the order holds even when one channel is
+ * transcribed faster than another. <br>
+ * The audio must be 16-bit PCM, either {@code audio/l16} with a {@code channels} parameter or
+ * {@code audio/wav}. Word timestamps are always requested, since the merge relies on them.
+ */
+public class MultiChannelRecognizer {
+
+  /** Receives the merged conversation. */
+  public interface Listener {
+
+    /**
+     * Called with each final result, in order of start time across all channels.
+     *
+     * @param channel the channel the result belongs to, from 0
+     * @param result the final result
+     */
+    void onResult(int channel, SpeechRecognitionResult result);
+
+    /**
+     * Called when the session of a channel fails. The other channels carry on.
+     *
+     * @param channel the channel
+     * @param e the failure
+     */
+    void onError(int channel, Exception e);
+
+    /** Called once, after the last result of all channels has been delivered. */
+    void onComplete();
+  }
+
+  private final SpeechToText service;
+  private final RecognizeWithWebsocketsOptions options;
+  private final Listener listener;
+
+  // guarded by this
+  private final PriorityQueue<Pending> pending = new PriorityQueue<Pending>();
+  private double[] watermarks;
+  private boolean[] finished;
+  private int remaining;
+  private long sequence;
+  private boolean started;
+
+  private final CountDownLatch done = new CountDownLatch(1);
+
+  /** Builder. */
+  public static class Builder {
+    private SpeechToText service;
+    private RecognizeWithWebsocketsOptions options;
+    private Listener listener;
+
+    /** Instantiates a new builder. */
+    public Builder() {}
+
+    /**
+     * Builds a MultiChannelRecognizer.
+     *
+     * @return the new MultiChannelRecognizer instance
+     */
+    public MultiChannelRecognizer build() {
+      return new MultiChannelRecognizer(this);
+    }
+
+    /**
+     * Set the service used to open the WebSocket sessions.
+     *
+     * @param service the service
+     * @return the MultiChannelRecognizer builder
+     */
+    public Builder service(SpeechToText service) {
+      this.service = service;
+      return this;
+    }
+
+    /**
+     * Set the recognize options. The audio of the options is the interleaved recording; every
+     * channel is recognized with a copy of the options.
+     *
+     * @param options the options
+     * @return the MultiChannelRecognizer builder
+     */
+    public Builder options(RecognizeWithWebsocketsOptions options) {
+      this.options = options;
+      return this;
+    }
+
+    /**
+     * Set the listener that receives the merged conversation.
+     *
+     * @param listener the listener
+     * @return the MultiChannelRecognizer builder
+     */
+    public Builder listener(Listener listener) {
+      this.listener = listener;
+      return this;
+    }
+  }
+
+  protected MultiChannelRecognizer(Builder builder) {
+    Validator.notNull(builder.service, "service cannot be null");
+    Validator.notNull(builder.options, "options cannot be null");
+    Validator.notNull(builder.options.audio(), "audio cannot be null");
+    Validator.notNull(builder.listener, "listener cannot be null");
+    service = builder.service;
+    options = builder.options;
+    listener = builder.listener;
+  }
+
+  /**
+   * Opens one session per channel and starts streaming. Returns once the sessions are opened;
+   * results are delivered on the threads of the sessions.
+   *
+   * @throws IOException if the WAV header of the audio cannot be read
+   * @throws IllegalStateException if already started
+   */
+  public void start() throws IOException {
+    synchronized (this) {
+      if (started) {
+        throw new IllegalStateException("MultiChannelRecognizer already started");
+      }
+      started = true;
+    }
+    InputStream source = options.audio();
+    ChannelDemultiplexer demultiplexer =
+        new ChannelDemultiplexer(source, resolveFormat(source, options.contentType()));
+    int channels = demultiplexer.getChannelCount();
+    synchronized (this) {
+      watermarks = new double[channels];
+      finished = new boolean[channels];
+      remaining = channels;
+    }
+
+    String contentType = demultiplexer.getChannelFormat().toContentType();
+    for (int channel = 0; channel < channels; channel++) {
+      InputStream audio = demultiplexer.getChannel(channel);
+      RecognizeWithWebsocketsOptions channelOptions =
+          options
+              .newBuilder()
+              .audio(audio)
+              .contentType(contentType)
+              .timestamps(true)
+              .build();
+      service.recognizeUsingWebSocket(channelOptions, new ChannelCallback(channel, audio));
+    }
+  }
+
+  /**
+   * Waits until all channels are done.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit the unit of the timeout
+   * @return true if all channels are done, false if the timeout elapsed first
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+    return done.await(timeout, unit);
+  }
+
+  private static PcmFormat resolveFormat(InputStream source, String contentType)
+      throws IOException {
+    PcmFormat pcmFormat = PcmFormat.fromContentType(contentType);
+    if (pcmFormat != null) {
+      return pcmFormat;
+    }
+    if (contentType != null
+        && contentType.regionMatches(
+            true, 0, HttpMediaType.AUDIO_WAV, 0, HttpMediaType.AUDIO_WAV.length())) {
+      return PcmFormat.readWaveHeader(source);
+    }
+    throw new IllegalArgumentException(
+        "MultiChannelRecognizer requires audio/l16 or audio/wav audio, but got " + contentType);
+  }
+
+  private synchronized void add(int channel, SpeechRecognitionResult result) {
+    double start = SpeechResultsUtils.getStartTime(result);
+    double end = SpeechResultsUtils.getEndTime(result);
+    if (Double.isNaN(start)) {
+      // no words, keep it where the channel is
+      start = watermarks[channel];
+      end = start;
+    }
+    pending.add(new Pending(start, channel, sequence++, result));
+    watermarks[channel] = Math.max(watermarks[channel], end);
+    release();
+  }
+
+  private synchronized void finish(int channel) {
+    if (finished[channel]) {
+      return;
+    }
+    finished[channel] = true;
+    watermarks[channel] = Double.POSITIVE_INFINITY;
+    remaining--;
+    release();
+    if (remaining == 0) {
+      listener.onComplete();
+      done.countDown();
+    }
+  }
+
+  /** Delivers the results that no channel can precede any more. */
+  private void release() {
+    double low = Double.POSITIVE_INFINITY;
+    for (double watermark : watermarks) {
+      low = Math.min(low, watermark);
+    }
+    while (!pending.isEmpty() && pending.peek().start <= low) {
+      Pending next = pending.poll();
+      listener.onResult(next.channel, next.result);
+    }
+  }
+
+  /** A final result waiting for the other channels to catch up. */
+  private static final class Pending implements Comparable<Pending> {
+    private final double start;
+    private final int channel;
+    private final long sequence;
+    private final SpeechRecognitionResult result;
+
+    Pending(double start, int channel, long sequence, SpeechRecognitionResult result) {
+      this.start = start;
+      this.channel = channel;
+      this.sequence = sequence;
+      this.result = result;
+    }
+
+    @Override
+    public int compareTo(Pending other) {
+      int byStart = Double.compare(start, other.start);
+      return byStart != 0 ? byStart : Long.compare(sequence, other.sequence);
+    }
+  }
+
+  /** Feeds the final results of one channel into the merge. */
+  private final class ChannelCallback extends BaseRecognizeCallback {
+    private final int channel;
+    private final InputStream audio;
+    private long nextFinalIndex;
+
+    ChannelCallback(int channel, InputStream audio) {
+      this.channel = channel;
+      this.audio = audio;
+    }
+
+    @Override
+    public void onTranscription(SpeechRecognitionResults speechResults) {
+      List<SpeechRecognitionResult> results = speechResults.getResults();
+      if (results == null) {
+        return;
+      }
+      long index = speechResults.getResultIndex() != null ? speechResults.getResultIndex() : 0;
+      for (int i = 0; i < results.size(); i++, index++) {
+        SpeechRecognitionResult result = results.get(i);
+        // finals are sent again in later frames, only the first arrival counts
+        if (Boolean.TRUE.equals(result.isXFinal()) && index >= nextFinalIndex) {
+          nextFinalIndex = index + 1;
+          add(channel, result);
+        }
+      }
+    }
+
+    @Override
+    public void onError(Exception e) {
+      listener.onError(channel, e);
+      close();
+    }
+
+    @Override
+    public void onTranscriptionComplete() {
+      close();
+    }
+
+    @Override
+    public void onDisconnected() {
+      close();
+    }
+
+    private void close() {
+      // a session that failed before sending all of its channel must not hold back the others
+      try {
+        audio.close();
+      } catch (IOException e) {
+        // do nothing - the source may have already been closed externally.
+      }
+      finish(channel);
+    }
+  }
+}
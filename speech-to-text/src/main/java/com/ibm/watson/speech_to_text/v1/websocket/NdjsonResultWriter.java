@@ -0,0 +1,211 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1.websocket;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
+import com.ibm.cloud.sdk.core.util.GsonSingleton;
+import com.ibm.watson.speech_to_text.v1.model.SpeakerLabelsResult;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResult;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResults;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes the results of a recognition as newline-delimited JSON, one line per result, as they
+ * arrive. Nothing is retained after a line is written, so a transcript does not stay on the heap
+ * for the length of the session. <br>
+ * Each line has the form {@code {"result_index":3,"result":{...}}}, where {@code result} is a
+ * {@link SpeechRecognitionResult} as sent by the service. Final results are written once; interim
+ * results are written only if requested, and each one replaces the previous line with the same
+ * index. Speaker labels are written as {@code {"speaker_labels":[...]}} lines. <br>
+ * Output is buffered and flushed when a final result is written and when the recognition is
+ * complete. Write errors do not interrupt the recognition; they are logged, further output is
+ * dropped and {@link #checkError()} returns true.
+ */
+public class NdjsonResultWriter extends BaseRecognizeCallback implements Closeable {
+
+  private static final Logger LOG = Logger.getLogger(NdjsonResultWriter.class.getName());
+  private static final Gson GSON = GsonSingleton.getGsonWithoutPrettyPrinting();
+  private static final Type LABELS_TYPE = new TypeToken<List<SpeakerLabelsResult>>() {}.getType();
+
+  private static final String RESULT_INDEX = "result_index";
+  private static final String RESULT = "result";
+  private static final String SPEAKER_LABELS = "speaker_labels";
+
+  private final Writer writer;
+  private final JsonWriter json;
+  private final boolean includeInterim;
+  private long nextFinalIndex;
+  private boolean error;
+
+  /**
+   * Instantiates a new writer that writes final results to a stream.
+   *
+   * @param out the stream
+   */
+  public NdjsonResultWriter(OutputStream out) {
+    this(out, false);
+  }
+
+  /**
+   * Instantiates a new writer that writes to a stream.
+   *
+   * @param out the stream
+   * @param includeInterim whether interim results are written
+   */
+  public NdjsonResultWriter(OutputStream out, boolean includeInterim) {
+    if (out == null) {
+      throw new IllegalArgumentException("out cannot be null");
+    }
+    this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    this.json = new JsonWriter(writer);
+    this.json.setLenient(true);
+    this.includeInterim = includeInterim;
+  }
+
+  /**
+   * Instantiates a new writer that writes to a channel.
+   *
+   * @param channel the channel
+   * @param includeInterim whether interim results are written
+   */
+  public NdjsonResultWriter(WritableByteChannel channel, boolean includeInterim) {
+    this(channelToStream(channel), includeInterim);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see BaseRecognizeCallback#onTranscription(SpeechRecognitionResults)
+   */
+  @Override
+  public void onTranscription(SpeechRecognitionResults speechResults) {
+    write(speechResults);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see BaseRecognizeCallback#onTranscriptionComplete()
+   */
+  @Override
+  public void onTranscriptionComplete() {
+    flush();
+  }
+
+  /**
+   * Writes the results of a frame.
+   *
+   * @param speechResults the results received from the service
+   */
+  public synchronized void write(SpeechRecognitionResults speechResults) {
+    if (error) {
+      return;
+    }
+    try {
+      boolean wroteFinal = false;
+      List<SpeechRecognitionResult> results = speechResults.getResults();
+      if (results != null) {
+        long index = speechResults.getResultIndex() != null ? speechResults.getResultIndex() : 0;
+        for (int i = 0; i < results.size(); i++, index++) {
+          SpeechRecognitionResult result = results.get(i);
+          boolean isFinal = Boolean.TRUE.equals(result.isXFinal());
+          // a final result that was written already is sent again in some frames
+          if (isFinal && index >= nextFinalIndex) {
+            writeResult(index, result);
+            nextFinalIndex = index + 1;
+            wroteFinal = true;
+          } else if (!isFinal && includeInterim) {
+            writeResult(index, result);
+          }
+        }
+      }
+      List<SpeakerLabelsResult> labels = speechResults.getSpeakerLabels();
+      if (labels != null && !labels.isEmpty()) {
+        json.beginObject().name(SPEAKER_LABELS);
+        GSON.toJson(labels, LABELS_TYPE, json);
+        json.endObject();
+        writer.write('\n');
+      }
+      if (wroteFinal) {
+        writer.flush();
+      }
+    } catch (IOException e) {
+      fail(e);
+    } catch (JsonIOException e) {
+      fail(e);
+    }
+  }
+
+  /** Flushes the buffered lines. */
+  public synchronized void flush() {
+    if (error) {
+      return;
+    }
+    try {
+      writer.flush();
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  /**
+   * Returns whether writing failed. Once it fails, no more lines are written.
+   *
+   * @return true if an {@link IOException} occurred
+   */
+  public synchronized boolean checkError() {
+    return error;
+  }
+
+  /**
+   * Flushes the buffered lines and closes the underlying stream or channel.
+   *
+   * @throws IOException if flushing or closing fails
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    writer.close();
+  }
+
+  private void writeResult(long index, SpeechRecognitionResult result) throws IOException {
+    json.beginObject().name(RESULT_INDEX).value(index).name(RESULT);
+    GSON.toJson(result, SpeechRecognitionResult.class, json);
+    json.endObject();
+    writer.write('\n');
+  }
+
+  private void fail(Exception e) {
+    error = true;
+    LOG.log(Level.WARNING, "Writing results failed, further results are dropped", e);
+  }
+
+  private static OutputStream channelToStream(WritableByteChannel channel) {
+    if (channel == null) {
+      throw new IllegalArgumentException("channel cannot be null");
+    }
+    return Channels.newOutputStream(channel);
+  }
+}
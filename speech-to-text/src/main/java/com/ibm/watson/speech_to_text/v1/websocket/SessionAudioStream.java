@@ -0,0 +1,149 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1.websocket;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link InputStream} fed chunk by chunk from another thread. It is handed to {@link
+ * SpeechToTextWebSocketListener} as the audio of one recognition session, so that a producer can
+ * decide when the session's audio ends.
+ */
+final class SessionAudioStream extends InputStream {
+
+  private static final byte[] END_OF_STREAM = new byte[0];
+  private static final long OFFER_WAIT_MILLIS = 100;
+
+  private final BlockingQueue<byte[]> chunks;
+  private byte[] current;
+  private int position;
+  private volatile boolean closed;
+
+  /**
+   * Instantiates a new session audio stream.
+   *
+   * @param capacity the maximum number of chunks queued before {@link #write(byte[])} blocks
+   */
+  SessionAudioStream(int capacity) {
+    this.chunks = new LinkedBlockingQueue<byte[]>(capacity);
+  }
+
+  /**
+   * Queues a chunk of audio, blocking while the queue is full. The chunk is not copied. Chunks
+   * written after the stream was closed are discarded.
+   *
+   * @param chunk the chunk
+   * @throws InterruptedIOException if the thread is interrupted while waiting
+   */
+  void write(byte[] chunk) throws InterruptedIOException {
+    if (chunk.length == 0) {
+      return;
+    }
+    offer(chunk);
+  }
+
+  /**
+   * Marks the end of the audio. The reader sees end of stream after draining the queued chunks.
+   *
+   * @throws InterruptedIOException if the thread is interrupted while waiting
+   */
+  void finish() throws InterruptedIOException {
+    offer(END_OF_STREAM);
+  }
+
+  /**
+   * Whether the stream was closed by its reader.
+   *
+   * @return true if closed
+   */
+  boolean isClosed() {
+    return closed;
+  }
+
+  private void offer(byte[] chunk) throws InterruptedIOException {
+    try {
+      while (!closed && !chunks.offer(chunk, OFFER_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+        // wait for the reader, or for the session to go away
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.io.InputStream#read()
+   */
+  @Override
+  public int read() throws IOException {
+    byte[] one = new byte[1];
+    return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.io.InputStream#read(byte[], int, int)
+   */
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (current == null || position == current.length) {
+      if (current == END_OF_STREAM || closed) {
+        return -1;
+      }
+      try {
+        current = chunks.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+      position = 0;
+      if (current == END_OF_STREAM) {
+        return -1;
+      }
+    }
+    int n = Math.min(len, current.length - position);
+    System.arraycopy(current, position, b, off, n);
+    position += n;
+    return n;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.io.InputStream#available()
+   */
+  @Override
+  public int available() {
+    return current == null || current == END_OF_STREAM ? 0 : current.length - position;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.io.InputStream#close()
+   */
+  @Override
+  public void close() {
+    closed = true;
+    chunks.clear();
+    // wake up a reader blocked in read()
+    chunks.offer(END_OF_STREAM);
+  }
+}
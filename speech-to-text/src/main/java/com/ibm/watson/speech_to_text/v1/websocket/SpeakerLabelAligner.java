@@ -0,0 +1,310 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1.websocket;
+
+import com.ibm.watson.speech_to_text.v1.model.SpeakerLabelsResult;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionAlternative;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResult;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResults;
+import com.ibm.watson.speech_to_text.v1.model.SpeechTimestamp;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aligns the words of final results with speaker labels and reports per-speaker utterances as
+ * soon as the labels that cover them are final. <br>
+ * Words and labels are kept in parallel primitive arrays sorted by time, and are joined in one
+ * forward pass: each word is given the speaker of the label that contains its midpoint. Speaker
+ * labels may arrive before or after the words they describe, and interim labels may be revised;
+ * words wait until the labels up to their end are final. Words and labels are dropped once they
+ * are reported, so memory does not grow with the length of the session. <br>
+ * Use it as the callback of a recognition with {@code speakerLabels} and {@code timestamps}
+ * enabled, or pass it every frame with {@link #apply(SpeechRecognitionResults)}.
+ */
+public class SpeakerLabelAligner extends BaseRecognizeCallback {
+
+  private static final int INITIAL_CAPACITY = 256;
+
+  /** A run of consecutive words spoken by one speaker. */
+  public static class Utterance {
+    private final long speaker;
+    private final double startTime;
+    private final double endTime;
+    private final String transcript;
+
+    Utterance(long speaker, double startTime, double endTime, String transcript) {
+      this.speaker = speaker;
+      this.startTime = startTime;
+      this.endTime = endTime;
+      this.transcript = transcript;
+    }
+
+    /**
+     * Gets the speaker, as numbered by the service.
+     *
+     * @return the speaker
+     */
+    public long getSpeaker() {
+      return speaker;
+    }
+
+    /**
+     * Gets the start time of the first word.
+     *
+     * @return the start time in seconds
+     */
+    public double getStartTime() {
+      return startTime;
+    }
+
+    /**
+     * Gets the end time of the last word.
+     *
+     * @return the end time in seconds
+     */
+    public double getEndTime() {
+      return endTime;
+    }
+
+    /**
+     * Gets the words, separated by spaces.
+     *
+     * @return the transcript
+     */
+    public String getTranscript() {
+      return transcript;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+      return "speaker " + speaker + " [" + startTime + ", " + endTime + "]: " + transcript;
+    }
+  }
+
+  /** Receives the utterances. */
+  public interface Listener {
+
+    /**
+     * Called when an utterance is complete, that is when the next word has another speaker or the
+     * recognition is complete. Utterances are reported in time order.
+     *
+     * @param utterance the utterance
+     */
+    void onUtterance(Utterance utterance);
+  }
+
+  private final Listener listener;
+
+  // words of final results that are not reported yet, sorted by start time
+  private double[] wordStart = new double[INITIAL_CAPACITY];
+  private double[] wordEnd = new double[INITIAL_CAPACITY];
+  private String[] words = new String[INITIAL_CAPACITY];
+  private int wordCount;
+  private double lastWordStart = Double.NEGATIVE_INFINITY;
+
+  // speaker labels that may still be needed, sorted by from time
+  private double[] labelFrom = new double[INITIAL_CAPACITY];
+  private double[] labelTo = new double[INITIAL_CAPACITY];
+  private long[] labelSpeaker = new long[INITIAL_CAPACITY];
+  private int labelCount;
+  private double finalLabelTime = Double.NEGATIVE_INFINITY;
+
+  // the utterance being built
+  private final StringBuilder transcript = new StringBuilder();
+  private long speaker = -1;
+  private double utteranceStart;
+  private double utteranceEnd;
+
+  /**
+   * Instantiates a new aligner.
+   *
+   * @param listener the listener for the utterances
+   */
+  public SpeakerLabelAligner(Listener listener) {
+    if (listener == null) {
+      throw new IllegalArgumentException("listener cannot be null");
+    }
+    this.listener = listener;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see BaseRecognizeCallback#onTranscription(SpeechRecognitionResults)
+   */
+  @Override
+  public void onTranscription(SpeechRecognitionResults speechResults) {
+    apply(speechResults);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see BaseRecognizeCallback#onTranscriptionComplete()
+   */
+  @Override
+  public void onTranscriptionComplete() {
+    flush();
+  }
+
+  /**
+   * Adds the words of the final results and the speaker labels of a frame, and reports the
+   * utterances that are complete.
+   *
+   * @param speechResults the results received from the service
+   */
+  public synchronized void apply(SpeechRecognitionResults speechResults) {
+    if (speechResults.getResults() != null) {
+      for (SpeechRecognitionResult result : speechResults.getResults()) {
+        if (Boolean.TRUE.equals(result.isXFinal())
+            && result.getAlternatives() != null
+            && !result.getAlternatives().isEmpty()) {
+          addWords(result.getAlternatives().get(0));
+        }
+      }
+    }
+    if (speechResults.getSpeakerLabels() != null) {
+      for (SpeakerLabelsResult label : speechResults.getSpeakerLabels()) {
+        addLabel(label);
+      }
+    }
+    align(false);
+  }
+
+  /**
+   * Reports the remaining words, using the labels received so far, and the last utterance. Called
+   * when the recognition is complete.
+   */
+  public synchronized void flush() {
+    align(true);
+    report();
+  }
+
+  private void addWords(SpeechRecognitionAlternative alternative) {
+    List<SpeechTimestamp> timestamps = alternative.getTimestamps();
+    if (timestamps == null) {
+      return;
+    }
+    for (SpeechTimestamp timestamp : timestamps) {
+      double start = timestamp.getStartTime();
+      // results that are delivered again, for example after a reconnect, are skipped
+      if (start <= lastWordStart) {
+        continue;
+      }
+      if (wordCount == words.length) {
+        wordStart = Arrays.copyOf(wordStart, wordCount * 2);
+        wordEnd = Arrays.copyOf(wordEnd, wordCount * 2);
+        words = Arrays.copyOf(words, wordCount * 2);
+      }
+      wordStart[wordCount] = start;
+      wordEnd[wordCount] = timestamp.getEndTime();
+      words[wordCount] = timestamp.getWord();
+      wordCount++;
+      lastWordStart = start;
+    }
+  }
+
+  private void addLabel(SpeakerLabelsResult label) {
+    double from = label.getFrom();
+    int index = Arrays.binarySearch(labelFrom, 0, labelCount, from);
+    if (index < 0) {
+      index = -index - 1;
+      if (labelCount == labelFrom.length) {
+        labelFrom = Arrays.copyOf(labelFrom, labelCount * 2);
+        labelTo = Arrays.copyOf(labelTo, labelCount * 2);
+        labelSpeaker = Arrays.copyOf(labelSpeaker, labelCount * 2);
+      }
+      // labels almost always arrive in order, so this is usually an append
+      System.arraycopy(labelFrom, index, labelFrom, index + 1, labelCount - index);
+      System.arraycopy(labelTo, index, labelTo, index + 1, labelCount - index);
+      System.arraycopy(labelSpeaker, index, labelSpeaker, index + 1, labelCount - index);
+      labelCount++;
+    }
+    labelFrom[index] = from;
+    labelTo[index] = label.getTo();
+    labelSpeaker[index] = label.getSpeaker();
+    if (Boolean.TRUE.equals(label.isXFinal())) {
+      finalLabelTime = Math.max(finalLabelTime, label.getTo());
+    }
+  }
+
+  /** Merge-joins the words with final labels against the labels and drops what was used. */
+  private void align(boolean all) {
+    int word = 0;
+    int label = 0;
+    while (word < wordCount && (all || wordEnd[word] <= finalLabelTime)) {
+      if (labelCount == 0) {
+        if (!all) {
+          break;
+        }
+        append(speaker, word);
+      } else {
+        double middle = (wordStart[word] + wordEnd[word]) / 2;
+        while (label + 1 < labelCount && labelFrom[label + 1] <= middle) {
+          label++;
+        }
+        append(labelSpeaker[label], word);
+      }
+      word++;
+    }
+
+    // keep the label in use, the next word may still fall into it
+    dropWords(word);
+    dropLabels(label);
+  }
+
+  private void append(long wordSpeaker, int word) {
+    if (wordSpeaker != speaker) {
+      report();
+    }
+    if (transcript.length() == 0) {
+      utteranceStart = wordStart[word];
+    } else {
+      transcript.append(' ');
+    }
+    speaker = wordSpeaker;
+    utteranceEnd = wordEnd[word];
+    transcript.append(words[word]);
+  }
+
+  private void report() {
+    if (transcript.length() > 0) {
+      String text = transcript.toString();
+      transcript.setLength(0);
+      listener.onUtterance(new Utterance(speaker, utteranceStart, utteranceEnd, text));
+    }
+  }
+
+  private void dropWords(int count) {
+    if (count == 0) {
+      return;
+    }
+    System.arraycopy(wordStart, count, wordStart, 0, wordCount - count);
+    System.arraycopy(wordEnd, count, wordEnd, 0, wordCount - count);
+    System.arraycopy(words, count, words, 0, wordCount - count);
+    Arrays.fill(words, wordCount - count, wordCount, null);
+    wordCount -= count;
+  }
+
+  private void dropLabels(int count) {
+    if (count == 0) {
+      return;
+    }
+    System.arraycopy(labelFrom, count, labelFrom, 0, labelCount - count);
+    System.arraycopy(labelTo, count, labelTo, 0, labelCount - count);
+    System.arraycopy(labelSpeaker, count, labelSpeaker, 0, labelCount - count);
+    labelCount -= count;
+  }
+}
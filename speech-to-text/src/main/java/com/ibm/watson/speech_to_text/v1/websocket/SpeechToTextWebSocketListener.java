@@ -21,9 +21,10 @@ import com.ibm.cloud.sdk.core.util.GsonSingleton;
 import com.ibm.watson.speech_to_text.v1.SpeechToText;
 import com.ibm.watson.speech_to_text.v1.model.RecognizeWithWebsocketsOptions;
 import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResults;
+import com.ibm.watson.speech_to_text.v1.util.AudioRingBuffer;
+import com.ibm.watson.speech_to_text.v1.util.CompactResultsTypeAdapterFactory;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import okhttp3.Response;
@@ -50,6 +51,7 @@ public final class SpeechToTextWebSocketListener extends WebSocketListener {
   private static final String STOP = "stop";
   private static final String ACTION = "action";
   private static final int ONE_KB = 1024;
+  private static final int MAX_BATCH = 32 * ONE_KB;
   private static final String ERROR = "error";
   private static final String RESULTS = "results";
   private static final String SPEAKER_LABELS = "speaker_labels";
@@ -67,6 +69,8 @@ public final class SpeechToTextWebSocketListener extends WebSocketListener {
   private final InputStream stream;
   private final RecognizeWithWebsocketsOptions options;
   private final RecognizeCallback callback;
+  private final Gson gson;
+  private final LatencyRecorder.Session latency;
   private WebSocket socket;
   private boolean socketOpen = true;
   private Thread audioThread = null;
@@ -81,9 +85,44 @@ public final class SpeechToTextWebSocketListener extends WebSocketListener {
    */
   public SpeechToTextWebSocketListener(
       final RecognizeWithWebsocketsOptions options, final RecognizeCallback callback) {
+    this(options, callback, false);
+  }
+
+  /**
+   * Instantiates a new speech to text web socket listener.
+   *
+   * @param options the recognize options
+   * @param callback the callback
+   * @param compactResults whether results are parsed in compact mode, see {@link
+   *     CompactResultsTypeAdapterFactory}
+   */
+  public SpeechToTextWebSocketListener(
+      final RecognizeWithWebsocketsOptions options,
+      final RecognizeCallback callback,
+      final boolean compactResults) {
+    this(options, callback, compactResults, null);
+  }
+
+  /**
+   * Instantiates a new speech to text web socket listener.
+   *
+   * @param options the recognize options
+   * @param callback the callback
+   * @param compactResults whether results are parsed in compact mode, see {@link
+   *     CompactResultsTypeAdapterFactory}
+   * @param latencyRecorder the recorder that collects the latencies of the session, or null
+   */
+  public SpeechToTextWebSocketListener(
+      final RecognizeWithWebsocketsOptions options,
+      final RecognizeCallback callback,
+      final boolean compactResults,
+      final LatencyRecorder latencyRecorder) {
     this.stream = options.audio();
     this.options = options;
     this.callback = callback;
+    this.gson = compactResults ? CompactResultsTypeAdapterFactory.getGson() : GSON;
+    this.latency =
+        latencyRecorder != null ? latencyRecorder.startSession(options.contentType()) : null;
   }
 
   /*
@@ -130,12 +169,19 @@ public final class SpeechToTextWebSocketListener extends WebSocketListener {
         callback.onInactivityTimeout(new RuntimeException(error));
       }
     } else if (json.has(RESULTS) || json.has(SPEAKER_LABELS) || json.has(AUDIO_METRICS)) {
-      callback.onTranscription(GSON.fromJson(message, SpeechRecognitionResults.class));
+      SpeechRecognitionResults results = gson.fromJson(message, SpeechRecognitionResults.class);
+      if (latency != null) {
+        latency.onResults(results);
+      }
+      callback.onTranscription(results);
 
     } else if (json.has(STATE)) {
       // A listen state after everything has been sent over indicates everything has been processed
       if (!isListening) {
         isListening = true;
+        if (latency != null) {
+          latency.onListening();
+        }
       } else {
         callback.onTranscriptionComplete();
         socket.close(CLOSE_NORMAL, "Transcription completed");
@@ -153,6 +199,9 @@ public final class SpeechToTextWebSocketListener extends WebSocketListener {
    */
   @Override
   public void onOpen(final WebSocket socket, Response response) {
+    if (latency != null) {
+      latency.onOpen();
+    }
     callback.onConnected();
     this.socket = socket;
     if (!socket.send(buildStartMessage(options))) {
@@ -188,7 +237,9 @@ public final class SpeechToTextWebSocketListener extends WebSocketListener {
    * @param inputStream the input stream
    */
   private void sendInputStream(InputStream inputStream) {
-    byte[] buffer = new byte[ONE_KB];
+    // An AudioRingBuffer returns everything that piled up while the socket was busy, so a backlog
+    // is drained in larger messages. Other streams are sent one KB at a time.
+    byte[] buffer = new byte[inputStream instanceof AudioRingBuffer ? MAX_BATCH : ONE_KB];
     int read;
     try {
       // This method uses a blocking while loop to receive all contents of the underlying input
@@ -205,10 +256,9 @@ public final class SpeechToTextWebSocketListener extends WebSocketListener {
           Thread.sleep(QUEUE_WAIT_MILLIS);
         }
 
-        if (read == ONE_KB) {
-          socket.send(ByteString.of(buffer));
-        } else {
-          socket.send(ByteString.of(Arrays.copyOfRange(buffer, 0, read)));
+        socket.send(ByteString.of(buffer, 0, read));
+        if (latency != null) {
+          latency.onAudioSent(buffer, read);
         }
       }
     } catch (IOException | InterruptedException e) {
@@ -0,0 +1,243 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1.websocket;
+
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionAlternative;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResult;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResults;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Assembles the interim and final results of a recognition session into a transcript. <br>
+ * Every {@link SpeechRecognitionResults} received by {@link #onTranscription} replaces the results
+ * from its {@code result_index} onwards. Only the results in the frame are looked at, and the
+ * {@link Listener} is told about the results that actually changed: a result that became final, an
+ * interim result whose transcript changed, or an interim result that the service dropped. <br>
+ * Final results are never revised, so only the most recent {@code maxRetainedFinals} of them are
+ * kept; consumers that need the whole transcript of a long session should keep it from the {@link
+ * Listener#onFinal} events.
+ */
+public class TranscriptAssembler extends BaseRecognizeCallback {
+
+  /** The default number of final results kept. (value is 1000) */
+  public static final int DEFAULT_MAX_RETAINED_FINALS = 1000;
+
+  /** Receives the changes to the transcript. */
+  public interface Listener {
+
+    /**
+     * Called when a result becomes final. Results become final in index order.
+     *
+     * @param index the index of the result in the session
+     * @param result the final result
+     */
+    void onFinal(long index, SpeechRecognitionResult result);
+
+    /**
+     * Called when an interim result is added or its transcript changes.
+     *
+     * @param index the index of the result in the session
+     * @param result the interim result
+     */
+    void onInterim(long index, SpeechRecognitionResult result);
+
+    /**
+     * Called when an interim result is dropped by the service.
+     *
+     * @param index the index of the result in the session
+     */
+    void onInterimRemoved(long index);
+  }
+
+  private final Listener listener;
+  private final int maxRetainedFinals;
+
+  private final ArrayDeque<SpeechRecognitionResult> finals =
+      new ArrayDeque<SpeechRecognitionResult>();
+  private final List<SpeechRecognitionResult> interims = new ArrayList<SpeechRecognitionResult>();
+  private long finalCount;
+
+  /** Instantiates a new assembler without a listener. */
+  public TranscriptAssembler() {
+    this(null, DEFAULT_MAX_RETAINED_FINALS);
+  }
+
+  /**
+   * Instantiates a new assembler.
+   *
+   * @param listener the listener for changes to the transcript, or null
+   * @param maxRetainedFinals the number of final results kept
+   */
+  public TranscriptAssembler(Listener listener, int maxRetainedFinals) {
+    if (maxRetainedFinals < 0) {
+      throw new IllegalArgumentException("maxRetainedFinals cannot be negative");
+    }
+    this.listener = listener;
+    this.maxRetainedFinals = maxRetainedFinals;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see BaseRecognizeCallback#onTranscription(SpeechRecognitionResults)
+   */
+  @Override
+  public void onTranscription(SpeechRecognitionResults speechResults) {
+    apply(speechResults);
+  }
+
+  /**
+   * Applies a frame of results to the transcript.
+   *
+   * @param speechResults the results received from the service
+   */
+  public synchronized void apply(SpeechRecognitionResults speechResults) {
+    List<SpeechRecognitionResult> results = speechResults.getResults();
+    if (results == null) {
+      return;
+    }
+    long index = speechResults.getResultIndex() != null ? speechResults.getResultIndex() : 0;
+    long end = index + results.size();
+    if (end <= finalCount) {
+      // a repeat of results that are already final
+      return;
+    }
+    for (int i = 0; i < results.size(); i++) {
+      update(index + i, results.get(i));
+    }
+
+    // interim results after the frame were replaced by the results in it
+    while (!interims.isEmpty() && finalCount + interims.size() > end) {
+      long removed = finalCount + interims.size() - 1;
+      if (interims.remove(interims.size() - 1) != null && listener != null) {
+        listener.onInterimRemoved(removed);
+      }
+    }
+  }
+
+  /**
+   * Gets the number of results that became final so far, including those no longer retained.
+   *
+   * @return the number of final results
+   */
+  public synchronized long getFinalCount() {
+    return finalCount;
+  }
+
+  /**
+   * Gets the retained final results, oldest first.
+   *
+   * @return a copy of the final results
+   */
+  public synchronized List<SpeechRecognitionResult> getFinalResults() {
+    return new ArrayList<SpeechRecognitionResult>(finals);
+  }
+
+  /**
+   * Gets the interim results that follow the final results.
+   *
+   * @return a copy of the interim results
+   */
+  public synchronized List<SpeechRecognitionResult> getInterimResults() {
+    List<SpeechRecognitionResult> copy = new ArrayList<SpeechRecognitionResult>();
+    for (SpeechRecognitionResult result : interims) {
+      if (result != null) {
+        copy.add(result);
+      }
+    }
+    return copy;
+  }
+
+  /**
+   * Gets the transcript of the retained final results.
+   *
+   * @return the final transcript
+   */
+  public synchronized String getFinalTranscript() {
+    StringBuilder builder = new StringBuilder();
+    for (SpeechRecognitionResult result : finals) {
+      builder.append(transcript(result));
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Gets the transcript of the interim results, which may still change.
+   *
+   * @return the interim transcript
+   */
+  public synchronized String getInterimTranscript() {
+    StringBuilder builder = new StringBuilder();
+    for (SpeechRecognitionResult result : interims) {
+      builder.append(transcript(result));
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Gets the transcript of the retained final results followed by the interim results.
+   *
+   * @return the transcript
+   */
+  public synchronized String getTranscript() {
+    return getFinalTranscript() + getInterimTranscript();
+  }
+
+  private void update(long index, SpeechRecognitionResult result) {
+    if (index < finalCount) {
+      return;
+    }
+    int slot = (int) (index - finalCount);
+    while (interims.size() < slot) {
+      interims.add(null);
+    }
+
+    boolean isFinal = Boolean.TRUE.equals(result.isXFinal());
+    boolean changed;
+    if (slot == interims.size()) {
+      interims.add(result);
+      changed = true;
+    } else {
+      SpeechRecognitionResult previous = interims.set(slot, result);
+      changed = previous == null || !transcript(previous).equals(transcript(result));
+    }
+    if (!isFinal && changed && listener != null) {
+      listener.onInterim(index, result);
+    }
+
+    while (!interims.isEmpty()
+        && interims.get(0) != null
+        && Boolean.TRUE.equals(interims.get(0).isXFinal())) {
+      SpeechRecognitionResult promoted = interims.remove(0);
+      finals.addLast(promoted);
+      if (finals.size() > maxRetainedFinals) {
+        finals.removeFirst();
+      }
+      if (listener != null) {
+        listener.onFinal(finalCount, promoted);
+      }
+      finalCount++;
+    }
+  }
+
+  private static String transcript(SpeechRecognitionResult result) {
+    if (result == null
+        || result.getAlternatives() == null
+        || result.getAlternatives().isEmpty()) {
+      return "";
+    }
+    SpeechRecognitionAlternative alternative = result.getAlternatives().get(0);
+    return alternative.getTranscript() != null ? alternative.getTranscript() : "";
+  }
+}
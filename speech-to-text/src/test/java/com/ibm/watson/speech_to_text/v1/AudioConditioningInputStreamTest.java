@@ -0,0 +1,82 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.ibm.watson.speech_to_text.v1.util.AudioConditioningInputStream;
+import com.ibm.watson.speech_to_text.v1.util.PcmFormat;
+import com.ibm.watson.speech_to_text.v1.util.VoiceActivityDetector;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link AudioConditioningInputStream}. */
+public class AudioConditioningInputStreamTest {
+
+  private static final PcmFormat STEREO = new PcmFormat(48000, 2, false);
+  private static final PcmFormat MONO = new PcmFormat(16000, 1, false);
+
+  private static byte[] stereoTone(double frequency) {
+    byte[] audio = new byte[STEREO.getByteRate()];
+    for (int i = 0; i < STEREO.getSampleRate(); i++) {
+      short sample = (short) (10000 * Math.sin(2 * Math.PI * frequency * i / 48000));
+      STEREO.putSample(audio, i * 4, sample);
+      STEREO.putSample(audio, i * 4 + 2, sample);
+    }
+    return audio;
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1000];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+    return out.toByteArray();
+  }
+
+  /** Tests that a tone survives downmixing and downsampling. */
+  @Test
+  public void testDownmixAndResample() throws IOException {
+    AudioConditioningInputStream in =
+        new AudioConditioningInputStream(new ByteArrayInputStream(stereoTone(1000)), STEREO, 16000);
+    assertEquals(in.getContentType(), "audio/l16;rate=16000;channels=1;endianness=little-endian");
+
+    byte[] audio = readAll(in);
+    assertEquals(audio.length, MONO.getByteRate());
+
+    // skip the filter ramp at both ends
+    VoiceActivityDetector detector = new VoiceActivityDetector(MONO);
+    int margin = 1000;
+    double rms = detector.rms(audio, margin, audio.length - 2 * margin);
+    assertEquals(rms, 10000 / Math.sqrt(2) / 32768, 0.005);
+    double crossings = detector.zeroCrossingRate(audio, margin, audio.length - 2 * margin);
+    assertEquals(crossings, 2000.0 / 16000, 0.005);
+  }
+
+  /** Tests that frequencies above the new Nyquist frequency are filtered out. */
+  @Test
+  public void testAntiAliasing() throws IOException {
+    byte[] audio =
+        readAll(
+            new AudioConditioningInputStream(
+                new ByteArrayInputStream(stereoTone(12000)), STEREO, 16000));
+    double rms = new VoiceActivityDetector(MONO).rms(audio, 1000, audio.length - 2000);
+    assertTrue(rms < 0.002, "rms " + rms);
+  }
+}
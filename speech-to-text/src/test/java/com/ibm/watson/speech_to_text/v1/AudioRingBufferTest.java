@@ -0,0 +1,75 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import com.ibm.watson.speech_to_text.v1.util.AudioRingBuffer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link AudioRingBuffer}. */
+public class AudioRingBufferTest {
+
+  /** Tests that chunks wrap around the end of the buffer and that overruns drop whole chunks. */
+  @Test
+  public void testWrapAndOverrun() throws IOException {
+    AudioRingBuffer ring = new AudioRingBuffer(10);
+    byte[] chunk = {1, 2, 3, 4, 5, 6};
+    byte[] read = new byte[10];
+
+    assertTrue(ring.offer(chunk, 0, 6));
+    assertFalse(ring.offer(chunk, 0, 6));
+    assertEquals(ring.getOverrunCount(), 1);
+    assertEquals(ring.getDroppedBytes(), 6);
+
+    assertEquals(ring.read(read, 0, 4), 4);
+    assertTrue(ring.offer(chunk, 0, 6));
+    assertEquals(ring.available(), 8);
+    assertEquals(ring.read(read, 0, 10), 8);
+    assertEquals(Arrays.copyOf(read, 8), new byte[] {5, 6, 1, 2, 3, 4, 5, 6});
+
+    ring.finish();
+    assertEquals(ring.read(read, 0, 10), -1);
+  }
+
+  /** Tests capturing from a stream on another thread into a memory-mapped buffer. */
+  @Test
+  public void testCaptureWithSpillFile() throws IOException {
+    byte[] audio = new byte[100000];
+    for (int i = 0; i < audio.length; i++) {
+      audio[i] = (byte) i;
+    }
+    File spill = File.createTempFile("ring", ".pcm");
+    spill.deleteOnExit();
+    AudioRingBuffer ring = new AudioRingBuffer(spill, audio.length);
+
+    ring.startCapture(new ByteArrayInputStream(audio));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[3000];
+    int read;
+    while ((read = ring.read(buffer, 0, buffer.length)) != -1) {
+      out.write(buffer, 0, read);
+    }
+    ring.close();
+
+    assertEquals(out.toByteArray(), audio);
+    assertEquals(ring.getOverrunCount(), 0);
+  }
+}
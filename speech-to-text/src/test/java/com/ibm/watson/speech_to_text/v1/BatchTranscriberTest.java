@@ -0,0 +1,287 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.ibm.cloud.sdk.core.security.NoAuthAuthenticator;
+import com.ibm.watson.speech_to_text.v1.model.CreateJobOptions;
+import com.ibm.watson.speech_to_text.v1.util.BatchTranscriber;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link BatchTranscriber} against a fake recognition jobs service. */
+public class BatchTranscriberTest {
+
+  private static final String RECOGNITIONS = "/v1/recognitions";
+  private static final byte[] AUDIO = {1, 2, 3, 4};
+  // the fake service fails the jobs of audio of this length
+  private static final byte[] BAD_AUDIO = {1, 2};
+
+  private MockWebServer server;
+  private JobService jobs;
+  private SpeechToText service;
+  private File directory;
+  private File output;
+  private File checkpoint;
+
+  /** The asynchronous recognition endpoints, with jobs that finish after a delay. */
+  private static final class JobService extends Dispatcher {
+    // job id to job, in creation order
+    private final Map<String, JsonObject> jobs = new LinkedHashMap<String, JsonObject>();
+    private final Map<String, Long> created = new LinkedHashMap<String, Long>();
+    private final Set<String> bad = new HashSet<String>();
+    private final AtomicInteger listRequests = new AtomicInteger();
+    private final AtomicInteger createRequests = new AtomicInteger();
+    private int nextId;
+    private long processingMillis;
+    private int tooManyRequests;
+    private int errorsAfterCreate;
+
+    synchronized void addJob(String id, String userToken) {
+      JsonObject job = new JsonObject();
+      job.addProperty("id", id);
+      job.addProperty("status", "processing");
+      job.addProperty("user_token", userToken);
+      jobs.put(id, job);
+      created.put(id, System.currentTimeMillis());
+    }
+
+    synchronized int getJobCount() {
+      return jobs.size();
+    }
+
+    @Override
+    public synchronized MockResponse dispatch(RecordedRequest request) {
+      String path = request.getRequestUrl().encodedPath();
+      if ("POST".equals(request.getMethod())) {
+        createRequests.incrementAndGet();
+        if (tooManyRequests > 0) {
+          tooManyRequests--;
+          return error(429, "Too many requests");
+        }
+        String id = "job-" + nextId++;
+        addJob(id, request.getRequestUrl().queryParameter("user_token"));
+        if (request.getBody().readByteArray().length == BAD_AUDIO.length) {
+          bad.add(id);
+        }
+        if (errorsAfterCreate > 0) {
+          errorsAfterCreate--;
+          return error(503, "Service unavailable");
+        }
+        return new MockResponse().setResponseCode(201).setBody(jobs.get(id).toString());
+      }
+      if (RECOGNITIONS.equals(path)) {
+        listRequests.incrementAndGet();
+        JsonArray recognitions = new JsonArray();
+        for (String id : jobs.keySet()) {
+          recognitions.add(update(id));
+        }
+        JsonObject list = new JsonObject();
+        list.add("recognitions", recognitions);
+        return new MockResponse().setBody(list.toString());
+      }
+      String id = path.substring(RECOGNITIONS.length() + 1);
+      if (!jobs.containsKey(id)) {
+        return error(404, "Job not found");
+      }
+      if ("DELETE".equals(request.getMethod())) {
+        jobs.remove(id);
+        return new MockResponse().setResponseCode(204);
+      }
+      return new MockResponse().setBody(update(id).toString());
+    }
+
+    private JsonObject update(String id) {
+      JsonObject job = jobs.get(id);
+      if ("processing".equals(job.get("status").getAsString())
+          && System.currentTimeMillis() - created.get(id) >= processingMillis) {
+        boolean failed = bad.contains(id);
+        job.addProperty("status", failed ? "failed" : "completed");
+        if (!failed) {
+          job.add(
+              "results",
+              new JsonParser()
+                  .parse("[{'result_index':0,'results':[]}]".replace('\'', '"')));
+        }
+      }
+      return job;
+    }
+
+    private static MockResponse error(int code, String message) {
+      return new MockResponse()
+          .setResponseCode(code)
+          .setBody("{\"code\":" + code + ",\"error\":\"" + message + "\"}");
+    }
+  }
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    jobs = new JobService();
+    server = new MockWebServer();
+    server.setDispatcher(jobs);
+    server.start();
+    service = new SpeechToText(new NoAuthAuthenticator());
+    service.setServiceUrl(server.url("/").toString());
+    directory = Files.createTempDirectory("batch").toFile();
+    File work = Files.createTempDirectory("batch-output").toFile();
+    output = new File(work, "results.ndjson");
+    checkpoint = new File(work, "results.checkpoint");
+  }
+
+  @AfterMethod
+  public void tearDown() throws IOException {
+    server.shutdown();
+  }
+
+  private File audio(String name, byte[] content) throws IOException {
+    File file = new File(directory, name + ".wav");
+    Files.write(file.toPath(), content);
+    return file;
+  }
+
+  private BatchTranscriber.Builder transcriber() {
+    return new BatchTranscriber.Builder()
+        .service(service)
+        .options(new CreateJobOptions.Builder())
+        .output(output)
+        .checkpoint(checkpoint)
+        .minPollIntervalMillis(10)
+        .maxPollIntervalMillis(40)
+        .retryDelayMillis(10);
+  }
+
+  private List<JsonObject> outputLines() throws IOException {
+    List<JsonObject> lines = new ArrayList<JsonObject>();
+    for (String line : Files.readAllLines(output.toPath(), StandardCharsets.UTF_8)) {
+      lines.add(new JsonParser().parse(line).getAsJsonObject());
+    }
+    return lines;
+  }
+
+  private void writeCheckpoint(String... lines) throws IOException {
+    StringBuilder content = new StringBuilder();
+    for (String line : lines) {
+      content.append(line.replace('\'', '"')).append('\n');
+    }
+    Files.write(checkpoint.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** Tests that a resumed run skips finished files and polls the jobs it submitted before. */
+  @Test(timeOut = 10000)
+  public void testResumeFromCheckpoint() throws Exception {
+    File done = audio("done", AUDIO);
+    File submitted = audio("submitted", AUDIO);
+    audio("new", AUDIO);
+    jobs.addJob("job-earlier", null);
+    writeCheckpoint(
+        "{'file':'" + done.getAbsolutePath() + "','job_id':'job-done'}",
+        "{'file':'" + done.getAbsolutePath() + "','status':'completed'}",
+        "{'file':'" + submitted.getAbsolutePath() + "','job_id':'job-earlier'}");
+
+    BatchTranscriber.Summary summary = transcriber().build().run(directory);
+
+    assertEquals(summary.getSkipped(), 1);
+    assertEquals(summary.getCompleted(), 2);
+    assertEquals(summary.getFailed(), 0);
+    assertEquals(jobs.createRequests.get(), 1);
+    assertEquals(outputLines().size(), 2);
+    // completed jobs are deleted
+    assertEquals(jobs.getJobCount(), 0);
+  }
+
+  /** Tests that a job the service no longer knows fails instead of blocking the run. */
+  @Test(timeOut = 10000)
+  public void testMissingJob() throws Exception {
+    File expired = audio("expired", AUDIO);
+    writeCheckpoint("{'file':'" + expired.getAbsolutePath() + "','job_id':'job-expired'}");
+
+    BatchTranscriber.Summary summary = transcriber().build().run(directory);
+
+    assertEquals(summary.getCompleted(), 0);
+    assertEquals(summary.getFailed(), 1);
+    List<JsonObject> lines = outputLines();
+    assertEquals(lines.get(0).get("job_id").getAsString(), "job-expired");
+    assertEquals(lines.get(0).get("status").getAsString(), "failed");
+
+    // the failure is recorded, so the next run skips the file
+    summary = transcriber().build().run(directory);
+    assertEquals(summary.getSkipped(), 1);
+  }
+
+  /** Tests that a failed job is written as failed. */
+  @Test(timeOut = 10000)
+  public void testFailedJob() throws Exception {
+    audio("bad", BAD_AUDIO);
+    audio("good", AUDIO);
+
+    BatchTranscriber.Summary summary = transcriber().build().run(directory);
+
+    assertEquals(summary.getCompleted(), 1);
+    assertEquals(summary.getFailed(), 1);
+    for (JsonObject line : outputLines()) {
+      boolean bad = line.get("file").getAsString().endsWith("bad.wav");
+      assertEquals(line.get("status").getAsString(), bad ? "failed" : "completed");
+    }
+  }
+
+  /** Tests that uploads are retried without creating a job twice. */
+  @Test(timeOut = 10000)
+  public void testRetry() throws Exception {
+    audio("limited", AUDIO);
+    jobs.tooManyRequests = 1;
+    jobs.errorsAfterCreate = 1;
+
+    BatchTranscriber.Summary summary =
+        transcriber().maxConcurrentUploads(1).deleteCompletedJobs(false).build().run(directory);
+
+    assertEquals(summary.getCompleted(), 1);
+    // rate limited, then created with a server error and found by its user token
+    assertEquals(jobs.createRequests.get(), 2);
+    assertEquals(jobs.getJobCount(), 1);
+  }
+
+  /** Tests that polling backs off while no job finishes. */
+  @Test(timeOut = 10000)
+  public void testPollBackoff() throws Exception {
+    audio("slow", AUDIO);
+    jobs.processingMillis = 600;
+
+    BatchTranscriber.Summary summary =
+        transcriber().minPollIntervalMillis(10).maxPollIntervalMillis(160).build().run(directory);
+
+    assertEquals(summary.getCompleted(), 1);
+    // 10 ms polling would list the jobs about 60 times in 600 ms, backing off about 7 times
+    assertTrue(jobs.listRequests.get() <= 15, "listed " + jobs.listRequests.get() + " times");
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import com.ibm.watson.speech_to_text.v1.util.ChannelDemultiplexer;
+import com.ibm.watson.speech_to_text.v1.util.PcmFormat;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link ChannelDemultiplexer}. */
+public class ChannelDemultiplexerTest {
+
+  /** Tests that each channel of a long stereo stream is read in full on its own thread. */
+  @Test
+  public void testStereo() throws Exception {
+    PcmFormat format = new PcmFormat(8000, 2, false);
+    int frames = 100000;
+    byte[] audio = new byte[frames * format.getFrameSize()];
+    for (int i = 0; i < frames; i++) {
+      format.putSample(audio, i * 4, (short) i);
+      format.putSample(audio, i * 4 + 2, (short) -i);
+    }
+    ChannelDemultiplexer demultiplexer =
+        new ChannelDemultiplexer(new ByteArrayInputStream(audio), format);
+    assertEquals(demultiplexer.getChannelFormat(), new PcmFormat(8000, 1, false));
+
+    final byte[][] channels = new byte[2][];
+    final IOException[] failure = new IOException[1];
+    final InputStream right = demultiplexer.getChannel(1);
+    Thread reader =
+        new Thread() {
+          @Override
+          public void run() {
+            try {
+              channels[1] = readFully(right, 777);
+            } catch (IOException e) {
+              failure[0] = e;
+            }
+          }
+        };
+    reader.start();
+    channels[0] = readFully(demultiplexer.getChannel(0), 1000);
+    reader.join();
+
+    assertNull(failure[0]);
+    for (int channel = 0; channel < 2; channel++) {
+      assertEquals(channels[channel].length, frames * 2);
+      for (int i = 0; i < frames; i++) {
+        short expected = (short) (channel == 0 ? i : -i);
+        assertEquals(format.getSample(channels[channel], i * 2), expected);
+      }
+    }
+  }
+
+  private static byte[] readFully(InputStream in, int bufferSize) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[bufferSize];
+    int read;
+    while ((read = in.read(buffer, 0, buffer.length)) != -1) {
+      out.write(buffer, 0, read);
+    }
+    in.close();
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import com.ibm.cloud.sdk.core.util.GsonSingleton;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionAlternative;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResults;
+import com.ibm.watson.speech_to_text.v1.util.CompactResultsTypeAdapterFactory;
+import com.ibm.watson.speech_to_text.v1.util.CompactWordData;
+import com.ibm.watson.speech_to_text.v1.util.SpeechResultsUtils;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link CompactResultsTypeAdapterFactory} and {@link CompactWordData}. */
+public class CompactResultsTest {
+
+  private static final String RESULTS =
+      "{'result_index':0,'results':[{'final':true,'alternatives':[{'transcript':"
+          + "'hello world hello','confidence':0.9,'word_confidence':[['hello',0.95],"
+          + "['world',0.8],['hello',0.7]],'timestamps':[['hello',0.5,1.0],['world',1.0,1.5],"
+          + "['hello',1.5,2.0]]}]}]}";
+
+  private static SpeechRecognitionAlternative firstAlternative(SpeechRecognitionResults results) {
+    return results.getResults().get(0).getAlternatives().get(0);
+  }
+
+  /** Tests that compact mode stores words in arrays behind the lists of the model. */
+  @Test
+  public void testCompactResults() {
+    SpeechRecognitionResults results =
+        CompactResultsTypeAdapterFactory.getGson()
+            .fromJson(RESULTS.replace('\'', '"'), SpeechRecognitionResults.class);
+
+    SpeechRecognitionAlternative alternative = firstAlternative(results);
+    CompactWordData data = CompactWordData.of(alternative);
+    assertEquals(data.size(), 3);
+    assertEquals(data.getWords()[1], "world");
+    assertSame(data.getWords()[2], data.getWords()[0]);
+    assertEquals(data.getStartTimes()[1], 1.0);
+    assertEquals(data.getEndTimes()[1], 1.5);
+    assertEquals(data.getConfidences()[0], 0.95f);
+    assertEquals(alternative.getTimestamps().get(0).getWord(), "hello");
+    assertEquals(alternative.getWordConfidence().get(0).getConfidence(), 0.95);
+  }
+
+  /** Tests that compact results serialize and shift as results parsed the usual way. */
+  @Test
+  public void testSerialization() {
+    SpeechRecognitionResults results =
+        CompactResultsTypeAdapterFactory.getGson()
+            .fromJson(RESULTS.replace('\'', '"'), SpeechRecognitionResults.class);
+    SpeechRecognitionResults expected =
+        GsonSingleton.getGson()
+            .fromJson(RESULTS.replace('\'', '"'), SpeechRecognitionResults.class);
+
+    assertNull(CompactWordData.of(firstAlternative(expected)));
+    assertEquals(
+        GsonSingleton.getGson().toJsonTree(results), GsonSingleton.getGson().toJsonTree(expected));
+    SpeechRecognitionResults shifted = SpeechResultsUtils.shift(results, 10, 0);
+    assertEquals(SpeechResultsUtils.getEndTime(shifted.getResults().get(0)), 12.0);
+  }
+}
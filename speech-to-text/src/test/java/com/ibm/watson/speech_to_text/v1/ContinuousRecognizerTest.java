@@ -0,0 +1,187 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.ibm.cloud.sdk.core.security.NoAuthAuthenticator;
+import com.ibm.cloud.sdk.core.util.GsonSingleton;
+import com.ibm.watson.speech_to_text.v1.model.RecognizeWithWebsocketsOptions;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResult;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResults;
+import com.ibm.watson.speech_to_text.v1.util.PcmFormat;
+import com.ibm.watson.speech_to_text.v1.util.SpeechResultsUtils;
+import com.ibm.watson.speech_to_text.v1.websocket.BaseRecognizeCallback;
+import com.ibm.watson.speech_to_text.v1.websocket.ContinuousRecognizer;
+import com.ibm.watson.speech_to_text.v1.websocket.RecognizeCallback;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import okhttp3.WebSocket;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link ContinuousRecognizer}, using a service that recognizes tones as words. */
+public class ContinuousRecognizerTest {
+
+  private static final PcmFormat FORMAT = new PcmFormat(16000, 1, false);
+  private static final double TONE = 0.6;
+  private static final double PAUSE = 0.8;
+  private static final int WORDS = 4;
+
+  /** A fake service that recognizes every tone in a session as one final result. */
+  private static class ToneService extends SpeechToText {
+    private int sessions;
+
+    ToneService() {
+      super(new NoAuthAuthenticator());
+    }
+
+    @Override
+    public WebSocket recognizeUsingWebSocket(
+        final RecognizeWithWebsocketsOptions options, final RecognizeCallback callback) {
+      sessions++;
+      new Thread() {
+        @Override
+        public void run() {
+          callback.onConnected();
+          callback.onListening();
+          try {
+            byte[] audio = readAll(options.audio());
+            callback.onTranscription(recognizeTones(audio));
+          } catch (IOException e) {
+            callback.onError(e);
+          }
+          callback.onTranscriptionComplete();
+        }
+      }.start();
+      return null;
+    }
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+    in.close();
+    return out.toByteArray();
+  }
+
+  private static SpeechRecognitionResults recognizeTones(byte[] audio) {
+    JsonArray results = new JsonArray();
+    double start = -1;
+    for (int offset = 0; offset <= audio.length; offset += FORMAT.getFrameSize()) {
+      boolean loud = offset < audio.length && FORMAT.getSample(audio, offset) != 0;
+      double time = FORMAT.toSeconds(offset);
+      if (loud && start < 0) {
+        start = time;
+      } else if (!loud && start >= 0) {
+        JsonArray timestamp = new JsonArray();
+        timestamp.add("tone");
+        timestamp.add(start);
+        timestamp.add(time);
+        JsonArray timestamps = new JsonArray();
+        timestamps.add(timestamp);
+        JsonObject alternative = new JsonObject();
+        alternative.addProperty("transcript", "tone");
+        alternative.add("timestamps", timestamps);
+        JsonArray alternatives = new JsonArray();
+        alternatives.add(alternative);
+        JsonObject result = new JsonObject();
+        result.addProperty("final", true);
+        result.add("alternatives", alternatives);
+        results.add(result);
+        start = -1;
+      }
+    }
+    JsonObject json = new JsonObject();
+    json.addProperty("result_index", 0);
+    json.add("results", results);
+    return GsonSingleton.getGson().fromJson(json, SpeechRecognitionResults.class);
+  }
+
+  private static byte[] tonesWithPauses() {
+    int toneBytes = (int) FORMAT.toBytes(TONE);
+    int pauseBytes = (int) FORMAT.toBytes(PAUSE);
+    byte[] audio = new byte[WORDS * (toneBytes + pauseBytes)];
+    for (int word = 0; word < WORDS; word++) {
+      int offset = word * (toneBytes + pauseBytes);
+      for (int i = 0; i < toneBytes; i += 2) {
+        FORMAT.putSample(audio, offset + i, (short) (i % 4 == 0 ? 8000 : -8000));
+      }
+    }
+    return audio;
+  }
+
+  /** Tests that sessions roll over at pauses and that the results are stitched together. */
+  @Test
+  public void testRolloverAtSilence() throws InterruptedException {
+    ToneService service = new ToneService();
+    final List<SpeechRecognitionResults> received = new ArrayList<SpeechRecognitionResults>();
+    final CountDownLatch complete = new CountDownLatch(1);
+
+    RecognizeWithWebsocketsOptions options =
+        new RecognizeWithWebsocketsOptions.Builder()
+            .audio(new ByteArrayInputStream(tonesWithPauses()))
+            .contentType(FORMAT.toContentType())
+            .timestamps(true)
+            .build();
+    new ContinuousRecognizer.Builder()
+        .service(service)
+        .options(options)
+        .callback(
+            new BaseRecognizeCallback() {
+              @Override
+              public void onTranscription(SpeechRecognitionResults speechResults) {
+                synchronized (received) {
+                  received.add(speechResults);
+                }
+              }
+
+              @Override
+              public void onTranscriptionComplete() {
+                complete.countDown();
+              }
+            })
+        .rolloverAfter(1.0)
+        .minSilence(0.5)
+        .overlap(0.25)
+        .build()
+        .start();
+
+    assertTrue(complete.await(10, TimeUnit.SECONDS));
+    assertTrue(service.sessions > 1);
+
+    List<SpeechRecognitionResult> words = new ArrayList<SpeechRecognitionResult>();
+    for (SpeechRecognitionResults results : received) {
+      assertEquals(results.getResultIndex().longValue(), words.size());
+      words.addAll(results.getResults());
+    }
+    assertEquals(words.size(), WORDS);
+    for (int i = 0; i < WORDS; i++) {
+      double start = i * (TONE + PAUSE);
+      assertEquals(SpeechResultsUtils.getStartTime(words.get(i)), start, 0.001);
+      assertEquals(SpeechResultsUtils.getEndTime(words.get(i)), start + TONE, 0.001);
+    }
+  }
+}
@@ -0,0 +1,282 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.ibm.cloud.sdk.core.security.NoAuthAuthenticator;
+import com.ibm.cloud.sdk.core.service.exception.BadRequestException;
+import com.ibm.watson.speech_to_text.v1.model.CustomWord;
+import com.ibm.watson.speech_to_text.v1.util.CustomizationSync;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link CustomizationSync} against a fake customization service. */
+public class CustomizationSyncTest {
+
+  private static final String LANGUAGE = "/v1/customizations/language-id";
+  private static final String ACOUSTIC = "/v1/acoustic_customizations/acoustic-id";
+
+  private MockWebServer server;
+  private Customizations customizations;
+  private SpeechToText service;
+  private File directory;
+
+  /**
+   * The customization endpoints of one language and one acoustic model. Uploads are answered with
+   * the queued error codes first; a model reports its queued statuses one per request and keeps
+   * the last one.
+   */
+  private static final class Customizations extends Dispatcher {
+    private final Map<String, String> corpora = new LinkedHashMap<String, String>();
+    private final Map<String, JsonObject> words = new LinkedHashMap<String, JsonObject>();
+    private final Deque<Integer> uploadErrors = new ArrayDeque<Integer>();
+    private final Deque<String> languageStatus = new ArrayDeque<String>();
+    private final Deque<String> acousticStatus = new ArrayDeque<String>();
+    private final List<String> requests = new ArrayList<String>();
+
+    synchronized int count(String method, String path) {
+      return Collections.frequency(requests, method + " " + path);
+    }
+
+    @Override
+    public synchronized MockResponse dispatch(RecordedRequest request) {
+      String method = request.getMethod();
+      String path = request.getRequestUrl().encodedPath();
+      requests.add(method + " " + path);
+      if ("POST".equals(method) && !path.endsWith("/train") && !uploadErrors.isEmpty()) {
+        int code = uploadErrors.poll();
+        return new MockResponse()
+            .setResponseCode(code)
+            .setBody("{\"code\":" + code + ",\"error\":\"Model is busy\"}");
+      }
+
+      if (path.equals(LANGUAGE)) {
+        return model("language-id", languageStatus);
+      } else if (path.equals(ACOUSTIC)) {
+        return model("acoustic-id", acousticStatus);
+      } else if (path.endsWith("/train")) {
+        Deque<String> status = path.startsWith(LANGUAGE) ? languageStatus : acousticStatus;
+        status.clear();
+        status.add("training");
+        status.add("available");
+        return new MockResponse().setBody("{}");
+      } else if (path.equals(LANGUAGE + "/corpora")) {
+        JsonArray list = new JsonArray();
+        for (Map.Entry<String, String> corpus : corpora.entrySet()) {
+          JsonObject json = new JsonObject();
+          json.addProperty("name", corpus.getKey());
+          json.addProperty("status", corpus.getValue());
+          json.addProperty("total_words", 10);
+          json.addProperty("out_of_vocabulary_words", 1);
+          list.add(json);
+        }
+        JsonObject json = new JsonObject();
+        json.add("corpora", list);
+        return new MockResponse().setBody(json.toString());
+      } else if (path.startsWith(LANGUAGE + "/corpora/")) {
+        corpora.put(path.substring(path.lastIndexOf('/') + 1), "analyzed");
+        return new MockResponse().setResponseCode(201).setBody("{}");
+      } else if (path.equals(LANGUAGE + "/words") && "GET".equals(method)) {
+        JsonArray list = new JsonArray();
+        for (JsonObject word : words.values()) {
+          list.add(word);
+        }
+        JsonObject json = new JsonObject();
+        json.add("words", list);
+        return new MockResponse().setBody(json.toString());
+      } else if (path.equals(LANGUAGE + "/words")) {
+        JsonObject body = new JsonParser().parse(request.getBody().readUtf8()).getAsJsonObject();
+        for (int i = 0; i < body.getAsJsonArray("words").size(); i++) {
+          JsonObject word = body.getAsJsonArray("words").get(i).getAsJsonObject();
+          words.put(word.get("word").getAsString(), word);
+        }
+        return new MockResponse().setResponseCode(201).setBody("{}");
+      }
+      return new MockResponse().setResponseCode(404).setBody("{\"error\":\"Not found\"}");
+    }
+
+    private static MockResponse model(String id, Deque<String> status) {
+      JsonObject json = new JsonObject();
+      json.addProperty("customization_id", id);
+      json.addProperty("status", status.size() > 1 ? status.poll() : status.peek());
+      return new MockResponse().setBody(json.toString());
+    }
+  }
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    customizations = new Customizations();
+    server = new MockWebServer();
+    server.setDispatcher(customizations);
+    server.start();
+    service = new SpeechToText(new NoAuthAuthenticator());
+    service.setServiceUrl(server.url("/").toString());
+    directory = Files.createTempDirectory("customization").toFile();
+  }
+
+  @AfterMethod
+  public void tearDown() throws IOException {
+    server.shutdown();
+  }
+
+  private File file(String name, String content) throws IOException {
+    File file = new File(directory, name);
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  private CustomizationSync.Builder sync() {
+    return new CustomizationSync.Builder()
+        .service(service)
+        .languageCustomizationId("language-id")
+        .manifest(new File(directory, "manifest.properties"))
+        .minPollIntervalMillis(1)
+        .maxPollIntervalMillis(4);
+  }
+
+  /** Tests that only new and changed files are uploaded. */
+  @Test
+  public void testSyncChangedFiles() throws Exception {
+    File products = file("products.txt", "the deluxe widget");
+    File support = file("support.txt", "reset the widget");
+    CustomizationSync sync = sync().corpus("products", products).corpus("support", support).build();
+
+    CustomizationSync.Summary summary = sync.sync();
+    assertEquals(summary.getUploaded(), 2);
+    assertEquals(summary.getUnchanged(), 0);
+
+    summary = sync.sync();
+    assertEquals(summary.getUploaded(), 0);
+    assertEquals(summary.getUnchanged(), 2);
+
+    // a changed file, and a corpus that the service failed to process
+    file("support.txt", "restart the widget");
+    customizations.corpora.put("products", "undetermined");
+    summary = sync.sync();
+    assertEquals(summary.getUploaded(), 2);
+
+    // a new instance reads the hashes from the manifest
+    summary = sync().corpus("products", products).corpus("support", support).build().sync();
+    assertEquals(summary.getUnchanged(), 2);
+    assertEquals(customizations.count("POST", LANGUAGE + "/corpora/products"), 2);
+    assertEquals(customizations.count("POST", LANGUAGE + "/corpora/support"), 2);
+  }
+
+  /** Tests that uploads are retried while the model is busy, and only changed words are added. */
+  @Test
+  public void testRetryWhileBusy() throws Exception {
+    JsonObject existing = new JsonObject();
+    existing.addProperty("word", "IEEE");
+    existing.add("sounds_like", new JsonParser().parse("[\"I. triple E.\"]"));
+    existing.addProperty("display_as", "IEEE");
+    customizations.words.put("IEEE", existing);
+    customizations.uploadErrors.addAll(Arrays.asList(409, 429));
+
+    CustomizationSync.Summary summary =
+        sync()
+            .corpus("products", file("products.txt", "the deluxe widget"))
+            .word(
+                new CustomWord.Builder()
+                    .word("IEEE")
+                    .addSoundsLike("I. triple E.")
+                    .displayAs("IEEE")
+                    .build())
+            .word(new CustomWord.Builder().word("HHonors").addSoundsLike("H. honors").build())
+            .build()
+            .sync();
+
+    assertEquals(summary.getUploaded(), 1);
+    assertEquals(summary.getWordsAdded(), 1);
+    // the corpus is sent again after each busy response, the changed word once
+    assertEquals(customizations.count("POST", LANGUAGE + "/corpora/products"), 3);
+    assertEquals(customizations.count("POST", LANGUAGE + "/words"), 1);
+    assertEquals(
+        new ArrayList<String>(customizations.words.keySet()), Arrays.asList("IEEE", "HHonors"));
+  }
+
+  /** Tests that a client error other than a busy model is not retried. */
+  @Test
+  public void testNoRetryOnClientError() throws Exception {
+    customizations.uploadErrors.add(400);
+    CustomizationSync sync = sync().corpus("products", file("products.txt", "widget")).build();
+    try {
+      sync.sync();
+      fail("expected the upload to fail");
+    } catch (BadRequestException e) {
+      assertEquals(customizations.count("POST", LANGUAGE + "/corpora/products"), 1);
+    }
+  }
+
+  /** Tests that both models are trained once they finished processing, and awaited. */
+  @Test
+  public void testTrain() throws Exception {
+    customizations.languageStatus.addAll(Arrays.asList("pending", "pending", "ready"));
+    customizations.acousticStatus.addAll(Arrays.asList("pending", "ready"));
+    CustomizationSync sync =
+        sync()
+            .acousticCustomizationId("acoustic-id")
+            .corpus("products", file("products.txt", "the deluxe widget"))
+            .build();
+    sync.sync();
+
+    sync.train();
+
+    assertEquals(customizations.count("POST", LANGUAGE + "/train"), 1);
+    assertEquals(customizations.count("POST", ACOUSTIC + "/train"), 1);
+    // pending, pending, ready, then training and available after training
+    assertEquals(customizations.count("GET", LANGUAGE), 5);
+    assertEquals(customizations.languageStatus.peek(), "available");
+    assertEquals(customizations.acousticStatus.peek(), "available");
+
+    // nothing changed since
+    sync.train();
+    assertEquals(customizations.count("POST", LANGUAGE + "/train"), 1);
+    assertEquals(customizations.count("POST", ACOUSTIC + "/train"), 1);
+  }
+
+  /** Tests that a failed acoustic model stops training with its warnings. */
+  @Test
+  public void testAcousticModelFailed() throws Exception {
+    customizations.acousticStatus.add("failed");
+    CustomizationSync sync =
+        sync().languageCustomizationId(null).acousticCustomizationId("acoustic-id").build();
+    try {
+      sync.train();
+      fail("expected training to fail");
+    } catch (IllegalStateException e) {
+      assertEquals(customizations.count("POST", ACOUSTIC + "/train"), 0);
+    }
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.ibm.watson.speech_to_text.v1.util.PcmFormat;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.ByteString;
+
+/**
+ * A local stand-in for the WebSocket recognize endpoint, for measuring throughput and latency
+ * without the service. Every connection is accepted; each {@code resultSeconds} of received
+ * {@code audio/l16} audio is answered with an interim and a final result holding one synthetic,
+ * timestamped word, and the stop action with the final result for the rest of the audio.
+ */
+public class FakeSpeechToTextServer implements Closeable {
+
+  private final MockWebServer server = new MockWebServer();
+  private final double resultSeconds;
+  private final AtomicInteger sessions = new AtomicInteger();
+  private final AtomicLong audioBytes = new AtomicLong();
+  private final AtomicLong finalResults = new AtomicLong();
+
+  /**
+   * Starts the server.
+   *
+   * @param resultSeconds the length of audio covered by a result
+   * @throws IOException if the server cannot be started
+   */
+  public FakeSpeechToTextServer(double resultSeconds) throws IOException {
+    this.resultSeconds = resultSeconds;
+    server.setDispatcher(
+        new Dispatcher() {
+          @Override
+          public MockResponse dispatch(RecordedRequest request) {
+            sessions.incrementAndGet();
+            return new MockResponse().withWebSocketUpgrade(new Session());
+          }
+        });
+    server.start();
+  }
+
+  /**
+   * Gets the URL to set as the service URL.
+   *
+   * @return the URL
+   */
+  public String getUrl() {
+    return server.url("/").toString();
+  }
+
+  /**
+   * Gets the number of sessions opened.
+   *
+   * @return the number of sessions
+   */
+  public int getSessionCount() {
+    return sessions.get();
+  }
+
+  /**
+   * Gets the number of audio bytes received over all sessions.
+   *
+   * @return the number of bytes
+   */
+  public long getAudioBytes() {
+    return audioBytes.get();
+  }
+
+  /**
+   * Gets the number of final results sent over all sessions.
+   *
+   * @return the number of results
+   */
+  public long getFinalResults() {
+    return finalResults.get();
+  }
+
+  @Override
+  public void close() throws IOException {
+    server.shutdown();
+  }
+
+  /** One recognition session. */
+  private final class Session extends WebSocketListener {
+    private PcmFormat format;
+    private long received;
+    private double transcribed;
+    private long nextIndex;
+
+    @Override
+    public void onMessage(WebSocket webSocket, String text) {
+      JsonObject message = new JsonParser().parse(text).getAsJsonObject();
+      String action = message.has("action") ? message.get("action").getAsString() : "";
+      if ("start".equals(action)) {
+        String contentType =
+            message.has("content-type") ? message.get("content-type").getAsString() : null;
+        format = PcmFormat.fromContentType(contentType);
+        if (format == null) {
+          webSocket.send("{\"error\":\"Only audio/l16 is supported, got " + contentType + "\"}");
+          webSocket.close(1000, null);
+          return;
+        }
+        webSocket.send("{\"state\":\"listening\"}");
+      } else if ("stop".equals(action)) {
+        double end = format.toSeconds(received);
+        if (end > transcribed) {
+          send(webSocket, transcribed, end, true);
+          transcribed = end;
+        }
+        webSocket.send("{\"state\":\"listening\"}");
+      }
+    }
+
+    @Override
+    public void onMessage(WebSocket webSocket, ByteString bytes) {
+      received += bytes.size();
+      audioBytes.addAndGet(bytes.size());
+      double end = format.toSeconds(received);
+      while (end - transcribed >= resultSeconds) {
+        send(webSocket, transcribed, transcribed + resultSeconds, false);
+        send(webSocket, transcribed, transcribed + resultSeconds, true);
+        transcribed += resultSeconds;
+      }
+    }
+
+    private void send(WebSocket webSocket, double start, double end, boolean isFinal) {
+      String word = "word" + nextIndex;
+      JsonArray timestamp = new JsonArray();
+      timestamp.add(word);
+      timestamp.add(start);
+      timestamp.add(end);
+      JsonArray timestamps = new JsonArray();
+      timestamps.add(timestamp);
+      JsonObject alternative = new JsonObject();
+      alternative.addProperty("transcript", word + " ");
+      alternative.add("timestamps", timestamps);
+      if (isFinal) {
+        alternative.addProperty("confidence", 0.9);
+      }
+      JsonArray alternatives = new JsonArray();
+      alternatives.add(alternative);
+      JsonObject result = new JsonObject();
+      result.addProperty("final", isFinal);
+      result.add("alternatives", alternatives);
+      JsonArray results = new JsonArray();
+      results.add(result);
+      JsonObject message = new JsonObject();
+      message.addProperty("result_index", nextIndex);
+      message.add("results", results);
+      webSocket.send(message.toString());
+      if (isFinal) {
+        nextIndex++;
+        finalResults.incrementAndGet();
+      }
+    }
+  }
+}
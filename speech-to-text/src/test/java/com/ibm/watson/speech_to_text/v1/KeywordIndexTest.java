@@ -0,0 +1,165 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.ibm.cloud.sdk.core.util.GsonSingleton;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResults;
+import com.ibm.watson.speech_to_text.v1.util.CompactResultsTypeAdapterFactory;
+import com.ibm.watson.speech_to_text.v1.util.KeywordIndex;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link KeywordIndex}. */
+public class KeywordIndexTest {
+
+  private static SpeechRecognitionResults parse(String json) {
+    return GsonSingleton.getGson()
+        .fromJson(json.replace('\'', '"'), SpeechRecognitionResults.class);
+  }
+
+  private static SpeechRecognitionResults call(double offset, double refundConfidence) {
+    return parse(
+        "{'results':[{'final':true,'alternatives':[{'transcript':'I want a refund ',"
+            + "'timestamps':[['I',"
+            + offset
+            + ","
+            + (offset + 0.2)
+            + "],['want',"
+            + (offset + 0.2)
+            + ","
+            + (offset + 0.5)
+            + "],['a',"
+            + (offset + 0.5)
+            + ","
+            + (offset + 0.6)
+            + "],['refund',"
+            + (offset + 0.6)
+            + ","
+            + (offset + 1.1)
+            + "]],"
+            + "'word_confidence':[['I',0.9],['want',0.9],['a',0.8],['refund',"
+            + refundConfidence
+            + "]]}],"
+            + "'keywords_result':{'Refund':[{'normalized_text':'refund','start_time':"
+            + (offset + 0.6)
+            + ",'end_time':"
+            + (offset + 1.1)
+            + ",'confidence':"
+            + refundConfidence
+            + "}]}},"
+            + "{'final':false,'alternatives':[{'transcript':'cancel ',"
+            + "'timestamps':[['cancel',5.0,5.5]]}]}]}");
+  }
+
+  /** Tests searching across commits, a merge and reopening the index. */
+  @Test
+  public void testSearch() throws IOException {
+    File directory = Files.createTempDirectory("keywords").toFile();
+    KeywordIndex index = new KeywordIndex(directory);
+    index.add("call-1", call(0, 0.95));
+    index.commit();
+    index.add("call-2", call(12.5, 0.4));
+    index.add("call-1", call(30, 0.7));
+
+    // the second batch is still buffered
+    List<KeywordIndex.Hit> hits = index.search("REFUND", 0.5);
+    assertEquals(hits.size(), 4);
+    assertEquals(hits.get(0).getCallId(), "call-1");
+    assertEquals(hits.get(0).getStartTime(), 0.6, 0.01);
+    assertEquals(hits.get(3).getStartTime(), 30.6, 0.01);
+    assertEquals(index.search("refund", 0.8).size(), 2);
+    // interim results are not indexed
+    assertTrue(index.search("cancel", 0).isEmpty());
+    index.close();
+    assertEquals(index.getSegmentCount(), 2);
+
+    index = new KeywordIndex(directory);
+    index.merge();
+    assertEquals(index.getSegmentCount(), 1);
+    assertEquals(index.getCallCount(), 2);
+    hits = index.search(" Refund", 0);
+    assertEquals(hits.size(), 6);
+    KeywordIndex.Hit hit = hits.get(hits.size() - 1);
+    assertEquals(hit.getCallId(), "call-2");
+    assertEquals(hit.getStartTime(), 13.1, 0.01);
+    assertEquals(hit.getEndTime(), 13.6, 0.01);
+    assertEquals(hit.getConfidence(), 0.4, 0.005);
+    index.close();
+  }
+
+  /** Tests that a word without a confidence is indexed with the confidence of its alternative. */
+  @Test
+  public void testMissingWordConfidence() throws IOException {
+    // compact results have no confidence for a word that word_confidence leaves out
+    SpeechRecognitionResults results =
+        CompactResultsTypeAdapterFactory.getGson()
+            .fromJson(
+                ("{'results':[{'final':true,'alternatives':[{'transcript':'refund ',"
+                        + "'confidence':0.6,'timestamps':[['refund',0.5,1.0]],"
+                        + "'word_confidence':[['refund']]}]}]}")
+                    .replace('\'', '"'),
+                SpeechRecognitionResults.class);
+    KeywordIndex index = new KeywordIndex(Files.createTempDirectory("keywords").toFile());
+    index.add("call-1", results);
+
+    List<KeywordIndex.Hit> hits = index.search("refund", 0);
+    assertEquals(hits.size(), 1);
+    assertEquals(hits.get(0).getConfidence(), 0.6, 0.005);
+    index.close();
+  }
+
+  /** Tests that segments a merge failed to delete are not searched again after reopening. */
+  @Test
+  public void testInterruptedMerge() throws IOException {
+    File directory = Files.createTempDirectory("keywords").toFile();
+    KeywordIndex index = new KeywordIndex(directory);
+    index.add("call-1", call(0, 0.95));
+    index.commit();
+    index.add("call-2", call(12.5, 0.4));
+    index.commit();
+    List<File> segments = new ArrayList<File>();
+    List<byte[]> contents = new ArrayList<byte[]>();
+    for (File file : directory.listFiles()) {
+      if (file.getName().endsWith(".kwx")) {
+        segments.add(file);
+        contents.add(Files.readAllBytes(file.toPath()));
+      }
+    }
+    assertEquals(segments.size(), 2);
+
+    index.merge();
+    index.close();
+    // the old segments are still there, as if the merge stopped before deleting them
+    for (int i = 0; i < segments.size(); i++) {
+      Files.write(segments.get(i).toPath(), contents.get(i));
+    }
+
+    index = new KeywordIndex(directory);
+    assertEquals(index.getSegmentCount(), 1);
+    // a word and a keyword per call
+    assertEquals(index.search("refund", 0).size(), 4);
+    index.add("call-3", call(0, 0.9));
+    index.merge();
+    assertEquals(index.search("refund", 0).size(), 6);
+    index.close();
+    // the merged segment, and the calls file
+    assertEquals(directory.listFiles().length, 2);
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1;
+
+import static org.testng.Assert.assertEquals;
+
+import com.ibm.watson.speech_to_text.v1.util.LatencyHistogram;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link LatencyHistogram}. */
+public class LatencyHistogramTest {
+
+  /** Tests that percentiles are within the bucket precision. */
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i);
+    }
+
+    assertEquals(histogram.getCount(), 1000);
+    assertEquals(histogram.getMean(), 500.5, 0.001);
+    assertEquals(histogram.getMax(), 1000, 0.001);
+    assertEquals(histogram.getPercentile(50), 500, 500 * 0.07);
+    assertEquals(histogram.getPercentile(99), 990, 990 * 0.07);
+    assertEquals(histogram.getPercentile(100), 1000, 0.001);
+
+    histogram.reset();
+    assertEquals(histogram.getCount(), 0);
+    assertEquals(histogram.getPercentile(50), 0, 0);
+  }
+}
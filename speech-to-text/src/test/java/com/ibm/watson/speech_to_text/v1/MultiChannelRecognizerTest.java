@@ -0,0 +1,170 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.ibm.cloud.sdk.core.security.NoAuthAuthenticator;
+import com.ibm.cloud.sdk.core.util.GsonSingleton;
+import com.ibm.watson.speech_to_text.v1.model.RecognizeWithWebsocketsOptions;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResult;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResults;
+import com.ibm.watson.speech_to_text.v1.util.SpeechResultsUtils;
+import com.ibm.watson.speech_to_text.v1.websocket.MultiChannelRecognizer;
+import com.ibm.watson.speech_to_text.v1.websocket.RecognizeCallback;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.WebSocket;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link MultiChannelRecognizer}. */
+public class MultiChannelRecognizerTest {
+
+  private static final String CONTENT_TYPE = "audio/l16;rate=16000;channels=2";
+  // more than the ring of the demultiplexer, so that one channel cannot be read without the other
+  private static final int FRAMES = 100000;
+
+  /**
+   * A service whose sessions read their channel to the end and then send two final results, one
+   * word each, starting at the given seconds; a session of a failing channel fails at once.
+   */
+  private static final class FakeService extends SpeechToText {
+    private final double[][] starts;
+    private final int failingChannel;
+    private final AtomicInteger sessions = new AtomicInteger();
+
+    FakeService(double[][] starts, int failingChannel) {
+      super(new NoAuthAuthenticator());
+      this.starts = starts;
+      this.failingChannel = failingChannel;
+    }
+
+    @Override
+    public WebSocket recognizeUsingWebSocket(
+        final RecognizeWithWebsocketsOptions options, final RecognizeCallback callback) {
+      final int channel = sessions.getAndIncrement();
+      new Thread() {
+        @Override
+        public void run() {
+          if (channel == failingChannel) {
+            callback.onError(new IOException("Connection refused"));
+            callback.onDisconnected();
+            return;
+          }
+          try {
+            InputStream audio = options.audio();
+            byte[] buffer = new byte[1000];
+            while (audio.read(buffer) != -1) {
+              // the service hears the whole channel before it sends results
+            }
+            for (int i = 0; i < starts[channel].length; i++) {
+              callback.onTranscription(result(i, starts[channel][i]));
+            }
+            callback.onTranscriptionComplete();
+          } catch (IOException e) {
+            callback.onError(e);
+          }
+          callback.onDisconnected();
+        }
+      }.start();
+      return null;
+    }
+  }
+
+  /** Collects the merged conversation. */
+  private static final class Conversation implements MultiChannelRecognizer.Listener {
+    private final List<String> results = Collections.synchronizedList(new ArrayList<String>());
+    private final List<Integer> errors = Collections.synchronizedList(new ArrayList<Integer>());
+    private final AtomicInteger completions = new AtomicInteger();
+
+    @Override
+    public void onResult(int channel, SpeechRecognitionResult result) {
+      results.add(channel + "@" + SpeechResultsUtils.getStartTime(result));
+    }
+
+    @Override
+    public void onError(int channel, Exception e) {
+      errors.add(channel);
+    }
+
+    @Override
+    public void onComplete() {
+      completions.incrementAndGet();
+    }
+  }
+
+  private static SpeechRecognitionResults result(long index, double start) {
+    String json =
+        "{'result_index':"
+            + index
+            + ",'results':[{'final':true,'alternatives':[{'transcript':'word ',"
+            + "'timestamps':[['word',"
+            + start
+            + ","
+            + (start + 0.5)
+            + "]]}]}]}";
+    return GsonSingleton.getGson()
+        .fromJson(json.replace('\'', '"'), SpeechRecognitionResults.class);
+  }
+
+  private static MultiChannelRecognizer recognizer(
+      SpeechToText service, MultiChannelRecognizer.Listener listener) {
+    return new MultiChannelRecognizer.Builder()
+        .service(service)
+        .options(
+            new RecognizeWithWebsocketsOptions.Builder()
+                .audio(new ByteArrayInputStream(new byte[FRAMES * 4]))
+                .contentType(CONTENT_TYPE)
+                .build())
+        .listener(listener)
+        .build();
+  }
+
+  /** Tests that the results of both channels are merged in order of start time. */
+  @Test(timeOut = 10000)
+  public void testMerge() throws Exception {
+    Conversation conversation = new Conversation();
+    FakeService service = new FakeService(new double[][] {{0, 2}, {1, 3}}, -1);
+    MultiChannelRecognizer recognizer = recognizer(service, conversation);
+
+    recognizer.start();
+
+    assertTrue(recognizer.await(5, TimeUnit.SECONDS));
+    assertEquals(service.sessions.get(), 2);
+    assertEquals(conversation.results.toString(), "[0@0.0, 1@1.0, 0@2.0, 1@3.0]");
+    assertTrue(conversation.errors.isEmpty());
+    assertEquals(conversation.completions.get(), 1);
+  }
+
+  /** Tests that a session that fails before reading its channel does not stall the others. */
+  @Test(timeOut = 10000)
+  public void testFailedSession() throws Exception {
+    Conversation conversation = new Conversation();
+    FakeService service = new FakeService(new double[][] {{0, 2}, {1, 3}}, 1);
+    MultiChannelRecognizer recognizer = recognizer(service, conversation);
+
+    recognizer.start();
+
+    assertTrue(recognizer.await(5, TimeUnit.SECONDS));
+    assertEquals(conversation.results.toString(), "[0@0.0, 0@2.0]");
+    assertEquals(conversation.errors.toString(), "[1]");
+    assertEquals(conversation.completions.get(), 1);
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+import com.ibm.cloud.sdk.core.util.GsonSingleton;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResults;
+import com.ibm.watson.speech_to_text.v1.websocket.NdjsonResultWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link NdjsonResultWriter}. */
+public class NdjsonResultWriterTest {
+
+  private static SpeechRecognitionResults parse(String json) {
+    return GsonSingleton.getGson()
+        .fromJson(json.replace('\'', '"'), SpeechRecognitionResults.class);
+  }
+
+  /** Tests that final results are written once per line and interim results are skipped. */
+  @Test
+  public void testWriteFinalResults() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    NdjsonResultWriter writer = new NdjsonResultWriter(out);
+
+    writer.onTranscription(
+        parse(
+            "{'result_index':0,'results':[{'final':false,'alternatives':[{'transcript':'he'}]}]}"));
+    assertEquals(out.size(), 0);
+    writer.onTranscription(
+        parse(
+            "{'result_index':0,'results':[{'final':true,'alternatives':[{'transcript':'hello '}]},"
+                + "{'final':false,'alternatives':[{'transcript':'wor'}]}]}"));
+    // the final result is sent again with the next frame
+    writer.onTranscription(
+        parse(
+            "{'result_index':0,'results':[{'final':true,'alternatives':[{'transcript':'hello '}]},"
+                + "{'final':true,'alternatives':[{'transcript':'world '}]}]}"));
+    writer.onTranscriptionComplete();
+
+    String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+    assertEquals(lines.length, 2);
+    assertEquals(
+        lines[0],
+        "{\"result_index\":0,\"result\":{\"final\":true,"
+            + "\"alternatives\":[{\"transcript\":\"hello \"}]}}");
+    assertEquals(
+        lines[1],
+        "{\"result_index\":1,\"result\":{\"final\":true,"
+            + "\"alternatives\":[{\"transcript\":\"world \"}]}}");
+    assertFalse(writer.checkError());
+    writer.close();
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.ibm.cloud.sdk.core.security.NoAuthAuthenticator;
+import com.ibm.watson.speech_to_text.v1.model.RecognizeWithWebsocketsOptions;
+import com.ibm.watson.speech_to_text.v1.util.PacedInputStream;
+import com.ibm.watson.speech_to_text.v1.util.PcmFormat;
+import com.ibm.watson.speech_to_text.v1.websocket.BaseRecognizeCallback;
+import com.ibm.watson.speech_to_text.v1.websocket.LatencyRecorder;
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.testng.annotations.Test;
+
+/** Runs paced recognitions against a {@link FakeSpeechToTextServer}. */
+public class PacedRecognitionTest {
+
+  private static final int SESSIONS = 20;
+
+  /** Tests concurrent sessions at ten times real time, recording their latencies. */
+  @Test
+  public void testConcurrentPacedSessions() throws Exception {
+    PcmFormat format = new PcmFormat(16000, 1, false);
+    FakeSpeechToTextServer server = new FakeSpeechToTextServer(0.5);
+    try {
+      SpeechToText service = new SpeechToText("testService", new NoAuthAuthenticator());
+      service.setServiceUrl(server.getUrl());
+      LatencyRecorder recorder = new LatencyRecorder();
+      service.setLatencyRecorder(recorder);
+
+      final CountDownLatch done = new CountDownLatch(SESSIONS);
+      for (int i = 0; i < SESSIONS; i++) {
+        PacedInputStream audio =
+            new PacedInputStream.Builder()
+                .audio(new ByteArrayInputStream(new byte[format.getByteRate() * 2]))
+                .format(format)
+                .speed(10)
+                .jitterMillis(5)
+                .seed(i)
+                .build();
+        RecognizeWithWebsocketsOptions options =
+            new RecognizeWithWebsocketsOptions.Builder()
+                .audio(audio)
+                .contentType(format.toContentType())
+                .build();
+        service.recognizeUsingWebSocket(
+            options,
+            new BaseRecognizeCallback() {
+              @Override
+              public void onTranscriptionComplete() {
+                done.countDown();
+              }
+            });
+      }
+
+      assertTrue(done.await(30, TimeUnit.SECONDS));
+      assertEquals(server.getSessionCount(), SESSIONS);
+      assertEquals(server.getAudioBytes(), (long) SESSIONS * format.getByteRate() * 2);
+      assertEquals(server.getFinalResults(), SESSIONS * 4);
+      assertEquals(recorder.getFinalLatency().getCount(), SESSIONS * 4);
+      assertEquals(recorder.getConnectLatency().getCount(), SESSIONS);
+    } finally {
+      server.close();
+    }
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.ibm.cloud.sdk.core.security.NoAuthAuthenticator;
+import com.ibm.watson.speech_to_text.v1.model.RecognizeOptions;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResult;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResults;
+import com.ibm.watson.speech_to_text.v1.model.SpeechTimestamp;
+import com.ibm.watson.speech_to_text.v1.util.ParallelRecognizer;
+import com.ibm.watson.speech_to_text.v1.util.PcmFormat;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link ParallelRecognizer}. */
+public class ParallelRecognizerTest {
+
+  private static final String CONTENT_TYPE = "audio/l16;rate=16000;endianness=little-endian";
+  private static final PcmFormat FORMAT = PcmFormat.fromContentType(CONTENT_TYPE);
+  // every word is 100 ms of a constant sample value, after 100 ms of silence
+  private static final int WORD_SAMPLES = 1600;
+  private static final int WORDS = 25;
+
+  private MockWebServer server;
+  private ParallelRecognizer recognizer;
+  private final AtomicInteger requests = new AtomicInteger();
+
+  /**
+   * Recognizes every run of equal, non-zero samples that the chunk holds in full as the word
+   * numbered by the sample value, with times relative to the chunk.
+   */
+  private static MockResponse recognize(RecordedRequest request) {
+    byte[] audio = request.getBody().readByteArray();
+    JsonArray results = new JsonArray();
+    int samples = audio.length / 2;
+    int start = 0;
+    for (int i = 1; i <= samples; i++) {
+      short value = FORMAT.getSample(audio, start * 2);
+      if (i < samples && FORMAT.getSample(audio, i * 2) == value) {
+        continue;
+      }
+      // a run at either end of the chunk may be cut short
+      if (value != 0 && start > 0 && i < samples) {
+        double from = FORMAT.toSeconds(start * 2L);
+        double to = FORMAT.toSeconds(i * 2L);
+        results.add(result("w" + (value / 100 - 1), from, to));
+      }
+      start = i;
+    }
+    JsonObject json = new JsonObject();
+    json.addProperty("result_index", 0);
+    json.add("results", results);
+    return new MockResponse().setBody(json.toString());
+  }
+
+  private static JsonObject result(String word, double start, double end) {
+    JsonArray timestamp = new JsonArray();
+    timestamp.add(word);
+    timestamp.add(start);
+    timestamp.add(end);
+    JsonArray timestamps = new JsonArray();
+    timestamps.add(timestamp);
+    JsonObject alternative = new JsonObject();
+    alternative.addProperty("transcript", word + " ");
+    alternative.add("timestamps", timestamps);
+    JsonArray alternatives = new JsonArray();
+    alternatives.add(alternative);
+    JsonObject result = new JsonObject();
+    result.addProperty("final", true);
+    result.add("alternatives", alternatives);
+    return result;
+  }
+
+  private static byte[] audio(int words) {
+    byte[] audio = new byte[(words * 2 + 1) * WORD_SAMPLES * 2];
+    for (int word = 0; word < words; word++) {
+      int start = (word * 2 + 1) * WORD_SAMPLES;
+      for (int i = 0; i < WORD_SAMPLES; i++) {
+        FORMAT.putSample(audio, (start + i) * 2, (short) (100 * (word + 1)));
+      }
+    }
+    return audio;
+  }
+
+  private static File audioFile(int words) throws IOException {
+    File file = File.createTempFile("parallel", ".raw");
+    file.deleteOnExit();
+    Files.write(file.toPath(), audio(words));
+    return file;
+  }
+
+  /** A WAVE file whose data chunk is followed by a LIST chunk that holds one more word. */
+  private static File waveFile(int words) throws IOException {
+    byte[] audio = audio(words);
+    byte[] trailer = audio(words + 1);
+    ByteBuffer wave =
+        ByteBuffer.allocate(44 + audio.length + 8 + trailer.length).order(ByteOrder.LITTLE_ENDIAN);
+    wave.put("RIFF".getBytes()).putInt(wave.capacity() - 8).put("WAVE".getBytes());
+    wave.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) 1);
+    wave.putInt(16000).putInt(32000).putShort((short) 2).putShort((short) 16);
+    wave.put("data".getBytes()).putInt(audio.length).put(audio);
+    wave.put("LIST".getBytes()).putInt(trailer.length).put(trailer);
+    File file = File.createTempFile("parallel", ".wav");
+    file.deleteOnExit();
+    Files.write(file.toPath(), wave.array());
+    return file;
+  }
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    server = new MockWebServer();
+    server.setDispatcher(
+        new Dispatcher() {
+          @Override
+          public MockResponse dispatch(RecordedRequest request) {
+            requests.incrementAndGet();
+            return recognize(request);
+          }
+        });
+    server.start();
+    SpeechToText service = new SpeechToText(new NoAuthAuthenticator());
+    service.setServiceUrl(server.url("/").toString());
+    recognizer =
+        new ParallelRecognizer.Builder()
+            .service(service)
+            .options(new RecognizeOptions.Builder())
+            .contentType(CONTENT_TYPE)
+            .chunkSeconds(1)
+            .searchSeconds(0.3)
+            .overlapSeconds(0.25)
+            .parallelism(3)
+            .build();
+  }
+
+  @AfterMethod
+  public void tearDown() throws IOException {
+    server.shutdown();
+  }
+
+  /** Tests that words heard in the overlap of two chunks are kept once, on the file timeline. */
+  @Test
+  public void testRecognize() throws Exception {
+    SpeechRecognitionResults results = recognizer.recognize(audioFile(WORDS));
+
+    assertTrue(requests.get() >= 4, requests.get() + " requests");
+    assertEquals(results.getResults().size(), WORDS);
+    for (int word = 0; word < WORDS; word++) {
+      SpeechRecognitionResult result = results.getResults().get(word);
+      SpeechTimestamp timestamp = result.getAlternatives().get(0).getTimestamps().get(0);
+      assertEquals(timestamp.getWord(), "w" + word);
+      assertEquals(timestamp.getStartTime(), (word * 2 + 1) * 0.1, 1e-6);
+      assertEquals(timestamp.getEndTime(), (word * 2 + 2) * 0.1, 1e-6);
+    }
+  }
+
+  /** Tests that the chunks after the data chunk of a WAVE file are not recognized as audio. */
+  @Test
+  public void testTrailingChunk() throws Exception {
+    SpeechRecognitionResults results = recognizer.recognize(waveFile(WORDS));
+
+    assertEquals(results.getResults().size(), WORDS);
+    SpeechRecognitionResult last = results.getResults().get(WORDS - 1);
+    assertEquals(last.getAlternatives().get(0).getTimestamps().get(0).getWord(), "w" + (WORDS - 1));
+  }
+
+  /** Tests that an empty file returns empty results without sending an empty chunk. */
+  @Test
+  public void testEmptyAudio() throws Exception {
+    File file = File.createTempFile("parallel", ".raw");
+    file.deleteOnExit();
+
+    SpeechRecognitionResults results = recognizer.recognize(file);
+
+    assertEquals(requests.get(), 0);
+    assertEquals(results.getResultIndex().longValue(), 0);
+    assertTrue(results.getResults().isEmpty());
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1;
+
+import static org.testng.Assert.assertEquals;
+
+import com.ibm.watson.speech_to_text.v1.util.AudioTimeMap;
+import com.ibm.watson.speech_to_text.v1.util.PcmFormat;
+import com.ibm.watson.speech_to_text.v1.util.SilenceSuppressingInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link SilenceSuppressingInputStream}. */
+public class SilenceSuppressingInputStreamTest {
+
+  private static final PcmFormat FORMAT = new PcmFormat(8000, 1, false);
+
+  private static void tone(byte[] audio, double from, double to) {
+    for (long i = FORMAT.toBytes(from); i < FORMAT.toBytes(to); i += 2) {
+      FORMAT.putSample(audio, (int) i, (short) (i % 4 == 0 ? 10000 : -10000));
+    }
+  }
+
+  /** Tests that long silences are shortened and that times map back to the original audio. */
+  @Test
+  public void testSuppressSilence() throws IOException {
+    // 1s tone, 3s silence, 1s tone, 0.2s silence, 1s tone
+    byte[] audio = new byte[(int) FORMAT.toBytes(6.2)];
+    tone(audio, 0, 1);
+    tone(audio, 4, 5);
+    tone(audio, 5.2, 6.2);
+
+    SilenceSuppressingInputStream in =
+        new SilenceSuppressingInputStream(new ByteArrayInputStream(audio), FORMAT);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[333];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+
+    // the 3s silence is shortened to 0.5s, the 0.2s silence is kept
+    assertEquals(FORMAT.toSeconds(out.size()), 3.7, 0.0001);
+    AudioTimeMap map = in.getTimeMap();
+    assertEquals(map.getRemovedSeconds(), 2.5, 0.0001);
+    assertEquals(map.toOriginalTime(0.5), 0.5, 0.0001);
+    assertEquals(map.toOriginalTime(1.5), 4.0, 0.0001);
+    assertEquals(map.toOriginalTime(2.7), 5.2, 0.0001);
+  }
+}
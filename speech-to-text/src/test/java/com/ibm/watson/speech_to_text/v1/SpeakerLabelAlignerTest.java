@@ -0,0 +1,70 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1;
+
+import static org.testng.Assert.assertEquals;
+
+import com.ibm.cloud.sdk.core.util.GsonSingleton;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResults;
+import com.ibm.watson.speech_to_text.v1.websocket.SpeakerLabelAligner;
+import java.util.ArrayList;
+import java.util.List;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link SpeakerLabelAligner}. */
+public class SpeakerLabelAlignerTest {
+
+  private static SpeechRecognitionResults parse(String json) {
+    return GsonSingleton.getGson()
+        .fromJson(json.replace('\'', '"'), SpeechRecognitionResults.class);
+  }
+
+  /** Tests that words wait for final labels, which may arrive before or after them. */
+  @Test
+  public void testAlign() {
+    final List<String> utterances = new ArrayList<String>();
+    SpeakerLabelAligner aligner =
+        new SpeakerLabelAligner(
+            new SpeakerLabelAligner.Listener() {
+              @Override
+              public void onUtterance(SpeakerLabelAligner.Utterance utterance) {
+                utterances.add(utterance.getSpeaker() + ": " + utterance.getTranscript());
+              }
+            });
+
+    aligner.onTranscription(
+        parse(
+            "{'speaker_labels':[{'from':0.0,'to':0.5,'speaker':0,'confidence':0.5,'final':false},"
+                + "{'from':0.5,'to':1.0,'speaker':1,'confidence':0.5,'final':false}]}"));
+    aligner.onTranscription(
+        parse(
+            "{'result_index':0,'results':[{'final':true,"
+                + "'alternatives':[{'transcript':'hello there',"
+                + "'timestamps':[['hello',0.0,0.5],['there',0.5,1.0]]}]}]}"));
+    assertEquals(utterances.size(), 0);
+
+    aligner.onTranscription(
+        parse(
+            "{'result_index':1,'results':[{'final':true,'alternatives':[{'transcript':'hi',"
+                + "'timestamps':[['hi',1.2,1.5]]}]}],"
+                + "'speaker_labels':["
+                + "{'from':0.5,'to':1.0,'speaker':0,'confidence':0.5,'final':false},"
+                + "{'from':1.2,'to':1.5,'speaker':1,'confidence':0.5,'final':true}]}"));
+    assertEquals(utterances.size(), 1);
+    assertEquals(utterances.get(0), "0: hello there");
+
+    aligner.onTranscriptionComplete();
+    assertEquals(utterances.size(), 2);
+    assertEquals(utterances.get(1), "1: hi");
+  }
+}
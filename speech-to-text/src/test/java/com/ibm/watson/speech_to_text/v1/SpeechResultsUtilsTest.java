@@ -0,0 +1,113 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.ibm.cloud.sdk.core.util.GsonSingleton;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionAlternative;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResult;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResults;
+import com.ibm.watson.speech_to_text.v1.util.PcmFormat;
+import com.ibm.watson.speech_to_text.v1.util.SpeechResultsUtils;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link SpeechResultsUtils} and {@link PcmFormat}. */
+public class SpeechResultsUtilsTest {
+
+  private static final String RESULTS =
+      "{\"result_index\": 2, \"results\": [{\"final\": true, \"alternatives\": [{\"transcript\": "
+          + "\"hello world\", \"timestamps\": [[\"hello\", 0.5, 1.0], [\"world\", 1.0, 1.5]]}], "
+          + "\"keywords_result\": {\"hello\": [{\"normalized_text\": \"hello\", \"start_time\": "
+          + "0.5, \"end_time\": 1.0, \"confidence\": 0.9}]}}], \"speaker_labels\": [{\"from\": "
+          + "0.5, \"to\": 1.0, \"speaker\": 0, \"confidence\": 0.5, \"final\": false}]}";
+
+  /** Tests that shifting moves every time value and the result index. */
+  @Test
+  public void testShift() {
+    SpeechRecognitionResults results =
+        GsonSingleton.getGson().fromJson(RESULTS, SpeechRecognitionResults.class);
+
+    SpeechRecognitionResults shifted = SpeechResultsUtils.shift(results, 10, 3);
+
+    assertEquals(shifted.getResultIndex(), Long.valueOf(5));
+    SpeechRecognitionResult result = shifted.getResults().get(0);
+    assertEquals(SpeechResultsUtils.getStartTime(result), 10.5, 0.0001);
+    assertEquals(SpeechResultsUtils.getEndTime(result), 11.5, 0.0001);
+    assertEquals(result.getAlternatives().get(0).getTimestamps().get(1).getWord(), "world");
+    assertEquals(result.getKeywordsResult().get("hello").get(0).getStartTime(), 10.5, 0.0001);
+    assertEquals(shifted.getSpeakerLabels().get(0).getTo(), 11.0f, 0.0001f);
+
+    // the original is left untouched
+    assertEquals(SpeechResultsUtils.getStartTime(results.getResults().get(0)), 0.5, 0.0001);
+  }
+
+  /** Tests that trimming keeps the words whose midpoint is in range and rebuilds the transcript. */
+  @Test
+  public void testTrim() {
+    JsonObject json = new JsonParser().parse(RESULTS).getAsJsonObject();
+
+    SpeechResultsUtils.trim(json, 0.9, 2.0);
+
+    SpeechRecognitionResults trimmed =
+        GsonSingleton.getGson().fromJson(json, SpeechRecognitionResults.class);
+    SpeechRecognitionAlternative alternative =
+        trimmed.getResults().get(0).getAlternatives().get(0);
+    assertEquals(alternative.getTranscript(), "world ");
+    assertEquals(alternative.getTimestamps().size(), 1);
+    assertTrue(trimmed.getResults().get(0).getKeywordsResult().isEmpty());
+    assertTrue(trimmed.getSpeakerLabels().isEmpty());
+
+    SpeechResultsUtils.trim(json, 2.0, 3.0);
+    trimmed = GsonSingleton.getGson().fromJson(json, SpeechRecognitionResults.class);
+    assertTrue(trimmed.getResults().isEmpty());
+  }
+
+  /** Tests parsing of audio/l16 content types. */
+  @Test
+  public void testPcmFormatFromContentType() {
+    PcmFormat format = PcmFormat.fromContentType("audio/l16; rate=8000; channels=2");
+    assertEquals(format.getSampleRate(), 8000);
+    assertEquals(format.getChannels(), 2);
+    assertEquals(format.getByteRate(), 32000);
+    assertEquals(PcmFormat.fromContentType(format.toContentType()), format);
+
+    assertNull(PcmFormat.fromContentType("audio/wav"));
+    assertNull(PcmFormat.fromContentType("audio/l16"));
+  }
+
+  /** Tests reading a WAVE header. */
+  @Test
+  public void testPcmFormatReadWaveHeader() throws IOException {
+    byte[] wave = {
+      'R', 'I', 'F', 'F', 40, 0, 0, 0, 'W', 'A', 'V', 'E',
+      'f', 'm', 't', ' ', 16, 0, 0, 0, 1, 0, 1, 0, (byte) 0x80, 0x3E, 0, 0,
+      0, 0x7D, 0, 0, 2, 0, 16, 0,
+      'd', 'a', 't', 'a', 4, 0, 0, 0, 1, 2, 3, 4
+    };
+    ByteArrayInputStream in = new ByteArrayInputStream(wave);
+
+    PcmFormat format = PcmFormat.readWaveHeader(in);
+
+    assertEquals(format.getSampleRate(), 16000);
+    assertEquals(format.getChannels(), 1);
+    assertTrue(!format.isBigEndian());
+    assertEquals(in.read(), 1);
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1;
+
+import static org.testng.Assert.assertEquals;
+
+import com.ibm.cloud.sdk.core.util.GsonSingleton;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResult;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResults;
+import com.ibm.watson.speech_to_text.v1.websocket.TranscriptAssembler;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link TranscriptAssembler}. */
+public class TranscriptAssemblerTest {
+
+  private static SpeechRecognitionResults frame(long index, String... results) {
+    StringBuilder json = new StringBuilder("{\"result_index\":" + index + ",\"results\":[");
+    for (int i = 0; i < results.length; i++) {
+      boolean isFinal = results[i].endsWith(" ");
+      json.append(i > 0 ? "," : "")
+          .append("{\"final\":")
+          .append(isFinal)
+          .append(",\"alternatives\":[{\"transcript\":\"")
+          .append(results[i])
+          .append("\"}]}");
+    }
+    json.append("]}");
+    return GsonSingleton.getGson().fromJson(json.toString(), SpeechRecognitionResults.class);
+  }
+
+  /** Tests that only changes are reported and that the transcript is assembled. */
+  @Test
+  public void testAssemble() {
+    final List<String> events = new ArrayList<String>();
+    TranscriptAssembler assembler =
+        new TranscriptAssembler(
+            new TranscriptAssembler.Listener() {
+              @Override
+              public void onFinal(long index, SpeechRecognitionResult result) {
+                events.add("final " + index);
+              }
+
+              @Override
+              public void onInterim(long index, SpeechRecognitionResult result) {
+                events.add("interim " + index);
+              }
+
+              @Override
+              public void onInterimRemoved(long index) {
+                events.add("removed " + index);
+              }
+            },
+            1);
+
+    assembler.onTranscription(frame(0, "hel"));
+    assembler.onTranscription(frame(0, "hello"));
+    assembler.onTranscription(frame(0, "hello"));
+    assembler.onTranscription(frame(0, "hello "));
+    assembler.onTranscription(frame(0, "hello "));
+    assembler.onTranscription(frame(1, "wor", "how"));
+    assertEquals(assembler.getTranscript(), "hello worhow");
+    assembler.onTranscription(frame(1, "world "));
+    assertEquals(assembler.getInterimTranscript(), "");
+    assembler.onTranscription(frame(2, "how"));
+
+    assertEquals(
+        events,
+        Arrays.asList(
+            "interim 0", "interim 0", "final 0", "interim 1", "interim 2", "final 1", "removed 2",
+            "interim 2"));
+    assertEquals(assembler.getFinalCount(), 2);
+    assertEquals(assembler.getFinalTranscript(), "world ");
+    assertEquals(assembler.getTranscript(), "world how");
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link PacedInputStream}. */
+public class PacedInputStreamTest {
+
+  private static final PcmFormat FORMAT = new PcmFormat(16000, 1, false);
+
+  /** A stream whose clock only moves when it sleeps, and that records its sleeps. */
+  private static final class Paced extends PacedInputStream {
+    private final List<Long> sleeps = new ArrayList<Long>();
+    private long nanos = TimeUnit.SECONDS.toNanos(1);
+
+    Paced(Builder builder) {
+      super(builder);
+    }
+
+    @Override
+    long nanoTime() {
+      return nanos;
+    }
+
+    @Override
+    void sleep(long sleepNanos) {
+      sleeps.add(sleepNanos);
+      nanos += sleepNanos;
+    }
+
+    double sleptMillis() {
+      long slept = 0;
+      for (long sleep : sleeps) {
+        slept += sleep;
+      }
+      return (double) slept / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+  }
+
+  /** Tests that one second of audio at five times real time sleeps 200 milliseconds. */
+  @Test
+  public void testPacing() throws IOException {
+    byte[] audio = new byte[FORMAT.getByteRate()];
+    for (int i = 0; i < audio.length; i++) {
+      audio[i] = (byte) i;
+    }
+    Paced paced =
+        new Paced(
+            new PacedInputStream.Builder()
+                .audio(new ByteArrayInputStream(audio))
+                .format(FORMAT)
+                .speed(5));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int read;
+    double lastAudioMillis = 0;
+    while ((read = paced.read(buffer, 0, buffer.length)) != -1) {
+      assertEquals(read % FORMAT.getFrameSize(), 0);
+      out.write(buffer, 0, read);
+      lastAudioMillis = paced.sleptMillis();
+    }
+
+    assertEquals(out.toByteArray(), audio);
+    // about 4 ms before each chunk of 20 ms of audio, rather than all at once
+    assertEquals(lastAudioMillis, 200, 0.01);
+    for (long sleep : paced.sleeps) {
+      assertTrue(sleep < TimeUnit.MILLISECONDS.toNanos(5), "sleep " + sleep);
+    }
+  }
+
+  /** Tests that audio held back by a stall is released at once. */
+  @Test
+  public void testStallReleasesBurst() throws IOException {
+    Paced paced =
+        new Paced(
+            new PacedInputStream.Builder()
+                .audio(new ByteArrayInputStream(new byte[FORMAT.getByteRate() * 10]))
+                .format(FORMAT)
+                .chunkMillis(10)
+                .stalls(1, 100)
+                .seed(1));
+    byte[] buffer = new byte[FORMAT.getByteRate()];
+
+    // the first chunk is due after 10 ms, and held back for another 100 ms
+    assertEquals(paced.read(buffer, 0, buffer.length), 320);
+    assertEquals(paced.sleptMillis(), 110, 0.01);
+
+    // the audio of the stall is due now and comes in one read, without a sleep
+    assertEquals(paced.read(buffer, 0, buffer.length), FORMAT.toBytes(0.1), FORMAT.getFrameSize());
+    assertEquals(paced.sleeps.size(), 1);
+  }
+}
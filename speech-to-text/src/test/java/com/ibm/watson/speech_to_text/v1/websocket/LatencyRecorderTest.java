@@ -0,0 +1,138 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.speech_to_text.v1.websocket;
+
+import static org.testng.Assert.assertEquals;
+
+import com.ibm.cloud.sdk.core.util.GsonSingleton;
+import com.ibm.watson.speech_to_text.v1.model.SpeechRecognitionResults;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link LatencyRecorder}, with a clock that only moves when the test moves it. */
+public class LatencyRecorderTest {
+
+  // the bytes in half a second of 16 kHz mono audio/l16
+  private static final int HALF_SECOND = 16000;
+
+  /** A recorder whose clock is set by the test. */
+  private static final class Recorder extends LatencyRecorder {
+    private long millis;
+
+    @Override
+    long nanoTime() {
+      return millis * 1000000L;
+    }
+  }
+
+  private static SpeechRecognitionResults results(long index, String... results) {
+    StringBuilder json = new StringBuilder("{'result_index':" + index + ",'results':[");
+    for (int i = 0; i < results.length; i++) {
+      json.append(i > 0 ? "," : "").append(results[i]);
+    }
+    json.append("]}");
+    return GsonSingleton.getGson()
+        .fromJson(json.toString().replace('\'', '"'), SpeechRecognitionResults.class);
+  }
+
+  private static String result(boolean isFinal, double start, double end) {
+    return "{'final':"
+        + isFinal
+        + ",'alternatives':[{'transcript':'word ','timestamps':[['word',"
+        + start
+        + ","
+        + end
+        + "]]}]}";
+  }
+
+  /** A WAVE header with a LIST chunk before the data, and the first samples. */
+  private static byte[] waveStart(int audioBytes) {
+    ByteBuffer wave = ByteBuffer.allocate(78 + audioBytes).order(ByteOrder.LITTLE_ENDIAN);
+    wave.put("RIFF".getBytes()).putInt(-1).put("WAVE".getBytes());
+    wave.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) 1);
+    wave.putInt(16000).putInt(32000).putShort((short) 2).putShort((short) 16);
+    wave.put("LIST".getBytes()).putInt(26).put(new byte[26]);
+    wave.put("data".getBytes()).putInt(-1);
+    return wave.array();
+  }
+
+  /** Tests the session latencies and that a final is timed from the send of its last byte. */
+  @Test
+  public void testSession() {
+    Recorder recorder = new Recorder();
+    LatencyRecorder.Session session = recorder.startSession("audio/l16;rate=16000");
+    recorder.millis = 50;
+    session.onOpen();
+    recorder.millis = 70;
+    session.onListening();
+    session.onListening();
+    // sends of half a second at 100, 200, 300 and 400 ms
+    for (int i = 1; i <= 4; i++) {
+      recorder.millis = 100 * i;
+      session.onAudioSent(new byte[HALF_SECOND], HALF_SECOND);
+    }
+
+    // ends in the second send
+    recorder.millis = 450;
+    session.onResults(results(0, result(true, 0.2, 0.7), result(false, 0.7, 1.0)));
+    // ends at the last byte of the third send; the first final is sent again
+    recorder.millis = 500;
+    session.onResults(results(0, result(true, 0.2, 0.7), result(true, 0.7, 1.5)));
+    // ends after the audio sent
+    recorder.millis = 600;
+    session.onResults(results(2, result(true, 1.5, 2.5)));
+
+    assertEquals(recorder.getConnectLatency().getMax(), 50, 0.001);
+    assertEquals(recorder.getListeningLatency().getCount(), 1);
+    assertEquals(recorder.getListeningLatency().getMax(), 20, 0.001);
+    assertEquals(recorder.getFirstInterimLatency().getCount(), 1);
+    assertEquals(recorder.getFirstInterimLatency().getMax(), 350, 0.001);
+    assertEquals(recorder.getFinalLatency().getCount(), 2);
+    assertEquals(recorder.getFinalLatency().getMax(), 250, 0.001);
+    assertEquals(recorder.getFinalLatency().getMean(), 225, 0.001);
+  }
+
+  /** Tests that the send marks of WAVE audio start after the header of the first buffer. */
+  @Test
+  public void testWaveHeader() {
+    Recorder recorder = new Recorder();
+    LatencyRecorder.Session session = recorder.startSession("audio/wav");
+    session.onOpen();
+    recorder.millis = 100;
+    byte[] first = waveStart(HALF_SECOND);
+    session.onAudioSent(first, first.length);
+    recorder.millis = 200;
+    session.onAudioSent(new byte[HALF_SECOND], HALF_SECOND);
+
+    // ends 2 ms into the second send, once the header is not counted as audio
+    recorder.millis = 300;
+    session.onResults(results(0, result(true, 0.1, 0.502)));
+
+    assertEquals(recorder.getFinalLatency().getCount(), 1);
+    assertEquals(recorder.getFinalLatency().getMax(), 100, 0.001);
+  }
+
+  /** Tests that finals are not timed when the audio format is unknown. */
+  @Test
+  public void testUnknownFormat() {
+    Recorder recorder = new Recorder();
+    LatencyRecorder.Session session = recorder.startSession("audio/ogg;codecs=opus");
+    session.onAudioSent(new byte[100], 100);
+    recorder.millis = 100;
+    session.onResults(results(0, result(true, 0, 0.5)));
+
+    assertEquals(recorder.getFirstInterimLatency().getCount(), 1);
+    assertEquals(recorder.getFinalLatency().getCount(), 0);
+  }
+}
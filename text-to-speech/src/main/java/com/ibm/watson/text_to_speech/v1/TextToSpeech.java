@@ -62,17 +62,25 @@ import com.ibm.watson.text_to_speech.v1.model.UpdateCustomModelOptions;
 import com.ibm.watson.text_to_speech.v1.model.Voice;
 import com.ibm.watson.text_to_speech.v1.model.Voices;
 import com.ibm.watson.text_to_speech.v1.model.Words;
+import com.ibm.watson.text_to_speech.v1.util.CustomModelListener;
+import com.ibm.watson.text_to_speech.v1.util.SynthesisCache;
 import com.ibm.watson.text_to_speech.v1.websocket.SynthesizeCallback;
 import com.ibm.watson.text_to_speech.v1.websocket.TextToSpeechWebSocketListener;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CopyOnWriteArrayList;
 import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
 import okhttp3.MultipartBody;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
+import okhttp3.Response;
 import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
 
 /**
  * The IBM Watson&amp;trade; Text to Speech service provides APIs that use IBM's speech-synthesis
@@ -117,6 +125,9 @@ public class TextToSpeech extends BaseService {
   public static final String DEFAULT_SERVICE_URL =
       "https://api.us-south.text-to-speech.watson.cloud.ibm.com";
 
+  private final List<CustomModelListener> customModelListeners =
+      new CopyOnWriteArrayList<CustomModelListener>();
+
   /**
    * Constructs an instance of the `TextToSpeech` client. The default service name is used to
    * configure the client instance.
@@ -158,6 +169,30 @@ public class TextToSpeech extends BaseService {
     super(serviceName, authenticator);
     setServiceUrl(DEFAULT_SERVICE_URL);
     this.configureService(serviceName);
+    setClient(getClient().newBuilder().addInterceptor(new CustomModelInterceptor()).build());
+  }
+
+  /**
+   * Adds a listener that is notified when a custom model is updated or deleted, or its words are
+   * changed, through the HTTP client of this service. The listener is called before the request is
+   * sent and again once it completed. A client passed to {@code setClient} must be built from
+   * {@code getClient().newBuilder()} to keep notifying. A {@link SynthesisCache} adds itself when
+   * it is built.
+   *
+   * @param listener the listener
+   */
+  public void addCustomModelListener(CustomModelListener listener) {
+    com.ibm.cloud.sdk.core.util.Validator.notNull(listener, "listener cannot be null");
+    customModelListeners.add(listener);
+  }
+
+  /**
+   * Removes a listener added with {@link #addCustomModelListener(CustomModelListener)}.
+   *
+   * @param listener the listener
+   */
+  public void removeCustomModelListener(CustomModelListener listener) {
+    customModelListeners.remove(listener);
   }
 
   /**
@@ -187,13 +222,33 @@ public class TextToSpeech extends BaseService {
         synthesizeOptions, "synthesizeOptions cannot be null");
     com.ibm.cloud.sdk.core.util.Validator.notNull(callback, "callback cannot be null");
 
+    return openSynthesizeWebSocket(
+        synthesizeOptions.voice(),
+        synthesizeOptions.customizationId(),
+        new TextToSpeechWebSocketListener(synthesizeOptions, callback));
+  }
+
+  /**
+   * Opens an authenticated WebSocket connection to the synthesize endpoint for a voice and custom
+   * model, with a listener that sends the start message itself. Used to open connections ahead of
+   * time, see {@link com.ibm.watson.text_to_speech.v1.websocket.SynthesisConnectionPool}.
+   *
+   * @param voice the voice, or null for the default voice
+   * @param customizationId the ID of the custom model, or null for none
+   * @param listener the listener of the connection
+   * @return a {@link WebSocket} instance
+   */
+  public WebSocket openSynthesizeWebSocket(
+      String voice, String customizationId, WebSocketListener listener) {
+    com.ibm.cloud.sdk.core.util.Validator.notNull(listener, "listener cannot be null");
+
     HttpUrl.Builder urlBuilder = HttpUrl.parse(getServiceUrl() + "/v1/synthesize").newBuilder();
 
-    if (synthesizeOptions.voice() != null) {
-      urlBuilder.addQueryParameter("voice", synthesizeOptions.voice());
+    if (voice != null) {
+      urlBuilder.addQueryParameter("voice", voice);
     }
-    if (synthesizeOptions.customizationId() != null) {
-      urlBuilder.addQueryParameter("customization_id", synthesizeOptions.customizationId());
+    if (customizationId != null) {
+      urlBuilder.addQueryParameter("customization_id", customizationId);
     }
 
     String url = urlBuilder.toString().replace("https://", "wss://");
@@ -203,8 +258,7 @@ public class TextToSpeech extends BaseService {
     setDefaultHeaders(builder);
 
     OkHttpClient client = configureHttpClient();
-    return client.newWebSocket(
-        builder.build(), new TextToSpeechWebSocketListener(synthesizeOptions, callback));
+    return client.newWebSocket(builder.build(), listener);
   }
 
   /**
@@ -1377,4 +1431,52 @@ public class TextToSpeech extends BaseService {
     ResponseConverter<Void> responseConverter = ResponseConverterUtils.getVoid();
     return createServiceCall(builder.build(), responseConverter);
   }
+
+  /** Notifies the custom model listeners. */
+  private void notifyCustomModelListeners(String customizationId) {
+    for (CustomModelListener listener : customModelListeners) {
+      listener.onCustomModelChanged(customizationId);
+    }
+  }
+
+  /**
+   * Gets the custom model that a request updates, deletes or changes the words of.
+   *
+   * @return the ID of the custom model, or null for any other request
+   */
+  private static String changedCustomModel(Request request) {
+    if ("GET".equals(request.method())) {
+      return null;
+    }
+    List<String> segments = request.url().pathSegments();
+    for (int i = segments.size() - 2; i > 0; i--) {
+      if ("customizations".equals(segments.get(i)) && "v1".equals(segments.get(i - 1))) {
+        boolean model = i + 2 == segments.size();
+        boolean words = !model && "words".equals(segments.get(i + 2));
+        return model || words ? segments.get(i + 1) : null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Notifies the custom model listeners before a request that changes a custom model is sent, and
+   * again once it completed, so that audio synthesized while the service applied the change is
+   * dropped too.
+   */
+  private final class CustomModelInterceptor implements Interceptor {
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+      String customizationId = changedCustomModel(chain.request());
+      if (customizationId == null) {
+        return chain.proceed(chain.request());
+      }
+      notifyCustomModelListeners(customizationId);
+      try {
+        return chain.proceed(chain.request());
+      } finally {
+        notifyCustomModelListeners(customizationId);
+      }
+    }
+  }
 }
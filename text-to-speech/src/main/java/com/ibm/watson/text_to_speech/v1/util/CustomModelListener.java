@@ -0,0 +1,32 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1.util;
+
+import com.ibm.watson.text_to_speech.v1.TextToSpeech;
+
+/**
+ * Receives the changes made to custom models through a {@link TextToSpeech} client, so that audio
+ * synthesized with an earlier version of a model can be dropped.
+ *
+ * @see TextToSpeech#addCustomModelListener(CustomModelListener)
+ */
+public interface CustomModelListener {
+
+  /**
+   * Called before a request that changes a custom model is sent, and again once it completed.
+   * Audio synthesized with the model between the two calls may or may not reflect the change.
+   *
+   * @param customizationId the ID of the custom model
+   */
+  void onCustomModelChanged(String customizationId);
+}
@@ -0,0 +1,450 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1.util;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+import com.ibm.cloud.sdk.core.util.GsonSingleton;
+import com.ibm.cloud.sdk.core.util.Validator;
+import com.ibm.watson.text_to_speech.v1.TextToSpeech;
+import com.ibm.watson.text_to_speech.v1.model.AddWordsOptions;
+import com.ibm.watson.text_to_speech.v1.model.DeleteWordOptions;
+import com.ibm.watson.text_to_speech.v1.model.ListWordsOptions;
+import com.ibm.watson.text_to_speech.v1.model.Word;
+import com.ibm.watson.text_to_speech.v1.model.Words;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Brings the words of a custom model of the {@link TextToSpeech} service in line with a local
+ * lexicon, with few requests. <br>
+ * The words of the model are listed once and compared with the lexicon. Words that are new or
+ * whose translation or part of speech changed are sent with {@link
+ * TextToSpeech#addWords(AddWordsOptions)} in batches that are bounded in words and in bytes, and
+ * words of the model that are not in the lexicon are deleted with a few concurrent requests. A
+ * lexicon is read with {@link #readCsv(Reader)} or {@link #readJson(Reader)}.
+ */
+public class LexiconSync {
+
+  private static final Gson GSON = GsonSingleton.getGsonWithoutPrettyPrinting();
+
+  // the bytes of {"words":[]}
+  private static final int ENVELOPE_BYTES = 12;
+
+  private final TextToSpeech service;
+  private final String customizationId;
+  private final int maxBatchWords;
+  private final int maxBatchBytes;
+  private final int concurrency;
+  private final boolean deleteStale;
+  private final PronunciationCache pronunciationCache;
+
+  /** Builder. */
+  public static class Builder {
+    private TextToSpeech service;
+    private String customizationId;
+    private int maxBatchWords = 500;
+    private int maxBatchBytes = 256 * 1024;
+    private int concurrency = 4;
+    private boolean deleteStale = true;
+    private PronunciationCache pronunciationCache;
+
+    /** Instantiates a new builder. */
+    public Builder() {}
+
+    /**
+     * Builds a LexiconSync.
+     *
+     * @return the new LexiconSync instance
+     */
+    public LexiconSync build() {
+      return new LexiconSync(this);
+    }
+
+    /**
+     * Set the service.
+     *
+     * @param service the service
+     * @return the LexiconSync builder
+     */
+    public Builder service(TextToSpeech service) {
+      this.service = service;
+      return this;
+    }
+
+    /**
+     * Set the ID of the custom model to bring in line.
+     *
+     * @param customizationId the ID of the custom model
+     * @return the LexiconSync builder
+     */
+    public Builder customizationId(String customizationId) {
+      this.customizationId = customizationId;
+      return this;
+    }
+
+    /**
+     * Set the maximum number of words per add request. Defaults to 500.
+     *
+     * @param maxBatchWords the maximum number of words
+     * @return the LexiconSync builder
+     */
+    public Builder maxBatchWords(int maxBatchWords) {
+      this.maxBatchWords = maxBatchWords;
+      return this;
+    }
+
+    /**
+     * Set the maximum size of the body of an add request. Defaults to 256 KB.
+     *
+     * @param maxBatchBytes the maximum number of bytes
+     * @return the LexiconSync builder
+     */
+    public Builder maxBatchBytes(int maxBatchBytes) {
+      this.maxBatchBytes = maxBatchBytes;
+      return this;
+    }
+
+    /**
+     * Set the number of delete requests sent at the same time. Defaults to 4.
+     *
+     * @param concurrency the number of concurrent requests
+     * @return the LexiconSync builder
+     */
+    public Builder concurrency(int concurrency) {
+      this.concurrency = concurrency;
+      return this;
+    }
+
+    /**
+     * Set whether words of the model that are not in the lexicon are deleted. Defaults to true.
+     *
+     * @param deleteStale true to delete them
+     * @return the LexiconSync builder
+     */
+    public Builder deleteStale(boolean deleteStale) {
+      this.deleteStale = deleteStale;
+      return this;
+    }
+
+    /**
+     * Set a cache whose pronunciations of the model are dropped once the sync ends. Only needed
+     * for a cache over another client, since a cache drops them for changes made through its own.
+     *
+     * @param pronunciationCache the cache
+     * @return the LexiconSync builder
+     */
+    public Builder pronunciationCache(PronunciationCache pronunciationCache) {
+      this.pronunciationCache = pronunciationCache;
+      return this;
+    }
+  }
+
+  /** The changes made by a sync. */
+  public static class Result {
+    private final int added;
+    private final int updated;
+    private final int deleted;
+    private final int unchanged;
+    private final int batches;
+
+    Result(int added, int updated, int deleted, int unchanged, int batches) {
+      this.added = added;
+      this.updated = updated;
+      this.deleted = deleted;
+      this.unchanged = unchanged;
+      this.batches = batches;
+    }
+
+    /**
+     * Gets the number of words added to the model.
+     *
+     * @return the number of added words
+     */
+    public int getAdded() {
+      return added;
+    }
+
+    /**
+     * Gets the number of words of the model whose translation or part of speech was changed.
+     *
+     * @return the number of updated words
+     */
+    public int getUpdated() {
+      return updated;
+    }
+
+    /**
+     * Gets the number of words deleted from the model.
+     *
+     * @return the number of deleted words
+     */
+    public int getDeleted() {
+      return deleted;
+    }
+
+    /**
+     * Gets the number of words that were already in the model as in the lexicon.
+     *
+     * @return the number of unchanged words
+     */
+    public int getUnchanged() {
+      return unchanged;
+    }
+
+    /**
+     * Gets the number of add requests sent.
+     *
+     * @return the number of batches
+     */
+    public int getBatches() {
+      return batches;
+    }
+  }
+
+  protected LexiconSync(Builder builder) {
+    Validator.notNull(builder.service, "service cannot be null");
+    Validator.notEmpty(builder.customizationId, "customizationId cannot be empty");
+    Validator.isTrue(builder.maxBatchWords > 0, "maxBatchWords must be positive");
+    Validator.isTrue(builder.maxBatchBytes > ENVELOPE_BYTES, "maxBatchBytes is too small");
+    Validator.isTrue(builder.concurrency > 0, "concurrency must be positive");
+    service = builder.service;
+    customizationId = builder.customizationId;
+    maxBatchWords = builder.maxBatchWords;
+    maxBatchBytes = builder.maxBatchBytes;
+    concurrency = builder.concurrency;
+    deleteStale = builder.deleteStale;
+    pronunciationCache = builder.pronunciationCache;
+  }
+
+  /**
+   * Reads a lexicon from CSV with the columns word, translation and, optionally, part of speech.
+   * Fields can be quoted with double quotes. Empty lines, lines starting with {@code #} and a
+   * header line starting with {@code word,} are skipped.
+   *
+   * @param reader the CSV
+   * @return the words
+   * @throws IOException if the CSV cannot be read or a line has no translation
+   */
+  public static List<Word> readCsv(Reader reader) throws IOException {
+    List<Word> words = new ArrayList<Word>();
+    BufferedReader lines = new BufferedReader(reader);
+    String line;
+    int number = 0;
+    while ((line = lines.readLine()) != null) {
+      number++;
+      if (line.trim().isEmpty()
+          || line.startsWith("#")
+          || (number == 1 && line.regionMatches(true, 0, "word,", 0, 5))) {
+        continue;
+      }
+      List<String> fields = parseCsvLine(line);
+      if (fields.size() < 2 || fields.get(0).isEmpty() || fields.get(1).isEmpty()) {
+        throw new IOException("Line " + number + " has no word and translation: " + line);
+      }
+      Word.Builder word = new Word.Builder(fields.get(0), fields.get(1));
+      if (fields.size() > 2 && !fields.get(2).isEmpty()) {
+        word.partOfSpeech(fields.get(2));
+      }
+      words.add(word.build());
+    }
+    return words;
+  }
+
+  /**
+   * Reads a lexicon from JSON, either in the format of the {@code words} of the service or as an
+   * array of words.
+   *
+   * @param reader the JSON
+   * @return the words
+   */
+  public static List<Word> readJson(Reader reader) {
+    JsonElement json = new JsonParser().parse(reader);
+    if (json.isJsonArray()) {
+      return GSON.fromJson(json, new TypeToken<List<Word>>() {}.getType());
+    }
+    List<Word> words = GSON.fromJson(json, Words.class).words();
+    return words != null ? words : new ArrayList<Word>();
+  }
+
+  /**
+   * Brings the words of the custom model in line with a lexicon. If a word is in the lexicon more
+   * than once, its last entry counts.
+   *
+   * @param lexicon the words of the lexicon
+   * @return the changes made
+   */
+  public Result sync(List<Word> lexicon) {
+    Validator.notNull(lexicon, "lexicon cannot be null");
+    Map<String, Word> wanted = new LinkedHashMap<String, Word>();
+    for (Word word : lexicon) {
+      wanted.put(word.word(), word);
+    }
+    Map<String, Word> current = new LinkedHashMap<String, Word>();
+    List<Word> listed =
+        service
+            .listWords(new ListWordsOptions.Builder(customizationId).build())
+            .execute()
+            .getResult()
+            .words();
+    if (listed != null) {
+      for (Word word : listed) {
+        current.put(word.word(), word);
+      }
+    }
+
+    List<Word> changes = new ArrayList<Word>();
+    int added = 0;
+    int updated = 0;
+    for (Word word : wanted.values()) {
+      Word existing = current.remove(word.word());
+      if (existing == null) {
+        added++;
+        changes.add(word);
+      } else if (!equal(existing.translation(), word.translation())
+          || !equal(existing.partOfSpeech(), word.partOfSpeech())) {
+        updated++;
+        changes.add(word);
+      }
+    }
+    int unchanged = wanted.size() - added - updated;
+
+    int batches = 0;
+    try {
+      batches = addWords(changes);
+      if (deleteStale && !current.isEmpty()) {
+        deleteWords(new ArrayList<String>(current.keySet()));
+      }
+    } finally {
+      if (pronunciationCache != null) {
+        pronunciationCache.invalidate(customizationId);
+      }
+    }
+    return new Result(added, updated, deleteStale ? current.size() : 0, unchanged, batches);
+  }
+
+  /** Sends the words in batches, returning the number of batches. */
+  private int addWords(List<Word> words) {
+    int batches = 0;
+    List<Word> batch = new ArrayList<Word>();
+    int batchBytes = ENVELOPE_BYTES;
+    for (Word word : words) {
+      // the word and the comma before it
+      int wordBytes = GSON.toJson(word).getBytes(StandardCharsets.UTF_8).length + 1;
+      if (!batch.isEmpty()
+          && (batch.size() == maxBatchWords || batchBytes + wordBytes > maxBatchBytes)) {
+        sendBatch(batch);
+        batches++;
+        batch = new ArrayList<Word>();
+        batchBytes = ENVELOPE_BYTES;
+      }
+      batch.add(word);
+      batchBytes += wordBytes;
+    }
+    if (!batch.isEmpty()) {
+      sendBatch(batch);
+      batches++;
+    }
+    return batches;
+  }
+
+  private void sendBatch(List<Word> batch) {
+    service.addWords(new AddWordsOptions.Builder(customizationId, batch).build()).execute();
+  }
+
+  /** Deletes words concurrently, failing with the first failure once all requests are done. */
+  private void deleteWords(List<String> words) {
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, words.size()));
+    try {
+      List<Future<?>> deletes = new ArrayList<Future<?>>();
+      for (final String word : words) {
+        deletes.add(
+            executor.submit(
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    service
+                        .deleteWord(new DeleteWordOptions.Builder(customizationId, word).build())
+                        .execute();
+                  }
+                }));
+      }
+      RuntimeException failure = null;
+      for (Future<?> delete : deletes) {
+        try {
+          delete.get();
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            failure =
+                e.getCause() instanceof RuntimeException
+                    ? (RuntimeException) e.getCause()
+                    : new RuntimeException(e.getCause());
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new RuntimeException(e);
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /** Splits a CSV line into fields, with double quotes around fields and doubled within them. */
+  private static List<String> parseCsvLine(String line) {
+    List<String> fields = new ArrayList<String>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (quoted) {
+        if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          field.append('"');
+          i++;
+        } else if (c == '"') {
+          quoted = false;
+        } else {
+          field.append(c);
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(field.toString().trim());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    fields.add(field.toString().trim());
+    return fields;
+  }
+
+  private static boolean equal(String a, String b) {
+    return a == null ? b == null : a.equals(b);
+  }
+}
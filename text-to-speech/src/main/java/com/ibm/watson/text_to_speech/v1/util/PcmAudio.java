@@ -0,0 +1,154 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Reads the format of synthesized {@code audio/l16} and {@code audio/wav} audio: the sample rate
+ * and byte order of an {@code audio/l16} content type, and the chunks of a WAV header.
+ */
+public final class PcmAudio {
+
+  /** The content type of raw 16-bit PCM audio. */
+  public static final String AUDIO_L16 = "audio/l16";
+
+  /** The content type of WAV audio. */
+  public static final String AUDIO_WAV = "audio/wav";
+
+  private static final String RATE = "rate=";
+  private static final String BIG_ENDIAN = "endianness=big-endian";
+  private static final int RIFF_HEADER_SIZE = 12;
+  private static final int CHUNK_HEADER_SIZE = 8;
+
+  private PcmAudio() {
+    // This is a utility class - no instantiation allowed.
+  }
+
+  /**
+   * Checks whether a content type is {@code audio/wav}.
+   *
+   * @param contentType the content type, or null
+   * @return true for {@code audio/wav} with any parameters
+   */
+  public static boolean isWave(String contentType) {
+    return contentType != null
+        && contentType.regionMatches(true, 0, AUDIO_WAV, 0, AUDIO_WAV.length());
+  }
+
+  /**
+   * Checks whether a content type is {@code audio/l16}.
+   *
+   * @param contentType the content type, or null
+   * @return true for {@code audio/l16} with any parameters
+   */
+  public static boolean isL16(String contentType) {
+    return contentType != null
+        && contentType.regionMatches(true, 0, AUDIO_L16, 0, AUDIO_L16.length());
+  }
+
+  /**
+   * Gets the {@code rate} parameter of a content type.
+   *
+   * @param contentType the content type
+   * @return the sample rate, or 0 if the content type has none
+   */
+  public static int sampleRate(String contentType) {
+    int rate = contentType.indexOf(RATE);
+    if (rate < 0) {
+      return 0;
+    }
+    int start = rate + RATE.length();
+    int end = start;
+    while (end < contentType.length() && Character.isDigit(contentType.charAt(end))) {
+      end++;
+    }
+    try {
+      return Integer.parseInt(contentType.substring(start, end));
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * Checks whether {@code audio/l16} of a content type is big-endian. The service synthesizes
+   * little-endian audio unless {@code endianness=big-endian} is requested.
+   *
+   * @param contentType the content type
+   * @return true if the content type has {@code endianness=big-endian}
+   */
+  public static boolean isBigEndian(String contentType) {
+    return contentType.toLowerCase(Locale.ROOT).contains(BIG_ENDIAN);
+  }
+
+  /**
+   * Finds the audio data in the first bytes of a WAV file.
+   *
+   * @param header the first bytes of the file
+   * @param length the number of bytes of the header that were read
+   * @return the offset of the audio data, or -1 if the header is not complete yet
+   */
+  public static int dataOffset(byte[] header, int length) {
+    return chunkOffset(header, length, "data");
+  }
+
+  /**
+   * Finds the fmt chunk in the first bytes of a WAV file.
+   *
+   * @param header the first bytes of the file
+   * @param length the number of bytes of the header that were read
+   * @return the offset of the fmt chunk after its chunk header, or -1 if it was not read yet
+   */
+  public static int fmtOffset(byte[] header, int length) {
+    return chunkOffset(header, length, "fmt ");
+  }
+
+  /**
+   * Gets the byte rate of the fmt chunk of a WAV header.
+   *
+   * @param header the first bytes of the file
+   * @param length the number of bytes of the header that were read
+   * @return the number of bytes per second, or 0 if the fmt chunk was not read yet
+   */
+  public static int waveByteRate(byte[] header, int length) {
+    int fmt = fmtOffset(header, length);
+    return fmt >= 0 && fmt + 12 <= length ? readInt(header, fmt + 8) : 0;
+  }
+
+  /** The offset of a chunk after its chunk header, or -1 if it is not within the length. */
+  private static int chunkOffset(byte[] header, int length, String id) {
+    long position = RIFF_HEADER_SIZE;
+    while (position + CHUNK_HEADER_SIZE <= length) {
+      int chunk = (int) position;
+      if (isChunk(header, chunk, id)) {
+        return chunk + CHUNK_HEADER_SIZE;
+      }
+      long size = WaveUtils.readSize(header, chunk + 4);
+      position += CHUNK_HEADER_SIZE + size + (size & 1);
+    }
+    return -1;
+  }
+
+  private static boolean isChunk(byte[] header, int position, String id) {
+    return id.equals(new String(header, position, 4, StandardCharsets.US_ASCII));
+  }
+
+  static int readShort(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8;
+  }
+
+  static int readInt(byte[] bytes, int offset) {
+    return (int) WaveUtils.readSize(bytes, offset);
+  }
+}
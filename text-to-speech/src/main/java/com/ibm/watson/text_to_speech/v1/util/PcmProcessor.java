@@ -0,0 +1,603 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1.util;
+
+import com.ibm.cloud.sdk.core.util.Validator;
+import com.ibm.watson.text_to_speech.v1.TextToSpeech;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Post-processes the {@code audio/l16} and {@code audio/wav} audio synthesized with the {@link
+ * TextToSpeech} service as it streams, in one pass over fixed-size buffers. <br>
+ * The samples go through three optional stages:
+ *
+ * <ul>
+ *   <li>silence trimming, which drops the samples below a threshold at the start and at the end,
+ *       apart from a short padding;
+ *   <li>gain normalization, which scales the audio so that its peak reaches a target. The peak of
+ *       a stream is only known at its end, so the output is delayed by a lookahead window and the
+ *       gain is lowered gradually over that window whenever a louder sample enters it; the gain
+ *       never rises, so the level stays even;
+ *   <li>resampling by linear interpolation, with a low-pass filter when the rate is lowered, for
+ *       example to 8 kHz for telephony.
+ * </ul>
+ *
+ * Only mono 16-bit audio is supported, which is what the service synthesizes. The sizes in the
+ * header of processed WAV audio are not known until it ends, so {@link #processWave(InputStream,
+ * OutputStream, int)} and {@link #processWaveFile(InputStream, FileChannel)} write them with
+ * {@link WaveUtils}.
+ */
+public class PcmProcessor {
+
+  private static final String RATE = "rate=";
+
+  /** The size of the buffer the audio is read in. (value is 8 KB) */
+  private static final int READ_BUFFER_SIZE = 8192;
+
+  private static final int FMT_CHUNK_SIZE = 16;
+  private static final int MAX_SAMPLE = Short.MAX_VALUE;
+
+  private final double targetPeak;
+  private final double maxGain;
+  private final double silenceThreshold;
+  private final boolean trimLeading;
+  private final boolean trimTrailing;
+  private final int silencePaddingMillis;
+  private final int maxTrailingSilenceMillis;
+  private final int lookaheadMillis;
+  private final int sampleRate;
+
+  /** Builder. */
+  public static class Builder {
+    private double targetPeak;
+    private double maxGain = 4;
+    private double silenceThreshold = 0.01;
+    private boolean trimLeading;
+    private boolean trimTrailing;
+    private int silencePaddingMillis = 50;
+    private int maxTrailingSilenceMillis = 2000;
+    private int lookaheadMillis = 500;
+    private int sampleRate;
+
+    /** Instantiates a new builder. */
+    public Builder() {}
+
+    /**
+     * Builds a PcmProcessor.
+     *
+     * @return the new PcmProcessor instance
+     */
+    public PcmProcessor build() {
+      return new PcmProcessor(this);
+    }
+
+    /**
+     * Set the peak that the audio is normalized to, as a fraction of full scale. Defaults to 0,
+     * which turns normalization off.
+     *
+     * @param targetPeak the target peak, from 0 to 1
+     * @return the PcmProcessor builder
+     */
+    public Builder targetPeak(double targetPeak) {
+      this.targetPeak = targetPeak;
+      return this;
+    }
+
+    /**
+     * Set the largest gain that normalization applies, so that quiet audio is not blown up.
+     * Defaults to 4.
+     *
+     * @param maxGain the largest gain
+     * @return the PcmProcessor builder
+     */
+    public Builder maxGain(double maxGain) {
+      this.maxGain = maxGain;
+      return this;
+    }
+
+    /**
+     * Set the level below which a sample is silent, as a fraction of full scale. Defaults to 0.01.
+     *
+     * @param silenceThreshold the silence threshold, from 0 to 1
+     * @return the PcmProcessor builder
+     */
+    public Builder silenceThreshold(double silenceThreshold) {
+      this.silenceThreshold = silenceThreshold;
+      return this;
+    }
+
+    /**
+     * Set whether the silence at the start and at the end is trimmed. Defaults to false.
+     *
+     * @param trim true to trim both ends
+     * @return the PcmProcessor builder
+     */
+    public Builder trimSilence(boolean trim) {
+      this.trimLeading = trim;
+      this.trimTrailing = trim;
+      return this;
+    }
+
+    /**
+     * Set whether the silence at the start is trimmed. Defaults to false.
+     *
+     * @param trimLeading true to trim the start
+     * @return the PcmProcessor builder
+     */
+    public Builder trimLeading(boolean trimLeading) {
+      this.trimLeading = trimLeading;
+      return this;
+    }
+
+    /**
+     * Set whether the silence at the end is trimmed. Defaults to false.
+     *
+     * @param trimTrailing true to trim the end
+     * @return the PcmProcessor builder
+     */
+    public Builder trimTrailing(boolean trimTrailing) {
+      this.trimTrailing = trimTrailing;
+      return this;
+    }
+
+    /**
+     * Set the silence kept next to the speech when trimming, so that soft onsets and decays are
+     * not cut. Defaults to 50 ms.
+     *
+     * @param silencePaddingMillis the padding in milliseconds
+     * @return the PcmProcessor builder
+     */
+    public Builder silencePaddingMillis(int silencePaddingMillis) {
+      this.silencePaddingMillis = silencePaddingMillis;
+      return this;
+    }
+
+    /**
+     * Set the longest silence that is held back in case the audio ends. Trailing silence beyond it
+     * is kept. Defaults to 2000 ms.
+     *
+     * @param maxTrailingSilenceMillis the longest trailing silence in milliseconds
+     * @return the PcmProcessor builder
+     */
+    public Builder maxTrailingSilenceMillis(int maxTrailingSilenceMillis) {
+      this.maxTrailingSilenceMillis = maxTrailingSilenceMillis;
+      return this;
+    }
+
+    /**
+     * Set the window over which normalization looks ahead for louder samples, which is also the
+     * delay it adds. Defaults to 500 ms.
+     *
+     * @param lookaheadMillis the lookahead in milliseconds
+     * @return the PcmProcessor builder
+     */
+    public Builder lookaheadMillis(int lookaheadMillis) {
+      this.lookaheadMillis = lookaheadMillis;
+      return this;
+    }
+
+    /**
+     * Set the sample rate of the output. Defaults to 0, which keeps the rate of the input.
+     *
+     * @param sampleRate the sample rate in Hz
+     * @return the PcmProcessor builder
+     */
+    public Builder sampleRate(int sampleRate) {
+      this.sampleRate = sampleRate;
+      return this;
+    }
+  }
+
+  protected PcmProcessor(Builder builder) {
+    Validator.isTrue(
+        builder.targetPeak >= 0 && builder.targetPeak <= 1, "targetPeak must be from 0 to 1");
+    Validator.isTrue(builder.maxGain > 0, "maxGain must be positive");
+    Validator.isTrue(
+        builder.silenceThreshold >= 0 && builder.silenceThreshold < 1,
+        "silenceThreshold must be from 0 to 1");
+    Validator.isTrue(builder.silencePaddingMillis >= 0, "silencePaddingMillis cannot be negative");
+    Validator.isTrue(
+        builder.maxTrailingSilenceMillis >= builder.silencePaddingMillis,
+        "maxTrailingSilenceMillis cannot be less than silencePaddingMillis");
+    Validator.isTrue(builder.lookaheadMillis > 0, "lookaheadMillis must be positive");
+    Validator.isTrue(builder.sampleRate >= 0, "sampleRate cannot be negative");
+    targetPeak = builder.targetPeak;
+    maxGain = builder.maxGain;
+    silenceThreshold = builder.silenceThreshold;
+    trimLeading = builder.trimLeading;
+    trimTrailing = builder.trimTrailing;
+    silencePaddingMillis = builder.silencePaddingMillis;
+    maxTrailingSilenceMillis = builder.maxTrailingSilenceMillis;
+    lookaheadMillis = builder.lookaheadMillis;
+    sampleRate = builder.sampleRate;
+  }
+
+  /**
+   * Processes {@code audio/l16} or {@code audio/wav} audio as it is read. WAV audio keeps its
+   * header, with the sample rate of the output; its sizes are not updated.
+   *
+   * @param audio the audio
+   * @param contentType the content type of the audio, with the rate for {@code audio/l16}, which is
+   *     little-endian unless the content type has {@code endianness=big-endian}
+   * @return the processed audio, with the content type given by {@link
+   *     #getContentType(String)}
+   * @throws IOException if the WAV header cannot be read
+   */
+  public InputStream process(InputStream audio, String contentType) throws IOException {
+    Validator.notNull(audio, "audio cannot be null");
+    Validator.notNull(contentType, "contentType cannot be null");
+    if (PcmAudio.isWave(contentType)) {
+      byte[] header = WaveUtils.readHeader(audio);
+      int fmt = PcmAudio.fmtOffset(header, header.length);
+      if (fmt < 0) {
+        throw new IOException("No fmt chunk before the data chunk");
+      }
+      if (WaveUtils.readSize(header, fmt - 4) < FMT_CHUNK_SIZE
+          || fmt + FMT_CHUNK_SIZE > header.length) {
+        throw new IOException("Incomplete fmt chunk");
+      }
+      int inputRate = PcmAudio.readInt(header, fmt + 4);
+      if (PcmAudio.readShort(header, fmt) != 1
+          || PcmAudio.readShort(header, fmt + 2) != 1
+          || PcmAudio.readShort(header, fmt + 14) != 16) {
+        throw new IOException("Only mono 16-bit PCM WAVE audio can be processed");
+      }
+      int outputRate = sampleRate > 0 ? sampleRate : inputRate;
+      WaveUtils.writeInt(outputRate, header, fmt + 4);
+      WaveUtils.writeInt(outputRate * 2, header, fmt + 8);
+      return new ProcessedStream(audio, inputRate, false, header);
+    }
+    if (PcmAudio.isL16(contentType)) {
+      int inputRate = PcmAudio.sampleRate(contentType);
+      if (inputRate <= 0) {
+        throw new IOException("No rate in the content type: " + contentType);
+      }
+      boolean bigEndian = PcmAudio.isBigEndian(contentType);
+      return new ProcessedStream(audio, inputRate, bigEndian, new byte[0]);
+    }
+    throw new IOException("Only audio/l16 and audio/wav can be processed: " + contentType);
+  }
+
+  /**
+   * Gets the content type of the audio returned by {@link #process(InputStream, String)}.
+   *
+   * @param contentType the content type of the audio
+   * @return the content type of the processed audio
+   */
+  public String getContentType(String contentType) {
+    int rate = contentType.indexOf(RATE);
+    if (sampleRate == 0 || rate < 0) {
+      return contentType;
+    }
+    int start = rate + RATE.length();
+    int end = start;
+    while (end < contentType.length() && Character.isDigit(contentType.charAt(end))) {
+      end++;
+    }
+    return contentType.substring(0, start) + sampleRate + contentType.substring(end);
+  }
+
+  /**
+   * Processes WAV audio to an output stream, with the sizes written into the header. See {@link
+   * WaveUtils#writeWave(InputStream, OutputStream, int)} for the lookahead.
+   *
+   * @param audio the WAV audio
+   * @param os the output stream
+   * @param lookahead the number of processed bytes read ahead in memory
+   * @return the number of bytes written
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public long processWave(InputStream audio, OutputStream os, int lookahead) throws IOException {
+    return WaveUtils.writeWave(process(audio, PcmAudio.AUDIO_WAV), os, lookahead);
+  }
+
+  /**
+   * Processes WAV audio to a file, with the sizes written into the header in place.
+   *
+   * @param audio the WAV audio
+   * @param channel the channel of the file
+   * @return the number of bytes written
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public long processWaveFile(InputStream audio, FileChannel channel) throws IOException {
+    return WaveUtils.writeWaveFile(process(audio, PcmAudio.AUDIO_WAV), channel);
+  }
+
+  private static int samples(int rate, int millis) {
+    return (int) ((long) rate * millis / 1000);
+  }
+
+  /**
+   * The processed audio. Samples are pushed through the stages as each buffer is read, and the
+   * output of a buffer is kept until it is read; the output buffer only grows while the stages
+   * release samples they have held back, up to the size of the trim and lookahead windows.
+   */
+  private final class ProcessedStream extends InputStream {
+    private final InputStream in;
+    private final boolean bigEndian;
+    private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+    private final byte[] single = new byte[1];
+    private int leftover = -1;
+    private boolean finished;
+
+    private byte[] out;
+    private int outStart;
+    private int outEnd;
+
+    // trimming
+    private final int silence;
+    private final int padding;
+    private final short[] held;
+    private int heldStart;
+    private int heldCount;
+    private boolean speech;
+
+    // normalization
+    private final boolean normalize;
+    private final short[] window;
+    private int windowStart;
+    private int windowCount;
+    private int peak;
+    private double gain = -1;
+    private double gainStep;
+    private double targetGain;
+
+    // resampling
+    private final boolean resample;
+    private final double step;
+    private final double filter;
+    private double lowPass1;
+    private double lowPass2;
+    private double previous;
+    private boolean hasPrevious;
+    private double position;
+
+    ProcessedStream(InputStream in, int inputRate, boolean bigEndian, byte[] header) {
+      this.in = in;
+      this.bigEndian = bigEndian;
+      out = Arrays.copyOf(header, Math.max(header.length, READ_BUFFER_SIZE));
+      outEnd = header.length;
+
+      silence = (int) (silenceThreshold * MAX_SAMPLE);
+      padding = samples(inputRate, silencePaddingMillis);
+      held =
+          new short
+              [Math.max(
+                  trimLeading ? padding : 0,
+                  trimTrailing ? samples(inputRate, maxTrailingSilenceMillis) : 0)];
+      speech = !trimLeading;
+
+      normalize = targetPeak > 0;
+      window = new short[normalize ? Math.max(1, samples(inputRate, lookaheadMillis)) : 0];
+      targetGain = maxGain;
+
+      resample = sampleRate > 0 && sampleRate != inputRate;
+      step = resample ? (double) inputRate / sampleRate : 1;
+      // a cutoff just below the new Nyquist frequency, when the rate is lowered
+      filter =
+          resample && sampleRate < inputRate
+              ? 1 - Math.exp(-2 * Math.PI * 0.45 * sampleRate / inputRate)
+              : 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+      return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      while (outStart == outEnd) {
+        if (finished) {
+          return -1;
+        }
+        outStart = 0;
+        outEnd = 0;
+        fill();
+      }
+      int count = Math.min(len, outEnd - outStart);
+      System.arraycopy(out, outStart, b, off, count);
+      outStart += count;
+      return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+
+    /** Reads and processes one buffer of audio, or flushes the stages at the end. */
+    private void fill() throws IOException {
+      int offset = 0;
+      if (leftover >= 0) {
+        readBuffer[0] = (byte) leftover;
+        leftover = -1;
+        offset = 1;
+      }
+      int nRead = in.read(readBuffer, offset, readBuffer.length - offset);
+      if (nRead == -1) {
+        finished = true;
+        finishTrim();
+        finishGain();
+        finishResample();
+        return;
+      }
+      int length = offset + nRead;
+      int end = length & ~1;
+      for (int i = 0; i < end; i += 2) {
+        int sample =
+            bigEndian
+                ? (readBuffer[i] << 8) | (readBuffer[i + 1] & 0xFF)
+                : (readBuffer[i + 1] << 8) | (readBuffer[i] & 0xFF);
+        trim((short) sample);
+      }
+      if (end < length) {
+        leftover = readBuffer[end] & 0xFF;
+      }
+    }
+
+    private void trim(short sample) {
+      if (!trimLeading && !trimTrailing) {
+        gain(sample);
+        return;
+      }
+      boolean silent = Math.abs(sample) <= silence;
+      if (!speech) {
+        if (!silent) {
+          speech = true;
+          releaseHeld(heldCount);
+          gain(sample);
+        } else if (padding > 0) {
+          // keep the last samples of the leading silence as padding
+          if (heldCount == padding) {
+            heldStart = (heldStart + 1) % held.length;
+            heldCount--;
+          }
+          hold(sample);
+        }
+      } else if (!silent || !trimTrailing) {
+        releaseHeld(heldCount);
+        gain(sample);
+      } else {
+        if (held.length == 0) {
+          gain(sample);
+          return;
+        }
+        if (heldCount == held.length) {
+          // the silence is too long to be held back, so it is kept
+          releaseHeld(1);
+        }
+        hold(sample);
+      }
+    }
+
+    private void hold(short sample) {
+      held[(heldStart + heldCount) % held.length] = sample;
+      heldCount++;
+    }
+
+    private void releaseHeld(int count) {
+      for (int i = 0; i < count; i++) {
+        gain(held[heldStart]);
+        heldStart = (heldStart + 1) % held.length;
+        heldCount--;
+      }
+    }
+
+    private void finishTrim() {
+      if (speech) {
+        releaseHeld(trimTrailing ? Math.min(padding, heldCount) : heldCount);
+      }
+      heldCount = 0;
+    }
+
+    private void gain(short sample) {
+      if (!normalize) {
+        resample(sample);
+        return;
+      }
+      int level = Math.abs(sample);
+      if (level > peak) {
+        peak = level;
+        double wanted = Math.min(maxGain, targetPeak * MAX_SAMPLE / peak);
+        if (wanted < targetGain) {
+          targetGain = wanted;
+          // reach the new gain by the time the louder sample leaves the window
+          if (gain >= 0) {
+            gainStep = (gain - targetGain) / window.length;
+          }
+        }
+      }
+      if (windowCount == window.length) {
+        emitGain(window[windowStart]);
+        window[windowStart] = sample;
+        windowStart = (windowStart + 1) % window.length;
+      } else {
+        window[(windowStart + windowCount) % window.length] = sample;
+        windowCount++;
+      }
+    }
+
+    private void emitGain(short sample) {
+      if (gain < 0) {
+        gain = targetGain;
+      } else if (gain > targetGain) {
+        gain = Math.max(targetGain, gain - gainStep);
+      }
+      resample(sample * gain);
+    }
+
+    private void finishGain() {
+      if (!normalize) {
+        return;
+      }
+      for (int i = 0; i < windowCount; i++) {
+        emitGain(window[(windowStart + i) % window.length]);
+      }
+      windowCount = 0;
+    }
+
+    private void resample(double sample) {
+      if (!resample) {
+        write(sample);
+        return;
+      }
+      if (!hasPrevious) {
+        hasPrevious = true;
+        previous = sample;
+        lowPass1 = sample;
+        lowPass2 = sample;
+        return;
+      }
+      if (filter > 0) {
+        lowPass1 += filter * (sample - lowPass1);
+        lowPass2 += filter * (lowPass1 - lowPass2);
+        sample = lowPass2;
+      }
+      while (position < 1) {
+        write(previous + (sample - previous) * position);
+        position += step;
+      }
+      position -= 1;
+      previous = sample;
+    }
+
+    private void finishResample() {
+      if (resample && hasPrevious && position < 1e-9) {
+        write(previous);
+      }
+    }
+
+    private void write(double sample) {
+      long value = Math.round(sample);
+      int clipped = (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+      if (outEnd + 2 > out.length) {
+        out = Arrays.copyOf(out, out.length * 2);
+      }
+      if (bigEndian) {
+        out[outEnd++] = (byte) (clipped >> 8);
+        out[outEnd++] = (byte) clipped;
+      } else {
+        out[outEnd++] = (byte) clipped;
+        out[outEnd++] = (byte) (clipped >> 8);
+      }
+    }
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1.util;
+
+import com.ibm.cloud.sdk.core.util.Validator;
+import com.ibm.watson.text_to_speech.v1.TextToSpeech;
+import com.ibm.watson.text_to_speech.v1.model.GetPronunciationOptions;
+import com.ibm.watson.text_to_speech.v1.model.Pronunciation;
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the results of {@link TextToSpeech#getPronunciation(GetPronunciationOptions)} in memory,
+ * so that looking up the same words again does not call the service. <br>
+ * Entries are keyed on the text, voice, format and custom model of the options, and the least
+ * recently used entries are evicted once the maximum number of entries is reached. <br>
+ * The cache adds itself as a {@link CustomModelListener} of the service, so that changing a custom
+ * model through the service, for example with {@link LexiconSync}, drops the pronunciations of the
+ * model. A lookup that is running meanwhile is returned but not cached. Changes made otherwise are
+ * applied with {@link #invalidate(String)}. {@link #close()} removes the listener.
+ */
+public class PronunciationCache implements Closeable, CustomModelListener {
+
+  private final TextToSpeech service;
+  private final int maxEntries;
+
+  // guarded by this
+  private final LinkedHashMap<Key, Pronunciation> entries;
+  private final Map<String, Long> generations = new HashMap<String, Long>();
+  private long hits;
+  private long misses;
+
+  /**
+   * Instantiates a new cache.
+   *
+   * @param service the service used to look up pronunciations that are not cached
+   * @param maxEntries the maximum number of pronunciations kept
+   */
+  public PronunciationCache(TextToSpeech service, final int maxEntries) {
+    Validator.notNull(service, "service cannot be null");
+    Validator.isTrue(maxEntries > 0, "maxEntries must be positive");
+    this.service = service;
+    this.maxEntries = maxEntries;
+    entries =
+        new LinkedHashMap<Key, Pronunciation>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Key, Pronunciation> eldest) {
+            return size() > maxEntries;
+          }
+        };
+    service.addCustomModelListener(this);
+  }
+
+  /**
+   * Gets the pronunciation of a word, from the cache or from the service.
+   *
+   * @param options the get pronunciation options
+   * @return the pronunciation
+   */
+  public Pronunciation getPronunciation(GetPronunciationOptions options) {
+    Validator.notNull(options, "options cannot be null");
+    Key key = new Key(options);
+    long generation;
+    synchronized (this) {
+      Pronunciation cached = entries.get(key);
+      if (cached != null) {
+        hits++;
+        return cached;
+      }
+      misses++;
+      generation = generation(key.customizationId);
+    }
+    Pronunciation pronunciation = service.getPronunciation(options).execute().getResult();
+    synchronized (this) {
+      // the model may have changed while the service looked the word up
+      if (generation(key.customizationId) == generation) {
+        entries.put(key, pronunciation);
+      }
+    }
+    return pronunciation;
+  }
+
+  /**
+   * Drops the pronunciations of a custom model.
+   *
+   * @param customizationId the ID of the custom model
+   */
+  public synchronized void invalidate(String customizationId) {
+    generations.put(customizationId, generation(customizationId) + 1);
+    for (Iterator<Key> keys = entries.keySet().iterator(); keys.hasNext(); ) {
+      String id = keys.next().customizationId;
+      if (id != null && id.equals(customizationId)) {
+        keys.remove();
+      }
+    }
+  }
+
+  /**
+   * Drops the pronunciations of a custom model that is changed through the service.
+   *
+   * @param customizationId the ID of the custom model
+   */
+  @Override
+  public void onCustomModelChanged(String customizationId) {
+    invalidate(customizationId);
+  }
+
+  /** Stops dropping pronunciations when custom models change through the service. */
+  @Override
+  public void close() {
+    service.removeCustomModelListener(this);
+  }
+
+  /**
+   * Gets the number of pronunciations served from the cache.
+   *
+   * @return the number of hits
+   */
+  public synchronized long getHitCount() {
+    return hits;
+  }
+
+  /**
+   * Gets the number of pronunciations looked up with the service.
+   *
+   * @return the number of misses
+   */
+  public synchronized long getMissCount() {
+    return misses;
+  }
+
+  /**
+   * Gets the number of cached pronunciations.
+   *
+   * @return the number of entries, at most the maximum
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  private long generation(String customizationId) {
+    Long generation = generations.get(customizationId);
+    return generation != null ? generation : 0;
+  }
+
+  /** The options that determine a pronunciation. */
+  private static final class Key {
+    private final String text;
+    private final String voice;
+    private final String format;
+    private final String customizationId;
+
+    Key(GetPronunciationOptions options) {
+      text = options.text();
+      voice = options.voice();
+      format = options.format();
+      customizationId = options.customizationId();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return equal(text, other.text)
+          && equal(voice, other.voice)
+          && equal(format, other.format)
+          && equal(customizationId, other.customizationId);
+    }
+
+    @Override
+    public int hashCode() {
+      int hash = text != null ? text.hashCode() : 0;
+      hash = 31 * hash + (voice != null ? voice.hashCode() : 0);
+      hash = 31 * hash + (format != null ? format.hashCode() : 0);
+      return 31 * hash + (customizationId != null ? customizationId.hashCode() : 0);
+    }
+
+    private static boolean equal(String a, String b) {
+      return a == null ? b == null : a.equals(b);
+    }
+  }
+}
@@ -0,0 +1,559 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1.util;
+
+import com.ibm.cloud.sdk.core.util.Validator;
+import com.ibm.watson.text_to_speech.v1.TextToSpeech;
+import com.ibm.watson.text_to_speech.v1.model.SynthesizeOptions;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Caches the audio of {@link TextToSpeech#synthesize(SynthesizeOptions)}, so phrases that are
+ * spoken again and again, such as prompts and notifications, are synthesized once. <br>
+ * Entries are keyed on a SHA-256 hash of the text, voice, custom model, audio format, rate, pitch
+ * and spell-out mode of the options. Recently used entries are held in memory, and all entries are
+ * stored as files in a directory, one subdirectory per custom model, so they survive a restart.
+ * Both tiers are bounded in bytes and evict the least recently used entries. Hits are served
+ * without copying, as read-only buffers over the memory entry or over the memory-mapped file.
+ * Concurrent misses for the same options share one synthesis. <br>
+ * The cache adds itself as a {@link CustomModelListener} of the service, so that updating or
+ * deleting a custom model, or changing its words, drops the entries of the model, both before the
+ * request is sent and once it completed. A synthesis that is running meanwhile is returned but not
+ * cached. Any number of caches can share a service. {@link #close()} removes the listener. <br>
+ * Changes that no cache sees, such as those made by another process or while the application was
+ * down, do not drop the entries stored in the directory. Call {@link #invalidate(String)} for the
+ * custom models that may have changed before the cache is used.
+ */
+public class SynthesisCache implements Closeable, CustomModelListener {
+  private static final Logger LOG = Logger.getLogger(SynthesisCache.class.getName());
+
+  private static final String SUFFIX = ".audio";
+  private static final String TEMP_SUFFIX = ".tmp";
+  private static final String BASE_MODEL = "_base";
+
+  private final TextToSpeech service;
+  private final File directory;
+  private final long maxMemoryBytes;
+  private final long maxDiskBytes;
+
+  // guarded by this, in access order
+  private final LinkedHashMap<String, ByteBuffer> memory =
+      new LinkedHashMap<String, ByteBuffer>(16, 0.75f, true);
+  private final LinkedHashMap<String, Long> disk = new LinkedHashMap<String, Long>(16, 0.75f, true);
+  private final Map<String, Long> generations = new HashMap<String, Long>();
+  private final Map<String, FutureTask<ByteBuffer>> inFlight =
+      new HashMap<String, FutureTask<ByteBuffer>>();
+  private long memoryBytes;
+  private long diskBytes;
+  private long hits;
+  private long misses;
+
+  /** Builder. */
+  public static class Builder {
+    private TextToSpeech service;
+    private File directory;
+    private long maxMemoryBytes = 64L * 1024 * 1024;
+    private long maxDiskBytes = 1024L * 1024 * 1024;
+
+    /** Instantiates a new builder. */
+    public Builder() {}
+
+    /**
+     * Builds a SynthesisCache.
+     *
+     * @return the new SynthesisCache instance
+     */
+    public SynthesisCache build() {
+      return new SynthesisCache(this);
+    }
+
+    /**
+     * Set the service used to synthesize misses.
+     *
+     * @param service the service
+     * @return the SynthesisCache builder
+     */
+    public Builder service(TextToSpeech service) {
+      this.service = service;
+      return this;
+    }
+
+    /**
+     * Set the directory of the on-disk tier. Entries already in the directory are reused.
+     *
+     * @param directory the directory
+     * @return the SynthesisCache builder
+     */
+    public Builder directory(File directory) {
+      this.directory = directory;
+      return this;
+    }
+
+    /**
+     * Set the size of the in-memory tier. Defaults to 64 MB.
+     *
+     * @param maxMemoryBytes the maximum number of bytes held in memory
+     * @return the SynthesisCache builder
+     */
+    public Builder maxMemoryBytes(long maxMemoryBytes) {
+      this.maxMemoryBytes = maxMemoryBytes;
+      return this;
+    }
+
+    /**
+     * Set the size of the on-disk tier. Defaults to 1 GB.
+     *
+     * @param maxDiskBytes the maximum number of bytes stored in the directory
+     * @return the SynthesisCache builder
+     */
+    public Builder maxDiskBytes(long maxDiskBytes) {
+      this.maxDiskBytes = maxDiskBytes;
+      return this;
+    }
+  }
+
+  protected SynthesisCache(Builder builder) {
+    Validator.notNull(builder.service, "service cannot be null");
+    Validator.notNull(builder.directory, "directory cannot be null");
+    Validator.isTrue(builder.maxMemoryBytes >= 0, "maxMemoryBytes cannot be negative");
+    Validator.isTrue(builder.maxDiskBytes >= 0, "maxDiskBytes cannot be negative");
+    service = builder.service;
+    directory = builder.directory;
+    maxMemoryBytes = builder.maxMemoryBytes;
+    maxDiskBytes = builder.maxDiskBytes;
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IllegalArgumentException("Cannot create the directory " + directory);
+    }
+    load();
+    service.addCustomModelListener(this);
+  }
+
+  /**
+   * Returns the audio of the options, from the cache or synthesized and then cached. The text,
+   * voice, accept, customizationId, spellOutMode, ratePercentage and pitchPercentage of the options
+   * are the key. WAV audio is cached with the sizes of its header set.
+   *
+   * @param options the synthesize options
+   * @return a read-only buffer of the audio
+   * @throws IOException if the audio cannot be synthesized
+   */
+  public ByteBuffer synthesize(final SynthesizeOptions options) throws IOException {
+    Validator.notNull(options, "options cannot be null");
+    final String model = modelName(options.customizationId());
+    final String key = model + File.separatorChar + hash(options);
+    FutureTask<ByteBuffer> task;
+    boolean owner = false;
+    synchronized (this) {
+      ByteBuffer cached = lookup(key);
+      if (cached != null) {
+        hits++;
+        return cached;
+      }
+      task = inFlight.get(key);
+      if (task == null) {
+        misses++;
+        final long generation = generation(model);
+        task =
+            new FutureTask<ByteBuffer>(
+                new Callable<ByteBuffer>() {
+                  @Override
+                  public ByteBuffer call() throws IOException {
+                    return fill(key, model, generation, options);
+                  }
+                });
+        inFlight.put(key, task);
+        owner = true;
+      }
+    }
+    if (owner) {
+      try {
+        task.run();
+      } finally {
+        synchronized (this) {
+          inFlight.remove(key);
+        }
+      }
+    }
+    try {
+      return task.get().duplicate();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  /**
+   * Drops all entries synthesized with a custom model.
+   *
+   * @param customizationId the ID of the custom model, or null for the entries of the base voices
+   */
+  public synchronized void invalidate(String customizationId) {
+    invalidateModel(modelName(customizationId));
+  }
+
+  /**
+   * Drops all entries synthesized with a custom model that is changed through the service.
+   *
+   * @param customizationId the ID of the custom model
+   */
+  @Override
+  public void onCustomModelChanged(String customizationId) {
+    invalidate(customizationId);
+  }
+
+  /**
+   * Stops dropping entries when custom models change through the service. The entries stay in the
+   * directory for the next cache.
+   */
+  @Override
+  public void close() {
+    service.removeCustomModelListener(this);
+  }
+
+  /** Drops all entries. */
+  public synchronized void clear() {
+    List<String> models = new ArrayList<String>(generations.keySet());
+    for (String key : memory.keySet()) {
+      models.add(modelOf(key));
+    }
+    for (String key : disk.keySet()) {
+      models.add(modelOf(key));
+    }
+    for (String key : inFlight.keySet()) {
+      models.add(modelOf(key));
+    }
+    for (String model : models) {
+      invalidateModel(model);
+    }
+  }
+
+  private void invalidateModel(String model) {
+    generations.put(model, generation(model) + 1);
+    String prefix = model + File.separatorChar;
+    Iterator<Map.Entry<String, ByteBuffer>> memoryEntries = memory.entrySet().iterator();
+    while (memoryEntries.hasNext()) {
+      Map.Entry<String, ByteBuffer> entry = memoryEntries.next();
+      if (entry.getKey().startsWith(prefix)) {
+        memoryBytes -= entry.getValue().capacity();
+        memoryEntries.remove();
+      }
+    }
+    Iterator<Map.Entry<String, Long>> diskEntries = disk.entrySet().iterator();
+    while (diskEntries.hasNext()) {
+      Map.Entry<String, Long> entry = diskEntries.next();
+      if (entry.getKey().startsWith(prefix)) {
+        diskBytes -= entry.getValue();
+        delete(fileOf(entry.getKey()));
+        diskEntries.remove();
+      }
+    }
+  }
+
+  /**
+   * Gets the number of requests served from the cache.
+   *
+   * @return the number of hits
+   */
+  public synchronized long getHitCount() {
+    return hits;
+  }
+
+  /**
+   * Gets the number of requests that were synthesized.
+   *
+   * @return the number of misses
+   */
+  public synchronized long getMissCount() {
+    return misses;
+  }
+
+  /**
+   * Gets the number of bytes held in memory.
+   *
+   * @return the size of the in-memory tier
+   */
+  public synchronized long getMemoryBytes() {
+    return memoryBytes;
+  }
+
+  /**
+   * Gets the number of bytes stored in the directory.
+   *
+   * @return the size of the on-disk tier
+   */
+  public synchronized long getDiskBytes() {
+    return diskBytes;
+  }
+
+  /** Finds an entry in memory, or maps it from disk and keeps the mapping in memory. */
+  private ByteBuffer lookup(String key) {
+    ByteBuffer buffer = memory.get(key);
+    if (buffer != null) {
+      return buffer.duplicate();
+    }
+    if (!disk.containsKey(key)) {
+      return null;
+    }
+    File file = fileOf(key);
+    FileChannel channel = null;
+    try {
+      channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asReadOnlyBuffer();
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Dropping unreadable cache entry " + file, e);
+      diskBytes -= disk.remove(key);
+      delete(file);
+      return null;
+    } finally {
+      closeQuietly(channel);
+    }
+    // keep the recency across restarts
+    file.setLastModified(System.currentTimeMillis());
+    remember(key, buffer);
+    return buffer.duplicate();
+  }
+
+  /** Synthesizes a miss and stores it in both tiers, unless its model changed meanwhile. */
+  private ByteBuffer fill(String key, String model, long generation, SynthesizeOptions options)
+      throws IOException {
+    InputStream audio = service.synthesize(options).execute().getResult();
+    try {
+      if (PcmAudio.isWave(options.accept())) {
+        audio = WaveUtils.reWriteWaveHeader(audio);
+      }
+      byte[] bytes = WaveUtils.toByteArray(audio);
+      ByteBuffer buffer = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+      synchronized (this) {
+        if (generation(model) != generation) {
+          return buffer;
+        }
+        remember(key, buffer);
+      }
+      if (bytes.length <= maxDiskBytes) {
+        store(key, model, generation, bytes);
+      }
+      return buffer;
+    } finally {
+      audio.close();
+    }
+  }
+
+  /** Writes an entry to a temporary file and renames it into place. */
+  private void store(String key, String model, long generation, byte[] bytes) {
+    File file = fileOf(key);
+    File temp = new File(directory, key + '.' + Thread.currentThread().getId() + TEMP_SUFFIX);
+    try {
+      Files.createDirectories(file.getParentFile().toPath());
+      Files.write(temp.toPath(), bytes);
+      Files.move(
+          temp.toPath(),
+          file.toPath(),
+          StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Cannot store cache entry " + file, e);
+      delete(temp);
+      return;
+    }
+    synchronized (this) {
+      if (generation(model) != generation) {
+        delete(file);
+        return;
+      }
+      Long previous = disk.put(key, (long) bytes.length);
+      diskBytes += bytes.length - (previous != null ? previous : 0);
+      evictDisk();
+    }
+  }
+
+  private void remember(String key, ByteBuffer buffer) {
+    if (buffer.capacity() > maxMemoryBytes) {
+      return;
+    }
+    ByteBuffer previous = memory.put(key, buffer);
+    memoryBytes += buffer.capacity() - (previous != null ? previous.capacity() : 0);
+    Iterator<ByteBuffer> eldest = memory.values().iterator();
+    while (memoryBytes > maxMemoryBytes && eldest.hasNext()) {
+      memoryBytes -= eldest.next().capacity();
+      eldest.remove();
+    }
+  }
+
+  private void evictDisk() {
+    Iterator<Map.Entry<String, Long>> eldest = disk.entrySet().iterator();
+    while (diskBytes > maxDiskBytes && eldest.hasNext()) {
+      Map.Entry<String, Long> entry = eldest.next();
+      diskBytes -= entry.getValue();
+      delete(fileOf(entry.getKey()));
+      eldest.remove();
+    }
+  }
+
+  /** Indexes the entries left in the directory, least recently used first. */
+  private void load() {
+    List<File> files = new ArrayList<File>();
+    File[] models = directory.listFiles();
+    if (models != null) {
+      for (File model : models) {
+        File[] entries = model.isDirectory() ? model.listFiles() : null;
+        if (entries == null) {
+          continue;
+        }
+        for (File entry : entries) {
+          if (entry.getName().endsWith(SUFFIX)) {
+            files.add(entry);
+          } else if (entry.getName().endsWith(TEMP_SUFFIX)) {
+            // left over from an interrupted store
+            delete(entry);
+          }
+        }
+      }
+    }
+    Collections.sort(
+        files,
+        new Comparator<File>() {
+          @Override
+          public int compare(File a, File b) {
+            return Long.compare(a.lastModified(), b.lastModified());
+          }
+        });
+    synchronized (this) {
+      for (File file : files) {
+        String name = file.getName();
+        String key =
+            file.getParentFile().getName()
+                + File.separatorChar
+                + name.substring(0, name.length() - SUFFIX.length());
+        disk.put(key, file.length());
+        diskBytes += file.length();
+      }
+      evictDisk();
+    }
+  }
+
+  private File fileOf(String key) {
+    return new File(directory, key + SUFFIX);
+  }
+
+  private static String modelOf(String key) {
+    return key.substring(0, key.indexOf(File.separatorChar));
+  }
+
+  private long generation(String model) {
+    Long generation = generations.get(model);
+    return generation != null ? generation : 0;
+  }
+
+  /** The subdirectory of a custom model; IDs that are not plain names are hashed. */
+  private static String modelName(String customizationId) {
+    if (customizationId == null) {
+      return BASE_MODEL;
+    }
+    if (customizationId.matches("[A-Za-z0-9-]+")) {
+      return customizationId;
+    }
+    MessageDigest digest = sha256();
+    digest.update(customizationId.getBytes(StandardCharsets.UTF_8));
+    return toHex(digest.digest());
+  }
+
+  private static String hash(SynthesizeOptions options) {
+    MessageDigest digest = sha256();
+    update(digest, options.text());
+    update(digest, options.voice());
+    update(digest, options.customizationId());
+    update(digest, options.accept());
+    update(digest, options.ratePercentage() != null ? options.ratePercentage().toString() : null);
+    update(digest, options.pitchPercentage() != null ? options.pitchPercentage().toString() : null);
+    update(digest, options.spellOutMode());
+    return toHex(digest.digest());
+  }
+
+  /** Adds a length-prefixed field, so that the fields cannot run into each other. */
+  private static void update(MessageDigest digest, String value) {
+    if (value == null) {
+      digest.update(new byte[] {-1, -1, -1, -1});
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+    digest.update(bytes);
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform supports SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+
+  private static void delete(File file) {
+    if (file.exists() && !file.delete()) {
+      LOG.warning("Cannot delete cache entry " + file);
+    }
+  }
+
+  private static void closeQuietly(FileChannel channel) {
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // nothing to do, the mapping stays valid
+      }
+    }
+  }
+}
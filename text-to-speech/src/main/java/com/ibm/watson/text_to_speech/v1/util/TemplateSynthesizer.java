@@ -0,0 +1,478 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1.util;
+
+import com.ibm.cloud.sdk.core.util.Validator;
+import com.ibm.watson.text_to_speech.v1.TextToSpeech;
+import com.ibm.watson.text_to_speech.v1.model.SynthesizeOptions;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Synthesizes templated prompts such as {@code "Your balance is {amount} as of {date}"} with the
+ * {@link TextToSpeech} service, synthesizing only the slots per prompt. <br>
+ * The static fragments of a template are synthesized once per voice and kept in memory, through a
+ * {@link SynthesisCache} if one is set; the slots of a prompt are synthesized in parallel. Each
+ * fragment is trimmed of its silence with a {@link PcmProcessor}, and the fragments are joined
+ * with short crossfades. Fragments are synthesized apart, so the intonation across a join is not
+ * that of the whole sentence; ending static fragments at a natural pause keeps the joins smooth.
+ * <br>
+ * Until it is closed, the synthesizer listens to the service for changes to its custom model, and
+ * drops the static fragments kept in memory when the model is changed.
+ */
+public class TemplateSynthesizer implements Closeable, CustomModelListener {
+
+  private static final Pattern SLOT = Pattern.compile("\\{([A-Za-z0-9_]+)\\}");
+  private static final String LITTLE_ENDIAN = "endianness=little-endian";
+  private static final String BIG_ENDIAN = "endianness=big-endian";
+  private static final int DEFAULT_SAMPLE_RATE = 22050;
+  private static final int WAVE_HEADER_SIZE = 44;
+
+  private final TextToSpeech service;
+  private final String accept;
+  private final String customizationId;
+  private final SynthesisCache synthesisCache;
+  private final int sampleRate;
+  private final boolean wave;
+  private final boolean bigEndian;
+  private final int crossfadeSamples;
+  private final PcmProcessor trimmer;
+  private final ExecutorService executor;
+
+  // keyed on the generation of the custom model, the voice and the text
+  private final ConcurrentMap<String, Future<short[]>> fragments =
+      new ConcurrentHashMap<String, Future<short[]>>();
+  private final AtomicLong generation = new AtomicLong();
+  private final AtomicLong synthesizedCharacters = new AtomicLong();
+  private final AtomicLong cachedCharacters = new AtomicLong();
+
+  /** Builder. */
+  public static class Builder {
+    private TextToSpeech service;
+    private String accept = PcmAudio.AUDIO_L16 + ";rate=" + DEFAULT_SAMPLE_RATE;
+    private String customizationId;
+    private SynthesisCache synthesisCache;
+    private int crossfadeMillis = 10;
+    private int silencePaddingMillis = 30;
+    private int concurrency = 4;
+
+    /** Instantiates a new builder. */
+    public Builder() {}
+
+    /**
+     * Builds a TemplateSynthesizer.
+     *
+     * @return the new TemplateSynthesizer instance
+     */
+    public TemplateSynthesizer build() {
+      return new TemplateSynthesizer(this);
+    }
+
+    /**
+     * Set the service.
+     *
+     * @param service the service
+     * @return the TemplateSynthesizer builder
+     */
+    public Builder service(TextToSpeech service) {
+      this.service = service;
+      return this;
+    }
+
+    /**
+     * Set the format of the prompts, {@code audio/l16} or {@code audio/wav}, with the rate.
+     * {@code audio/l16} is little-endian unless it has {@code endianness=big-endian}. Defaults to
+     * {@code audio/l16;rate=22050}.
+     *
+     * @param accept the audio format
+     * @return the TemplateSynthesizer builder
+     */
+    public Builder accept(String accept) {
+      this.accept = accept;
+      return this;
+    }
+
+    /**
+     * Set the ID of the custom model used for the prompts.
+     *
+     * @param customizationId the ID of the custom model
+     * @return the TemplateSynthesizer builder
+     */
+    public Builder customizationId(String customizationId) {
+      this.customizationId = customizationId;
+      return this;
+    }
+
+    /**
+     * Set a cache through which the static fragments are synthesized, so that they are kept
+     * across restarts.
+     *
+     * @param synthesisCache the cache
+     * @return the TemplateSynthesizer builder
+     */
+    public Builder synthesisCache(SynthesisCache synthesisCache) {
+      this.synthesisCache = synthesisCache;
+      return this;
+    }
+
+    /**
+     * Set the length of the crossfade between fragments. Defaults to 10 ms.
+     *
+     * @param crossfadeMillis the crossfade in milliseconds
+     * @return the TemplateSynthesizer builder
+     */
+    public Builder crossfadeMillis(int crossfadeMillis) {
+      this.crossfadeMillis = crossfadeMillis;
+      return this;
+    }
+
+    /**
+     * Set the silence kept at both ends of a fragment when it is trimmed. Defaults to 30 ms.
+     *
+     * @param silencePaddingMillis the padding in milliseconds
+     * @return the TemplateSynthesizer builder
+     */
+    public Builder silencePaddingMillis(int silencePaddingMillis) {
+      this.silencePaddingMillis = silencePaddingMillis;
+      return this;
+    }
+
+    /**
+     * Set the number of fragments synthesized at the same time. Defaults to 4.
+     *
+     * @param concurrency the number of concurrent requests
+     * @return the TemplateSynthesizer builder
+     */
+    public Builder concurrency(int concurrency) {
+      this.concurrency = concurrency;
+      return this;
+    }
+  }
+
+  protected TemplateSynthesizer(Builder builder) {
+    Validator.notNull(builder.service, "service cannot be null");
+    Validator.notNull(builder.accept, "accept cannot be null");
+    Validator.isTrue(
+        PcmAudio.isL16(builder.accept) || PcmAudio.isWave(builder.accept),
+        "accept must be audio/l16 or audio/wav");
+    Validator.isTrue(builder.crossfadeMillis >= 0, "crossfadeMillis cannot be negative");
+    Validator.isTrue(builder.silencePaddingMillis >= 0, "silencePaddingMillis cannot be negative");
+    Validator.isTrue(builder.concurrency > 0, "concurrency must be positive");
+    service = builder.service;
+    customizationId = builder.customizationId;
+    synthesisCache = builder.synthesisCache;
+    wave = PcmAudio.isWave(builder.accept);
+    bigEndian = !wave && PcmAudio.isBigEndian(builder.accept);
+    int rate = PcmAudio.sampleRate(builder.accept);
+    Validator.isTrue(wave || rate > 0, "accept must have the rate of audio/l16");
+    sampleRate = rate > 0 ? rate : DEFAULT_SAMPLE_RATE;
+    // the fragments are synthesized as little-endian l16 at the rate of the prompts
+    accept = PcmAudio.AUDIO_L16 + ";rate=" + sampleRate + ";" + LITTLE_ENDIAN;
+    crossfadeSamples = (int) ((long) sampleRate * builder.crossfadeMillis / 1000);
+    trimmer =
+        new PcmProcessor.Builder()
+            .trimSilence(true)
+            .silencePaddingMillis(builder.silencePaddingMillis)
+            .build();
+    executor =
+        Executors.newFixedThreadPool(
+            builder.concurrency,
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "template-synthesizer");
+                thread.setDaemon(true);
+                return thread;
+              }
+            });
+    service.addCustomModelListener(this);
+  }
+
+  /**
+   * Synthesizes a prompt from a template. Slots are written as {@code {name}} and filled from the
+   * values; the rest of the template is static. Every static fragment is kept in memory until
+   * {@link #clear()}, so values that change from prompt to prompt belong in slots rather than in
+   * the template.
+   *
+   * @param template the template
+   * @param values the values of the slots
+   * @param voice the voice
+   * @return the audio of the prompt, in the format given by {@link #getContentType()}
+   * @throws IOException if a fragment cannot be synthesized
+   */
+  public InputStream synthesize(String template, Map<String, String> values, String voice)
+      throws IOException {
+    Validator.notNull(template, "template cannot be null");
+    Validator.notNull(values, "values cannot be null");
+    Validator.notNull(voice, "voice cannot be null");
+    List<Part> parts = parse(template);
+    List<Future<short[]>> audio = new ArrayList<Future<short[]>>(parts.size());
+    for (Part part : parts) {
+      if (part.slot) {
+        String value = values.get(part.text);
+        Validator.notNull(value, "no value for the slot " + part.text);
+        if (hasWords(value)) {
+          audio.add(executor.submit(fragment(value, voice, null)));
+        }
+      } else {
+        audio.add(staticFragment(part.text, voice));
+      }
+    }
+
+    short[] prompt = new short[0];
+    int length = 0;
+    for (Future<short[]> fragment : audio) {
+      short[] samples = await(fragment);
+      int fade = Math.min(crossfadeSamples, Math.min(length, samples.length));
+      if (length + samples.length - fade > prompt.length) {
+        short[] grown = new short[Math.max(prompt.length * 2, length + samples.length - fade)];
+        System.arraycopy(prompt, 0, grown, 0, length);
+        prompt = grown;
+      }
+      for (int i = 0; i < fade; i++) {
+        double in = (double) (i + 1) / (fade + 1);
+        int j = length - fade + i;
+        prompt[j] = (short) Math.round(prompt[j] * (1 - in) + samples[i] * in);
+      }
+      System.arraycopy(samples, fade, prompt, length, samples.length - fade);
+      length += samples.length - fade;
+    }
+    return new ByteArrayInputStream(encode(prompt, length));
+  }
+
+  /**
+   * Gets the content type of the prompts.
+   *
+   * @return the content type
+   */
+  public String getContentType() {
+    if (wave) {
+      return PcmAudio.AUDIO_WAV;
+    }
+    String endianness = bigEndian ? BIG_ENDIAN : LITTLE_ENDIAN;
+    return PcmAudio.AUDIO_L16 + ";rate=" + sampleRate + ";" + endianness;
+  }
+
+  /**
+   * Gets the number of characters sent to the service. Static fragments synthesized through the
+   * {@link SynthesisCache} are not counted, since the cache may serve them from disk; its miss
+   * count tells how many it synthesized.
+   *
+   * @return the number of synthesized characters
+   */
+  public long getSynthesizedCharacters() {
+    return synthesizedCharacters.get();
+  }
+
+  /**
+   * Gets the number of characters of static fragments that were served from memory.
+   *
+   * @return the number of cached characters
+   */
+  public long getCachedCharacters() {
+    return cachedCharacters.get();
+  }
+
+  /**
+   * Drops the static fragments kept in memory, for example after the custom model was changed
+   * other than through the service.
+   */
+  public void clear() {
+    // fragments still being synthesized are stored under the old generation, and never served
+    generation.incrementAndGet();
+    fragments.clear();
+  }
+
+  /**
+   * Drops the static fragments kept in memory when the custom model of the prompts is changed
+   * through the service.
+   *
+   * @param customizationId the ID of the custom model
+   */
+  @Override
+  public void onCustomModelChanged(String customizationId) {
+    if (customizationId != null && customizationId.equals(this.customizationId)) {
+      clear();
+    }
+  }
+
+  /** Stops the threads that synthesize the fragments, and stops listening to the service. */
+  @Override
+  public void close() {
+    service.removeCustomModelListener(this);
+    executor.shutdownNow();
+  }
+
+  private static List<Part> parse(String template) {
+    List<Part> parts = new ArrayList<Part>();
+    Matcher slot = SLOT.matcher(template);
+    int start = 0;
+    while (slot.find()) {
+      addStatic(parts, template.substring(start, slot.start()));
+      parts.add(new Part(slot.group(1), true));
+      start = slot.end();
+    }
+    addStatic(parts, template.substring(start));
+    return parts;
+  }
+
+  private static void addStatic(List<Part> parts, String text) {
+    // punctuation alone, such as a final period, synthesizes to silence
+    if (hasWords(text)) {
+      parts.add(new Part(text.trim(), false));
+    }
+  }
+
+  private static boolean hasWords(String text) {
+    for (int i = 0; i < text.length(); i++) {
+      if (Character.isLetterOrDigit(text.charAt(i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Returns the static fragment, synthesizing it on the first request for the voice. */
+  private Future<short[]> staticFragment(String text, String voice) {
+    String key = generation.get() + "\n" + voice + '\n' + text;
+    Future<short[]> fragment = fragments.get(key);
+    if (fragment != null) {
+      cachedCharacters.addAndGet(text.length());
+      return fragment;
+    }
+    FutureTask<short[]> task = new FutureTask<short[]>(fragment(text, voice, key));
+    fragment = fragments.putIfAbsent(key, task);
+    if (fragment != null) {
+      cachedCharacters.addAndGet(text.length());
+      return fragment;
+    }
+    executor.execute(task);
+    return task;
+  }
+
+  /** Synthesizes a slot, or a static fragment kept under the key. */
+  private Callable<short[]> fragment(final String text, final String voice, final String key) {
+    return new Callable<short[]>() {
+      @Override
+      public short[] call() throws IOException {
+        boolean done = false;
+        try {
+          short[] samples = trim(synthesizeFragment(text, voice, key != null));
+          done = true;
+          return samples;
+        } finally {
+          if (key != null && !done) {
+            // let a later prompt try the fragment again
+            fragments.remove(key);
+          }
+        }
+      }
+    };
+  }
+
+  private InputStream synthesizeFragment(String text, String voice, boolean cached)
+      throws IOException {
+    SynthesizeOptions options =
+        new SynthesizeOptions.Builder()
+            .text(text)
+            .voice(voice)
+            .accept(accept)
+            .customizationId(customizationId)
+            .build();
+    if (cached && synthesisCache != null) {
+      ByteBuffer buffer = synthesisCache.synthesize(options);
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      return new ByteArrayInputStream(bytes);
+    }
+    synthesizedCharacters.addAndGet(text.length());
+    return service.synthesize(options).execute().getResult();
+  }
+
+  private short[] trim(InputStream audio) throws IOException {
+    InputStream trimmed = trimmer.process(audio, accept);
+    try {
+      byte[] bytes = WaveUtils.toByteArray(trimmed);
+      short[] samples = new short[bytes.length / 2];
+      ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(samples);
+      return samples;
+    } finally {
+      trimmed.close();
+    }
+  }
+
+  private byte[] encode(short[] samples, int length) {
+    int header = wave ? WAVE_HEADER_SIZE : 0;
+    ByteBuffer bytes = ByteBuffer.allocate(header + length * 2);
+    bytes.order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+    if (wave) {
+      bytes.put(new byte[] {'R', 'I', 'F', 'F'}).putInt(header + length * 2 - 8);
+      bytes.put(new byte[] {'W', 'A', 'V', 'E', 'f', 'm', 't', ' '}).putInt(16);
+      bytes.putShort((short) 1).putShort((short) 1).putInt(sampleRate).putInt(sampleRate * 2);
+      bytes.putShort((short) 2).putShort((short) 16);
+      bytes.put(new byte[] {'d', 'a', 't', 'a'}).putInt(length * 2);
+    }
+    for (int i = 0; i < length; i++) {
+      bytes.putShort(samples[i]);
+    }
+    return bytes.array();
+  }
+
+  private static short[] await(Future<short[]> fragment) throws IOException {
+    try {
+      return fragment.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while synthesizing a fragment", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  /** A static fragment or a slot of a template. */
+  private static final class Part {
+    private final String text;
+    private final boolean slot;
+
+    Part(String text, boolean slot) {
+      this.text = text;
+      this.slot = slot;
+    }
+  }
+}
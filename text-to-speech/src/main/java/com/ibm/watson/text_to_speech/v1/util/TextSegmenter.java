@@ -0,0 +1,166 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits long text or SSML into segments that can be synthesized separately. <br>
+ * Segments end at sentence boundaries where possible, and are packed up to a maximum length. Plain
+ * text sentences longer than the maximum are split at a space. SSML is split only between
+ * top-level elements and in top-level text, never inside an element such as {@code <prosody>}, and
+ * every segment is wrapped in the {@code <speak>} element of the document; a single top-level
+ * element longer than the maximum becomes a segment of its own.
+ */
+public final class TextSegmenter {
+
+  private static final String SPEAK = "<speak";
+  private static final String SPEAK_END = "</speak>";
+
+  private TextSegmenter() {
+    // This is a utility class - no instantiation allowed.
+  }
+
+  /**
+   * Splits text into segments of at most {@code maxChars} characters each.
+   *
+   * @param text the text or SSML
+   * @param maxChars the maximum length of a segment
+   * @return the segments
+   */
+  public static List<String> split(String text, int maxChars) {
+    return split(text, maxChars, maxChars);
+  }
+
+  /**
+   * Splits text into segments, using a smaller maximum for the first segment so that its audio
+   * arrives sooner.
+   *
+   * @param text the text or SSML
+   * @param firstMaxChars the maximum length of the first segment
+   * @param maxChars the maximum length of the other segments
+   * @return the segments
+   */
+  public static List<String> split(String text, int firstMaxChars, int maxChars) {
+    if (text == null) {
+      throw new IllegalArgumentException("text cannot be null");
+    }
+    if (firstMaxChars <= 0 || maxChars <= 0) {
+      throw new IllegalArgumentException("the maximum lengths must be positive");
+    }
+    String trimmed = text.trim();
+    if (trimmed.regionMatches(true, 0, SPEAK, 0, SPEAK.length())) {
+      int open = trimmed.indexOf('>');
+      int close = trimmed.toLowerCase(Locale.ROOT).lastIndexOf(SPEAK_END);
+      if (open > 0 && close > open) {
+        String prefix = trimmed.substring(0, open + 1);
+        String content = trimmed.substring(open + 1, close);
+        List<String> segments = new ArrayList<String>();
+        for (String part : pack(content, ssmlBreaks(content), firstMaxChars, maxChars, false)) {
+          segments.add(prefix + part + SPEAK_END);
+        }
+        return segments;
+      }
+    }
+    return pack(trimmed, textBreaks(trimmed, 0, trimmed.length()), firstMaxChars, maxChars, true);
+  }
+
+  /** Packs the text between breaks into segments. */
+  private static List<String> pack(
+      String text, List<Integer> breaks, int firstMaxChars, int maxChars, boolean splitWords) {
+    List<String> segments = new ArrayList<String>();
+    breaks.add(text.length());
+    int start = 0;
+    int next = 0;
+    while (start < text.length()) {
+      int limit = start + (segments.isEmpty() ? firstMaxChars : maxChars);
+      int end = -1;
+      while (next < breaks.size() && breaks.get(next) <= limit) {
+        if (breaks.get(next) > start) {
+          end = breaks.get(next);
+        }
+        next++;
+      }
+      if (end < 0) {
+        // no boundary fits
+        if (splitWords) {
+          int space = text.lastIndexOf(' ', limit);
+          end = space > start ? space + 1 : limit;
+        } else {
+          end = breaks.get(next);
+          next++;
+        }
+      }
+      String segment = text.substring(start, end).trim();
+      if (!segment.isEmpty()) {
+        segments.add(segment);
+      }
+      start = end;
+    }
+    return segments;
+  }
+
+  /** The positions after sentence ends and line breaks. */
+  private static List<Integer> textBreaks(String text, int from, int to) {
+    List<Integer> breaks = new ArrayList<Integer>();
+    addTextBreaks(text, from, to, breaks);
+    return breaks;
+  }
+
+  private static void addTextBreaks(String text, int from, int to, List<Integer> breaks) {
+    for (int i = from; i < to; i++) {
+      char c = text.charAt(i);
+      if (c == '\n') {
+        breaks.add(i + 1);
+      } else if ((c == '.' || c == '!' || c == '?' || c == ';')
+          && i + 1 < to
+          && Character.isWhitespace(text.charAt(i + 1))) {
+        breaks.add(i + 1);
+      }
+    }
+  }
+
+  /** The positions between top-level elements and after sentence ends in top-level text. */
+  private static List<Integer> ssmlBreaks(String content) {
+    List<Integer> breaks = new ArrayList<Integer>();
+    int depth = 0;
+    int i = 0;
+    while (i < content.length()) {
+      int tag = content.indexOf('<', i);
+      int textEnd = tag < 0 ? content.length() : tag;
+      if (depth == 0) {
+        addTextBreaks(content, i, textEnd, breaks);
+      }
+      if (tag < 0) {
+        break;
+      }
+      int tagEnd = content.indexOf('>', tag);
+      if (tagEnd < 0) {
+        break;
+      }
+      char first = tag + 1 < content.length() ? content.charAt(tag + 1) : ' ';
+      if (first == '/') {
+        depth = Math.max(0, depth - 1);
+      } else if (first != '!' && first != '?' && content.charAt(tagEnd - 1) != '/') {
+        depth++;
+      }
+      i = tagEnd + 1;
+      if (depth == 0) {
+        breaks.add(i);
+      }
+    }
+    return breaks;
+  }
+}
@@ -0,0 +1,314 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1.util;
+
+import com.ibm.watson.text_to_speech.v1.model.MarkTiming;
+import com.ibm.watson.text_to_speech.v1.model.Marks;
+import com.ibm.watson.text_to_speech.v1.model.Timings;
+import com.ibm.watson.text_to_speech.v1.model.WordTiming;
+import java.util.Arrays;
+
+/**
+ * An immutable index of the word timings and marks of synthesized audio, for looking up the word
+ * or mark being played at a point in time, for example to highlight text during playback. <br>
+ * The times are held in primitive arrays sorted by time, so a lookup is a binary search. An index
+ * is built with a {@link Builder} from the {@link Timings} and {@link Marks} passed to a {@code
+ * SynthesizeCallback}, and the builder can be snapshotted at any time while the audio streams in.
+ * Timings of audio synthesized in segments are merged by giving the builder the offset of each
+ * segment in the whole audio.
+ */
+public final class TimingIndex {
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final String[] words;
+  private final double[] starts;
+  private final double[] ends;
+  private final String[] marks;
+  private final double[] markTimes;
+
+  /** Collects word timings and marks. The methods may be called from different threads. */
+  public static class Builder {
+    private String[] words = new String[INITIAL_CAPACITY];
+    private double[] starts = new double[INITIAL_CAPACITY];
+    private double[] ends = new double[INITIAL_CAPACITY];
+    private int wordCount;
+    private boolean wordsSorted = true;
+    private String[] marks = new String[INITIAL_CAPACITY];
+    private double[] markTimes = new double[INITIAL_CAPACITY];
+    private int markCount;
+    private boolean marksSorted = true;
+    private double offset;
+
+    /** Instantiates a new builder. */
+    public Builder() {}
+
+    /**
+     * Builds a TimingIndex of the timings added so far. The builder can be used further.
+     *
+     * @return the new TimingIndex instance
+     */
+    public synchronized TimingIndex build() {
+      return new TimingIndex(this);
+    }
+
+    /**
+     * Set the time at which the audio of the timings added next starts, such as the duration of
+     * the segments synthesized before them. Defaults to 0.
+     *
+     * @param offset the offset in seconds
+     * @return the TimingIndex builder
+     */
+    public synchronized Builder offset(double offset) {
+      this.offset = offset;
+      return this;
+    }
+
+    /**
+     * Adds the word timings of a {@code SynthesizeCallback#onTimings(Timings)} call.
+     *
+     * @param timings the timings
+     * @return the TimingIndex builder
+     */
+    public synchronized Builder addTimings(Timings timings) {
+      if (timings == null || timings.getWords() == null) {
+        return this;
+      }
+      for (WordTiming word : timings.getWords()) {
+        if (word.getStartTime() != null && word.getEndTime() != null) {
+          addWord(word.getWord(), word.getStartTime(), word.getEndTime());
+        }
+      }
+      return this;
+    }
+
+    /**
+     * Adds the marks of a {@code SynthesizeCallback#onMarks(Marks)} call.
+     *
+     * @param marks the marks
+     * @return the TimingIndex builder
+     */
+    public synchronized Builder addMarks(Marks marks) {
+      if (marks == null || marks.getMarks() == null) {
+        return this;
+      }
+      for (MarkTiming mark : marks.getMarks()) {
+        if (mark.getTime() != null) {
+          addMark(mark.getMark(), mark.getTime());
+        }
+      }
+      return this;
+    }
+
+    /**
+     * Adds a word.
+     *
+     * @param word the word
+     * @param startTime the start time in seconds, before the offset is added
+     * @param endTime the end time in seconds, before the offset is added
+     * @return the TimingIndex builder
+     */
+    public synchronized Builder addWord(String word, double startTime, double endTime) {
+      if (wordCount == starts.length) {
+        int capacity = wordCount * 2;
+        words = Arrays.copyOf(words, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+      }
+      double start = startTime + offset;
+      wordsSorted &= wordCount == 0 || starts[wordCount - 1] <= start;
+      words[wordCount] = word;
+      starts[wordCount] = start;
+      ends[wordCount] = endTime + offset;
+      wordCount++;
+      return this;
+    }
+
+    /**
+     * Adds a mark.
+     *
+     * @param mark the name of the mark
+     * @param time the time in seconds, before the offset is added
+     * @return the TimingIndex builder
+     */
+    public synchronized Builder addMark(String mark, double time) {
+      if (markCount == markTimes.length) {
+        int capacity = markCount * 2;
+        marks = Arrays.copyOf(marks, capacity);
+        markTimes = Arrays.copyOf(markTimes, capacity);
+      }
+      double shifted = time + offset;
+      marksSorted &= markCount == 0 || markTimes[markCount - 1] <= shifted;
+      marks[markCount] = mark;
+      markTimes[markCount] = shifted;
+      markCount++;
+      return this;
+    }
+  }
+
+  private TimingIndex(Builder builder) {
+    int[] wordOrder = order(builder.starts, builder.wordCount, builder.wordsSorted);
+    words = new String[wordOrder.length];
+    starts = new double[wordOrder.length];
+    ends = new double[wordOrder.length];
+    for (int i = 0; i < wordOrder.length; i++) {
+      words[i] = builder.words[wordOrder[i]];
+      starts[i] = builder.starts[wordOrder[i]];
+      ends[i] = builder.ends[wordOrder[i]];
+    }
+    int[] markOrder = order(builder.markTimes, builder.markCount, builder.marksSorted);
+    marks = new String[markOrder.length];
+    markTimes = new double[markOrder.length];
+    for (int i = 0; i < markOrder.length; i++) {
+      marks[i] = builder.marks[markOrder[i]];
+      markTimes[i] = builder.markTimes[markOrder[i]];
+    }
+  }
+
+  /** The positions of the first values in order of value; stable for equal values. */
+  private static int[] order(double[] values, int count, boolean sorted) {
+    int[] order = new int[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+    }
+    if (sorted) {
+      return order;
+    }
+    // insertion sort, segments arrive almost in order
+    for (int i = 1; i < count; i++) {
+      int current = order[i];
+      int j = i - 1;
+      while (j >= 0 && values[order[j]] > values[current]) {
+        order[j + 1] = order[j];
+        j--;
+      }
+      order[j + 1] = current;
+    }
+    return order;
+  }
+
+  /**
+   * Gets the number of words.
+   *
+   * @return the number of words
+   */
+  public int getWordCount() {
+    return words.length;
+  }
+
+  /**
+   * Gets a word.
+   *
+   * @param index the index of the word, in order of time
+   * @return the word
+   */
+  public String getWord(int index) {
+    return words[index];
+  }
+
+  /**
+   * Gets the start of the time range of a word.
+   *
+   * @param index the index of the word, in order of time
+   * @return the start time in seconds
+   */
+  public double getStartTime(int index) {
+    return starts[index];
+  }
+
+  /**
+   * Gets the end of the time range of a word.
+   *
+   * @param index the index of the word, in order of time
+   * @return the end time in seconds
+   */
+  public double getEndTime(int index) {
+    return ends[index];
+  }
+
+  /**
+   * Finds the word spoken at a time.
+   *
+   * @param time the time in seconds
+   * @return the index of the word whose time range contains the time, or -1 if no word is spoken
+   */
+  public int wordAt(double time) {
+    int index = lastAtOrBefore(starts, time);
+    return index >= 0 && time < ends[index] ? index : -1;
+  }
+
+  /**
+   * Finds the last word that started at or before a time, for keeping a word highlighted through
+   * the pause that follows it.
+   *
+   * @param time the time in seconds
+   * @return the index of the word, or -1 if no word started yet
+   */
+  public int lastWordAt(double time) {
+    return lastAtOrBefore(starts, time);
+  }
+
+  /**
+   * Gets the number of marks.
+   *
+   * @return the number of marks
+   */
+  public int getMarkCount() {
+    return marks.length;
+  }
+
+  /**
+   * Gets the name of a mark.
+   *
+   * @param index the index of the mark, in order of time
+   * @return the name of the mark
+   */
+  public String getMark(int index) {
+    return marks[index];
+  }
+
+  /**
+   * Gets the time of a mark.
+   *
+   * @param index the index of the mark, in order of time
+   * @return the time in seconds
+   */
+  public double getMarkTime(int index) {
+    return markTimes[index];
+  }
+
+  /**
+   * Finds the last mark reached at a time.
+   *
+   * @param time the time in seconds
+   * @return the index of the last mark at or before the time, or -1 if no mark was reached yet
+   */
+  public int markAt(double time) {
+    return lastAtOrBefore(markTimes, time);
+  }
+
+  /** The index of the last value at or before a time, or -1. */
+  private static int lastAtOrBefore(double[] times, double time) {
+    int low = 0;
+    int high = times.length - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (times[middle] <= time) {
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+    return high;
+  }
+}
@@ -12,11 +12,21 @@
  */
 package com.ibm.watson.text_to_speech.v1.util;
 
+import com.ibm.cloud.sdk.core.util.Validator;
 import com.ibm.watson.text_to_speech.v1.TextToSpeech;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 
 /**
  * Utility class to write the data size header in wave(.wav) files synthesized with the {@link
@@ -32,6 +42,18 @@ public final class WaveUtils {
   /** The WAVE meta-data size position. (value is 4) */
   private static final int WAVE_SIZE_POS = 4;
 
+  /** The RIFF header size, up to the first chunk. (value is 12) */
+  private static final int RIFF_HEADER_SIZE = 12;
+
+  /** The largest chunk before the data chunk that is accepted. (value is 1 MB) */
+  private static final int MAX_CHUNK_SIZE = 1024 * 1024;
+
+  /** The size of the buffer used to copy audio. (value is 16 KB) */
+  private static final int COPY_BUFFER_SIZE = 16384;
+
+  /** The largest size that fits into a header field. */
+  private static final long MAX_SIZE = 0xFFFFFFFFL;
+
   private WaveUtils() {
     // This is a utility class - no instantiation allowed.
   }
@@ -43,7 +65,7 @@ public final class WaveUtils {
    * @param array the byte array
    * @param offset the offset
    */
-  private static void writeInt(int value, byte[] array, int offset) {
+  static void writeInt(int value, byte[] array, int offset) {
     for (int i = 0; i < 4; i++) {
       array[offset + i] = (byte) (value >>> (8 * i));
     }
@@ -67,6 +89,173 @@ public final class WaveUtils {
     return new ByteArrayInputStream(audioBytes);
   }
 
+  /**
+   * Copies a WAVE(.wav) input stream to a file and writes the RIFF and data sizes into the header
+   * in place once the stream ends. Unlike {@link #reWriteWaveHeader(InputStream)}, the audio is
+   * not held in memory, so any length of audio takes a fixed amount of memory. The file is written
+   * from the current position of the channel.
+   *
+   * @param is the input stream
+   * @param channel the channel of the file
+   * @return the number of bytes written
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public static long writeWaveFile(InputStream is, FileChannel channel) throws IOException {
+    long start = channel.position();
+    byte[] header = readHeader(is);
+    writeFully(channel, ByteBuffer.wrap(header));
+    long dataSize = copy(is, channel);
+
+    ByteBuffer sizes = ByteBuffer.allocate(4);
+    writeFully(channel, putSize(sizes, header.length + dataSize - WAVE_HEADER_SIZE), start + 4);
+    writeFully(channel, putSize(sizes, dataSize), start + header.length - 4);
+    return header.length + dataSize;
+  }
+
+  /**
+   * Copies a WAVE(.wav) input stream to an output stream with the RIFF and data sizes written into
+   * the header. The header must be written before the audio, so the audio is read ahead: if it
+   * ends within {@code lookahead} bytes, it is kept in memory, and otherwise it is spilled to a
+   * temporary file, so memory stays bounded by the lookahead for any length of audio.
+   *
+   * @param is the input stream
+   * @param os the output stream
+   * @param lookahead the number of audio bytes read ahead in memory
+   * @return the number of bytes written
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public static long writeWave(InputStream is, OutputStream os, int lookahead)
+      throws IOException {
+    Validator.isTrue(lookahead >= 0, "lookahead cannot be negative");
+    byte[] header = readHeader(is);
+    byte[] ahead = new byte[lookahead];
+    int aheadLength = readFully(is, ahead, 0, lookahead);
+    int next = aheadLength == lookahead ? is.read() : -1;
+    if (next == -1) {
+      writeSizes(header, aheadLength);
+      os.write(header);
+      os.write(ahead, 0, aheadLength);
+      return header.length + aheadLength;
+    }
+
+    File spill = File.createTempFile("wave", ".tmp");
+    try {
+      RandomAccessFile file = new RandomAccessFile(spill, "rw");
+      try {
+        FileChannel channel = file.getChannel();
+        writeFully(channel, ByteBuffer.wrap(ahead, 0, aheadLength));
+        file.write(next);
+        long dataSize = aheadLength + 1 + copy(is, channel);
+
+        writeSizes(header, dataSize);
+        os.write(header);
+        WritableByteChannel out = Channels.newChannel(os);
+        long position = 0;
+        while (position < dataSize) {
+          position += channel.transferTo(position, dataSize - position, out);
+        }
+        return header.length + dataSize;
+      } finally {
+        file.close();
+      }
+    } finally {
+      spill.delete();
+    }
+  }
+
+  /**
+   * Reads the header of a WAVE(.wav) input stream, up to and including the header of the data
+   * chunk. The data size is in the last four bytes.
+   */
+  static byte[] readHeader(InputStream is) throws IOException {
+    byte[] header = new byte[RIFF_HEADER_SIZE + WAVE_HEADER_SIZE];
+    readExactly(is, header, 0, header.length);
+    if (header[0] != 'R' || header[1] != 'I' || header[2] != 'F' || header[3] != 'F') {
+      throw new IOException("Not a WAVE stream");
+    }
+    int chunk = RIFF_HEADER_SIZE;
+    while (!(header[chunk] == 'd'
+        && header[chunk + 1] == 'a'
+        && header[chunk + 2] == 't'
+        && header[chunk + 3] == 'a')) {
+      long size = readSize(header, chunk + 4);
+      if (size > MAX_CHUNK_SIZE) {
+        throw new IOException("Chunk too large before the data chunk: " + size);
+      }
+      // skip the chunk, with its padding byte, and read the next chunk header
+      int length = (int) (size + (size & 1));
+      chunk = header.length + length;
+      header = Arrays.copyOf(header, chunk + WAVE_HEADER_SIZE);
+      readExactly(is, header, chunk - length, length + WAVE_HEADER_SIZE);
+    }
+    return header;
+  }
+
+  private static void writeSizes(byte[] header, long dataSize) {
+    long riffSize = Math.min(MAX_SIZE, header.length + dataSize - WAVE_HEADER_SIZE);
+    writeInt((int) riffSize, header, WAVE_SIZE_POS);
+    writeInt((int) Math.min(MAX_SIZE, dataSize), header, header.length - 4);
+  }
+
+  private static ByteBuffer putSize(ByteBuffer buffer, long size) {
+    buffer.clear();
+    byte[] bytes = buffer.array();
+    writeInt((int) Math.min(MAX_SIZE, size), bytes, 0);
+    return buffer;
+  }
+
+  static long readSize(byte[] array, int offset) {
+    long value = 0;
+    for (int i = 0; i < 4; i++) {
+      value |= (array[offset + i] & 0xFFL) << (8 * i);
+    }
+    return value;
+  }
+
+  private static long copy(InputStream is, FileChannel channel) throws IOException {
+    byte[] data = new byte[COPY_BUFFER_SIZE];
+    ByteBuffer buffer = ByteBuffer.wrap(data);
+    long total = 0;
+    int nRead;
+    while ((nRead = is.read(data, 0, data.length)) != -1) {
+      buffer.clear();
+      buffer.limit(nRead);
+      writeFully(channel, buffer);
+      total += nRead;
+    }
+    return total;
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+
+  private static int readFully(InputStream is, byte[] array, int offset, int length)
+      throws IOException {
+    int total = 0;
+    int nRead;
+    while (total < length && (nRead = is.read(array, offset + total, length - total)) != -1) {
+      total += nRead;
+    }
+    return total;
+  }
+
+  private static void readExactly(InputStream is, byte[] array, int offset, int length)
+      throws IOException {
+    if (readFully(is, array, offset, length) < length) {
+      throw new EOFException("Incomplete WAVE header");
+    }
+  }
+
   /**
    * Converts an {@link InputStream} to byte array.
    *
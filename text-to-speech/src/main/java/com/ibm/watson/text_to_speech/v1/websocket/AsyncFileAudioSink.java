@@ -0,0 +1,124 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1.websocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+
+/**
+ * Writes the synthesized audio to an {@link AsynchronousFileChannel}. Every frame is written at
+ * its position in the file as soon as it arrives, without waiting for the previous writes, so the
+ * WebSocket is never held up by the disk. {@link #await(long, java.util.concurrent.TimeUnit)}
+ * returns once all writes have completed.
+ */
+public class AsyncFileAudioSink extends AudioSink {
+
+  private final AsynchronousFileChannel channel;
+
+  // guarded by this
+  private long position;
+  private int outstanding;
+  private boolean finished;
+
+  /**
+   * Instantiates a new sink.
+   *
+   * @param channel the channel, opened for writing
+   * @param position the position in the file of the first byte
+   */
+  public AsyncFileAudioSink(AsynchronousFileChannel channel, long position) {
+    if (channel == null) {
+      throw new IllegalArgumentException("channel cannot be null");
+    }
+    if (position < 0) {
+      throw new IllegalArgumentException("position cannot be negative");
+    }
+    this.channel = channel;
+    this.position = position;
+  }
+
+  /**
+   * Gets the position after the last frame received.
+   *
+   * @return the position in the file
+   */
+  public synchronized long getPosition() {
+    return position;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see com.ibm.watson.text_to_speech.v1.websocket.AudioSink#write(java.nio.ByteBuffer)
+   */
+  @Override
+  protected void write(ByteBuffer audio) {
+    long at;
+    synchronized (this) {
+      at = position;
+      position += audio.remaining();
+      outstanding++;
+    }
+    new Write(audio, at).start();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see com.ibm.watson.text_to_speech.v1.websocket.AudioSink#finish()
+   */
+  @Override
+  protected synchronized void finish() {
+    finished = true;
+    if (outstanding == 0) {
+      complete();
+    }
+  }
+
+  private synchronized void written() {
+    outstanding--;
+    if (finished && outstanding == 0) {
+      complete();
+    }
+  }
+
+  /** The write of one frame, continued until the whole frame is written. */
+  private final class Write implements CompletionHandler<Integer, Void> {
+    private final ByteBuffer buffer;
+    private long at;
+
+    Write(ByteBuffer buffer, long at) {
+      this.buffer = buffer;
+      this.at = at;
+    }
+
+    void start() {
+      channel.write(buffer, at, null, this);
+    }
+
+    @Override
+    public void completed(Integer result, Void attachment) {
+      at += result;
+      if (buffer.hasRemaining()) {
+        start();
+      } else {
+        written();
+      }
+    }
+
+    @Override
+    public void failed(Throwable t, Void attachment) {
+      fail(t instanceof Exception ? (Exception) t : new IOException(t));
+    }
+  }
+}
@@ -0,0 +1,32 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1.websocket;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link SynthesizeCallback} that receives the audio frames of the WebSocket as read-only views
+ * instead of copies. When the callback implements this interface, {@link
+ * #onAudioBuffer(ByteBuffer)} is called for every audio frame in place of {@link
+ * SynthesizeCallback#onAudioStream(byte[])}.
+ */
+public interface AudioBufferCallback extends SynthesizeCallback {
+
+  /**
+   * Called with an audio frame. The buffer is a read-only view of the received frame; its content
+   * never changes, so it can be kept after the call.
+   *
+   * @param audio the audio in the requested format
+   */
+  void onAudioBuffer(ByteBuffer audio);
+}
@@ -0,0 +1,136 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1.websocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A callback that writes the synthesized audio to a destination as it arrives, without copying
+ * the WebSocket frames. Wait for the audio to be written with {@link #await(long, TimeUnit)}.
+ * The destination is not closed by the sink.
+ */
+public abstract class AudioSink extends BaseSynthesizeCallback implements AudioBufferCallback {
+
+  private final CountDownLatch done = new CountDownLatch(1);
+  private volatile Exception failure;
+
+  /**
+   * Waits until all audio is written or the synthesis failed.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit the unit of the timeout
+   * @return true if done, false if the timeout elapsed first
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+    return done.await(timeout, unit);
+  }
+
+  /**
+   * Gets the first failure of the synthesis or of a write.
+   *
+   * @return the failure, or null
+   */
+  public Exception getFailure() {
+    return failure;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see
+   * com.ibm.watson.text_to_speech.v1.websocket.AudioBufferCallback#onAudioBuffer(java.nio
+   * .ByteBuffer)
+   */
+  @Override
+  public void onAudioBuffer(ByteBuffer audio) {
+    if (failure != null) {
+      return;
+    }
+    try {
+      write(audio);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see com.ibm.watson.text_to_speech.v1.websocket.SynthesizeCallback#onAudioStream(byte[])
+   */
+  @Override
+  public void onAudioStream(byte[] bytes) {
+    onAudioBuffer(ByteBuffer.wrap(bytes));
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see com.ibm.watson.text_to_speech.v1.websocket.SynthesizeCallback#onError(java.lang.Exception)
+   */
+  @Override
+  public void onError(Exception e) {
+    super.onError(e);
+    fail(e);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see com.ibm.watson.text_to_speech.v1.websocket.SynthesizeCallback#onDisconnected()
+   */
+  @Override
+  public void onDisconnected() {
+    if (failure != null) {
+      return;
+    }
+    try {
+      finish();
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  /**
+   * Writes an audio frame, or queues it to be written.
+   *
+   * @param audio the frame
+   * @throws IOException if the frame cannot be written
+   */
+  protected abstract void write(ByteBuffer audio) throws IOException;
+
+  /**
+   * Called after the last frame. Must eventually call {@link #complete()} or {@link
+   * #fail(Exception)}.
+   *
+   * @throws IOException if the remaining audio cannot be written
+   */
+  protected abstract void finish() throws IOException;
+
+  /** Marks the audio as written. */
+  protected void complete() {
+    done.countDown();
+  }
+
+  /**
+   * Marks the sink as failed. Later frames are dropped.
+   *
+   * @param e the failure
+   */
+  protected void fail(Exception e) {
+    if (failure == null) {
+      failure = e;
+    }
+    done.countDown();
+  }
+}
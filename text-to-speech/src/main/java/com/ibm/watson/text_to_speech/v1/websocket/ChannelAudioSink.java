@@ -0,0 +1,117 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1.websocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the synthesized audio to a {@link WritableByteChannel}, such as a {@code FileChannel} or
+ * {@code SocketChannel}. Frames are collected up to a batch size and written with one gathering
+ * write when the channel supports it, so a stream of small frames costs few system calls. The
+ * channel must be blocking.
+ */
+public class ChannelAudioSink extends AudioSink {
+
+  private static final int DEFAULT_BATCH_BYTES = 64 * 1024;
+
+  private final WritableByteChannel channel;
+  private final int batchBytes;
+  private final List<ByteBuffer> pending = new ArrayList<ByteBuffer>();
+  private long pendingBytes;
+  private long written;
+
+  /**
+   * Instantiates a new sink that writes in batches of 64 KB.
+   *
+   * @param channel the channel
+   */
+  public ChannelAudioSink(WritableByteChannel channel) {
+    this(channel, DEFAULT_BATCH_BYTES);
+  }
+
+  /**
+   * Instantiates a new sink.
+   *
+   * @param channel the channel
+   * @param batchBytes the number of bytes collected before a write, 0 to write every frame at once
+   */
+  public ChannelAudioSink(WritableByteChannel channel, int batchBytes) {
+    if (channel == null) {
+      throw new IllegalArgumentException("channel cannot be null");
+    }
+    if (batchBytes < 0) {
+      throw new IllegalArgumentException("batchBytes cannot be negative");
+    }
+    this.channel = channel;
+    this.batchBytes = batchBytes;
+  }
+
+  /**
+   * Gets the number of bytes written to the channel.
+   *
+   * @return the number of bytes
+   */
+  public synchronized long getBytesWritten() {
+    return written;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see com.ibm.watson.text_to_speech.v1.websocket.AudioSink#write(java.nio.ByteBuffer)
+   */
+  @Override
+  protected synchronized void write(ByteBuffer audio) throws IOException {
+    pending.add(audio);
+    pendingBytes += audio.remaining();
+    if (pendingBytes >= batchBytes) {
+      flush();
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see com.ibm.watson.text_to_speech.v1.websocket.AudioSink#finish()
+   */
+  @Override
+  protected synchronized void finish() throws IOException {
+    flush();
+    complete();
+  }
+
+  private void flush() throws IOException {
+    if (pending.isEmpty()) {
+      return;
+    }
+    if (channel instanceof GatheringByteChannel) {
+      ByteBuffer[] buffers = pending.toArray(new ByteBuffer[pending.size()]);
+      long remaining = pendingBytes;
+      while (remaining > 0) {
+        remaining -= ((GatheringByteChannel) channel).write(buffers);
+      }
+    } else {
+      for (ByteBuffer buffer : pending) {
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      }
+    }
+    written += pendingBytes;
+    pending.clear();
+    pendingBytes = 0;
+  }
+}
@@ -0,0 +1,521 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1.websocket;
+
+import com.ibm.cloud.sdk.core.util.Validator;
+import com.ibm.watson.text_to_speech.v1.TextToSpeech;
+import com.ibm.watson.text_to_speech.v1.model.MarkTiming;
+import com.ibm.watson.text_to_speech.v1.model.Marks;
+import com.ibm.watson.text_to_speech.v1.model.SynthesizeOptions;
+import com.ibm.watson.text_to_speech.v1.model.Timings;
+import com.ibm.watson.text_to_speech.v1.model.WordTiming;
+import com.ibm.watson.text_to_speech.v1.util.PcmAudio;
+import com.ibm.watson.text_to_speech.v1.util.TextSegmenter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import okhttp3.WebSocket;
+
+/**
+ * Synthesizes a long document, such as the chapter of an audiobook, into one {@code audio/wav} or
+ * {@code audio/l16} file over the WebSocket interface of the {@link TextToSpeech} service. <br>
+ * The text is split by {@link TextSegmenter} into segments at sentence and SSML boundaries, and up
+ * to a configured number of segments are synthesized at the same time, each on its own connection.
+ * New connections can be paced to a maximum request rate, and a failed segment is synthesized
+ * again a bounded number of times. The audio is written in order as the segments complete, with a
+ * single WAV header whose sizes are set once the last segment is written, so only the segments
+ * that complete ahead of the one being written are held in memory. The times of the word timings
+ * and marks of every segment are shifted by the duration of the segments before it.
+ */
+public class DocumentSynthesizer {
+
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+  private static final long MAX_WAVE_SIZE = 0xFFFFFFFFL;
+
+  private final TextToSpeech service;
+  private final SynthesizeOptions options;
+  private final int maxSegmentChars;
+  private final int concurrency;
+  private final long intervalNanos;
+  private final int retries;
+
+  // guarded by this
+  private final Deque<Segment> retryQueue = new ArrayDeque<Segment>();
+  private int running;
+  private Exception failure;
+  private boolean started;
+
+  /** Builder. */
+  public static class Builder {
+    private TextToSpeech service;
+    private SynthesizeOptions options;
+    private int maxSegmentChars = 1000;
+    private int concurrency = 4;
+    private double requestsPerSecond;
+    private int retries = 2;
+
+    /** Instantiates a new builder. */
+    public Builder() {}
+
+    /**
+     * Builds a DocumentSynthesizer.
+     *
+     * @return the new DocumentSynthesizer instance
+     */
+    public DocumentSynthesizer build() {
+      return new DocumentSynthesizer(this);
+    }
+
+    /**
+     * Set the service used to open the connections.
+     *
+     * @param service the service
+     * @return the DocumentSynthesizer builder
+     */
+    public Builder service(TextToSpeech service) {
+      this.service = service;
+      return this;
+    }
+
+    /**
+     * Set the synthesize options. The text of the options is the document, and the accept must be
+     * {@code audio/wav} or {@code audio/l16}; every segment is synthesized with a copy of the
+     * options.
+     *
+     * @param options the options
+     * @return the DocumentSynthesizer builder
+     */
+    public Builder options(SynthesizeOptions options) {
+      this.options = options;
+      return this;
+    }
+
+    /**
+     * Set the maximum length of a segment. Defaults to 1000.
+     *
+     * @param maxSegmentChars the maximum number of characters of a segment
+     * @return the DocumentSynthesizer builder
+     */
+    public Builder maxSegmentChars(int maxSegmentChars) {
+      this.maxSegmentChars = maxSegmentChars;
+      return this;
+    }
+
+    /**
+     * Set the number of segments synthesized at the same time. Defaults to 4.
+     *
+     * @param concurrency the maximum number of open connections
+     * @return the DocumentSynthesizer builder
+     */
+    public Builder concurrency(int concurrency) {
+      this.concurrency = concurrency;
+      return this;
+    }
+
+    /**
+     * Set the maximum rate at which connections are opened. Defaults to no limit.
+     *
+     * @param requestsPerSecond the maximum number of connections opened per second
+     * @return the DocumentSynthesizer builder
+     */
+    public Builder requestsPerSecond(double requestsPerSecond) {
+      this.requestsPerSecond = requestsPerSecond;
+      return this;
+    }
+
+    /**
+     * Set how often a failed segment is synthesized again before the document fails. Defaults to
+     * 2.
+     *
+     * @param retries the number of retries per segment
+     * @return the DocumentSynthesizer builder
+     */
+    public Builder retries(int retries) {
+      this.retries = retries;
+      return this;
+    }
+  }
+
+  /** The outcome of a synthesized document. */
+  public static class Result {
+    private final int segmentCount;
+    private final long audioBytes;
+    private final double duration;
+    private final List<WordTiming> words;
+    private final List<MarkTiming> marks;
+
+    Result(
+        int segmentCount,
+        long audioBytes,
+        double duration,
+        List<WordTiming> words,
+        List<MarkTiming> marks) {
+      this.segmentCount = segmentCount;
+      this.audioBytes = audioBytes;
+      this.duration = duration;
+      this.words = Collections.unmodifiableList(words);
+      this.marks = Collections.unmodifiableList(marks);
+    }
+
+    /**
+     * Gets the number of segments the document was split into.
+     *
+     * @return the number of segments
+     */
+    public int getSegmentCount() {
+      return segmentCount;
+    }
+
+    /**
+     * Gets the number of bytes of audio data written, without the WAV header.
+     *
+     * @return the number of bytes
+     */
+    public long getAudioBytes() {
+      return audioBytes;
+    }
+
+    /**
+     * Gets the duration of the audio.
+     *
+     * @return the duration in seconds
+     */
+    public double getDuration() {
+      return duration;
+    }
+
+    /**
+     * Gets the word timings of the whole document, if word timings were requested.
+     *
+     * @return the word timings in order, with times relative to the start of the audio
+     */
+    public List<WordTiming> getWords() {
+      return words;
+    }
+
+    /**
+     * Gets the marks of the whole document.
+     *
+     * @return the marks in order, with times relative to the start of the audio
+     */
+    public List<MarkTiming> getMarks() {
+      return marks;
+    }
+  }
+
+  protected DocumentSynthesizer(Builder builder) {
+    Validator.notNull(builder.service, "service cannot be null");
+    Validator.notNull(builder.options, "options cannot be null");
+    Validator.notNull(builder.options.text(), "text cannot be null");
+    String accept = builder.options.accept();
+    Validator.isTrue(
+        PcmAudio.isWave(accept) || PcmAudio.isL16(accept),
+        "DocumentSynthesizer requires audio/wav or audio/l16 audio, but got " + accept);
+    Validator.isTrue(builder.maxSegmentChars > 0, "maxSegmentChars must be positive");
+    Validator.isTrue(builder.concurrency > 0, "concurrency must be positive");
+    Validator.isTrue(builder.requestsPerSecond >= 0, "requestsPerSecond cannot be negative");
+    Validator.isTrue(builder.retries >= 0, "retries cannot be negative");
+    service = builder.service;
+    options = builder.options;
+    maxSegmentChars = builder.maxSegmentChars;
+    concurrency = builder.concurrency;
+    intervalNanos =
+        builder.requestsPerSecond > 0 ? (long) (NANOS_PER_SECOND / builder.requestsPerSecond) : 0;
+    retries = builder.retries;
+  }
+
+  /**
+   * Synthesizes the document and writes its audio to a channel, blocking until the last segment
+   * is written. For {@code audio/wav} the channel must be a {@link SeekableByteChannel}, such as a
+   * {@code FileChannel}, since the sizes of the header are written last. The channel is not
+   * closed.
+   *
+   * @param output the channel the audio is written to
+   * @return the result
+   * @throws IOException if a segment fails more often than the retries allow, or the audio cannot
+   *     be written
+   * @throws IllegalStateException if already started
+   */
+  public Result synthesize(WritableByteChannel output) throws IOException {
+    Validator.notNull(output, "output cannot be null");
+    boolean wave = PcmAudio.isWave(options.accept());
+    Validator.isTrue(
+        !wave || output instanceof SeekableByteChannel,
+        "audio/wav must be written to a SeekableByteChannel");
+    synchronized (this) {
+      if (started) {
+        throw new IllegalStateException("DocumentSynthesizer already started");
+      }
+      started = true;
+    }
+    List<String> texts = TextSegmenter.split(options.text(), maxSegmentChars);
+    List<Segment> segments = new ArrayList<Segment>();
+    for (int i = 0; i < texts.size(); i++) {
+      segments.add(new Segment(texts.get(i)));
+    }
+    Assembly assembly = new Assembly(output, wave);
+    try {
+      run(segments, assembly);
+      assembly.finish();
+    } finally {
+      synchronized (this) {
+        for (Segment segment : segments) {
+          if (segment.socket != null) {
+            segment.socket.cancel();
+          }
+        }
+      }
+    }
+    return new Result(
+        segments.size(),
+        assembly.dataBytes,
+        assembly.offset(),
+        assembly.words,
+        assembly.marks);
+  }
+
+  /**
+   * Starts segments within the concurrency and rate limits, and writes completed segments in
+   * order, until all are written.
+   */
+  private void run(List<Segment> segments, Assembly assembly) throws IOException {
+    // segments that completed ahead of the one being written are held in memory, so bound them
+    int window = concurrency * 2;
+    long nextStart = System.nanoTime();
+    int next = 0;
+    for (int written = 0; written < segments.size(); written++) {
+      Segment segment = segments.get(written);
+      Attempt completed;
+      synchronized (this) {
+        while (segment.completed == null) {
+          if (failure != null) {
+            throw new IOException("Synthesis of a segment failed", failure);
+          }
+          long now = System.nanoTime();
+          int limit = Math.min(segments.size(), written + window);
+          boolean more = !retryQueue.isEmpty() || next < limit;
+          while (more && running < concurrency && now >= nextStart) {
+            open(retryQueue.isEmpty() ? segments.get(next++) : retryQueue.poll());
+            nextStart = Math.max(nextStart, now) + intervalNanos;
+            more = !retryQueue.isEmpty() || next < limit;
+          }
+          try {
+            if (more && running < concurrency) {
+              TimeUnit.NANOSECONDS.timedWait(this, Math.max(1, nextStart - now));
+            } else {
+              wait();
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+          }
+        }
+        completed = segment.completed;
+        // release the audio once written
+        segment.completed = null;
+      }
+      assembly.write(completed);
+    }
+  }
+
+  private void open(Segment segment) {
+    running++;
+    segment.attempts++;
+    SynthesizeOptions segmentOptions = options.newBuilder().text(segment.text).build();
+    segment.socket = service.synthesizeUsingWebSocket(segmentOptions, new Attempt(segment));
+  }
+
+  private synchronized void onDone(Attempt attempt) {
+    if (attempt.over) {
+      return;
+    }
+    attempt.over = true;
+    running--;
+    attempt.segment.socket = null;
+    attempt.segment.completed = attempt;
+    notifyAll();
+  }
+
+  private synchronized void onFailure(Attempt attempt, Exception e) {
+    if (attempt.over) {
+      return;
+    }
+    attempt.over = true;
+    running--;
+    Segment segment = attempt.segment;
+    segment.socket = null;
+    if (segment.attempts <= retries) {
+      retryQueue.add(segment);
+    } else {
+      failure = e;
+    }
+    notifyAll();
+  }
+
+  /** Writes the segments in order into one stream of audio. */
+  private static final class Assembly {
+    private final WritableByteChannel output;
+    private final boolean wave;
+    private final List<WordTiming> words = new ArrayList<WordTiming>();
+    private final List<MarkTiming> marks = new ArrayList<MarkTiming>();
+    private long headerPosition = -1;
+    private int dataSizePosition;
+    private int byteRate;
+    private long dataBytes;
+
+    Assembly(WritableByteChannel output, boolean wave) {
+      this.output = output;
+      this.wave = wave;
+    }
+
+    double offset() {
+      return byteRate > 0 ? (double) dataBytes / byteRate : 0;
+    }
+
+    void write(Attempt attempt) throws IOException {
+      byte[] audio = attempt.audio.toByteArray();
+      int dataStart = 0;
+      if (wave) {
+        dataStart = PcmAudio.dataOffset(audio, audio.length);
+        if (dataStart < 0) {
+          throw new IOException("The audio of a segment has no WAV data chunk");
+        }
+        if (headerPosition < 0) {
+          byteRate = PcmAudio.waveByteRate(audio, dataStart);
+          headerPosition = ((SeekableByteChannel) output).position();
+          dataSizePosition = dataStart - 4;
+          writeFully(ByteBuffer.wrap(audio, 0, dataStart));
+        }
+      } else if (byteRate == 0 && attempt.contentType != null) {
+        // the service synthesizes mono 16-bit l16
+        byteRate = PcmAudio.sampleRate(attempt.contentType) * 2;
+      }
+      double offset = offset();
+      for (WordTiming word : attempt.words) {
+        word.setStartTime(word.getStartTime() + offset);
+        word.setEndTime(word.getEndTime() + offset);
+        words.add(word);
+      }
+      for (MarkTiming mark : attempt.marks) {
+        mark.setTime(mark.getTime() + offset);
+        marks.add(mark);
+      }
+      writeFully(ByteBuffer.wrap(audio, dataStart, audio.length - dataStart));
+      dataBytes += audio.length - dataStart;
+    }
+
+    /** Sets the sizes of the WAV header. */
+    void finish() throws IOException {
+      if (headerPosition < 0) {
+        return;
+      }
+      long riffSize = dataSizePosition + 4 + dataBytes - 8;
+      if (riffSize > MAX_WAVE_SIZE) {
+        throw new IOException("The audio is too long for a WAV file");
+      }
+      SeekableByteChannel channel = (SeekableByteChannel) output;
+      long end = channel.position();
+      channel.position(headerPosition + 4);
+      writeFully(size(riffSize));
+      channel.position(headerPosition + dataSizePosition);
+      writeFully(size(dataBytes));
+      channel.position(end);
+    }
+
+    private static ByteBuffer size(long size) {
+      ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+      buffer.putInt((int) size).flip();
+      return buffer;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+      while (buffer.hasRemaining()) {
+        output.write(buffer);
+      }
+    }
+  }
+
+  /** A segment of the document. */
+  private static final class Segment {
+    private final String text;
+    private WebSocket socket;
+    private int attempts;
+    private Attempt completed;
+
+    Segment(String text) {
+      this.text = text;
+    }
+  }
+
+  /**
+   * One synthesis of a segment, collecting its audio, timings and marks. A failed segment is
+   * synthesized again by a new attempt, so late events of the failed connection are kept apart.
+   */
+  private final class Attempt extends BaseSynthesizeCallback {
+    private final Segment segment;
+    private final ByteArrayOutputStream audio = new ByteArrayOutputStream();
+    private final List<WordTiming> words = new ArrayList<WordTiming>();
+    private final List<MarkTiming> marks = new ArrayList<MarkTiming>();
+    private volatile String contentType;
+    // guarded by DocumentSynthesizer.this
+    private boolean over;
+
+    Attempt(Segment segment) {
+      this.segment = segment;
+    }
+
+    @Override
+    public void onError(Exception e) {
+      onFailure(this, e);
+    }
+
+    @Override
+    public void onDisconnected() {
+      onDone(this);
+    }
+
+    @Override
+    public void onContentType(String contentType) {
+      this.contentType = contentType;
+    }
+
+    @Override
+    public void onTimings(Timings timings) {
+      if (timings.getWords() != null) {
+        words.addAll(timings.getWords());
+      }
+    }
+
+    @Override
+    public void onMarks(Marks marks) {
+      if (marks.getMarks() != null) {
+        this.marks.addAll(marks.getMarks());
+      }
+    }
+
+    @Override
+    public void onAudioStream(byte[] bytes) {
+      audio.write(bytes, 0, bytes.length);
+    }
+  }
+}
@@ -0,0 +1,409 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1.websocket;
+
+import com.ibm.cloud.sdk.core.util.Validator;
+import com.ibm.watson.text_to_speech.v1.TextToSpeech;
+import com.ibm.watson.text_to_speech.v1.model.MarkTiming;
+import com.ibm.watson.text_to_speech.v1.model.Marks;
+import com.ibm.watson.text_to_speech.v1.model.SynthesizeOptions;
+import com.ibm.watson.text_to_speech.v1.model.Timings;
+import com.ibm.watson.text_to_speech.v1.model.WordTiming;
+import com.ibm.watson.text_to_speech.v1.util.PcmAudio;
+import com.ibm.watson.text_to_speech.v1.util.TextSegmenter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import okhttp3.WebSocket;
+
+/**
+ * Synthesizes long text or SSML over the WebSocket interface of the {@link TextToSpeech} service
+ * with a short time to first audio. <br>
+ * The service synthesizes the text of one start message per connection, so the text is split by
+ * {@link TextSegmenter} into sentence-safe segments, with a short first segment, and each segment
+ * is synthesized on its own connection. A bounded number of segments is synthesized ahead of the
+ * one being delivered. The {@link SynthesizeCallback} receives the audio of the first segment as
+ * soon as it arrives, followed by the audio of the later segments in order, as one stream: {@link
+ * SynthesizeCallback#onConnected()}, {@link SynthesizeCallback#onContentType(String)} and {@link
+ * SynthesizeCallback#onDisconnected()} are called once, and for {@code audio/wav} only the first
+ * segment keeps its header. If the callback is an {@link AudioBufferCallback}, the audio frames
+ * are passed on without copies. <br>
+ * For {@code audio/l16} and {@code audio/wav}, the times of {@link Timings} and {@link Marks} are
+ * shifted by the duration of the preceding segments; for other formats they are relative to the
+ * start of their segment.
+ */
+public class StreamingSynthesizer {
+
+  private final TextToSpeech service;
+  private final SynthesizeOptions options;
+  private final SynthesizeCallback callback;
+  private final int firstSegmentChars;
+  private final int maxSegmentChars;
+  private final int lookahead;
+
+  // guarded by this
+  private final List<Segment> segments = new ArrayList<Segment>();
+  private int current;
+  private int nextToOpen;
+  private boolean started;
+  private boolean connected;
+  private boolean ended;
+  private boolean wave;
+  private int byteRate;
+  private double offset;
+
+  /** Builder. */
+  public static class Builder {
+    private TextToSpeech service;
+    private SynthesizeOptions options;
+    private SynthesizeCallback callback;
+    private int firstSegmentChars = 200;
+    private int maxSegmentChars = 1000;
+    private int lookahead = 2;
+
+    /** Instantiates a new builder. */
+    public Builder() {}
+
+    /**
+     * Builds a StreamingSynthesizer.
+     *
+     * @return the new StreamingSynthesizer instance
+     */
+    public StreamingSynthesizer build() {
+      return new StreamingSynthesizer(this);
+    }
+
+    /**
+     * Set the service used to open the WebSocket connections.
+     *
+     * @param service the service
+     * @return the StreamingSynthesizer builder
+     */
+    public Builder service(TextToSpeech service) {
+      this.service = service;
+      return this;
+    }
+
+    /**
+     * Set the synthesize options. The text of the options is the whole text; every segment is
+     * synthesized with a copy of the options.
+     *
+     * @param options the options
+     * @return the StreamingSynthesizer builder
+     */
+    public Builder options(SynthesizeOptions options) {
+      this.options = options;
+      return this;
+    }
+
+    /**
+     * Set the callback that receives the audio of all segments.
+     *
+     * @param callback the callback
+     * @return the StreamingSynthesizer builder
+     */
+    public Builder callback(SynthesizeCallback callback) {
+      this.callback = callback;
+      return this;
+    }
+
+    /**
+     * Set the maximum length of the first segment. Defaults to 200.
+     *
+     * @param firstSegmentChars the number of characters
+     * @return the StreamingSynthesizer builder
+     */
+    public Builder firstSegmentChars(int firstSegmentChars) {
+      this.firstSegmentChars = firstSegmentChars;
+      return this;
+    }
+
+    /**
+     * Set the maximum length of the other segments. Defaults to 1000.
+     *
+     * @param maxSegmentChars the number of characters
+     * @return the StreamingSynthesizer builder
+     */
+    public Builder maxSegmentChars(int maxSegmentChars) {
+      this.maxSegmentChars = maxSegmentChars;
+      return this;
+    }
+
+    /**
+     * Set how many segments are synthesized ahead of the segment being delivered. Defaults to 2.
+     *
+     * @param lookahead the number of segments
+     * @return the StreamingSynthesizer builder
+     */
+    public Builder lookahead(int lookahead) {
+      this.lookahead = lookahead;
+      return this;
+    }
+  }
+
+  protected StreamingSynthesizer(Builder builder) {
+    Validator.notNull(builder.service, "service cannot be null");
+    Validator.notNull(builder.options, "options cannot be null");
+    Validator.notNull(builder.options.text(), "text cannot be null");
+    Validator.notNull(builder.callback, "callback cannot be null");
+    Validator.isTrue(builder.firstSegmentChars > 0, "firstSegmentChars must be positive");
+    Validator.isTrue(builder.maxSegmentChars > 0, "maxSegmentChars must be positive");
+    Validator.isTrue(builder.lookahead >= 0, "lookahead cannot be negative");
+    service = builder.service;
+    options = builder.options;
+    callback = builder.callback;
+    firstSegmentChars = builder.firstSegmentChars;
+    maxSegmentChars = builder.maxSegmentChars;
+    lookahead = builder.lookahead;
+  }
+
+  /**
+   * Splits the text and opens the connections of the first segments. Returns immediately; the
+   * callback is called on the threads of the connections.
+   *
+   * @throws IllegalStateException if already started
+   */
+  public synchronized void start() {
+    if (started) {
+      throw new IllegalStateException("StreamingSynthesizer already started");
+    }
+    started = true;
+    List<String> texts = TextSegmenter.split(options.text(), firstSegmentChars, maxSegmentChars);
+    for (int i = 0; i < texts.size(); i++) {
+      segments.add(new Segment(i, texts.get(i)));
+    }
+    if (segments.isEmpty()) {
+      ended = true;
+      callback.onDisconnected();
+      return;
+    }
+    openSegments();
+  }
+
+  /** Closes all connections. No further callbacks are made. */
+  public synchronized void cancel() {
+    ended = true;
+    for (Segment segment : segments) {
+      if (segment.socket != null) {
+        segment.socket.cancel();
+      }
+    }
+  }
+
+  /**
+   * Gets the number of segments the text was split into.
+   *
+   * @return the number of segments, or 0 if not started
+   */
+  public synchronized int getSegmentCount() {
+    return segments.size();
+  }
+
+  private void openSegments() {
+    while (nextToOpen < segments.size() && nextToOpen <= current + lookahead) {
+      Segment segment = segments.get(nextToOpen++);
+      SynthesizeOptions segmentOptions = options.newBuilder().text(segment.text).build();
+      segment.socket = service.synthesizeUsingWebSocket(segmentOptions, segment);
+    }
+  }
+
+  private synchronized void onEvent(Segment segment, Object event) {
+    if (ended) {
+      return;
+    }
+    if (segment.index == current) {
+      deliver(segment, event);
+    } else {
+      segment.pending.add(event);
+    }
+  }
+
+  private synchronized void onDone(Segment segment) {
+    if (ended || segment.done) {
+      return;
+    }
+    segment.done = true;
+    // deliver the segments that have been waiting for this one
+    while (current < segments.size() && segments.get(current).done) {
+      Segment finished = segments.get(current);
+      if (byteRate > 0) {
+        offset += (double) finished.dataBytes / byteRate;
+      }
+      current++;
+      if (current < segments.size()) {
+        Segment next = segments.get(current);
+        for (Object event : next.pending) {
+          deliver(next, event);
+        }
+        next.pending.clear();
+      }
+    }
+    if (current == segments.size()) {
+      ended = true;
+      callback.onDisconnected();
+    } else {
+      openSegments();
+    }
+  }
+
+  private synchronized void onFailure(Exception e) {
+    if (ended) {
+      return;
+    }
+    cancel();
+    callback.onError(e);
+  }
+
+  private void deliver(Segment segment, Object event) {
+    if (event instanceof ByteBuffer) {
+      deliverAudio(segment, (ByteBuffer) event);
+    } else if (event instanceof String) {
+      if (segment.index == 0) {
+        String contentType = (String) event;
+        wave = PcmAudio.isWave(contentType);
+        if (PcmAudio.isL16(contentType)) {
+          // the service synthesizes mono 16-bit l16
+          byteRate = PcmAudio.sampleRate(contentType) * 2;
+        }
+        callback.onContentType(contentType);
+      }
+    } else if (event instanceof Timings) {
+      Timings timings = (Timings) event;
+      if (offset > 0 && timings.getWords() != null) {
+        for (WordTiming word : timings.getWords()) {
+          word.setStartTime(word.getStartTime() + offset);
+          word.setEndTime(word.getEndTime() + offset);
+        }
+      }
+      callback.onTimings(timings);
+    } else if (event instanceof Marks) {
+      Marks marks = (Marks) event;
+      if (offset > 0 && marks.getMarks() != null) {
+        for (MarkTiming mark : marks.getMarks()) {
+          mark.setTime(mark.getTime() + offset);
+        }
+      }
+      callback.onMarks(marks);
+    } else if (event instanceof Exception) {
+      callback.onWarning((Exception) event);
+    }
+  }
+
+  private void deliverAudio(Segment segment, ByteBuffer audio) {
+    if (!wave || segment.headerDone) {
+      segment.dataBytes += audio.remaining();
+      emit(audio);
+      return;
+    }
+    // collect the header until the data chunk starts
+    byte[] header;
+    if (segment.header == null) {
+      header = new byte[audio.remaining()];
+    } else {
+      header = Arrays.copyOf(segment.header, segment.header.length + audio.remaining());
+    }
+    audio.get(header, header.length - audio.remaining(), audio.remaining());
+    segment.header = header;
+    int dataStart = PcmAudio.dataOffset(header, header.length);
+    if (dataStart < 0) {
+      return;
+    }
+    byteRate = PcmAudio.waveByteRate(header, dataStart);
+    segment.headerDone = true;
+    segment.header = null;
+    segment.dataBytes += header.length - dataStart;
+    if (segment.index == 0) {
+      emit(ByteBuffer.wrap(header));
+    } else if (dataStart < header.length) {
+      emit(ByteBuffer.wrap(header, dataStart, header.length - dataStart));
+    }
+  }
+
+  private void emit(ByteBuffer audio) {
+    if (callback instanceof AudioBufferCallback) {
+      ((AudioBufferCallback) callback).onAudioBuffer(audio);
+    } else {
+      byte[] bytes = new byte[audio.remaining()];
+      audio.get(bytes);
+      callback.onAudioStream(bytes);
+    }
+  }
+
+  /** The synthesis of one segment, buffering its events until the segment is delivered. */
+  private final class Segment extends BaseSynthesizeCallback implements AudioBufferCallback {
+    private final int index;
+    private final String text;
+    private final List<Object> pending = new ArrayList<Object>();
+    private WebSocket socket;
+    private boolean done;
+    private boolean headerDone;
+    private byte[] header;
+    private long dataBytes;
+
+    Segment(int index, String text) {
+      this.index = index;
+      this.text = text;
+    }
+
+    @Override
+    public void onConnected() {
+      synchronized (StreamingSynthesizer.this) {
+        if (!connected && !ended) {
+          connected = true;
+          callback.onConnected();
+        }
+      }
+    }
+
+    @Override
+    public void onError(Exception e) {
+      onFailure(e);
+    }
+
+    @Override
+    public void onWarning(Exception e) {
+      onEvent(this, e);
+    }
+
+    @Override
+    public void onDisconnected() {
+      onDone(this);
+    }
+
+    @Override
+    public void onContentType(String contentType) {
+      onEvent(this, contentType);
+    }
+
+    @Override
+    public void onTimings(Timings timings) {
+      onEvent(this, timings);
+    }
+
+    @Override
+    public void onMarks(Marks marks) {
+      onEvent(this, marks);
+    }
+
+    @Override
+    public void onAudioStream(byte[] bytes) {
+      onEvent(this, ByteBuffer.wrap(bytes));
+    }
+
+    @Override
+    public void onAudioBuffer(ByteBuffer audio) {
+      onEvent(this, audio);
+    }
+  }
+}
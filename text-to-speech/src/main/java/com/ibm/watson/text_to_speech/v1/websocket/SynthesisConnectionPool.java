@@ -0,0 +1,431 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1.websocket;
+
+import com.ibm.cloud.sdk.core.util.Validator;
+import com.ibm.watson.text_to_speech.v1.TextToSpeech;
+import com.ibm.watson.text_to_speech.v1.model.SynthesizeOptions;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+/**
+ * Keeps WebSocket connections to the synthesize endpoint of the {@link TextToSpeech} service open
+ * ahead of time, so that a synthesis does not wait for the TCP and TLS handshakes, the
+ * authentication and the WebSocket upgrade before its start message is sent. <br>
+ * The service synthesizes one text per connection, so a connection is used once: {@link
+ * #synthesize(SynthesizeOptions, SynthesizeCallback)} takes a warm connection of the voice and
+ * custom model of the options, sends the start message on it, and a replacement is opened in the
+ * background. When no warm connection is ready, a connection is opened as by {@link
+ * TextToSpeech#synthesizeUsingWebSocket(SynthesizeOptions, SynthesizeCallback)}. <br>
+ * A background check drops warm connections that the service closed or that failed, replaces
+ * connections that have been idle for longer than a maximum, before the service times them out,
+ * and keeps the configured number of connections warm for every voice.
+ */
+public class SynthesisConnectionPool implements Closeable {
+
+  private final TextToSpeech service;
+  private final int idlePerVoice;
+  private final long maxIdleNanos;
+  private final ScheduledExecutorService maintenance;
+
+  // guarded by this
+  private final Map<String, Target> targets = new LinkedHashMap<String, Target>();
+  private long warmStarts;
+  private long coldStarts;
+  private boolean closed;
+
+  /** Builder. */
+  public static class Builder {
+    private TextToSpeech service;
+    private final List<String[]> voices = new ArrayList<String[]>();
+    private int idlePerVoice = 2;
+    private long maxIdleMillis = 20000;
+    private long checkIntervalMillis = 1000;
+
+    /** Instantiates a new builder. */
+    public Builder() {}
+
+    /**
+     * Builds a SynthesisConnectionPool and starts opening its connections.
+     *
+     * @return the new SynthesisConnectionPool instance
+     */
+    public SynthesisConnectionPool build() {
+      return new SynthesisConnectionPool(this);
+    }
+
+    /**
+     * Set the service used to open the connections.
+     *
+     * @param service the service
+     * @return the SynthesisConnectionPool builder
+     */
+    public Builder service(TextToSpeech service) {
+      this.service = service;
+      return this;
+    }
+
+    /**
+     * Adds a voice to keep connections warm for.
+     *
+     * @param voice the voice, or null for the default voice
+     * @return the SynthesisConnectionPool builder
+     */
+    public Builder voice(String voice) {
+      return voice(voice, null);
+    }
+
+    /**
+     * Adds a voice with a custom model to keep connections warm for.
+     *
+     * @param voice the voice, or null for the default voice
+     * @param customizationId the ID of the custom model, or null for none
+     * @return the SynthesisConnectionPool builder
+     */
+    public Builder voice(String voice, String customizationId) {
+      voices.add(new String[] {voice, customizationId});
+      return this;
+    }
+
+    /**
+     * Set the number of connections kept warm per voice. Defaults to 2.
+     *
+     * @param idlePerVoice the number of connections
+     * @return the SynthesisConnectionPool builder
+     */
+    public Builder idlePerVoice(int idlePerVoice) {
+      this.idlePerVoice = idlePerVoice;
+      return this;
+    }
+
+    /**
+     * Set how long a warm connection may stay unused before it is replaced. Defaults to 20000,
+     * below the inactivity timeout of the service.
+     *
+     * @param maxIdleMillis the maximum idle time in milliseconds
+     * @return the SynthesisConnectionPool builder
+     */
+    public Builder maxIdleMillis(long maxIdleMillis) {
+      this.maxIdleMillis = maxIdleMillis;
+      return this;
+    }
+
+    /**
+     * Set how often the warm connections are checked. Defaults to 1000.
+     *
+     * @param checkIntervalMillis the interval in milliseconds
+     * @return the SynthesisConnectionPool builder
+     */
+    public Builder checkIntervalMillis(long checkIntervalMillis) {
+      this.checkIntervalMillis = checkIntervalMillis;
+      return this;
+    }
+  }
+
+  protected SynthesisConnectionPool(Builder builder) {
+    Validator.notNull(builder.service, "service cannot be null");
+    Validator.isTrue(!builder.voices.isEmpty(), "at least one voice must be added");
+    Validator.isTrue(builder.idlePerVoice > 0, "idlePerVoice must be positive");
+    Validator.isTrue(builder.maxIdleMillis > 0, "maxIdleMillis must be positive");
+    Validator.isTrue(builder.checkIntervalMillis > 0, "checkIntervalMillis must be positive");
+    service = builder.service;
+    idlePerVoice = builder.idlePerVoice;
+    maxIdleNanos = TimeUnit.MILLISECONDS.toNanos(builder.maxIdleMillis);
+    for (String[] voice : builder.voices) {
+      targets.put(key(voice[0], voice[1]), new Target(voice[0], voice[1]));
+    }
+    maintenance =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "synthesis-connection-pool");
+                thread.setDaemon(true);
+                return thread;
+              }
+            });
+    maintenance.scheduleWithFixedDelay(
+        new Runnable() {
+          @Override
+          public void run() {
+            check();
+          }
+        },
+        0,
+        builder.checkIntervalMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Synthesizes on a warm connection of the voice and custom model of the options, or on a new
+   * connection if none is ready.
+   *
+   * @param options the synthesize options
+   * @param callback the callback
+   * @return the connection
+   */
+  public WebSocket synthesize(SynthesizeOptions options, SynthesizeCallback callback) {
+    Validator.notNull(options, "options cannot be null");
+    Validator.notNull(callback, "callback cannot be null");
+    WarmSocket warm = take(key(options.voice(), options.customizationId()));
+    boolean bound = warm != null && warm.bind(options, callback);
+    synchronized (this) {
+      if (bound) {
+        warmStarts++;
+        return warm.socket;
+      }
+      coldStarts++;
+    }
+    return service.synthesizeUsingWebSocket(options, callback);
+  }
+
+  /**
+   * Gets the number of syntheses started on a warm connection.
+   *
+   * @return the number of warm starts
+   */
+  public synchronized long getWarmStarts() {
+    return warmStarts;
+  }
+
+  /**
+   * Gets the number of syntheses that had to open a connection.
+   *
+   * @return the number of cold starts
+   */
+  public synchronized long getColdStarts() {
+    return coldStarts;
+  }
+
+  /**
+   * Gets the number of connections that are open and ready.
+   *
+   * @return the number of warm connections over all voices
+   */
+  public synchronized int getIdleCount() {
+    int idle = 0;
+    for (Target target : targets.values()) {
+      for (WarmSocket warm : target.sockets) {
+        if (warm.isIdle()) {
+          idle++;
+        }
+      }
+    }
+    return idle;
+  }
+
+  /** Closes the warm connections. Connections already in use are not affected. */
+  @Override
+  public void close() {
+    List<WarmSocket> open = new ArrayList<WarmSocket>();
+    synchronized (this) {
+      closed = true;
+      for (Target target : targets.values()) {
+        open.addAll(target.sockets);
+        target.sockets.clear();
+      }
+    }
+    maintenance.shutdownNow();
+    for (WarmSocket warm : open) {
+      warm.discard();
+    }
+  }
+
+  /** Takes a ready connection and has a replacement opened. */
+  private WarmSocket take(String key) {
+    synchronized (this) {
+      Target target = targets.get(key);
+      if (target == null || closed) {
+        return null;
+      }
+      for (Iterator<WarmSocket> sockets = target.sockets.iterator(); sockets.hasNext(); ) {
+        WarmSocket warm = sockets.next();
+        if (warm.isIdle()) {
+          sockets.remove();
+          refill(target);
+          return warm;
+        }
+      }
+    }
+    return null;
+  }
+
+  /** Drops broken and stale connections and opens new ones. */
+  private void check() {
+    List<WarmSocket> stale = new ArrayList<WarmSocket>();
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      long now = System.nanoTime();
+      for (Target target : targets.values()) {
+        for (Iterator<WarmSocket> sockets = target.sockets.iterator(); sockets.hasNext(); ) {
+          WarmSocket warm = sockets.next();
+          if (warm.isDead() || (warm.isIdle() && now - warm.openedAt > maxIdleNanos)) {
+            sockets.remove();
+            stale.add(warm);
+          }
+        }
+        refill(target);
+      }
+    }
+    for (WarmSocket warm : stale) {
+      warm.discard();
+    }
+  }
+
+  private void refill(Target target) {
+    while (!closed && target.sockets.size() < idlePerVoice) {
+      WarmSocket warm = new WarmSocket();
+      target.sockets.add(warm);
+      warm.socket = service.openSynthesizeWebSocket(target.voice, target.customizationId, warm);
+    }
+  }
+
+  private static String key(String voice, String customizationId) {
+    return (voice != null ? voice : "") + '\n' + (customizationId != null ? customizationId : "");
+  }
+
+  /** The warm connections of a voice and custom model. */
+  private static final class Target {
+    private final String voice;
+    private final String customizationId;
+    private final List<WarmSocket> sockets = new ArrayList<WarmSocket>();
+
+    Target(String voice, String customizationId) {
+      this.voice = voice;
+      this.customizationId = customizationId;
+    }
+  }
+
+  /**
+   * A connection opened ahead of time. Once bound to a synthesis, its events are passed on to a
+   * {@link TextToSpeechWebSocketListener}, which is handed the open connection to send the start
+   * message.
+   */
+  private static final class WarmSocket extends WebSocketListener {
+    private static final int OPENING = 0;
+    private static final int IDLE = 1;
+    private static final int BOUND = 2;
+    private static final int DEAD = 3;
+
+    private volatile WebSocket socket;
+    private volatile TextToSpeechWebSocketListener delegate;
+    // guarded by this
+    private int state = OPENING;
+    private Response response;
+    private long openedAt;
+
+    synchronized boolean isIdle() {
+      return state == IDLE;
+    }
+
+    synchronized boolean isDead() {
+      return state == DEAD;
+    }
+
+    /** Hands the connection to a synthesis, unless it broke meanwhile. */
+    boolean bind(SynthesizeOptions options, SynthesizeCallback callback) {
+      Response opened;
+      synchronized (this) {
+        if (state != IDLE) {
+          return false;
+        }
+        state = BOUND;
+        opened = response;
+        delegate = new TextToSpeechWebSocketListener(options, callback);
+      }
+      delegate.onOpen(socket, opened);
+      return true;
+    }
+
+    void discard() {
+      synchronized (this) {
+        if (state == BOUND) {
+          return;
+        }
+        state = DEAD;
+      }
+      if (socket != null) {
+        socket.close(1000, null);
+      }
+    }
+
+    @Override
+    public void onOpen(WebSocket webSocket, Response response) {
+      synchronized (this) {
+        if (state != OPENING) {
+          webSocket.close(1000, null);
+          return;
+        }
+        state = IDLE;
+        socket = webSocket;
+        this.response = response;
+        openedAt = System.nanoTime();
+      }
+    }
+
+    @Override
+    public void onMessage(WebSocket webSocket, String text) {
+      TextToSpeechWebSocketListener listener = delegate;
+      if (listener != null) {
+        listener.onMessage(webSocket, text);
+      }
+    }
+
+    @Override
+    public void onMessage(WebSocket webSocket, ByteString bytes) {
+      TextToSpeechWebSocketListener listener = delegate;
+      if (listener != null) {
+        listener.onMessage(webSocket, bytes);
+      }
+    }
+
+    @Override
+    public void onClosing(WebSocket webSocket, int code, String reason) {
+      if (!markDead()) {
+        delegate.onClosing(webSocket, code, reason);
+      } else {
+        webSocket.close(1000, null);
+      }
+    }
+
+    @Override
+    public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+      if (!markDead()) {
+        delegate.onFailure(webSocket, t, response);
+      }
+    }
+
+    /** Marks an unbound connection as dead, returning false if it is bound to a synthesis. */
+    private synchronized boolean markDead() {
+      if (state == BOUND) {
+        return false;
+      }
+      state = DEAD;
+      return true;
+    }
+  }
+}
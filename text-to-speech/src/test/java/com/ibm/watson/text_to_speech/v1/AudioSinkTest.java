@@ -0,0 +1,87 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import com.ibm.watson.text_to_speech.v1.websocket.AsyncFileAudioSink;
+import com.ibm.watson.text_to_speech.v1.websocket.AudioSink;
+import com.ibm.watson.text_to_speech.v1.websocket.ChannelAudioSink;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link ChannelAudioSink} and {@link AsyncFileAudioSink}. */
+public class AudioSinkTest {
+
+  private static byte[] audio() {
+    byte[] audio = new byte[50000];
+    for (int i = 0; i < audio.length; i++) {
+      audio[i] = (byte) (i * 7);
+    }
+    return audio;
+  }
+
+  /** Feeds the audio to a sink in read-only frames of 3000 bytes. */
+  private static void feed(AudioSink sink, byte[] audio) throws InterruptedException {
+    for (int i = 0; i < audio.length; i += 3000) {
+      int length = Math.min(3000, audio.length - i);
+      sink.onAudioBuffer(ByteBuffer.wrap(audio, i, length).asReadOnlyBuffer());
+    }
+    sink.onDisconnected();
+    assertTrue(sink.await(10, TimeUnit.SECONDS));
+    assertNull(sink.getFailure());
+  }
+
+  /** Tests batched gathering writes to a file channel. */
+  @Test
+  public void testChannelSink() throws Exception {
+    byte[] audio = audio();
+    File file = File.createTempFile("sink", ".raw");
+    file.deleteOnExit();
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+    ChannelAudioSink sink = new ChannelAudioSink(channel, 8192);
+    feed(sink, audio);
+    channel.close();
+
+    assertEquals(sink.getBytesWritten(), audio.length);
+    assertEquals(Files.readAllBytes(file.toPath()), audio);
+  }
+
+  /** Tests asynchronous positional writes after a leading gap. */
+  @Test
+  public void testAsyncFileSink() throws Exception {
+    byte[] audio = audio();
+    File file = File.createTempFile("sink", ".raw");
+    file.deleteOnExit();
+    AsynchronousFileChannel channel =
+        AsynchronousFileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+    AsyncFileAudioSink sink = new AsyncFileAudioSink(channel, 44);
+    feed(sink, audio);
+    channel.close();
+
+    assertEquals(sink.getPosition(), 44 + audio.length);
+    byte[] written = Files.readAllBytes(file.toPath());
+    assertEquals(written.length, 44 + audio.length);
+    for (int i = 0; i < audio.length; i++) {
+      assertEquals(written[44 + i], audio[i]);
+    }
+  }
+}
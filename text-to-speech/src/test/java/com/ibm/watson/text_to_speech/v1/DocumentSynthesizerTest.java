@@ -0,0 +1,126 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import com.ibm.watson.text_to_speech.v1.model.SynthesizeOptions;
+import com.ibm.watson.text_to_speech.v1.websocket.DocumentSynthesizer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link DocumentSynthesizer}. */
+public class DocumentSynthesizerTest {
+
+  private static final String TEXT = "Alpha one. Bravo two. Charlie three. Delta four. Echo five.";
+  private static final String[] SENTENCES = TEXT.split(" (?=[A-Z])");
+  private static final int BYTES_PER_CHAR = FakeWebSocketTextToSpeech.BYTES_PER_CHAR;
+  private static final int BYTE_RATE = FakeWebSocketTextToSpeech.BYTE_RATE;
+
+  private static DocumentSynthesizer.Builder builder(TextToSpeech service) {
+    return new DocumentSynthesizer.Builder()
+        .service(service)
+        .options(new SynthesizeOptions.Builder().text(TEXT).accept("audio/wav").build())
+        .maxSegmentChars(15);
+  }
+
+  private static DocumentSynthesizer.Result synthesize(DocumentSynthesizer synthesizer, File file)
+      throws IOException {
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+    try {
+      return synthesizer.synthesize(channel);
+    } finally {
+      channel.close();
+    }
+  }
+
+  private static File tempFile() throws IOException {
+    File file = File.createTempFile("document", ".wav");
+    file.deleteOnExit();
+    return file;
+  }
+
+  /** Tests that segments synthesized out of order are reassembled in order. */
+  @Test(timeOut = 10000)
+  public void testReassembly() throws IOException {
+    // the first attempt of the second segment fails and is retried
+    FakeWebSocketTextToSpeech service = new FakeWebSocketTextToSpeech('B', 1);
+    File file = tempFile();
+
+    DocumentSynthesizer.Result result = synthesize(builder(service).concurrency(3).build(), file);
+
+    assertEquals(result.getSegmentCount(), 5);
+    assertEquals(service.getConnectionCount(), 6);
+    assertTrue(service.getMaxOpenCount() <= 3);
+    byte[] written = Files.readAllBytes(file.toPath());
+    ByteBuffer wave = ByteBuffer.wrap(written).order(ByteOrder.LITTLE_ENDIAN);
+    assertEquals(wave.getInt(4), written.length - 8);
+    assertEquals(wave.getInt(40), written.length - 44);
+    assertEquals(result.getAudioBytes(), written.length - 44);
+
+    int position = 44;
+    double start = 0;
+    for (int i = 0; i < SENTENCES.length; i++) {
+      int length = SENTENCES[i].length() * BYTES_PER_CHAR;
+      assertEquals(written[position], (byte) SENTENCES[i].charAt(0));
+      assertEquals(written[position + length - 1], (byte) SENTENCES[i].charAt(0));
+      assertEquals(result.getWords().get(i).getWord(), SENTENCES[i].substring(0, 1));
+      assertEquals(result.getWords().get(i).getStartTime(), start, 1e-9);
+      position += length;
+      start += (double) length / BYTE_RATE;
+    }
+    assertEquals(result.getDuration(), start, 1e-9);
+  }
+
+  /** Tests that connections are opened no faster than the rate limit, within the concurrency. */
+  @Test(timeOut = 10000)
+  public void testRequestsPerSecond() throws IOException {
+    FakeWebSocketTextToSpeech service = new FakeWebSocketTextToSpeech('-', 0);
+
+    synthesize(builder(service).concurrency(5).requestsPerSecond(20).build(), tempFile());
+
+    List<Long> connectNanos = service.getConnectNanos();
+    assertEquals(connectNanos.size(), SENTENCES.length);
+    // one connection every 50 ms, although all five segments could run at once
+    long interval = TimeUnit.MILLISECONDS.toNanos(50);
+    for (int i = 1; i < connectNanos.size(); i++) {
+      long elapsed = connectNanos.get(i) - connectNanos.get(0);
+      assertTrue(elapsed >= i * interval - interval / 2, "connection " + i + " after " + elapsed);
+    }
+  }
+
+  /** Tests that a segment that keeps failing fails the document once its retries are used up. */
+  @Test(timeOut = 10000)
+  public void testRetriesExhausted() throws IOException {
+    FakeWebSocketTextToSpeech service = new FakeWebSocketTextToSpeech('B', 3);
+
+    try {
+      synthesize(builder(service).concurrency(1).retries(2).build(), tempFile());
+      fail("expected the synthesis to fail");
+    } catch (IOException e) {
+      assertEquals(e.getCause().getMessage(), "rate limited");
+    }
+    // the first segment, and the second one with its two retries
+    assertEquals(service.getConnectionCount(), 4);
+  }
+}
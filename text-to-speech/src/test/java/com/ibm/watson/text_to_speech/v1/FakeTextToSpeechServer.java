@@ -0,0 +1,112 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.ByteString;
+
+/**
+ * A local stand-in for the WebSocket synthesize endpoint, for testing without the service. Every
+ * connection is accepted after a delay that stands for the TLS handshake, authentication and
+ * upgrade of a remote connection; the start message is answered with the content type and {@code
+ * audioBytes} of silence, after which the connection is closed.
+ */
+public class FakeTextToSpeechServer implements Closeable {
+
+  private final MockWebServer server = new MockWebServer();
+  private final long connectMillis;
+  private final int audioBytes;
+  private final AtomicInteger connections = new AtomicInteger();
+  private final AtomicInteger syntheses = new AtomicInteger();
+
+  /**
+   * Starts the server.
+   *
+   * @param connectMillis the delay before a connection is accepted
+   * @param audioBytes the number of audio bytes sent per synthesis
+   * @throws IOException if the server cannot be started
+   */
+  public FakeTextToSpeechServer(long connectMillis, int audioBytes) throws IOException {
+    this.connectMillis = connectMillis;
+    this.audioBytes = audioBytes;
+    server.setDispatcher(
+        new Dispatcher() {
+          @Override
+          public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            connections.incrementAndGet();
+            Thread.sleep(FakeTextToSpeechServer.this.connectMillis);
+            return new MockResponse().withWebSocketUpgrade(new Session());
+          }
+        });
+    server.start();
+  }
+
+  /**
+   * Gets the URL to set as the service URL.
+   *
+   * @return the URL
+   */
+  public String getUrl() {
+    return server.url("/").toString();
+  }
+
+  /**
+   * Gets the number of connections accepted.
+   *
+   * @return the number of connections
+   */
+  public int getConnectionCount() {
+    return connections.get();
+  }
+
+  /**
+   * Gets the number of start messages answered.
+   *
+   * @return the number of syntheses
+   */
+  public int getSynthesisCount() {
+    return syntheses.get();
+  }
+
+  @Override
+  public void close() throws IOException {
+    server.shutdown();
+  }
+
+  /** One synthesis connection. */
+  private final class Session extends WebSocketListener {
+
+    @Override
+    public void onMessage(WebSocket webSocket, String text) {
+      JsonObject message = new JsonParser().parse(text).getAsJsonObject();
+      if (!message.has("action") || !"start".equals(message.get("action").getAsString())) {
+        return;
+      }
+      syntheses.incrementAndGet();
+      String accept = message.has("accept") ? message.get("accept").getAsString() : "audio/ogg";
+      webSocket.send("{\"binary_streams\":[{\"content_type\":\"" + accept + "\"}]}");
+      webSocket.send(ByteString.of(new byte[audioBytes]));
+      webSocket.close(1000, null);
+    }
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1;
+
+import com.ibm.cloud.sdk.core.security.NoAuthAuthenticator;
+import com.ibm.cloud.sdk.core.util.GsonSingleton;
+import com.ibm.watson.text_to_speech.v1.model.SynthesizeOptions;
+import com.ibm.watson.text_to_speech.v1.model.Timings;
+import com.ibm.watson.text_to_speech.v1.websocket.SynthesizeCallback;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.Request;
+import okhttp3.WebSocket;
+import okio.ByteString;
+
+/**
+ * A stand-in for {@link TextToSpeech#synthesizeUsingWebSocket(SynthesizeOptions,
+ * SynthesizeCallback)}, for testing the synthesizers that split text into segments. Each segment is
+ * synthesized on its own thread after a delay that shrinks with the segment, so later segments
+ * complete first. Its audio is of the accepted format, with samples that are its first letter, and
+ * it has one word timing at its start. The first attempts of the segment starting with the failing
+ * letter fail. Sessions wait for {@code release} before they start.
+ */
+public class FakeWebSocketTextToSpeech extends TextToSpeech {
+
+  /** The number of audio bytes per character of a segment. */
+  public static final int BYTES_PER_CHAR = 100;
+
+  /** The byte rate of the audio. */
+  public static final int BYTE_RATE = 44100;
+
+  private final char failing;
+  private final int failedAttempts;
+  private final CountDownLatch release;
+  private final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+  private final List<Long> connectNanos = Collections.synchronizedList(new ArrayList<Long>());
+  private final AtomicInteger open = new AtomicInteger();
+  private final AtomicInteger maxOpen = new AtomicInteger();
+  private final AtomicInteger failingAttempts = new AtomicInteger();
+  private final AtomicInteger cancelled = new AtomicInteger();
+
+  /**
+   * Instantiates a new fake whose sessions start at once.
+   *
+   * @param failing the first letter of the segment that fails, or a letter no segment starts with
+   * @param failedAttempts the number of attempts of that segment that fail
+   */
+  public FakeWebSocketTextToSpeech(char failing, int failedAttempts) {
+    this(failing, failedAttempts, new CountDownLatch(0));
+  }
+
+  /**
+   * Instantiates a new fake.
+   *
+   * @param failing the first letter of the segment that fails, or a letter no segment starts with
+   * @param failedAttempts the number of attempts of that segment that fail
+   * @param release the latch that sessions wait for
+   */
+  public FakeWebSocketTextToSpeech(char failing, int failedAttempts, CountDownLatch release) {
+    super("testService", new NoAuthAuthenticator());
+    this.failing = failing;
+    this.failedAttempts = failedAttempts;
+    this.release = release;
+  }
+
+  /**
+   * Returns the audio of a segment.
+   *
+   * @param contentType the accepted content type
+   * @param sample the value of every sample
+   * @param chars the number of characters of the segment
+   * @return a WAV file with unknown sizes for {@code audio/wav}, and otherwise the samples
+   */
+  public static byte[] audio(String contentType, char sample, int chars) {
+    int dataBytes = chars * BYTES_PER_CHAR;
+    boolean wave = contentType.startsWith("audio/wav");
+    ByteBuffer audio =
+        ByteBuffer.allocate((wave ? 44 : 0) + dataBytes).order(ByteOrder.LITTLE_ENDIAN);
+    if (wave) {
+      audio.put("RIFF".getBytes()).putInt(-1).put("WAVE".getBytes());
+      audio.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) 1);
+      audio.putInt(BYTE_RATE / 2).putInt(BYTE_RATE).putShort((short) 2).putShort((short) 16);
+      audio.put("data".getBytes()).putInt(-1);
+    }
+    while (audio.hasRemaining()) {
+      audio.put((byte) sample);
+    }
+    return audio.array();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see com.ibm.watson.text_to_speech.v1.TextToSpeech#synthesizeUsingWebSocket(
+   * com.ibm.watson.text_to_speech.v1.model.SynthesizeOptions,
+   * com.ibm.watson.text_to_speech.v1.websocket.SynthesizeCallback)
+   */
+  @Override
+  public WebSocket synthesizeUsingWebSocket(
+      final SynthesizeOptions options, final SynthesizeCallback callback) {
+    connectNanos.add(System.nanoTime());
+    int now = open.incrementAndGet();
+    maxOpen.set(Math.max(maxOpen.get(), now));
+    final String text = options.text();
+    Thread thread =
+        new Thread() {
+          @Override
+          public void run() {
+            try {
+              release.await();
+              Thread.sleep(10 * ('F' - text.charAt(0)));
+            } catch (InterruptedException e) {
+              return;
+            }
+            open.decrementAndGet();
+            callback.onConnected();
+            if (text.charAt(0) == failing && failingAttempts.getAndIncrement() < failedAttempts) {
+              callback.onError(new IOException("rate limited"));
+              callback.onDisconnected();
+              return;
+            }
+            callback.onContentType(options.accept());
+            byte[] audio = audio(options.accept(), text.charAt(0), text.length());
+            callback.onAudioStream(Arrays.copyOfRange(audio, 0, 30));
+            callback.onAudioStream(Arrays.copyOfRange(audio, 30, audio.length));
+            String json = "{'words':[['" + text.charAt(0) + "',0.0,0.5]]}";
+            callback.onTimings(
+                GsonSingleton.getGson().fromJson(json.replace('\'', '"'), Timings.class));
+            callback.onDisconnected();
+          }
+        };
+    threads.add(thread);
+    thread.start();
+    return new WebSocket() {
+      @Override
+      public Request request() {
+        return null;
+      }
+
+      @Override
+      public long queueSize() {
+        return 0;
+      }
+
+      @Override
+      public boolean send(String text) {
+        return false;
+      }
+
+      @Override
+      public boolean send(ByteString bytes) {
+        return false;
+      }
+
+      @Override
+      public boolean close(int code, String reason) {
+        return false;
+      }
+
+      @Override
+      public void cancel() {
+        cancelled.incrementAndGet();
+      }
+    };
+  }
+
+  /**
+   * Waits for all sessions to end.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void join() throws InterruptedException {
+    for (Thread thread : new ArrayList<Thread>(threads)) {
+      thread.join();
+    }
+  }
+
+  /**
+   * Gets the number of connections opened.
+   *
+   * @return the number of connections
+   */
+  public int getConnectionCount() {
+    return connectNanos.size();
+  }
+
+  /**
+   * Gets the times the connections were opened at, in order.
+   *
+   * @return the times in nanoseconds
+   */
+  public List<Long> getConnectNanos() {
+    return new ArrayList<Long>(connectNanos);
+  }
+
+  /**
+   * Gets the largest number of sessions that were open at once.
+   *
+   * @return the largest number of open sessions
+   */
+  public int getMaxOpenCount() {
+    return maxOpen.get();
+  }
+
+  /**
+   * Gets the number of connections that were cancelled.
+   *
+   * @return the number of cancels
+   */
+  public int getCancelCount() {
+    return cancelled.get();
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import com.ibm.cloud.sdk.core.security.NoAuthAuthenticator;
+import com.ibm.watson.text_to_speech.v1.model.Word;
+import com.ibm.watson.text_to_speech.v1.util.LexiconSync;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link LexiconSync}. */
+public class LexiconSyncTest {
+
+  private static final String CUSTOMIZATION_ID = "cid";
+
+  /** Tests reading a lexicon from CSV. */
+  @Test
+  public void testReadCsv() throws IOException {
+    String csv =
+        "word,translation,part_of_speech\n"
+            + "# acronyms\n"
+            + "IBM,I B M\n"
+            + "\n"
+            + "\"tomato, sauce\",\"tomahto \"\"sauce\"\"\",Noun\n";
+    List<Word> words = LexiconSync.readCsv(new StringReader(csv));
+
+    assertEquals(words.size(), 2);
+    assertEquals(words.get(0).word(), "IBM");
+    assertEquals(words.get(0).translation(), "I B M");
+    assertNull(words.get(0).partOfSpeech());
+    assertEquals(words.get(1).word(), "tomato, sauce");
+    assertEquals(words.get(1).translation(), "tomahto \"sauce\"");
+    assertEquals(words.get(1).partOfSpeech(), "Noun");
+  }
+
+  /** Tests reading a lexicon from JSON. */
+  @Test
+  public void testReadJson() {
+    String object = "{'words':[{'word':'IBM','translation':'I B M','part_of_speech':'Noun'}]}";
+    String array = "[{'word':'IBM','translation':'I B M'}]";
+
+    List<Word> words = LexiconSync.readJson(new StringReader(object.replace('\'', '"')));
+    assertEquals(words.size(), 1);
+    assertEquals(words.get(0).partOfSpeech(), "Noun");
+    words = LexiconSync.readJson(new StringReader(array.replace('\'', '"')));
+    assertEquals(words.size(), 1);
+    assertEquals(words.get(0).translation(), "I B M");
+  }
+
+  /** Tests that a sync adds, updates and deletes only what differs, in batches. */
+  @Test
+  public void testSync() throws Exception {
+    final String listed =
+        "{'words':[{'word':'IBM','translation':'I B M'},"
+            + "{'word':'NASA','translation':'nasa'},"
+            + "{'word':'old','translation':'olde'}]}";
+    final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+    MockWebServer server = new MockWebServer();
+    server.setDispatcher(
+        new Dispatcher() {
+          @Override
+          public MockResponse dispatch(RecordedRequest request) {
+            requests.add(request.getMethod() + " " + request.getPath());
+            if ("GET".equals(request.getMethod())) {
+              return new MockResponse().setBody(listed.replace('\'', '"'));
+            }
+            return new MockResponse().setBody("{}");
+          }
+        });
+    server.start();
+    try {
+      TextToSpeech service = new TextToSpeech("testService", new NoAuthAuthenticator());
+      service.setServiceUrl(server.url("/").toString());
+      List<Word> lexicon = new ArrayList<Word>();
+      lexicon.add(new Word.Builder("IBM", "I B M").build());
+      lexicon.add(new Word.Builder("NASA", "N A S A").build());
+      lexicon.add(new Word.Builder("SQL", "sequel").build());
+      lexicon.add(new Word.Builder("GIF", "jif").build());
+      lexicon.add(new Word.Builder("JSON", "jason").build());
+
+      LexiconSync.Result result =
+          new LexiconSync.Builder()
+              .service(service)
+              .customizationId(CUSTOMIZATION_ID)
+              .maxBatchWords(2)
+              .build()
+              .sync(lexicon);
+
+      assertEquals(result.getAdded(), 3);
+      assertEquals(result.getUpdated(), 1);
+      assertEquals(result.getUnchanged(), 1);
+      assertEquals(result.getDeleted(), 1);
+      assertEquals(result.getBatches(), 2);
+      assertEquals(requests.size(), 4);
+      assertEquals(requests.get(0), "GET /v1/customizations/cid/words");
+      assertEquals(requests.get(1), "POST /v1/customizations/cid/words");
+      assertEquals(requests.get(2), "POST /v1/customizations/cid/words");
+      assertTrue(requests.contains("DELETE /v1/customizations/cid/words/old"));
+    } finally {
+      server.shutdown();
+    }
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import com.ibm.watson.text_to_speech.v1.util.PcmAudio;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link PcmAudio}. */
+public class PcmAudioTest {
+
+  /** Tests reading the format of content types. */
+  @Test
+  public void testContentType() {
+    String l16 = "audio/l16;rate=22050;endianness=big-endian";
+    assertTrue(PcmAudio.isL16(l16));
+    assertFalse(PcmAudio.isWave(l16));
+    assertTrue(PcmAudio.isWave("Audio/WAV"));
+    assertFalse(PcmAudio.isWave(null));
+    assertEquals(PcmAudio.sampleRate(l16), 22050);
+    assertEquals(PcmAudio.sampleRate("audio/l16"), 0);
+    assertTrue(PcmAudio.isBigEndian(l16));
+    assertFalse(PcmAudio.isBigEndian("audio/l16;rate=22050"));
+  }
+
+  /** Tests finding the chunks of a WAV header with a LIST chunk, as it is read. */
+  @Test
+  public void testWaveHeader() {
+    ByteBuffer wave = ByteBuffer.allocate(12 + 24 + 14 + 8).order(ByteOrder.LITTLE_ENDIAN);
+    wave.put("RIFF".getBytes()).putInt(-1).put("WAVE".getBytes());
+    wave.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) 1);
+    wave.putInt(22050).putInt(44100).putShort((short) 2).putShort((short) 16);
+    wave.put("LIST".getBytes()).putInt(5).put(new byte[6]);
+    wave.put("data".getBytes()).putInt(-1);
+    byte[] header = wave.array();
+
+    assertEquals(PcmAudio.fmtOffset(header, header.length), 20);
+    assertEquals(PcmAudio.waveByteRate(header, header.length), 44100);
+    assertEquals(PcmAudio.dataOffset(header, header.length), header.length);
+    // the data chunk header was not read yet
+    assertEquals(PcmAudio.dataOffset(header, header.length - 1), -1);
+    assertEquals(PcmAudio.waveByteRate(header, 30), 0);
+  }
+}
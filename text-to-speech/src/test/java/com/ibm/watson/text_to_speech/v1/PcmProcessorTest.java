@@ -0,0 +1,171 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.ibm.watson.text_to_speech.v1.util.PcmProcessor;
+import com.ibm.watson.text_to_speech.v1.util.WaveUtils;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link PcmProcessor}. */
+public class PcmProcessorTest {
+
+  /** Silence, a tone of the given amplitude, and silence. */
+  private static short[] speech(int silence, int tone, int amplitude) {
+    short[] samples = new short[silence + tone + silence];
+    for (int i = 0; i < tone; i++) {
+      double phase = Math.PI * (2 * i + 1) / 32;
+      samples[silence + i] = (short) Math.round(amplitude * Math.sin(phase));
+    }
+    return samples;
+  }
+
+  private static byte[] toBytes(short[] samples, ByteOrder order) {
+    ByteBuffer bytes = ByteBuffer.allocate(samples.length * 2).order(order);
+    for (short sample : samples) {
+      bytes.putShort(sample);
+    }
+    return bytes.array();
+  }
+
+  private static short[] toSamples(byte[] bytes, int offset, ByteOrder order) {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, bytes.length - offset).order(order);
+    short[] samples = new short[buffer.remaining() / 2];
+    for (int i = 0; i < samples.length; i++) {
+      samples[i] = buffer.getShort();
+    }
+    return samples;
+  }
+
+  private static int peak(short[] samples) {
+    int peak = 0;
+    for (short sample : samples) {
+      peak = Math.max(peak, Math.abs(sample));
+    }
+    return peak;
+  }
+
+  /** An input stream that returns at most three bytes per read, to split samples across reads. */
+  private static InputStream trickle(byte[] bytes) {
+    return new ByteArrayInputStream(bytes) {
+      @Override
+      public synchronized int read(byte[] b, int off, int len) {
+        return super.read(b, off, Math.min(len, 3));
+      }
+    };
+  }
+
+  /** Tests trimming the silence and normalizing the peak of audio/l16, little-endian by default. */
+  @Test
+  public void testTrimAndNormalize() throws IOException {
+    short[] samples = speech(1600, 3200, 8000);
+    PcmProcessor processor =
+        new PcmProcessor.Builder()
+            .trimSilence(true)
+            .silencePaddingMillis(10)
+            .targetPeak(0.5)
+            .build();
+
+    InputStream processed =
+        processor.process(
+            trickle(toBytes(samples, ByteOrder.LITTLE_ENDIAN)), "audio/l16;rate=16000");
+    short[] output = toSamples(WaveUtils.toByteArray(processed), 0, ByteOrder.LITTLE_ENDIAN);
+
+    // 10 ms of padding on both sides of the tone
+    assertEquals(output.length, 160 + 3200 + 160);
+    assertEquals(output[0], 0);
+    assertEquals(output[output.length - 1], 0);
+    assertTrue(Math.abs(peak(output) - 16384) <= 1);
+  }
+
+  /** Tests that the gain is lowered before a louder sample that arrives later leaves the window. */
+  @Test
+  public void testNormalizeWithLookahead() throws IOException {
+    short[] quiet = speech(0, 8000, 4000);
+    short[] loud = speech(0, 8000, 16000);
+    short[] samples = new short[quiet.length + loud.length];
+    System.arraycopy(quiet, 0, samples, 0, quiet.length);
+    System.arraycopy(loud, 0, samples, quiet.length, loud.length);
+    PcmProcessor processor =
+        new PcmProcessor.Builder().targetPeak(0.9).lookaheadMillis(100).build();
+
+    InputStream processed =
+        processor.process(
+            new ByteArrayInputStream(toBytes(samples, ByteOrder.LITTLE_ENDIAN)),
+            "audio/l16;rate=16000;endianness=little-endian");
+    short[] output = toSamples(WaveUtils.toByteArray(processed), 0, ByteOrder.LITTLE_ENDIAN);
+
+    assertEquals(output.length, samples.length);
+    assertTrue(peak(output) <= Math.round(0.9 * Short.MAX_VALUE) + 1);
+    // the quiet part gets the largest gain before the loud part enters the window
+    assertEquals(output[8], (short) Math.round(quiet[8] * 4.0));
+  }
+
+  /** Tests resampling big-endian audio/l16 for telephony. */
+  @Test
+  public void testResample() throws IOException {
+    short[] samples = speech(0, 1600, 10000);
+    PcmProcessor processor = new PcmProcessor.Builder().sampleRate(8000).build();
+
+    assertEquals(
+        processor.getContentType("audio/l16;rate=16000;endianness=big-endian"),
+        "audio/l16;rate=8000;endianness=big-endian");
+    InputStream processed =
+        processor.process(
+            new ByteArrayInputStream(toBytes(samples, ByteOrder.BIG_ENDIAN)),
+            "audio/l16;rate=16000;endianness=Big-Endian");
+    short[] output = toSamples(WaveUtils.toByteArray(processed), 0, ByteOrder.BIG_ENDIAN);
+
+    assertEquals(output.length, 800);
+    assertTrue(peak(output) <= 10000);
+  }
+
+  /** Tests processing a streamed WAVE file with the header rewritten. */
+  @Test
+  public void testProcessWave() throws IOException {
+    short[] samples = speech(2205, 4410, 8000);
+    byte[] audio = toBytes(samples, ByteOrder.LITTLE_ENDIAN);
+    ByteBuffer wave = ByteBuffer.allocate(44 + audio.length).order(ByteOrder.LITTLE_ENDIAN);
+    wave.put("RIFF".getBytes()).putInt(-1).put("WAVE".getBytes());
+    wave.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) 1);
+    wave.putInt(22050).putInt(44100).putShort((short) 2).putShort((short) 16);
+    wave.put("data".getBytes()).putInt(-1).put(audio);
+    PcmProcessor processor =
+        new PcmProcessor.Builder()
+            .trimSilence(true)
+            .silencePaddingMillis(0)
+            .sampleRate(11025)
+            .build();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    long written = processor.processWave(new ByteArrayInputStream(wave.array()), out, 1024);
+
+    byte[] processed = out.toByteArray();
+    ByteBuffer header = ByteBuffer.wrap(processed).order(ByteOrder.LITTLE_ENDIAN);
+    assertEquals(written, processed.length);
+    assertEquals(header.getInt(4), processed.length - 8);
+    assertEquals(header.getInt(24), 11025);
+    assertEquals(header.getInt(28), 22050);
+    assertEquals(header.getInt(40), processed.length - 44);
+    short[] output = toSamples(processed, 44, ByteOrder.LITTLE_ENDIAN);
+    assertTrue(Math.abs(output.length - 4410 / 2) <= 2);
+  }
+}
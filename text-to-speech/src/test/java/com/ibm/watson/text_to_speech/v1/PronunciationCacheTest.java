@@ -0,0 +1,111 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1;
+
+import static org.testng.Assert.assertEquals;
+
+import com.ibm.cloud.sdk.core.security.NoAuthAuthenticator;
+import com.ibm.watson.text_to_speech.v1.model.AddWordOptions;
+import com.ibm.watson.text_to_speech.v1.model.GetPronunciationOptions;
+import com.ibm.watson.text_to_speech.v1.util.PronunciationCache;
+import java.io.IOException;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link PronunciationCache}. */
+public class PronunciationCacheTest {
+
+  private MockWebServer server;
+  private TextToSpeech service;
+  private PronunciationCache cache;
+  private volatile boolean changeDuringLookup;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    server = new MockWebServer();
+    server.setDispatcher(
+        new Dispatcher() {
+          @Override
+          public MockResponse dispatch(RecordedRequest request) {
+            if (request.getPath().startsWith("/v1/pronunciation")) {
+              if (changeDuringLookup) {
+                service.addWord(addWord("model-a")).execute();
+              }
+              return new MockResponse().setBody("{\"pronunciation\":\"hullo\"}");
+            }
+            return new MockResponse().setResponseCode(200);
+          }
+        });
+    server.start();
+    service = new TextToSpeech("testService", new NoAuthAuthenticator());
+    service.setServiceUrl(server.url("/").toString());
+    cache = new PronunciationCache(service, 10);
+  }
+
+  @AfterMethod
+  public void tearDown() throws IOException {
+    cache.close();
+    server.shutdown();
+  }
+
+  private static GetPronunciationOptions options(String customizationId) {
+    return new GetPronunciationOptions.Builder()
+        .text("Hello")
+        .customizationId(customizationId)
+        .build();
+  }
+
+  private static AddWordOptions addWord(String customizationId) {
+    return new AddWordOptions.Builder()
+        .customizationId(customizationId)
+        .word("Hello")
+        .translation("hullo")
+        .build();
+  }
+
+  /** Tests that changing a custom model through the service drops its pronunciations only. */
+  @Test
+  public void testInvalidation() {
+    cache.getPronunciation(options("model-a"));
+    cache.getPronunciation(options("model-b"));
+    cache.getPronunciation(options("model-a"));
+    assertEquals(cache.getHitCount(), 1);
+    assertEquals(cache.size(), 2);
+
+    service.addWord(addWord("model-a")).execute();
+    assertEquals(cache.size(), 1);
+    cache.getPronunciation(options("model-a"));
+    assertEquals(cache.getMissCount(), 3);
+
+    cache.close();
+    service.addWord(addWord("model-a")).execute();
+    assertEquals(cache.size(), 2);
+  }
+
+  /** Tests that a pronunciation looked up while its model changes is returned but not cached. */
+  @Test
+  public void testChangeDuringLookup() {
+    changeDuringLookup = true;
+    assertEquals(cache.getPronunciation(options("model-a")).getPronunciation(), "hullo");
+    assertEquals(cache.size(), 0);
+
+    changeDuringLookup = false;
+    cache.getPronunciation(options("model-a"));
+    assertEquals(cache.size(), 1);
+  }
+}
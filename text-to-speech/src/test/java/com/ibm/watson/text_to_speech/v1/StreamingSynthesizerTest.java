@@ -0,0 +1,196 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.ibm.watson.text_to_speech.v1.model.SynthesizeOptions;
+import com.ibm.watson.text_to_speech.v1.model.Timings;
+import com.ibm.watson.text_to_speech.v1.model.WordTiming;
+import com.ibm.watson.text_to_speech.v1.websocket.BaseSynthesizeCallback;
+import com.ibm.watson.text_to_speech.v1.websocket.StreamingSynthesizer;
+import com.ibm.watson.text_to_speech.v1.websocket.SynthesizeCallback;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link StreamingSynthesizer}. */
+public class StreamingSynthesizerTest {
+
+  private static final String TEXT = "Alpha one. Bravo two. Charlie three. Delta four. Echo five.";
+  private static final String[] SENTENCES = TEXT.split(" (?=[A-Z])");
+  private static final int BYTES_PER_CHAR = FakeWebSocketTextToSpeech.BYTES_PER_CHAR;
+  private static final int BYTE_RATE = FakeWebSocketTextToSpeech.BYTE_RATE;
+
+  /** Collects the stream, and counts down when it ends. */
+  private static final class Listener extends BaseSynthesizeCallback {
+    private final ByteArrayOutputStream audio = new ByteArrayOutputStream();
+    private final List<String> contentTypes = new ArrayList<String>();
+    private final List<WordTiming> words = new ArrayList<WordTiming>();
+    private final List<Exception> errors = new ArrayList<Exception>();
+    private final CountDownLatch ended = new CountDownLatch(1);
+    private int connected;
+    private int disconnected;
+
+    @Override
+    public synchronized void onConnected() {
+      connected++;
+    }
+
+    @Override
+    public synchronized void onError(Exception e) {
+      errors.add(e);
+      ended.countDown();
+    }
+
+    @Override
+    public synchronized void onDisconnected() {
+      disconnected++;
+      ended.countDown();
+    }
+
+    @Override
+    public synchronized void onContentType(String contentType) {
+      contentTypes.add(contentType);
+    }
+
+    @Override
+    public synchronized void onTimings(Timings timings) {
+      words.addAll(timings.getWords());
+    }
+
+    @Override
+    public synchronized void onAudioStream(byte[] bytes) {
+      audio.write(bytes, 0, bytes.length);
+    }
+  }
+
+  private static StreamingSynthesizer synthesizer(
+      TextToSpeech service, String accept, int lookahead, SynthesizeCallback callback) {
+    return new StreamingSynthesizer.Builder()
+        .service(service)
+        .options(new SynthesizeOptions.Builder().text(TEXT).accept(accept).build())
+        .callback(callback)
+        .firstSegmentChars(15)
+        .maxSegmentChars(15)
+        .lookahead(lookahead)
+        .build();
+  }
+
+  /** Asserts that the audio data and word timings of the segments follow each other in order. */
+  private static void assertSegments(Listener listener, int headerBytes) {
+    byte[] audio = listener.audio.toByteArray();
+    int position = headerBytes;
+    double start = 0;
+    for (int i = 0; i < SENTENCES.length; i++) {
+      int length = SENTENCES[i].length() * BYTES_PER_CHAR;
+      assertEquals(audio[position], (byte) SENTENCES[i].charAt(0));
+      assertEquals(audio[position + length - 1], (byte) SENTENCES[i].charAt(0));
+      assertEquals(listener.words.get(i).getWord(), SENTENCES[i].substring(0, 1));
+      assertEquals(listener.words.get(i).getStartTime(), start, 1e-9);
+      assertEquals(listener.words.get(i).getEndTime(), start + 0.5, 1e-9);
+      position += length;
+      start += (double) length / BYTE_RATE;
+    }
+    assertEquals(audio.length, position);
+    assertEquals(listener.words.size(), SENTENCES.length);
+  }
+
+  /**
+   * Tests that WAV segments completed out of order are delivered in order as one stream, with the
+   * header of the first segment only, and with timings on the timeline of the stream.
+   */
+  @Test(timeOut = 10000)
+  public void testReassemblyWave() throws Exception {
+    FakeWebSocketTextToSpeech service = new FakeWebSocketTextToSpeech('-', 0);
+    Listener listener = new Listener();
+    StreamingSynthesizer synthesizer = synthesizer(service, "audio/wav", 4, listener);
+
+    synthesizer.start();
+
+    assertTrue(listener.ended.await(5, TimeUnit.SECONDS));
+    assertEquals(synthesizer.getSegmentCount(), SENTENCES.length);
+    assertEquals(service.getConnectionCount(), SENTENCES.length);
+    assertEquals(listener.connected, 1);
+    assertEquals(listener.disconnected, 1);
+    assertEquals(listener.contentTypes, Arrays.asList("audio/wav"));
+    assertTrue(listener.errors.isEmpty());
+    byte[] audio = listener.audio.toByteArray();
+    assertEquals(new String(audio, 0, 4, "US-ASCII"), "RIFF");
+    assertEquals(new String(audio, 36, 4, "US-ASCII"), "data");
+    assertSegments(listener, 44);
+  }
+
+  /** Tests that l16 timings are shifted by the rate of the content type, within the lookahead. */
+  @Test(timeOut = 10000)
+  public void testTimingsL16() throws Exception {
+    FakeWebSocketTextToSpeech service = new FakeWebSocketTextToSpeech('-', 0);
+    Listener listener = new Listener();
+    String accept = "audio/l16;rate=" + BYTE_RATE / 2;
+
+    synthesizer(service, accept, 1, listener).start();
+
+    assertTrue(listener.ended.await(5, TimeUnit.SECONDS));
+    assertEquals(service.getConnectionCount(), SENTENCES.length);
+    assertTrue(service.getMaxOpenCount() <= 2, "open: " + service.getMaxOpenCount());
+    assertEquals(listener.contentTypes, Arrays.asList(accept));
+    assertSegments(listener, 0);
+  }
+
+  /** Tests that a failed segment ends the stream with an error and closes all connections. */
+  @Test(timeOut = 10000)
+  public void testFailure() throws Exception {
+    FakeWebSocketTextToSpeech service = new FakeWebSocketTextToSpeech('B', 1);
+    Listener listener = new Listener();
+
+    synthesizer(service, "audio/wav", 4, listener).start();
+
+    assertTrue(listener.ended.await(5, TimeUnit.SECONDS));
+    service.join();
+    assertEquals(listener.errors.size(), 1);
+    assertEquals(listener.errors.get(0).getMessage(), "rate limited");
+    assertEquals(listener.disconnected, 0);
+    assertEquals(service.getCancelCount(), service.getConnectionCount());
+    // the segments after the failed one are never delivered
+    for (byte sample : listener.audio.toByteArray()) {
+      assertTrue(sample != 'C' && sample != 'D' && sample != 'E');
+    }
+  }
+
+  /** Tests that no callbacks are made after cancel. */
+  @Test(timeOut = 10000)
+  public void testCancel() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    FakeWebSocketTextToSpeech service = new FakeWebSocketTextToSpeech('-', 0, release);
+    Listener listener = new Listener();
+    StreamingSynthesizer synthesizer = synthesizer(service, "audio/wav", 2, listener);
+
+    synthesizer.start();
+    synthesizer.cancel();
+    release.countDown();
+    service.join();
+
+    assertEquals(service.getConnectionCount(), 3);
+    assertEquals(service.getCancelCount(), 3);
+    assertEquals(listener.connected, 0);
+    assertEquals(listener.disconnected, 0);
+    assertTrue(listener.errors.isEmpty());
+    assertTrue(listener.contentTypes.isEmpty());
+    assertEquals(listener.audio.size(), 0);
+  }
+}
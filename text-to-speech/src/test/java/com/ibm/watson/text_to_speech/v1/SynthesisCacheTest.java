@@ -0,0 +1,188 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.ibm.cloud.sdk.core.security.NoAuthAuthenticator;
+import com.ibm.watson.text_to_speech.v1.model.AddWordOptions;
+import com.ibm.watson.text_to_speech.v1.model.SynthesizeOptions;
+import com.ibm.watson.text_to_speech.v1.util.SynthesisCache;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link SynthesisCache}. */
+public class SynthesisCacheTest {
+
+  private static final String AUDIO = "This is a mock binary response.";
+
+  private MockWebServer server;
+  private TextToSpeech service;
+  private File directory;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    server = new MockWebServer();
+    server.start();
+    service = new TextToSpeech("testService", new NoAuthAuthenticator());
+    service.setServiceUrl(server.url("/").toString());
+    directory = Files.createTempDirectory("synthesis-cache").toFile();
+  }
+
+  @AfterMethod
+  public void tearDown() throws IOException {
+    server.shutdown();
+  }
+
+  private void enqueueAudio() {
+    server.enqueue(
+        new MockResponse()
+            .setHeader("Content-type", "audio/ogg;codecs=opus")
+            .setResponseCode(200)
+            .setBody(AUDIO));
+  }
+
+  private SynthesisCache newCache() {
+    return new SynthesisCache.Builder().service(service).directory(directory).build();
+  }
+
+  private static SynthesizeOptions options(String text, String customizationId) {
+    return new SynthesizeOptions.Builder()
+        .text(text)
+        .accept("audio/ogg;codecs=opus")
+        .voice("en-US_MichaelV3Voice")
+        .customizationId(customizationId)
+        .build();
+  }
+
+  private static String toString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /** Tests that a phrase is synthesized once and then served from memory and from disk. */
+  @Test
+  public void testHits() throws IOException {
+    enqueueAudio();
+    SynthesisCache cache = newCache();
+    assertEquals(toString(cache.synthesize(options("Hello", null))), AUDIO);
+    ByteBuffer hit = cache.synthesize(options("Hello", null));
+    assertTrue(hit.isReadOnly());
+    assertEquals(toString(hit), AUDIO);
+    assertEquals(server.getRequestCount(), 1);
+    assertEquals(cache.getHitCount(), 1);
+    assertEquals(cache.getMissCount(), 1);
+    assertEquals(cache.getDiskBytes(), AUDIO.length());
+
+    // a new cache over the same directory maps the stored entry
+    SynthesisCache reopened = newCache();
+    assertEquals(toString(reopened.synthesize(options("Hello", null))), AUDIO);
+    assertEquals(server.getRequestCount(), 1);
+    assertEquals(reopened.getHitCount(), 1);
+  }
+
+  private static AddWordOptions addWord(String customizationId) {
+    return new AddWordOptions.Builder()
+        .customizationId(customizationId)
+        .word("Hello")
+        .translation("hullo")
+        .build();
+  }
+
+  /** Tests that changing a custom model drops its entries only. */
+  @Test
+  public void testInvalidation() throws IOException {
+    enqueueAudio();
+    enqueueAudio();
+    SynthesisCache cache = newCache();
+    cache.synthesize(options("Hello", "model-a"));
+    cache.synthesize(options("Hello", "model-b"));
+    assertEquals(server.getRequestCount(), 2);
+
+    server.enqueue(new MockResponse().setResponseCode(200));
+    service.addWord(addWord("model-a")).execute();
+    enqueueAudio();
+    cache.synthesize(options("Hello", "model-b"));
+    assertEquals(server.getRequestCount(), 3);
+    cache.synthesize(options("Hello", "model-a"));
+    assertEquals(server.getRequestCount(), 4);
+  }
+
+  /** Tests that audio synthesized while the service applies a change is dropped afterwards. */
+  @Test
+  public void testInvalidationAfterChange() throws IOException {
+    final SynthesisCache cache = newCache();
+    server.setDispatcher(
+        new Dispatcher() {
+          @Override
+          public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            if (request.getPath().contains("/words/")) {
+              try {
+                cache.synthesize(options("Hello", "model-a"));
+              } catch (IOException e) {
+                return new MockResponse().setResponseCode(500);
+              }
+              return new MockResponse().setResponseCode(200);
+            }
+            return new MockResponse()
+                .setHeader("Content-type", "audio/ogg;codecs=opus")
+                .setBody(AUDIO);
+          }
+        });
+
+    service.addWord(addWord("model-a")).execute();
+    assertEquals(server.getRequestCount(), 2);
+    cache.synthesize(options("Hello", "model-a"));
+    assertEquals(server.getRequestCount(), 3);
+    assertEquals(cache.getMissCount(), 2);
+  }
+
+  /** Tests that every cache of a service drops the entries of a changed model until closed. */
+  @Test
+  public void testSharedService() throws IOException {
+    enqueueAudio();
+    enqueueAudio();
+    SynthesisCache first = newCache();
+    SynthesisCache second =
+        new SynthesisCache.Builder()
+            .service(service)
+            .directory(Files.createTempDirectory("synthesis-cache").toFile())
+            .build();
+    first.synthesize(options("Hello", "model-a"));
+    second.synthesize(options("Hello", "model-a"));
+
+    server.enqueue(new MockResponse().setResponseCode(200));
+    service.addWord(addWord("model-a")).execute();
+    assertEquals(first.getDiskBytes(), 0);
+    assertEquals(second.getDiskBytes(), 0);
+
+    second.close();
+    enqueueAudio();
+    second.synthesize(options("Hello", "model-a"));
+    server.enqueue(new MockResponse().setResponseCode(200));
+    service.addWord(addWord("model-a")).execute();
+    assertEquals(second.getDiskBytes(), AUDIO.length());
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.ibm.cloud.sdk.core.security.NoAuthAuthenticator;
+import com.ibm.watson.text_to_speech.v1.model.SynthesizeOptions;
+import com.ibm.watson.text_to_speech.v1.websocket.BaseSynthesizeCallback;
+import com.ibm.watson.text_to_speech.v1.websocket.SynthesisConnectionPool;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link SynthesisConnectionPool}, against a {@link FakeTextToSpeechServer}. */
+public class SynthesisConnectionPoolTest {
+
+  private static final String VOICE = "en-US_AllisonV3Voice";
+  private static final int AUDIO_BYTES = 3200;
+  private static final int SYNTHESES = 5;
+
+  private FakeTextToSpeechServer server;
+  private TextToSpeech service;
+  private SynthesisConnectionPool pool;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    server = new FakeTextToSpeechServer(0, AUDIO_BYTES);
+    service = new TextToSpeech("testService", new NoAuthAuthenticator());
+    service.setServiceUrl(server.getUrl());
+    pool =
+        new SynthesisConnectionPool.Builder()
+            .service(service)
+            .voice(VOICE)
+            .idlePerVoice(2)
+            .checkIntervalMillis(50)
+            .build();
+  }
+
+  @AfterMethod
+  public void tearDown() throws IOException {
+    pool.close();
+    server.close();
+  }
+
+  /** Synthesizes through the pool and returns the number of audio bytes received. */
+  private int synthesize(String voice) throws InterruptedException {
+    final AtomicInteger audioBytes = new AtomicInteger();
+    final CountDownLatch done = new CountDownLatch(1);
+    SynthesizeOptions options =
+        new SynthesizeOptions.Builder().text("Hello").voice(voice).accept("audio/l16").build();
+    pool.synthesize(
+        options,
+        new BaseSynthesizeCallback() {
+          @Override
+          public void onAudioStream(byte[] bytes) {
+            audioBytes.addAndGet(bytes.length);
+          }
+
+          @Override
+          public void onDisconnected() {
+            done.countDown();
+          }
+        });
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    return audioBytes.get();
+  }
+
+  private void awaitIdle(int idle) throws InterruptedException {
+    while (pool.getIdleCount() < idle) {
+      Thread.sleep(10);
+    }
+  }
+
+  /** Tests that syntheses of a pooled voice run on warm connections, which are replaced. */
+  @Test(timeOut = 10000)
+  public void testWarmStarts() throws Exception {
+    for (int i = 0; i < SYNTHESES; i++) {
+      // the pause between the turns of a conversation
+      awaitIdle(2);
+      assertEquals(synthesize(VOICE), AUDIO_BYTES);
+    }
+    awaitIdle(2);
+
+    assertEquals(pool.getWarmStarts(), SYNTHESES);
+    assertEquals(pool.getColdStarts(), 0);
+    assertEquals(server.getSynthesisCount(), SYNTHESES);
+    // the two warm connections, and one replacement per synthesis
+    assertEquals(server.getConnectionCount(), SYNTHESES + 2);
+  }
+
+  /** Tests that other voices, and syntheses after close, open their own connection. */
+  @Test(timeOut = 10000)
+  public void testColdStarts() throws Exception {
+    awaitIdle(2);
+    assertEquals(synthesize("en-US_MichaelV3Voice"), AUDIO_BYTES);
+    pool.close();
+    assertEquals(synthesize(VOICE), AUDIO_BYTES);
+
+    assertEquals(pool.getWarmStarts(), 0);
+    assertEquals(pool.getColdStarts(), 2);
+    assertEquals(pool.getIdleCount(), 0);
+    assertEquals(server.getSynthesisCount(), 2);
+    assertEquals(server.getConnectionCount(), 4);
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.google.gson.JsonParser;
+import com.ibm.cloud.sdk.core.security.NoAuthAuthenticator;
+import com.ibm.watson.text_to_speech.v1.model.AddWordOptions;
+import com.ibm.watson.text_to_speech.v1.util.TemplateSynthesizer;
+import com.ibm.watson.text_to_speech.v1.util.WaveUtils;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link TemplateSynthesizer}. */
+public class TemplateSynthesizerTest {
+
+  private static final String TEMPLATE = "Your balance is {amount} as of {date}.";
+  private static final String VOICE = "en-US_AllisonV3Voice";
+  private static final int SILENCE = 2205;
+  private static final int SAMPLES_PER_CHARACTER = 100;
+  // 30 ms of padding and 10 ms of crossfade at 22050 Hz
+  private static final int PADDING = 661;
+  private static final int CROSSFADE = 220;
+
+  private MockWebServer server;
+  private TextToSpeech service;
+  private final AtomicInteger requests = new AtomicInteger();
+
+  /** Audio of 100 ms of silence, a tone whose length depends on the text, and silence. */
+  private static byte[] audio(String text) {
+    int tone = text.length() * SAMPLES_PER_CHARACTER;
+    ByteBuffer audio = ByteBuffer.allocate((SILENCE + tone + SILENCE) * 2);
+    audio.order(ByteOrder.LITTLE_ENDIAN);
+    audio.position(SILENCE * 2);
+    for (int i = 0; i < tone; i++) {
+      audio.putShort((short) Math.round(8000 * Math.sin(Math.PI * (2 * i + 1) / 32)));
+    }
+    return audio.array();
+  }
+
+  private static Map<String, String> values() {
+    Map<String, String> values = new HashMap<String, String>();
+    values.put("amount", "$5");
+    values.put("date", "May 1");
+    return values;
+  }
+
+  private static AddWordOptions addWord(String customizationId) {
+    return new AddWordOptions.Builder()
+        .customizationId(customizationId)
+        .word("balance")
+        .translation("balans")
+        .build();
+  }
+
+  private static int peak(byte[] prompt, ByteOrder order) {
+    ByteBuffer samples = ByteBuffer.wrap(prompt).order(order);
+    int peak = 0;
+    while (samples.hasRemaining()) {
+      peak = Math.max(peak, Math.abs(samples.getShort()));
+    }
+    return peak;
+  }
+
+  private static int promptLength(String... fragments) {
+    int length = 0;
+    for (String fragment : fragments) {
+      length += fragment.length() * SAMPLES_PER_CHARACTER + 2 * PADDING;
+    }
+    return length - (fragments.length - 1) * CROSSFADE;
+  }
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    server = new MockWebServer();
+    server.setDispatcher(
+        new Dispatcher() {
+          @Override
+          public MockResponse dispatch(RecordedRequest request) {
+            if (request.getPath().contains("/customizations/")) {
+              return new MockResponse().setResponseCode(200);
+            }
+            requests.incrementAndGet();
+            String body = request.getBody().readUtf8();
+            String text = new JsonParser().parse(body).getAsJsonObject().get("text").getAsString();
+            return new MockResponse()
+                .setHeader("Content-type", "audio/l16;rate=22050;endianness=little-endian")
+                .setBody(new Buffer().write(audio(text)));
+          }
+        });
+    server.start();
+    service = new TextToSpeech("testService", new NoAuthAuthenticator());
+    service.setServiceUrl(server.url("/").toString());
+  }
+
+  @AfterMethod
+  public void tearDown() throws IOException {
+    server.shutdown();
+  }
+
+  /** Tests that the static fragments are synthesized once and the slots per prompt. */
+  @Test
+  public void testSynthesize() throws IOException {
+    TemplateSynthesizer synthesizer =
+        new TemplateSynthesizer.Builder()
+            .service(service)
+            .accept("audio/l16;rate=22050;endianness=little-endian")
+            .build();
+    try {
+      Map<String, String> values = new HashMap<String, String>();
+      values.put("amount", "$5");
+      values.put("date", "May 1");
+      byte[] prompt = WaveUtils.toByteArray(synthesizer.synthesize(TEMPLATE, values, VOICE));
+
+      assertEquals(requests.get(), 4);
+      assertEquals(prompt.length / 2, promptLength("Your balance is", "$5", "as of", "May 1"));
+      assertEquals(synthesizer.getSynthesizedCharacters(), 15 + 2 + 5 + 5);
+      assertEquals(synthesizer.getCachedCharacters(), 0);
+
+      values.put("amount", "$1,250");
+      prompt = WaveUtils.toByteArray(synthesizer.synthesize(TEMPLATE, values, VOICE));
+
+      assertEquals(requests.get(), 6);
+      assertEquals(prompt.length / 2, promptLength("Your balance is", "$1,250", "as of", "May 1"));
+      assertEquals(synthesizer.getSynthesizedCharacters(), 27 + 6 + 5);
+      assertEquals(synthesizer.getCachedCharacters(), 15 + 5);
+    } finally {
+      synthesizer.close();
+    }
+  }
+
+  /** Tests the header of a prompt synthesized as WAV. */
+  @Test
+  public void testSynthesizeWave() throws IOException {
+    TemplateSynthesizer synthesizer =
+        new TemplateSynthesizer.Builder().service(service).accept("audio/wav;rate=22050").build();
+    try {
+      Map<String, String> values = new HashMap<String, String>();
+      values.put("amount", "$5");
+      values.put("date", "May 1");
+      byte[] prompt = WaveUtils.toByteArray(synthesizer.synthesize(TEMPLATE, values, VOICE));
+
+      ByteBuffer header = ByteBuffer.wrap(prompt).order(ByteOrder.LITTLE_ENDIAN);
+      assertEquals(header.getInt(4), prompt.length - 8);
+      assertEquals(header.getInt(24), 22050);
+      assertEquals(header.getInt(40), promptLength("Your balance is", "$5", "as of", "May 1") * 2);
+      assertEquals(synthesizer.getContentType(), "audio/wav");
+    } finally {
+      synthesizer.close();
+    }
+  }
+
+  /** Tests that audio/l16 prompts are little-endian unless big-endian is requested. */
+  @Test
+  public void testEndianness() throws IOException {
+    TemplateSynthesizer synthesizer = new TemplateSynthesizer.Builder().service(service).build();
+    try {
+      byte[] prompt = WaveUtils.toByteArray(synthesizer.synthesize(TEMPLATE, values(), VOICE));
+
+      assertEquals(synthesizer.getContentType(), "audio/l16;rate=22050;endianness=little-endian");
+      // the peak of the tones, which is exceeded when the bytes are read in the wrong order
+      assertTrue(peak(prompt, ByteOrder.LITTLE_ENDIAN) <= 8000);
+    } finally {
+      synthesizer.close();
+    }
+
+    synthesizer =
+        new TemplateSynthesizer.Builder()
+            .service(service)
+            .accept("audio/l16;rate=22050;endianness=big-endian")
+            .build();
+    try {
+      byte[] prompt = WaveUtils.toByteArray(synthesizer.synthesize(TEMPLATE, values(), VOICE));
+
+      assertEquals(synthesizer.getContentType(), "audio/l16;rate=22050;endianness=big-endian");
+      assertTrue(peak(prompt, ByteOrder.BIG_ENDIAN) <= 8000);
+    } finally {
+      synthesizer.close();
+    }
+  }
+
+  /** Tests that the static fragments are synthesized again after their custom model changed. */
+  @Test
+  public void testCustomModelChanged() throws IOException {
+    TemplateSynthesizer synthesizer =
+        new TemplateSynthesizer.Builder().service(service).customizationId("model-a").build();
+    try {
+      synthesizer.synthesize(TEMPLATE, values(), VOICE);
+      assertEquals(requests.get(), 4);
+
+      // another model
+      service.addWord(addWord("model-b")).execute();
+      synthesizer.synthesize(TEMPLATE, values(), VOICE);
+      assertEquals(requests.get(), 6);
+
+      service.addWord(addWord("model-a")).execute();
+      synthesizer.synthesize(TEMPLATE, values(), VOICE);
+      assertEquals(requests.get(), 10);
+    } finally {
+      synthesizer.close();
+    }
+  }
+}
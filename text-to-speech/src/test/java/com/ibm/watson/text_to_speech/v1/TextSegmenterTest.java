@@ -0,0 +1,56 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1;
+
+import static org.testng.Assert.assertEquals;
+
+import com.ibm.watson.text_to_speech.v1.util.TextSegmenter;
+import java.util.Arrays;
+import java.util.List;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link TextSegmenter}. */
+public class TextSegmenterTest {
+
+  /** Tests packing sentences, with a shorter first segment and an overlong sentence. */
+  @Test
+  public void testSplitText() {
+    String text =
+        "Hello there. This is a test! Does it work? "
+            + "This sentence is much too long to fit into a single segment at all.";
+    List<String> segments = TextSegmenter.split(text, 15, 30);
+    assertEquals(
+        segments,
+        Arrays.asList(
+            "Hello there.",
+            "This is a test! Does it work?",
+            "This sentence is much too",
+            "long to fit into a single",
+            "segment at all."));
+  }
+
+  /** Tests that SSML is split only between top-level elements and kept well-formed. */
+  @Test
+  public void testSplitSsml() {
+    String ssml =
+        "<speak version=\"1.0\">First sentence. <prosody rate=\"slow\">Slow. Still slow.</prosody>"
+            + "<break time=\"1s\"/>Last one.</speak>";
+    List<String> segments = TextSegmenter.split(ssml, 30);
+    assertEquals(
+        segments,
+        Arrays.asList(
+            "<speak version=\"1.0\">First sentence.</speak>",
+            "<speak version=\"1.0\"><prosody rate=\"slow\">Slow. Still slow.</prosody></speak>",
+            "<speak version=\"1.0\"><break time=\"1s\"/>Last one.</speak>"));
+  }
+}
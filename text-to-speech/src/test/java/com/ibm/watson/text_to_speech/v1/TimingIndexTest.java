@@ -0,0 +1,82 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1;
+
+import static org.testng.Assert.assertEquals;
+
+import com.ibm.cloud.sdk.core.util.GsonSingleton;
+import com.ibm.watson.text_to_speech.v1.model.Marks;
+import com.ibm.watson.text_to_speech.v1.model.Timings;
+import com.ibm.watson.text_to_speech.v1.util.TimingIndex;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link TimingIndex}. */
+public class TimingIndexTest {
+
+  private static <T> T fromJson(String json, Class<T> type) {
+    return GsonSingleton.getGson().fromJson(json.replace('\'', '"'), type);
+  }
+
+  /** Tests lookups by time and merging the timings of two segments. */
+  @Test
+  public void testLookups() {
+    TimingIndex.Builder builder = new TimingIndex.Builder();
+    builder.addTimings(
+        fromJson("{'words':[['Hello',0.1,0.4],['world',0.5,0.9]]}", Timings.class));
+    builder.addMarks(fromJson("{'marks':[['here',0.45]]}", Marks.class));
+    TimingIndex partial = builder.build();
+    assertEquals(partial.getWordCount(), 2);
+
+    // the second segment starts after the first one
+    builder.offset(1.0);
+    builder.addTimings(fromJson("{'words':[['again',0.0,0.3]]}", Timings.class));
+    builder.addMarks(fromJson("{'marks':[['there',0.2]]}", Marks.class));
+    TimingIndex index = builder.build();
+
+    assertEquals(partial.getWordCount(), 2);
+    assertEquals(index.getWordCount(), 3);
+    assertEquals(index.wordAt(0.0), -1);
+    assertEquals(index.wordAt(0.1), 0);
+    assertEquals(index.wordAt(0.45), -1);
+    assertEquals(index.lastWordAt(0.45), 0);
+    assertEquals(index.wordAt(0.7), 1);
+    assertEquals(index.wordAt(1.1), 2);
+    assertEquals(index.getWord(2), "again");
+    assertEquals(index.getStartTime(2), 1.0, 1e-9);
+    assertEquals(index.getEndTime(2), 1.3, 1e-9);
+    assertEquals(index.wordAt(5.0), -1);
+    assertEquals(index.lastWordAt(5.0), 2);
+
+    assertEquals(index.markAt(0.4), -1);
+    assertEquals(index.markAt(0.45), 0);
+    assertEquals(index.getMark(index.markAt(1.5)), "there");
+    assertEquals(index.getMarkTime(1), 1.2, 1e-9);
+  }
+
+  /** Tests that timings added out of order are sorted. */
+  @Test
+  public void testOutOfOrder() {
+    TimingIndex index =
+        new TimingIndex.Builder()
+            .offset(2.0)
+            .addWord("later", 0.0, 0.5)
+            .offset(0.0)
+            .addWord("first", 0.0, 0.5)
+            .addWord("second", 1.0, 1.5)
+            .build();
+    assertEquals(index.getWord(0), "first");
+    assertEquals(index.getWord(1), "second");
+    assertEquals(index.getWord(2), "later");
+    assertEquals(index.wordAt(2.2), 2);
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * (C) Copyright IBM Corp. 2023.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.ibm.watson.text_to_speech.v1;
+
+import static org.testng.Assert.assertEquals;
+
+import com.ibm.watson.text_to_speech.v1.util.WaveUtils;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import org.testng.annotations.Test;
+
+/** Unit tests for {@link WaveUtils}. */
+public class WaveUtilsTest {
+
+  private static final int AUDIO_BYTES = 40001;
+
+  /** A streamed WAVE file with unknown sizes and a LIST chunk before the data. */
+  private static byte[] streamedWave() {
+    ByteBuffer wave = ByteBuffer.allocate(12 + 24 + 14 + 8 + AUDIO_BYTES);
+    wave.order(ByteOrder.LITTLE_ENDIAN);
+    wave.put("RIFF".getBytes()).putInt(-1).put("WAVE".getBytes());
+    wave.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) 1);
+    wave.putInt(22050).putInt(44100).putShort((short) 2).putShort((short) 16);
+    // an odd-sized chunk is followed by a padding byte
+    wave.put("LIST".getBytes()).putInt(5).put(new byte[] {1, 2, 3, 4, 5, 0});
+    wave.put("data".getBytes()).putInt(-1);
+    for (int i = 0; i < AUDIO_BYTES; i++) {
+      wave.put((byte) i);
+    }
+    return wave.array();
+  }
+
+  private static void assertSizes(byte[] written, byte[] original) {
+    assertEquals(written.length, original.length);
+    ByteBuffer wave = ByteBuffer.wrap(written).order(ByteOrder.LITTLE_ENDIAN);
+    assertEquals(wave.getInt(4), written.length - 8);
+    assertEquals(wave.getInt(12 + 24 + 14 + 4), AUDIO_BYTES);
+    for (int i = 58; i < written.length; i++) {
+      assertEquals(written[i], original[i]);
+    }
+  }
+
+  /** Tests patching the sizes in place in a file. */
+  @Test
+  public void testWriteWaveFile() throws IOException {
+    byte[] wave = streamedWave();
+    File file = File.createTempFile("synthesis", ".wav");
+    file.deleteOnExit();
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+    long written = WaveUtils.writeWaveFile(new ByteArrayInputStream(wave), channel);
+    channel.close();
+
+    assertEquals(written, wave.length);
+    assertSizes(Files.readAllBytes(file.toPath()), wave);
+  }
+
+  /** Tests writing to a stream with the audio in the lookahead and spilled to a file. */
+  @Test
+  public void testWriteWave() throws IOException {
+    byte[] wave = streamedWave();
+    for (int lookahead : new int[] {AUDIO_BYTES, 1024}) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      long written = WaveUtils.writeWave(new ByteArrayInputStream(wave), out, lookahead);
+      assertEquals(written, wave.length);
+      assertSizes(out.toByteArray(), wave);
+    }
+  }
+
+  /** Tests that a negative lookahead is rejected before the stream is read. */
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testNegativeLookahead() throws IOException {
+    WaveUtils.writeWave(new ByteArrayInputStream(streamedWave()), new ByteArrayOutputStream(), -1);
+  }
+}